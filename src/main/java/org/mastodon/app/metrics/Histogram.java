@@ -0,0 +1,163 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.app.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribution of non-negative {@code long} values, recorded concurrently
+ * without locking.
+ * <p>
+ * Values are counted in power-of-two buckets: bucket {@code i > 0} holds
+ * values in {@code [2^(i-1), 2^i)}, bucket 0 holds 0. Quantiles are therefore
+ * approximated within a factor of 2. Count, sum, minimum and maximum are
+ * exact.
+ */
+public class Histogram implements Metric
+{
+	private static final int NUM_BUCKETS = 64;
+
+	private final String name;
+
+	private final AtomicLongArray buckets = new AtomicLongArray( NUM_BUCKETS );
+
+	private final LongAdder count = new LongAdder();
+
+	private final LongAdder sum = new LongAdder();
+
+	private final AtomicLong min = new AtomicLong( Long.MAX_VALUE );
+
+	private final AtomicLong max = new AtomicLong( Long.MIN_VALUE );
+
+	Histogram( final String name )
+	{
+		this.name = name;
+	}
+
+	@Override
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * Records a value. Negative values are recorded as 0.
+	 *
+	 * @param value
+	 *            the value.
+	 */
+	public void record( final long value )
+	{
+		if ( !Metrics.ENABLED )
+			return;
+
+		final long v = Math.max( 0, value );
+		buckets.incrementAndGet( NUM_BUCKETS - Long.numberOfLeadingZeros( v ) );
+		count.increment();
+		sum.add( v );
+		if ( v < min.get() )
+			min.accumulateAndGet( v, Math::min );
+		if ( v > max.get() )
+			max.accumulateAndGet( v, Math::max );
+	}
+
+	public long getCount()
+	{
+		return count.sum();
+	}
+
+	public long getSum()
+	{
+		return sum.sum();
+	}
+
+	/**
+	 * @return the smallest recorded value, or 0 if no value was recorded.
+	 */
+	public long getMin()
+	{
+		final long m = min.get();
+		return m == Long.MAX_VALUE ? 0 : m;
+	}
+
+	/**
+	 * @return the largest recorded value, or 0 if no value was recorded.
+	 */
+	public long getMax()
+	{
+		final long m = max.get();
+		return m == Long.MIN_VALUE ? 0 : m;
+	}
+
+	/**
+	 * @return the mean of the recorded values, or 0 if no value was recorded.
+	 */
+	public double getMean()
+	{
+		final long n = getCount();
+		return n == 0 ? 0 : ( double ) getSum() / n;
+	}
+
+	/**
+	 * Returns an upper bound of the {@code q}-quantile of the recorded values,
+	 * at most twice the actual quantile.
+	 *
+	 * @param q
+	 *            the quantile, in {@code [0, 1]}.
+	 * @return the approximate quantile, or 0 if no value was recorded.
+	 */
+	public long getQuantile( final double q )
+	{
+		final long n = getCount();
+		if ( n == 0 )
+			return 0;
+		final long rank = Math.max( 1, ( long ) Math.ceil( q * n ) );
+		long cumulated = 0;
+		for ( int i = 0; i < NUM_BUCKETS; ++i )
+		{
+			cumulated += buckets.get( i );
+			if ( cumulated >= rank )
+				return i == 0 ? 0 : Math.min( getMax(), i < 63 ? ( 1L << i ) - 1 : Long.MAX_VALUE );
+		}
+		return getMax();
+	}
+
+	@Override
+	public void reset()
+	{
+		for ( int i = 0; i < NUM_BUCKETS; ++i )
+			buckets.set( i, 0 );
+		count.reset();
+		sum.reset();
+		min.set( Long.MAX_VALUE );
+		max.set( Long.MIN_VALUE );
+	}
+}
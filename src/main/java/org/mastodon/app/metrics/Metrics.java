@@ -0,0 +1,241 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.app.metrics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+
+/**
+ * Registry of the runtime {@link Counter}s, {@link Timer}s and
+ * {@link Histogram}s of a running Mastodon, to find out where time goes.
+ * <p>
+ * Metrics are created on first request and live for the whole session.
+ * Instrumented code typically keeps them in static fields:
+ *
+ * <pre>
+ * private static final Timer LAYOUT_TIMER = Metrics.timer( "trackscheme.layout" );
+ * </pre>
+ * <p>
+ * Recording is lock-free and cheap. It can be turned off entirely with the
+ * system property {@code -Dmastodon.metrics=false}.
+ * <p>
+ * The current values can be shown in the
+ * {@link org.mastodon.app.metrics.ui.MetricsDialog} or written as JSON with
+ * {@link #writeJson(Writer)}.
+ */
+public final class Metrics
+{
+	/**
+	 * Name of the system property that turns recording on or off.
+	 */
+	public static final String ENABLED_PROPERTY = "mastodon.metrics";
+
+	static final boolean ENABLED = Boolean.parseBoolean( System.getProperty( ENABLED_PROPERTY, "true" ) );
+
+	private static final ConcurrentSkipListMap< String, Metric > metrics = new ConcurrentSkipListMap<>();
+
+	private Metrics()
+	{}
+
+	/**
+	 * @return whether metrics are recorded.
+	 */
+	public static boolean isEnabled()
+	{
+		return ENABLED;
+	}
+
+	/**
+	 * Returns the counter with the specified name, creating it if needed.
+	 *
+	 * @param name
+	 *            the name of the counter.
+	 * @return the counter.
+	 * @throws IllegalArgumentException
+	 *             if a metric of another type has this name.
+	 */
+	public static Counter counter( final String name )
+	{
+		return get( name, Counter.class, Counter::new );
+	}
+
+	/**
+	 * Returns the timer with the specified name, creating it if needed.
+	 *
+	 * @param name
+	 *            the name of the timer.
+	 * @return the timer.
+	 * @throws IllegalArgumentException
+	 *             if a metric of another type has this name.
+	 */
+	public static Timer timer( final String name )
+	{
+		return get( name, Timer.class, Timer::new );
+	}
+
+	/**
+	 * Returns the histogram with the specified name, creating it if needed.
+	 *
+	 * @param name
+	 *            the name of the histogram.
+	 * @return the histogram.
+	 * @throws IllegalArgumentException
+	 *             if a metric of another type has this name.
+	 */
+	public static Histogram histogram( final String name )
+	{
+		return get( name, Histogram.class, Histogram::new );
+	}
+
+	private static < M extends Metric > M get( final String name, final Class< M > type, final Function< String, M > factory )
+	{
+		final Metric metric = metrics.computeIfAbsent( name, factory );
+		if ( !type.isInstance( metric ) )
+			throw new IllegalArgumentException( "Metric \"" + name + "\" is a " + metric.getClass().getSimpleName() + ", not a " + type.getSimpleName() );
+		return type.cast( metric );
+	}
+
+	/**
+	 * Returns all metrics, sorted by name.
+	 *
+	 * @return a snapshot of the registered metrics.
+	 */
+	public static List< Metric > getMetrics()
+	{
+		return new ArrayList<>( metrics.values() );
+	}
+
+	/**
+	 * Clears the values of all metrics.
+	 */
+	public static void reset()
+	{
+		metrics.values().forEach( Metric::reset );
+	}
+
+	/**
+	 * Writes the current values of all metrics as a JSON object. Durations
+	 * are in milliseconds.
+	 *
+	 * @param writer
+	 *            the writer.
+	 * @throws IOException
+	 *             if writing fails.
+	 */
+	public static void writeJson( final Writer writer ) throws IOException
+	{
+		writer.write( "{\n" );
+		writer.write( "  \"timestamp\": " + System.currentTimeMillis() + ",\n" );
+		writer.write( "  \"metrics\": [" );
+		boolean first = true;
+		for ( final Metric metric : getMetrics() )
+		{
+			writer.write( first ? "\n" : ",\n" );
+			first = false;
+			writer.write( "    { \"name\": " + quote( metric.getName() ) );
+			if ( metric instanceof Counter )
+			{
+				writer.write( ", \"type\": \"counter\", \"value\": " + ( ( Counter ) metric ).get() );
+			}
+			else if ( metric instanceof Timer )
+			{
+				final Histogram h = ( ( Timer ) metric ).getHistogram();
+				writer.write( ", \"type\": \"timer\", \"count\": " + h.getCount()
+						+ ", \"totalMs\": " + ms( h.getSum() )
+						+ ", \"meanMs\": " + ms( h.getMean() )
+						+ ", \"minMs\": " + ms( h.getMin() )
+						+ ", \"maxMs\": " + ms( h.getMax() )
+						+ ", \"p50Ms\": " + ms( h.getQuantile( 0.5 ) )
+						+ ", \"p90Ms\": " + ms( h.getQuantile( 0.9 ) )
+						+ ", \"p99Ms\": " + ms( h.getQuantile( 0.99 ) ) );
+			}
+			else if ( metric instanceof Histogram )
+			{
+				final Histogram h = ( Histogram ) metric;
+				writer.write( ", \"type\": \"histogram\", \"count\": " + h.getCount()
+						+ ", \"sum\": " + h.getSum()
+						+ ", \"mean\": " + String.format( Locale.ROOT, "%.3f", h.getMean() )
+						+ ", \"min\": " + h.getMin()
+						+ ", \"max\": " + h.getMax()
+						+ ", \"p50\": " + h.getQuantile( 0.5 )
+						+ ", \"p90\": " + h.getQuantile( 0.9 )
+						+ ", \"p99\": " + h.getQuantile( 0.99 ) );
+			}
+			writer.write( " }" );
+		}
+		writer.write( "\n  ]\n}\n" );
+		writer.flush();
+	}
+
+	/**
+	 * Writes the current values of all metrics as JSON to a file.
+	 *
+	 * @param file
+	 *            the file to write.
+	 * @throws IOException
+	 *             if writing fails.
+	 */
+	public static void writeJson( final File file ) throws IOException
+	{
+		try (final Writer writer = new OutputStreamWriter( new FileOutputStream( file ), StandardCharsets.UTF_8 ))
+		{
+			writeJson( writer );
+		}
+	}
+
+	private static String ms( final double nanos )
+	{
+		return String.format( Locale.ROOT, "%.3f", nanos * 1e-6 );
+	}
+
+	private static String quote( final String s )
+	{
+		final StringBuilder sb = new StringBuilder( s.length() + 2 ).append( '"' );
+		for ( int i = 0; i < s.length(); ++i )
+		{
+			final char c = s.charAt( i );
+			if ( c == '"' || c == '\\' )
+				sb.append( '\\' ).append( c );
+			else if ( c < 0x20 )
+				sb.append( String.format( "\\u%04x", ( int ) c ) );
+			else
+				sb.append( c );
+		}
+		return sb.append( '"' ).toString();
+	}
+}
@@ -0,0 +1,132 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.app.metrics;
+
+/**
+ * Measures the duration of an operation. Durations are recorded in
+ * nanoseconds in a {@link Histogram}.
+ * <p>
+ * Either record explicitly
+ *
+ * <pre>
+ * final long t0 = System.nanoTime();
+ * ...
+ * timer.record( System.nanoTime() - t0 );
+ * </pre>
+ *
+ * which does not allocate and is suited to paint loops, or use a
+ * try-with-resources block
+ *
+ * <pre>
+ * try ( Timer.Stopwatch s = timer.start() )
+ * {
+ * 	...
+ * }
+ * </pre>
+ */
+public class Timer implements Metric
+{
+	private final String name;
+
+	private final Histogram nanos;
+
+	Timer( final String name )
+	{
+		this.name = name;
+		this.nanos = new Histogram( name );
+	}
+
+	/**
+	 * Records the duration of an operation when closed.
+	 */
+	public class Stopwatch implements AutoCloseable
+	{
+		private final long start = System.nanoTime();
+
+		@Override
+		public void close()
+		{
+			record( System.nanoTime() - start );
+		}
+	}
+
+	@Override
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * Starts timing an operation. The duration is recorded when the returned
+	 * {@link Stopwatch} is closed.
+	 *
+	 * @return the stopwatch.
+	 */
+	public Stopwatch start()
+	{
+		return new Stopwatch();
+	}
+
+	/**
+	 * Records the duration of an operation.
+	 *
+	 * @param durationNanos
+	 *            the duration, in nanoseconds.
+	 */
+	public void record( final long durationNanos )
+	{
+		nanos.record( durationNanos );
+	}
+
+	/**
+	 * Returns the distribution of recorded durations, in nanoseconds.
+	 *
+	 * @return the histogram of durations.
+	 */
+	public Histogram getHistogram()
+	{
+		return nanos;
+	}
+
+	public long getCount()
+	{
+		return nanos.getCount();
+	}
+
+	public long getTotalNanos()
+	{
+		return nanos.getSum();
+	}
+
+	@Override
+	public void reset()
+	{
+		nanos.reset();
+	}
+}
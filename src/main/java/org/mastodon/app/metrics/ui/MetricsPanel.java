@@ -0,0 +1,208 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.app.metrics.ui;
+
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.awt.event.HierarchyEvent;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import javax.swing.JButton;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.table.AbstractTableModel;
+
+import org.mastodon.app.metrics.Counter;
+import org.mastodon.app.metrics.Histogram;
+import org.mastodon.app.metrics.Metric;
+import org.mastodon.app.metrics.Metrics;
+import org.mastodon.app.metrics.Timer;
+import org.mastodon.ui.util.ExtensionFileFilter;
+import org.mastodon.ui.util.FileChooser;
+
+/**
+ * Table of the current values of all {@link Metrics}, refreshed every second
+ * while the panel is showing, with buttons to reset the metrics and to save
+ * them as JSON.
+ */
+public class MetricsPanel extends JPanel
+{
+	private static final long serialVersionUID = 1L;
+
+	private static final int REFRESH_INTERVAL_MS = 1000;
+
+	private static final String[] COLUMNS = { "Name", "Count", "Total (ms)", "Mean (ms)", "p50 (ms)", "p99 (ms)", "Max (ms)" };
+
+	private final MetricsTableModel tableModel;
+
+	private final javax.swing.Timer refreshTimer;
+
+	public MetricsPanel()
+	{
+		super( new BorderLayout() );
+		tableModel = new MetricsTableModel();
+		final JTable table = new JTable( tableModel );
+		table.setAutoCreateRowSorter( true );
+		table.getColumnModel().getColumn( 0 ).setPreferredWidth( 250 );
+		add( new JScrollPane( table ), BorderLayout.CENTER );
+
+		final JButton reset = new JButton( "Reset" );
+		reset.addActionListener( e -> {
+			Metrics.reset();
+			tableModel.refresh();
+		} );
+		final JButton save = new JButton( "Save JSON..." );
+		save.addActionListener( e -> saveJson() );
+		final JPanel buttons = new JPanel( new FlowLayout( FlowLayout.TRAILING ) );
+		buttons.add( reset );
+		buttons.add( save );
+		add( buttons, BorderLayout.SOUTH );
+
+		refreshTimer = new javax.swing.Timer( REFRESH_INTERVAL_MS, e -> tableModel.refresh() );
+		addHierarchyListener( e -> {
+			if ( ( e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED ) != 0 )
+			{
+				if ( isShowing() )
+				{
+					tableModel.refresh();
+					refreshTimer.start();
+				}
+				else
+					refreshTimer.stop();
+			}
+		} );
+	}
+
+	private void saveJson()
+	{
+		final File file = FileChooser.chooseFile(
+				this,
+				"mastodon-metrics.json",
+				new ExtensionFileFilter( "json" ),
+				"Save Metrics As JSON",
+				FileChooser.DialogType.SAVE );
+		if ( file == null )
+			return;
+
+		try
+		{
+			Metrics.writeJson( file );
+		}
+		catch ( final IOException e )
+		{
+			JOptionPane.showMessageDialog( this, "Could not write " + file + ":\n" + e.getMessage(), "Save Metrics", JOptionPane.ERROR_MESSAGE );
+		}
+	}
+
+	private static class MetricsTableModel extends AbstractTableModel
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final List< Object[] > rows = new ArrayList<>();
+
+		void refresh()
+		{
+			final int oldSize = rows.size();
+			rows.clear();
+			for ( final Metric metric : Metrics.getMetrics() )
+				rows.add( toRow( metric ) );
+			if ( rows.size() == oldSize && oldSize > 0 )
+				fireTableRowsUpdated( 0, rows.size() - 1 );
+			else
+				fireTableDataChanged();
+		}
+
+		private static Object[] toRow( final Metric metric )
+		{
+			if ( metric instanceof Counter )
+				return new Object[] { metric.getName(), ( ( Counter ) metric ).get(), null, null, null, null, null };
+
+			final boolean isTimer = metric instanceof Timer;
+			final Histogram h = isTimer ? ( ( Timer ) metric ).getHistogram() : ( Histogram ) metric;
+			final double scale = isTimer ? 1e-6 : 1;
+			return new Object[] {
+					metric.getName(),
+					h.getCount(),
+					isTimer ? round( h.getSum() * scale ) : null,
+					round( h.getMean() * scale ),
+					round( h.getQuantile( 0.5 ) * scale ),
+					round( h.getQuantile( 0.99 ) * scale ),
+					round( h.getMax() * scale ) };
+		}
+
+		private static Double round( final double value )
+		{
+			return Double.valueOf( String.format( Locale.ROOT, "%.3f", value ) );
+		}
+
+		@Override
+		public int getRowCount()
+		{
+			return rows.size();
+		}
+
+		@Override
+		public int getColumnCount()
+		{
+			return COLUMNS.length;
+		}
+
+		@Override
+		public String getColumnName( final int column )
+		{
+			return COLUMNS[ column ];
+		}
+
+		@Override
+		public Class< ? > getColumnClass( final int column )
+		{
+			switch ( column )
+			{
+			case 0:
+				return String.class;
+			case 1:
+				return Long.class;
+			default:
+				return Double.class;
+			}
+		}
+
+		@Override
+		public Object getValueAt( final int row, final int column )
+		{
+			return rows.get( row )[ column ];
+		}
+	}
+}
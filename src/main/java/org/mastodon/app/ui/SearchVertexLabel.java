@@ -36,9 +36,12 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.FocusEvent;
 import java.awt.event.FocusListener;
-import java.util.Collections;
-import java.util.Iterator;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 import javax.swing.ActionMap;
 import javax.swing.Icon;
@@ -51,33 +54,46 @@ import javax.swing.JPanel;
 import javax.swing.JTextField;
 import javax.swing.KeyStroke;
 import javax.swing.UIManager;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 
 import org.mastodon.Ref;
-import org.mastodon.collection.RefCollections;
-import org.mastodon.collection.RefList;
-import org.mastodon.collection.RefSet;
+import org.mastodon.adapter.RefBimap;
+import org.mastodon.app.ViewGraph;
 import org.mastodon.graph.Edge;
-import org.mastodon.graph.ReadOnlyGraph;
 import org.mastodon.graph.Vertex;
-import org.mastodon.graph.algorithm.AbstractGraphAlgorithm;
-import org.mastodon.graph.algorithm.RootFinder;
-import org.mastodon.graph.algorithm.traversal.BreadthFirstCrossComponentIterator;
-import org.mastodon.graph.algorithm.traversal.BreadthFirstIterator;
-import org.mastodon.graph.algorithm.traversal.InverseDepthFirstIterator;
 import org.mastodon.model.FocusModel;
 import org.mastodon.model.HasLabel;
 import org.mastodon.model.NavigationHandler;
 import org.mastodon.model.SelectionModel;
+import org.mastodon.model.VertexLabelIndex;
 import org.mastodon.ui.keymap.CommandDescriptionProvider;
 import org.mastodon.ui.keymap.CommandDescriptions;
 import org.mastodon.ui.keymap.KeyConfigContexts;
 import org.mastodon.util.KeyConfigUtils;
-import org.mastodon.views.trackscheme.util.AlphanumCompare;
 import org.scijava.plugin.Plugin;
 import org.scijava.ui.behaviour.util.Actions;
 import org.scijava.ui.behaviour.util.RunnableAction;
 
-public class SearchVertexLabel< V extends Vertex< E > & HasLabel & Ref< V >, E extends Edge< V > >
+/**
+ * A search field that finds vertices by their label.
+ * <p>
+ * Queries are answered by a {@link VertexLabelIndex} over the model graph, on
+ * a background thread. Typing in the field starts computing the matches for
+ * the current text, abandoning the query for the previous text. Pressing
+ * ENTER navigates to the next match, in label order, starting after the
+ * focused (or selected) vertex.
+ *
+ * @param <MV>
+ *            the type of vertices in the model graph.
+ * @param <ME>
+ *            the type of edges in the model graph.
+ * @param <V>
+ *            the type of vertices in the view graph.
+ * @param <E>
+ *            the type of edges in the view graph.
+ */
+public class SearchVertexLabel< MV extends Vertex< ME > & HasLabel, ME extends Edge< MV >, V extends Vertex< E > & Ref< V >, E extends Edge< V > >
 {
 
 	private static final String UNFOCUSED_TEXT = "Search...";
@@ -109,10 +125,20 @@ public class SearchVertexLabel< V extends Vertex< E > & HasLabel & Ref< V >, E e
 	/**
 	 * Installs the search vertex label action.
 	 * 
+	 * @param <MV>
+	 *            the type of vertices in the model graph.
+	 * @param <ME>
+	 *            the type of edges in the model graph.
+	 * @param <V>
+	 *            the type of vertices in the view graph.
+	 * @param <E>
+	 *            the type of edges in the view graph.
 	 * @param actions
 	 *            the {@link Actions} to add the search vertex action to.
-	 * @param graph
-	 *            the graph to operate the search on.
+	 * @param index
+	 *            the label index of the model graph to operate the search on.
+	 * @param viewGraph
+	 *            the view graph, used to map search results to view vertices.
 	 * @param navigation
 	 *            the navigation model to navigate to search results.
 	 * @param selection
@@ -124,16 +150,17 @@ public class SearchVertexLabel< V extends Vertex< E > & HasLabel & Ref< V >, E e
 	 *            the search text field.
 	 * @return a new panel containing the search field.
 	 */
-	public static < V extends Vertex< E > & HasLabel & Ref< V >, E extends Edge< V > > JPanel
+	public static < MV extends Vertex< ME > & HasLabel, ME extends Edge< MV >, V extends Vertex< E > & Ref< V >, E extends Edge< V > > JPanel
 			install(
 					final Actions actions,
-					final ReadOnlyGraph< V, E > graph,
+					final VertexLabelIndex< MV, ME > index,
+					final ViewGraph< MV, ME, V, E > viewGraph,
 					final NavigationHandler< V, E > navigation,
 					final SelectionModel< V, E > selection,
 					final FocusModel< V, E > focus,
 					final JComponent cancelEntryFocusTarget )
 	{
-		final SearchVertexLabel< V, E > search = new SearchVertexLabel<>( graph, navigation, selection, focus, cancelEntryFocusTarget );
+		final SearchVertexLabel< MV, ME, V, E > search = new SearchVertexLabel<>( index, viewGraph, navigation, selection, focus, cancelEntryFocusTarget );
 		actions.runnableAction( () -> search.searchField.requestFocusInWindow(), SEARCH, SEARCH_KEYS );
 		return search.searchPanel;
 	}
@@ -160,7 +187,8 @@ public class SearchVertexLabel< V extends Vertex< E > & HasLabel & Ref< V >, E e
 	}
 
 	private SearchVertexLabel(
-			final ReadOnlyGraph< V, E > graph,
+			final VertexLabelIndex< MV, ME > index,
+			final ViewGraph< MV, ME, V, E > viewGraph,
 			final NavigationHandler< V, E > navigation,
 			final SelectionModel< V, E > selection,
 			final FocusModel< V, E > focus,
@@ -210,33 +238,55 @@ public class SearchVertexLabel< V extends Vertex< E > & HasLabel & Ref< V >, E e
 		gbc_chckbxstartswith.gridy = 0;
 		searchPanel.add( chckbxstartswith, gbc_chckbxstartswith );
 
-		final SearchAction< V, E > sa = new SearchAction<>( graph, navigation, selection, focus );
+		final SearchAction< MV, ME, V, E > sa = new SearchAction<>( index, viewGraph, navigation, selection, focus );
 		searchField.addFocusListener( sa );
 		labelIcon.addActionListener( ( event ) -> searchField.requestFocusInWindow() );
 
+		// Start computing matches while the user types.
+		final Runnable prefetch = () -> {
+			if ( searchField.isFocusOwner() )
+				sa.prefetch( searchField.getText(), chckbxstartswith.isSelected() );
+		};
+		searchField.getDocument().addDocumentListener( new DocumentListener()
+		{
+			@Override
+			public void insertUpdate( final DocumentEvent e )
+			{
+				prefetch.run();
+			}
+
+			@Override
+			public void removeUpdate( final DocumentEvent e )
+			{
+				prefetch.run();
+			}
+
+			@Override
+			public void changedUpdate( final DocumentEvent e )
+			{}
+		} );
+		chckbxstartswith.addActionListener( ( event ) -> sa.prefetch( searchField.getText(), chckbxstartswith.isSelected() ) );
+
 		searchField.addActionListener( new ActionListener()
 		{
 			@Override
 			public void actionPerformed( final ActionEvent e )
 			{
 				doChangeFocusIcon.set( false );
-				new Thread()
-				{
-					@Override
-					public void run()
+				sa.search( searchField.getText(), chckbxstartswith.isSelected(), found -> {
+					try
 					{
-						try
+						if ( found != null )
 						{
-							final SearchResult found = sa.search( searchField.getText(), chckbxstartswith.isSelected() );
 							searchField.requestFocusInWindow();
 							setIcon( found.getIcon() );
 						}
-						finally
-						{
-							doChangeFocusIcon.set( true );
-						}
-					};
-				}.start();
+					}
+					finally
+					{
+						doChangeFocusIcon.set( true );
+					}
+				} );
 			}
 		} );
 		// Cancel entry
@@ -272,11 +322,16 @@ public class SearchVertexLabel< V extends Vertex< E > & HasLabel & Ref< V >, E e
 		}
 	}
 
-	private static class SearchAction< V extends Vertex< E > & HasLabel & Ref< V >, E extends Edge< V > >
-			extends AbstractGraphAlgorithm< V, E >
+	/**
+	 * Runs queries on a single background thread. All fields except
+	 * {@link #generation} are only accessed from that thread.
+	 */
+	private static class SearchAction< MV extends Vertex< ME > & HasLabel, ME extends Edge< MV >, V extends Vertex< E > & Ref< V >, E extends Edge< V > >
 			implements FocusListener
 	{
-		private Iterator< V > iterator;
+		private final VertexLabelIndex< MV, ME > index;
+
+		private final ViewGraph< MV, ME, V, E > viewGraph;
 
 		private final NavigationHandler< V, E > navigation;
 
@@ -284,113 +339,194 @@ public class SearchVertexLabel< V extends Vertex< E > & HasLabel & Ref< V >, E e
 
 		private final SelectionModel< V, E > selection;
 
-		private V start;
+		private final ThreadPoolExecutor executor;
 
-		private V firstFound;
+		/**
+		 * Incremented whenever the query text changes. Queries for older
+		 * generations are stale and are abandoned.
+		 */
+		private final AtomicInteger generation = new AtomicInteger();
 
-		private String previousSearchString = "";
+		private String matchedText;
 
-		private boolean gotOne;
+		private boolean matchedStartsWith;
+
+		/**
+		 * Model vertex ids matching {@link #matchedText}, in label order.
+		 * {@code null} if not computed yet.
+		 */
+		private int[] matches;
+
+		/**
+		 * Position in {@link #matches} of the last vertex navigated to.
+		 */
+		private int position;
+
+		/**
+		 * Position in {@link #matches} of the first vertex navigated to, used
+		 * to detect when the search looped over all matches.
+		 */
+		private int firstFound;
+
+		/**
+		 * Model vertex id of the vertex to start the search after, or -1.
+		 */
+		private int startId = -1;
 
 		public SearchAction(
-				final ReadOnlyGraph< V, E > graph,
+				final VertexLabelIndex< MV, ME > index,
+				final ViewGraph< MV, ME, V, E > viewGraph,
 				final NavigationHandler< V, E > navigation,
 				final SelectionModel< V, E > selection,
 				final FocusModel< V, E > focus )
 		{
-			super( graph );
+			this.index = index;
+			this.viewGraph = viewGraph;
 			this.navigation = navigation;
 			this.selection = selection;
 			this.focus = focus;
-			this.start = graph.vertexRef();
-			this.firstFound = graph.vertexRef();
-			getStartFromUI();
-			reinit( start );
+			executor = new ThreadPoolExecutor( 1, 1, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+				final Thread thread = new Thread( r, "Search vertex label" );
+				thread.setDaemon( true );
+				return thread;
+			} );
+			executor.allowCoreThreadTimeOut( true );
+		}
+
+		/**
+		 * Starts computing the matches for the specified query in the
+		 * background. Queries for previous texts are abandoned.
+		 */
+		public void prefetch( final String text, final boolean startsWith )
+		{
+			final int gen = generation.incrementAndGet();
+			executor.execute( () -> getMatches( text, startsWith, gen ) );
 		}
 
-		private synchronized SearchResult search( final String text, final boolean startsWith )
+		/**
+		 * Navigates to the next match for the specified query, in the
+		 * background, then passes the result to {@code done}. The result is
+		 * {@code null} if the query was abandoned because the text changed.
+		 */
+		public void search( final String text, final boolean startsWith, final Consumer< SearchResult > done )
 		{
-			if ( !previousSearchString.equals( text ) )
+			final int gen = generation.get();
+			executor.execute( () -> {
+				SearchResult result = null;
+				try
+				{
+					result = next( text, startsWith, gen );
+				}
+				finally
+				{
+					done.accept( result );
+				}
+			} );
+		}
+
+		private int[] getMatches( final String text, final boolean startsWith, final int gen )
+		{
+			if ( matches != null && text.equals( matchedText ) && startsWith == matchedStartsWith )
+				return matches;
+
+			final int[] ids = index.search( text, startsWith, () -> generation.get() != gen );
+			if ( ids == null )
+				return null;
+
+			matchedText = text;
+			matchedStartsWith = startsWith;
+			matches = ids;
+			position = -1;
+			firstFound = -1;
+			for ( int i = 0; i < ids.length; ++i )
 			{
-				reinit( start );
-				previousSearchString = text;
-				gotOne = false;
+				if ( ids[ i ] == startId )
+				{
+					position = i;
+					break;
+				}
 			}
+			return ids;
+		}
 
-			while ( iterator.hasNext() )
+		private SearchResult next( final String text, final boolean startsWith, final int gen )
+		{
+			final int[] ids = getMatches( text, startsWith, gen );
+			if ( ids == null )
+				return null;
+
+			final RefBimap< MV, V > vertexMap = viewGraph.getVertexMap();
+			final V vref = viewGraph.vertexRef();
+			final MV mref = vertexMap.reusableLeftRef( vref );
+			try
 			{
-				final V v = iterator.next();
-				final String label = v.getLabel();
-				if ( startsWith ? label.startsWith( text ) : label.contains( text ) )
+				// Skip matches that were removed or relabeled since the query.
+				for ( int i = 0; i < ids.length; ++i )
 				{
-					if ( !gotOne )
-					{
-						gotOne = true;
-						firstFound = assign( v, firstFound );
+					position = ( position + 1 ) % ids.length;
+					final MV mv = index.getVertex( ids[ position ], mref );
+					if ( mv == null )
+						continue;
+					final String label = mv.getLabel();
+					if ( !( startsWith ? label.startsWith( text ) : label.contains( text ) ) )
+						continue;
+					final V v = vertexMap.getRight( mv, vref );
+					if ( v == null )
+						continue;
 
-					}
 					navigation.notifyNavigateToVertex( v );
 					focus.focusVertex( v );
-					if ( iterator.hasNext() )
-						start = assign( v, start );
+					if ( position == firstFound )
+						return SearchResult.LOOPED;
+					if ( firstFound < 0 )
+						firstFound = position;
 					return SearchResult.FOUND;
 				}
+				return SearchResult.NOT_FOUND;
 			}
-			// We have exhausted the search.
-			if ( gotOne )
+			finally
 			{
-				// Loop back to the last valid.
-				navigation.notifyNavigateToVertex( firstFound );
-				focus.focusVertex( firstFound );
-				reinit( firstFound );
-				return SearchResult.LOOPED;
+				vertexMap.releaseRef( mref );
+				viewGraph.releaseRef( vref );
 			}
-			return SearchResult.NOT_FOUND;
 		}
 
-		private void getStartFromUI()
+		private int getStartIdFromUI()
 		{
-			// Look for the focused vertex.
-			final V ref = graph.vertexRef();
-			final V focusedVertex = focus.getFocusedVertex( ref );
-			if ( null != focusedVertex )
-			{
-				start = assign( focusedVertex, start );
-				return;
-			}
-
-			// If not focused, take a vertex from the selection.
-			if ( !selection.getSelectedVertices().isEmpty() )
+			final V ref = viewGraph.vertexRef();
+			try
 			{
-				final V selectedVertex = selection.getSelectedVertices().iterator().next();
-				start = assign( selectedVertex, start );
-				return;
+				// Look for the focused vertex.
+				V start = focus.getFocusedVertex( ref );
+
+				// If not focused, take a vertex from the selection.
+				if ( start == null && !selection.getSelectedVertices().isEmpty() )
+					start = selection.getSelectedVertices().iterator().next();
+
+				// If there is no vertices in the selection, take the source of
+				// an edge.
+				if ( start == null && !selection.getSelectedEdges().isEmpty() )
+					start = selection.getSelectedEdges().iterator().next().getSource( ref );
+
+				if ( start == null )
+					return -1;
+				final MV mv = viewGraph.getVertexMap().getLeft( start );
+				return mv == null ? -1 : index.getId( mv );
 			}
-
-			// If there is no vertices in the selection, take the source of an
-			// edge.
-			if ( !selection.getSelectedEdges().isEmpty() )
+			finally
 			{
-				final E selectedEdge = selection.getSelectedEdges().iterator().next();
-				start = assign( selectedEdge.getSource(), start );
-				return;
+				viewGraph.releaseRef( ref );
 			}
-
-			// If not take the first one in the model.
-			if ( !graph.vertices().isEmpty() )
-				start = assign( graph.vertices().iterator().next(), start );
-		}
-
-		private synchronized void reinit( final V from )
-		{
-			iterator = new SearchIterator< V, E >( graph, from );
 		}
 
 		@Override
 		public void focusGained( final FocusEvent e )
 		{
-			getStartFromUI();
-			reinit( start );
+			final int id = getStartIdFromUI();
+			executor.execute( () -> {
+				startId = id;
+				matches = null;
+			} );
 		}
 
 		@Override
@@ -435,115 +571,4 @@ public class SearchVertexLabel< V extends Vertex< E > & HasLabel & Ref< V >, E e
 			}
 		}
 	}
-
-	/**
-	 * Iterator that iterates breadth first into the graph, starting from a
-	 * specific vertex.
-	 *
-	 * @param <V>
-	 *            the type of vertices in the graph.
-	 * @param <E>
-	 *            the type of edges in the graph.
-	 */
-	private static class SearchIterator< V extends Vertex< E > & HasLabel, E extends Edge< V > > extends AbstractGraphAlgorithm< V, E > implements Iterator< V >
-	{
-
-		private final Iterator< V > iterator1;
-
-		private final Iterator< V > iterator2;
-
-		public SearchIterator( final ReadOnlyGraph< V, E > graph, final V from )
-		{
-			super( graph );
-
-			if ( graph.vertices().isEmpty() )
-			{
-				iterator1 = Collections.emptyIterator();
-				iterator2 = Collections.emptyIterator();
-				return;
-			}
-
-			// First, look for the root of the start vertex.
-			final InverseDepthFirstIterator< V, E > rootFinder = new InverseDepthFirstIterator<>( from, graph );
-
-			V root = graph.vertexRef();
-			boolean rootFound = false;
-			while ( rootFinder.hasNext() )
-			{
-				final V next = rootFinder.next();
-				if ( next.incomingEdges().isEmpty() )
-				{
-					root = assign( next, root );
-					rootFound = true;
-					break;
-				}
-			}
-			final RefSet< V > roots = RootFinder.getRoots( graph );
-			if ( !rootFound )
-			{
-				/*
-				 * Hum we have a problem. Each vertex SHOULD have a root. If you
-				 * reach this point in code, then there is an unknown problem
-				 * probably related to changing roots while looking for the
-				 * right root.
-				 */
-				System.err.println( "[SearchVertex] Could not find the root for vertex " + from );
-				iterator1 = new BreadthFirstCrossComponentIterator<>( from, graph, roots );
-				iterator2 = Collections.emptyIterator();
-				graph.releaseRef( root );
-				return;
-			}
-
-			/*
-			 * Now build an ordered root list that starts with the root just
-			 * next to the one we have found.
-			 */
-			final RefList< V > sortedRoots = RefCollections.createRefList( graph.vertices(), roots.size() );
-			sortedRoots.addAll( roots );
-			sortedRoots.sort( ( v1, v2 ) -> AlphanumCompare.compare( v1.getLabel(), v2.getLabel() ) );
-
-			final int iroot = sortedRoots.indexOf( root );
-			final RefList< V > iteratedRoots = RefCollections.createRefList( graph.vertices(), roots.size() );
-			for ( int i = iroot + 1; i < sortedRoots.size(); i++ )
-				iteratedRoots.add( sortedRoots.get( i ) );
-			for ( int i = 0; i <= iroot; i++ )
-				iteratedRoots.add( sortedRoots.get( i ) );
-
-			iterator1 = new BreadthFirstCrossComponentIterator<>( root, graph, iteratedRoots );
-
-			// Rewind to the starting point.
-			while ( iterator1.hasNext() )
-			{
-				final V next = iterator1.next();
-				if ( next == null || next.equals( from ) )
-					break;
-			}
-
-			// Position the second iterator that goes from the root to the
-			// start.
-			final V finalRoot = assign( root, graph.vertexRef() );
-			iterator2 = new BreadthFirstIterator< V, E >( root, graph )
-			{
-				@Override
-				public boolean hasNext()
-				{
-					return ( !fetched.equals( finalRoot ) && super.hasNext() );
-				}
-			};
-
-			graph.releaseRef( root );
-		}
-
-		@Override
-		public boolean hasNext()
-		{
-			return iterator1.hasNext() || iterator2.hasNext();
-		}
-
-		@Override
-		public V next()
-		{
-			return iterator1.hasNext() ? iterator1.next() : iterator2.next();
-		}
-	}
 }
@@ -36,6 +36,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.mastodon.app.metrics.Metrics;
+import org.mastodon.app.metrics.Timer;
 import org.mastodon.collection.RefList;
 import org.mastodon.feature.FeatureDependencyGraph.Edge;
 import org.mastodon.feature.FeatureDependencyGraph.Vertex;
@@ -249,8 +251,12 @@ public class DefaultFeatureComputerService extends AbstractService implements Fe
 			}
 
 			status.notifyStatus( vertex.getFeatureSpec().getKey() );
-			currentFeatureComputer.createOutput();
-			currentFeatureComputer.run();
+			final Timer timer = Metrics.timer( "feature.compute." + vertex.getFeatureSpec().getKey() );
+			try (Timer.Stopwatch s = timer.start())
+			{
+				currentFeatureComputer.createOutput();
+				currentFeatureComputer.run();
+			}
 
 			final Feature< ? > output = ( Feature< ? > ) info.outputs().iterator().next().getValue( module );
 			featureModel.put( vertex.getFeatureSpec(), output );
@@ -266,6 +266,8 @@ public class MainWindow extends JFrame
 						item( WindowManager.NEW_BDV_VIEW ),
 						item( WindowManager.NEW_TRACKSCHEME_VIEW ),
 						item( WindowManager.NEW_TABLE_VIEW ),
-						item( WindowManager.NEW_SELECTION_TABLE_VIEW ) ) );
+						item( WindowManager.NEW_SELECTION_TABLE_VIEW ),
+						separator(),
+						item( WindowManager.METRICS_DIALOG ) ) );
 	}
 }
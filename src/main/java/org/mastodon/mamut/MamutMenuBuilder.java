@@ -40,6 +40,7 @@ import org.mastodon.app.ui.ViewMenuBuilder;
 import org.mastodon.ui.SelectionActions;
 import org.mastodon.views.table.TableViewActions;
 import org.mastodon.views.trackscheme.display.EditFocusVertexLabelAction;
+import org.mastodon.views.trackscheme.display.TrackSchemeMinimap;
 import org.mastodon.views.trackscheme.display.TrackSchemeNavigationActions;
 
 import bdv.BigDataViewerActions;
@@ -63,6 +64,7 @@ public class MamutMenuBuilder extends ViewMenuBuilder
 		menuTexts.put( WindowManager.NEW_TABLE_VIEW, "New data table" );
 		menuTexts.put( WindowManager.NEW_SELECTION_TABLE_VIEW, "New selection table" );
 		menuTexts.put( WindowManager.PREFERENCES_DIALOG, "Preferences..." );
+		menuTexts.put( WindowManager.METRICS_DIALOG, "Metrics..." );
 
 		menuTexts.put( MastodonFrameViewActions.TOGGLE_SETTINGS_PANEL, "Settings Toolbar" );
 
@@ -90,6 +92,7 @@ public class MamutMenuBuilder extends ViewMenuBuilder
 		menuTexts.put( TrackSchemeNavigationActions.TOGGLE_FOCUS_SELECTION, "Toggle Focused Vertex Selection" );
 
 		menuTexts.put( EditFocusVertexLabelAction.EDIT_FOCUS_LABEL, "Edit Vertex Label" );
+		menuTexts.put( TrackSchemeMinimap.TOGGLE_MINIMAP, "Toggle Overview" );
 
 		menuTexts.put( TableViewActions.EDIT_LABEL, "Edit Vertex Label" );
 		menuTexts.put( TableViewActions.TOGGLE_TAG, "Toggle Current Tag" );
@@ -53,6 +53,7 @@ import javax.swing.ActionMap;
 import javax.swing.JPanel;
 
 import org.jdom2.Element;
+import org.mastodon.app.IdentityViewGraph;
 import org.mastodon.app.ui.MastodonFrameViewActions;
 import org.mastodon.app.ui.SearchVertexLabel;
 import org.mastodon.app.ui.ViewMenu;
@@ -128,7 +129,7 @@ public class MamutViewBdv extends MamutView< OverlayGraphWrapper< Spot, Link >,
 						appModel.getModel().getGraphIdBimap(),
 						appModel.getModel().getSpatioTemporalIndex(),
 						appModel.getModel().getGraph().getLock(),
-						new ModelOverlayProperties( appModel.getModel().getGraph(), appModel.getRadiusStats() ) ),
+						new ModelOverlayProperties( appModel.getModel().getGraph(), appModel.getRadiusStats(), appModel.getModel().getTrackIndex() ) ),
 				new String[] { KeyConfigContexts.BIGDATAVIEWER } );
 
 		sharedBdvData = appModel.getSharedBdvData();
@@ -267,6 +268,7 @@ public class MamutViewBdv extends MamutView< OverlayGraphWrapper< Spot, Link >,
 
 		highlightModel.listeners().add( () -> viewer.getDisplay().repaint() );
 		focusModel.listeners().add( () -> viewer.getDisplay().repaint() );
+		modelGraph.addGraphChangeListener( tracksOverlay.getVisibilities() );
 		modelGraph.addGraphChangeListener( () -> viewer.getDisplay().repaint() );
 		modelGraph.addVertexPositionListener( v -> viewer.getDisplay().repaint() );
 		modelGraph.addVertexLabelListener( v -> viewer.getDisplay().repaint() );
@@ -299,7 +301,8 @@ public class MamutViewBdv extends MamutView< OverlayGraphWrapper< Spot, Link >,
 		final NavigationHandler< Spot, Link > navigationHandlerAdapter = groupHandle.getModel( appModel.NAVIGATION );
 		final JPanel searchField = SearchVertexLabel.install(
 				viewActions,
-				appModel.getModel().getGraph(),
+				appModel.getModel().getSpotLabelIndex(),
+				IdentityViewGraph.wrap( appModel.getModel().getGraph(), appModel.getModel().getGraphIdBimap() ),
 				navigationHandlerAdapter,
 				appModel.getSelectionModel(),
 				appModel.getFocusModel(),
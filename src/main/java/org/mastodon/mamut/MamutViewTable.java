@@ -60,11 +60,13 @@ import org.mastodon.app.ui.ViewMenu;
 import org.mastodon.app.ui.ViewMenuBuilder.JMenuHandle;
 import org.mastodon.feature.FeatureModel;
 import org.mastodon.graph.GraphChangeListener;
+import org.mastodon.graph.GraphListener;
 import org.mastodon.mamut.model.Link;
 import org.mastodon.mamut.model.Model;
 import org.mastodon.mamut.model.ModelGraph;
 import org.mastodon.mamut.model.Spot;
 import org.mastodon.mamut.model.SpotPool;
+import org.mastodon.model.BulkEditor;
 import org.mastodon.model.SelectionListener;
 import org.mastodon.model.SelectionModel;
 import org.mastodon.model.tag.TagSetModel;
@@ -162,7 +164,7 @@ public class MamutViewTable extends MamutView< ViewGraph< Spot, Link, Spot, Link
 		MastodonFrameViewActions.install( viewActions, this );
 		TableViewActions.install( viewActions, frame );
 
-		final JPanel searchPanel = SearchVertexLabel.install( viewActions, viewGraph, navigationHandler, selectionModel, focusModel, frame.getCurrentlyDisplayedTable() );
+		final JPanel searchPanel = SearchVertexLabel.install( viewActions, appModel.getModel().getSpotLabelIndex(), viewGraph, navigationHandler, selectionModel, focusModel, frame.getCurrentlyDisplayedTable() );
 		frame.getSettingsPanel().add( searchPanel );
 
 		onClose( () -> {
@@ -261,13 +263,19 @@ public class MamutViewTable extends MamutView< ViewGraph< Spot, Link, Spot, Link
 		{
 			// Pass and listen to the full graph.
 			final ModelGraph graph = appModel.getModel().getGraph();
-			final GraphChangeListener graphChangeListener = () -> {
-				vertexTable.setRows( graph.vertices() );
-				edgeTable.setRows( graph.edges() );
-			};
-			graph.addGraphChangeListener( graphChangeListener );
-			graphChangeListener.graphChanged();
-			onClose( () -> graph.removeGraphChangeListener( graphChangeListener ) );
+			final GraphRowsListener graphRowsListener = new GraphRowsListener( graph, vertexTable, edgeTable );
+			// After bulk edits, reset all rows at once.
+			final BulkEditor< Spot, Link > bulkEditor = appModel.getModel().getBulkEditor();
+			final BulkEditor< Spot, Link >.DeferringGraphListener deferredRowsListener = bulkEditor.defer( graphRowsListener );
+			graph.addGraphListener( deferredRowsListener );
+			graph.addGraphChangeListener( graphRowsListener );
+			vertexTable.setRows( graph.vertices() );
+			edgeTable.setRows( graph.edges() );
+			onClose( () -> {
+				graph.removeGraphListener( deferredRowsListener );
+				bulkEditor.listeners().remove( deferredRowsListener );
+				graph.removeGraphChangeListener( graphRowsListener );
+			} );
 
 			// Listen to selection changes.
 			frame.setMirrorSelection( true );
@@ -308,6 +316,75 @@ public class MamutViewTable extends MamutView< ViewGraph< Spot, Link, Spot, Link
 					visibleRectEdgeTable[ 1 ] ) );
 	}
 
+	/**
+	 * Forwards added and removed vertices and edges to the tables, and
+	 * commits them as a single row update when the graph has changed. Falls
+	 * back to resetting all rows when the graph is rebuilt.
+	 */
+	private static class GraphRowsListener implements GraphListener< Spot, Link >, GraphChangeListener
+	{
+		private final ModelGraph graph;
+
+		private final FeatureTagTablePanel< Spot > vertexTable;
+
+		private final FeatureTagTablePanel< Link > edgeTable;
+
+		private volatile boolean rebuilt = false;
+
+		public GraphRowsListener( final ModelGraph graph, final FeatureTagTablePanel< Spot > vertexTable, final FeatureTagTablePanel< Link > edgeTable )
+		{
+			this.graph = graph;
+			this.vertexTable = vertexTable;
+			this.edgeTable = edgeTable;
+		}
+
+		@Override
+		public void graphRebuilt()
+		{
+			rebuilt = true;
+		}
+
+		@Override
+		public void vertexAdded( final Spot vertex )
+		{
+			vertexTable.rowAdded( vertex );
+		}
+
+		@Override
+		public void vertexRemoved( final Spot vertex )
+		{
+			vertexTable.rowRemoved( vertex );
+		}
+
+		@Override
+		public void edgeAdded( final Link edge )
+		{
+			edgeTable.rowAdded( edge );
+		}
+
+		@Override
+		public void edgeRemoved( final Link edge )
+		{
+			edgeTable.rowRemoved( edge );
+		}
+
+		@Override
+		public void graphChanged()
+		{
+			if ( rebuilt )
+			{
+				rebuilt = false;
+				vertexTable.setRows( graph.vertices() );
+				edgeTable.setRows( graph.edges() );
+			}
+			else
+			{
+				vertexTable.commitRowChanges();
+				edgeTable.commitRowChanges();
+			}
+		}
+	}
+
 	@Override
 	public TableViewFrame< MamutAppModel, ViewGraph< Spot, Link, Spot, Link >, Spot, Link > getFrame()
 	{
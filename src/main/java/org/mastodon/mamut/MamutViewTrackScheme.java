@@ -57,9 +57,11 @@ import org.mastodon.app.ui.ViewMenu;
 import org.mastodon.app.ui.ViewMenuBuilder.JMenuHandle;
 import org.mastodon.mamut.model.Link;
 import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
 import org.mastodon.mamut.model.ModelGraphTrackSchemeProperties;
 import org.mastodon.mamut.model.Spot;
 import org.mastodon.model.AutoNavigateFocusModel;
+import org.mastodon.model.BulkEditor;
 import org.mastodon.model.TimepointModel;
 import org.mastodon.model.tag.TagSetStructure.TagSet;
 import org.mastodon.ui.EditTagActions;
@@ -80,6 +82,7 @@ import org.mastodon.views.trackscheme.display.ColorBarOverlay;
 import org.mastodon.views.trackscheme.display.EditFocusVertexLabelAction;
 import org.mastodon.views.trackscheme.display.ToggleLinkBehaviour;
 import org.mastodon.views.trackscheme.display.TrackSchemeFrame;
+import org.mastodon.views.trackscheme.display.TrackSchemeMinimap;
 import org.mastodon.views.trackscheme.display.TrackSchemeNavigationActions;
 import org.mastodon.views.trackscheme.display.TrackSchemeOptions;
 import org.mastodon.views.trackscheme.display.TrackSchemePanel;
@@ -127,6 +130,19 @@ public class MamutViewTrackScheme extends MamutView< TrackSchemeGraph< Spot, Lin
 		final KeyPressedManager keyPressedManager = appModel.getKeyPressedManager();
 		final Model model = appModel.getModel();
 
+		/*
+		 * Rebuild the TrackScheme graph once after each bulk edit of the
+		 * model, instead of mirroring every vertex and edge change.
+		 */
+		final ModelGraph graph = model.getGraph();
+		final BulkEditor< Spot, Link >.DeferringGraphListener deferredViewGraph = model.getBulkEditor().defer( viewGraph );
+		if ( graph.removeGraphListener( viewGraph ) )
+			graph.addGraphListener( deferredViewGraph );
+		onClose( () -> {
+			graph.removeGraphListener( deferredViewGraph );
+			model.getBulkEditor().listeners().remove( deferredViewGraph );
+		} );
+
 		/*
 		 * show TrackSchemeFrame
 		 */
@@ -194,9 +210,10 @@ public class MamutViewTrackScheme extends MamutView< TrackSchemeGraph< Spot, Lin
 		EditFocusVertexLabelAction.install( viewActions, frame.getTrackschemePanel(), focusModel, model );
 		FocusActions.install( viewActions, viewGraph, viewGraph.getLock(), navigateFocusModel, selectionModel );
 		TrackSchemeZoom.install( viewBehaviours, frame.getTrackschemePanel() );
+		TrackSchemeMinimap.install( viewActions, frame.getTrackschemePanel() );
 		EditTagActions.install( viewActions, frame.getKeybindings(), frame.getTriggerbindings(), model.getTagSetModel(), appModel.getSelectionModel(), viewGraph.getLock(), frame.getTrackschemePanel(), frame.getTrackschemePanel().getDisplay(), model );
 
-		final JPanel searchPanel = SearchVertexLabel.install( viewActions, viewGraph, navigationHandler, selectionModel, focusModel, frame.getTrackschemePanel() );
+		final JPanel searchPanel = SearchVertexLabel.install( viewActions, model.getSpotLabelIndex(), viewGraph, navigationHandler, selectionModel, focusModel, frame.getTrackschemePanel() );
 		frame.getSettingsPanel().add( searchPanel );
 
 		// TODO Let the user choose between the two selection/focus modes.
@@ -217,6 +234,7 @@ public class MamutViewTrackScheme extends MamutView< TrackSchemeGraph< Spot, Lin
 						colorMenu( coloringMenuHandle ),
 						colorbarMenu( colorbarMenuHandle ),
 						separator(),
+						item( TrackSchemeMinimap.TOGGLE_MINIMAP ),
 						item( MastodonFrameViewActions.TOGGLE_SETTINGS_PANEL ) ),
 				editMenu(
 						item( UndoActions.UNDO ),
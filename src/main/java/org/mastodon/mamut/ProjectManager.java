@@ -41,13 +41,17 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 
+import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+
 import org.jdom2.Document;
 import org.jdom2.Element;
 import org.jdom2.JDOMException;
 import org.jdom2.input.SAXBuilder;
 import org.jdom2.output.Format;
 import org.jdom2.output.XMLOutputter;
-import org.mastodon.graph.io.RawGraphIO.FileIdToGraphMap;
+import org.mastodon.app.metrics.Metrics;
+import org.mastodon.app.metrics.Timer;
 import org.mastodon.graph.io.RawGraphIO.GraphToFileIdMap;
 import org.mastodon.mamut.feature.MamutRawFeatureModelIO;
 import org.mastodon.mamut.importer.simi.SimiImportDialog;
@@ -62,6 +66,7 @@ import org.mastodon.mamut.project.MamutProject;
 import org.mastodon.mamut.project.MamutProject.ProjectReader;
 import org.mastodon.mamut.project.MamutProject.ProjectWriter;
 import org.mastodon.mamut.project.MamutProjectIO;
+import org.mastodon.mamut.project.MamutProjectLoader;
 import org.mastodon.ui.coloring.feature.FeatureColorModeManager;
 import org.mastodon.ui.keymap.CommandDescriptionProvider;
 import org.mastodon.ui.keymap.CommandDescriptions;
@@ -71,7 +76,6 @@ import org.mastodon.ui.util.ExtensionFileFilter;
 import org.mastodon.ui.util.FileChooser;
 import org.mastodon.ui.util.FileChooser.SelectionMode;
 import org.mastodon.ui.util.XmlFileFilter;
-import org.mastodon.util.DummySpimData;
 import org.mastodon.views.bdv.SharedBigDataViewerData;
 import org.mastodon.views.bdv.overlay.ui.RenderSettingsManager;
 import org.mastodon.views.trackscheme.display.style.TrackSchemeStyleManager;
@@ -82,11 +86,8 @@ import org.scijava.ui.behaviour.util.Actions;
 import org.scijava.ui.behaviour.util.RunnableAction;
 
 import bdv.spimdata.SpimDataMinimal;
-import bdv.spimdata.XmlIoSpimDataMinimal;
 import bdv.viewer.ViewerOptions;
 import mpicbg.spim.data.SpimDataException;
-import mpicbg.spim.data.SpimDataIOException;
-import mpicbg.spim.data.generic.sequence.BasicViewSetup;
 
 public class ProjectManager
 {
@@ -112,6 +113,10 @@ public class ProjectManager
 
 	private static final String WINDOWS_TAG = "Windows";
 
+	private static final Timer LOAD_GUI_TIMER = Metrics.timer( "project.load.gui" );
+
+	private static final Timer SAVE_GUI_TIMER = Metrics.timer( "project.save.gui" );
+
 	/*
 	 * Command descriptions for all provided commands
 	 */
@@ -332,7 +337,9 @@ public class ProjectManager
 			// Serialize feature model.
 			MamutRawFeatureModelIO.serialize( windowManager.getContext(), model.getFeatureModel(), idmap, writer );
 			// Serialize GUI state.
+			final long t0 = System.nanoTime();
 			saveGUI( writer );
+			SAVE_GUI_TIMER.record( System.nanoTime() - t0 );
 		}
 		updateEnabledActions();
 	}
@@ -356,60 +363,13 @@ public class ProjectManager
 		 * Load SpimData
 		 */
 		final String spimDataXmlFilename = project.getDatasetXmlFile().getAbsolutePath();
-		SpimDataMinimal spimData = DummySpimData.tryCreate( project.getDatasetXmlFile().getName() );
-		if ( spimData == null )
-		{
-			try
-			{
-				spimData = new XmlIoSpimDataMinimal().load( spimDataXmlFilename );
-			}
-			catch ( final SpimDataIOException e )
-			{
-				e.printStackTrace();
-				System.err.println( "Could not open image data file. Opening with dummy dataset. Please fix dataset path!" );
-				spimData = DummySpimData.tryCreate( "x=100 y=100 z=100 sx=1 sy=1 sz=1 t=10.dummy" );
-			}
-		}
-
-		/*
-		 * Try to read units from spimData is they are not present
-		 */
-		if ( project.getSpaceUnits() == null )
-		{
-			project.setSpaceUnits(
-					spimData.getSequenceDescription().getViewSetupsOrdered().stream()
-							.filter( BasicViewSetup::hasVoxelSize )
-							.map( setup -> setup.getVoxelSize().unit() )
-							.findFirst()
-							.orElse( "pixel" ) );
-		}
-		if ( project.getTimeUnits() == null )
-		{
-			project.setTimeUnits( "frame" );
-		}
+		final SpimDataMinimal spimData = MamutProjectLoader.loadSpimData( project, true );
 
 		/*
 		 * Load Model
 		 */
-		final Model model = new Model( project.getSpaceUnits(), project.getTimeUnits() );
+		final Model model = MamutProjectLoader.loadModel( project, windowManager.getContext() );
 		final boolean isNewProject = project.getProjectRoot() == null;
-		if ( !isNewProject )
-		{
-			try (final MamutProject.ProjectReader reader = project.openForReading())
-			{
-				final FileIdToGraphMap< Spot, Link > idmap = model.loadRaw( reader );
-				// Load features.
-				MamutRawFeatureModelIO.deserialize(
-						windowManager.getContext(),
-						model,
-						idmap,
-						reader );
-			}
-			catch ( final ClassNotFoundException e )
-			{
-				e.printStackTrace();
-			}
-		}
 
 		/*
 		 * Reset window manager.
@@ -441,15 +401,18 @@ public class ProjectManager
 				globalAppActions );
 
 		windowManager.setAppModel( appModel );
+		model.getUndoHistoryMonitor().listeners().add( ( bytes, budget ) -> SwingUtilities.invokeLater( () -> undoBudgetExceeded( model, bytes, budget ) ) );
 
 		// Restore GUI state if loaded project, now that we have an App model.
 		if ( !isNewProject )
 		{
 			try (final MamutProject.ProjectReader reader = project.openForReading())
 			{
+				final long t0 = System.nanoTime();
 				try
 				{
 					loadGUI( reader );
+					LOAD_GUI_TIMER.record( System.nanoTime() - t0 );
 				}
 				catch ( final FileNotFoundException fnfe )
 				{
@@ -539,6 +502,25 @@ public class ProjectManager
 		}
 	}
 
+	/**
+	 * Tells the user that the undo history of the model exceeds its memory
+	 * budget, and that the model could not discard its oldest undo points.
+	 */
+	private void undoBudgetExceeded( final Model model, final long bytes, final long budget )
+	{
+		if ( windowManager.getAppModel() == null || windowManager.getAppModel().getModel() != model )
+			return;
+
+		JOptionPane.showMessageDialog( null,
+				String.format( "The undo history uses about %d MB, more than its budget of %d MB,\n"
+						+ "and the oldest undo steps could not be discarded.\n"
+						+ "Save the project and open it again to clear the undo history,\n"
+						+ "or increase the budget with -D%s=<megabytes>.",
+						bytes >> 20, budget >> 20, Model.UNDO_BUDGET_PROPERTY ),
+				"Undo History Too Large",
+				JOptionPane.WARNING_MESSAGE );
+	}
+
 	public MamutProject getProject()
 	{
 		return project;
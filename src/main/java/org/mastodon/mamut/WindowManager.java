@@ -47,6 +47,7 @@ import java.util.function.Consumer;
 
 import javax.swing.JDialog;
 
+import org.mastodon.app.metrics.ui.MetricsDialog;
 import org.mastodon.feature.FeatureSpecsService;
 import org.mastodon.feature.ui.FeatureColorModeConfigPage;
 import org.mastodon.mamut.feature.MamutFeatureProjectionsManager;
@@ -93,6 +94,7 @@ public class WindowManager
 	public static final String PREFERENCES_DIALOG = "Preferences";
 	public static final String TAGSETS_DIALOG = "edit tag sets";
 	public static final String COMPUTE_FEATURE_DIALOG = "compute features";
+	public static final String METRICS_DIALOG = "show metrics";
 
 	static final String[] NEW_BDV_VIEW_KEYS = new String[] { "not mapped" };
 	static final String[] NEW_TRACKSCHEME_VIEW_KEYS = new String[] { "not mapped" };
@@ -101,6 +103,7 @@ public class WindowManager
 	static final String[] PREFERENCES_DIALOG_KEYS = new String[] { "meta COMMA", "ctrl COMMA" };
 	static final String[] TAGSETS_DIALOG_KEYS = new String[] { "not mapped" };
 	static final String[] COMPUTE_FEATURE_DIALOG_KEYS = new String[] { "not mapped" };
+	static final String[] METRICS_DIALOG_KEYS = new String[] { "not mapped" };
 
 	/*
 	 * Command descriptions for all provided commands
@@ -127,6 +130,7 @@ public class WindowManager
 			descriptions.add( PREFERENCES_DIALOG, PREFERENCES_DIALOG_KEYS, "Edit Mastodon preferences." );
 			descriptions.add( TAGSETS_DIALOG, TAGSETS_DIALOG_KEYS, "Edit tag definitions." );
 			descriptions.add( COMPUTE_FEATURE_DIALOG, COMPUTE_FEATURE_DIALOG_KEYS, "Show the feature computation dialog." );
+			descriptions.add( METRICS_DIALOG, METRICS_DIALOG_KEYS, "Show the runtime metrics (timings of loading, saving, feature computation, painting, ...)." );
 		}
 	}
 
@@ -249,6 +253,9 @@ public class WindowManager
 		final ToggleDialogAction tooglePreferencesDialogAction = new ToggleDialogAction( PREFERENCES_DIALOG, settings );
 		globalAppActions.namedAction( tooglePreferencesDialogAction, PREFERENCES_DIALOG_KEYS );
 
+		final ToggleDialogAction toggleMetricsDialogAction = new ToggleDialogAction( METRICS_DIALOG, new MetricsDialog( null ) );
+		globalAppActions.namedAction( toggleMetricsDialogAction, METRICS_DIALOG_KEYS );
+
 		updateEnabledActions();
 
 		bdvViewCreatedListeners = new Listeners.SynchronizedList<>();
@@ -304,7 +311,7 @@ public class WindowManager
 
 		final Model model = appModel.getModel();
 		UndoActions.install( appModel.getAppActions(), model );
-		SelectionActions.install( appModel.getAppActions(), model.getGraph(), model.getGraph().getLock(), model.getGraph(), appModel.getSelectionModel(), model );
+		SelectionActions.install( appModel.getAppActions(), model.getGraph(), model.getGraph().getLock(), model.getGraph(), appModel.getSelectionModel(), model, model.getTrackIndex(), model.getBulkEditor() );
 		MamutActions.install( appModel.getAppActions(), appModel );
 
 		final Keymap keymap = keymapManager.getForwardDefaultKeymap();
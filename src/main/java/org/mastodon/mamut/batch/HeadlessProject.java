@@ -0,0 +1,220 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.mamut.batch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+
+import org.mastodon.feature.Feature;
+import org.mastodon.feature.FeatureModel;
+import org.mastodon.feature.FeatureSpec;
+import org.mastodon.graph.io.RawGraphIO.GraphToFileIdMap;
+import org.mastodon.mamut.feature.MamutFeatureComputerService;
+import org.mastodon.mamut.feature.MamutRawFeatureModelIO;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.mamut.project.MamutProject;
+import org.mastodon.mamut.project.MamutProjectIO;
+import org.mastodon.mamut.project.MamutProjectLoader;
+import org.mastodon.views.bdv.SharedBigDataViewerData;
+import org.scijava.Context;
+
+import bdv.spimdata.SpimDataMinimal;
+import bdv.viewer.ViewerOptions;
+import mpicbg.spim.data.SpimDataException;
+
+/**
+ * A Mastodon project opened without any user interface: only the image data
+ * and the {@link Model} are loaded. No {@code WindowManager}, BDV window or
+ * Swing component is created, so that projects can be processed on machines
+ * without a display.
+ * <p>
+ * The GUI state stored in the project, if any, is kept as is and written back
+ * when the project is saved.
+ */
+public class HeadlessProject
+{
+	private final Context context;
+
+	private final MamutProject project;
+
+	private final SpimDataMinimal spimData;
+
+	private final Model model;
+
+	private byte[] guiState;
+
+	private SharedBigDataViewerData sharedBdvData;
+
+	/**
+	 * Opens a project. If {@code project.getProjectRoot() == null} this is a
+	 * new project and the model is empty. The image data
+	 * {@code project.getDatasetXmlFile()} must always be set, and is not
+	 * replaced by a dummy dataset if it cannot be read.
+	 *
+	 * @param project
+	 *            the project to open.
+	 * @param context
+	 *            the context providing the feature services.
+	 * @throws IOException
+	 *             if an IO exception occurs during opening.
+	 * @throws SpimDataException
+	 *             if a spim-data exception occurs while opening the spim-data
+	 *             XML file.
+	 */
+	public HeadlessProject( final MamutProject project, final Context context ) throws IOException, SpimDataException
+	{
+		this.project = project;
+		this.context = context;
+		this.spimData = MamutProjectLoader.loadSpimData( project, false );
+		this.model = MamutProjectLoader.loadModel( project, context );
+		if ( project.getProjectRoot() != null )
+			try (final MamutProject.ProjectReader reader = project.openForReading())
+			{
+				guiState = readGuiState( reader );
+			}
+	}
+
+	public MamutProject getProject()
+	{
+		return project;
+	}
+
+	public Model getModel()
+	{
+		return model;
+	}
+
+	public SpimDataMinimal getSpimData()
+	{
+		return spimData;
+	}
+
+	/**
+	 * Returns the image data wrapped for the feature computers. It is created
+	 * on first use, because only the intensity features need it.
+	 *
+	 * @return the shared BDV data.
+	 */
+	public synchronized SharedBigDataViewerData getSharedBdvData()
+	{
+		if ( sharedBdvData == null )
+			sharedBdvData = new SharedBigDataViewerData(
+					project.getDatasetXmlFile().getAbsolutePath(),
+					spimData,
+					ViewerOptions.options(),
+					() -> {} );
+		return sharedBdvData;
+	}
+
+	/**
+	 * Computes the specified features and stores them in the feature model,
+	 * replacing the features previously computed for the model.
+	 *
+	 * @param forceComputeAll
+	 *            if {@code true}, values are recomputed for all objects,
+	 *            otherwise only for objects that changed since the last
+	 *            computation.
+	 * @param featureKeys
+	 *            the features to compute.
+	 * @return {@code false} if the computation was canceled.
+	 */
+	public boolean computeFeatures( final boolean forceComputeAll, final Collection< FeatureSpec< ?, ? > > featureKeys )
+	{
+		final MamutFeatureComputerService computerService = context.getService( MamutFeatureComputerService.class );
+		computerService.setModel( model );
+		computerService.setSharedBdvData( getSharedBdvData() );
+		final Map< FeatureSpec< ?, ? >, Feature< ? > > map = computerService.compute( forceComputeAll, featureKeys );
+		if ( map == null )
+			return false;
+
+		final FeatureModel featureModel = model.getFeatureModel();
+		featureModel.pauseListeners();
+		final Collection< FeatureSpec< ?, ? > > toClear = new ArrayList<>();
+		for ( final FeatureSpec< ?, ? > featureSpec : featureModel.getFeatureSpecs() )
+			if ( null != computerService.getFeatureComputerFor( featureSpec ) )
+				toClear.add( featureSpec );
+		for ( final FeatureSpec< ?, ? > featureSpec : toClear )
+			featureModel.clear( featureSpec );
+		map.values().forEach( featureModel::declareFeature );
+		featureModel.resumeListeners();
+		return true;
+	}
+
+	/**
+	 * Saves the project to the specified location. The GUI state read when
+	 * the project was opened is written back unchanged.
+	 *
+	 * @param projectRoot
+	 *            the project folder or {@code .mastodon} file.
+	 * @throws IOException
+	 *             if the project cannot be written.
+	 */
+	public void save( final File projectRoot ) throws IOException
+	{
+		project.setProjectRoot( projectRoot );
+		try (final MamutProject.ProjectWriter writer = project.openForWriting())
+		{
+			new MamutProjectIO().save( project, writer );
+			final GraphToFileIdMap< Spot, Link > idmap = model.saveRaw( writer );
+			MamutRawFeatureModelIO.serialize( context, model.getFeatureModel(), idmap, writer );
+			if ( guiState != null )
+				try (final OutputStream os = writer.getGuiOutputStream())
+				{
+					os.write( guiState );
+				}
+		}
+	}
+
+	private static byte[] readGuiState( final MamutProject.ProjectReader reader ) throws IOException
+	{
+		try (final InputStream is = reader.getGuiInputStream())
+		{
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			final byte[] buffer = new byte[ 8192 ];
+			int n;
+			while ( ( n = is.read( buffer ) ) >= 0 )
+				bytes.write( buffer, 0, n );
+			return bytes.toByteArray();
+		}
+		catch ( final FileNotFoundException e )
+		{
+			// No GUI state in this project.
+			return null;
+		}
+	}
+}
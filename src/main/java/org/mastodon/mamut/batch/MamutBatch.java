@@ -0,0 +1,377 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.mamut.batch;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+import org.mastodon.feature.FeatureSpec;
+import org.mastodon.feature.FeatureSpecsService;
+import org.mastodon.feature.io.FeatureSerializationService;
+import org.mastodon.mamut.exporter.FeatureTableExporter;
+import org.mastodon.mamut.feature.MamutFeatureComputerService;
+import org.mastodon.mamut.importer.tgmm.TgmmImporter;
+import org.mastodon.mamut.importer.trackmate.MamutExporter;
+import org.mastodon.mamut.importer.trackmate.TrackMateImporter;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.project.MamutProject;
+import org.mastodon.mamut.project.MamutProjectIO;
+import org.scijava.Context;
+
+import bdv.spimdata.SpimDataMinimal;
+
+/**
+ * Command-line entry point processing a Mastodon project without user
+ * interface.
+ * <p>
+ * A project is opened (or created from image data or a MaMuT file), then the
+ * requested stages are run in a fixed order: TGMM import, feature computation,
+ * table export, MaMuT export and save. The time spent in each stage is
+ * reported on {@code System.out} when the pipeline finishes. If a stage fails,
+ * for instance because the image data of the project cannot be read, the
+ * process exits with status 1.
+ * <p>
+ * Only the image data and the {@link Model} are loaded (see
+ * {@link HeadlessProject}), and the SciJava context is restricted to the
+ * feature services, so that startup stays short and no display is needed.
+ * {@code java.awt.headless} is set unless specified on the command line.
+ */
+public class MamutBatch
+{
+	private static final String USAGE = String.join( "\n",
+			"Usage: MamutBatch <input> [stages] [options]",
+			"",
+			"Input (exactly one):",
+			"  --project <file>        open a Mastodon project (.mastodon file or folder)",
+			"  --new <dataset.xml>     start a new project on the specified image data",
+			"  --import-mamut <file>   start a new project from a MaMuT / TrackMate file",
+			"",
+			"Stages (run in this order):",
+			"  --import-tgmm <format>  import TGMM files, e.g. GMEMfinalResult_frame%04d.xml",
+			"  --features <keys>       compute features: 'all' or comma-separated feature keys",
+			"  --export-csv <prefix>   write <prefix>-spots.csv and <prefix>-links.csv",
+			"  --export-tsv <prefix>   write <prefix>-spots.tsv and <prefix>-links.tsv",
+			"  --export-mamut <file>   export the project to a MaMuT file",
+			"  --save                  save the project to the location it was opened from",
+			"  --save-as <file>        save the project to the specified location",
+			"",
+			"Options:",
+			"  --tgmm-setup <index>    view setup the TGMM files were computed on (default 0)",
+			"  --tgmm-nsigmas <value>  number of sigmas of imported spot radii (default 2)",
+			"  --force                 recompute feature values for all objects",
+			"  --threads <n>           number of threads used for exports (default: all cores)" );
+
+	private File project;
+
+	private File datasetXml;
+
+	private File mamutFile;
+
+	private String tgmmFormat;
+
+	private int tgmmSetup = 0;
+
+	private double tgmmNSigmas = 2;
+
+	private String features;
+
+	private boolean forceComputeAll = false;
+
+	private String csvPrefix;
+
+	private String tsvPrefix;
+
+	private File mamutExportFile;
+
+	private boolean save = false;
+
+	private File saveAs;
+
+	private int numThreads = Runtime.getRuntime().availableProcessors();
+
+	private final List< String > stageNames = new ArrayList<>();
+
+	private final List< Long > stageNanos = new ArrayList<>();
+
+	/**
+	 * Parses the command line.
+	 *
+	 * @param args
+	 *            the command-line arguments.
+	 * @throws IllegalArgumentException
+	 *             if the arguments are invalid.
+	 */
+	public MamutBatch( final String... args )
+	{
+		for ( int i = 0; i < args.length; ++i )
+		{
+			final String arg = args[ i ];
+			switch ( arg )
+			{
+			case "--project":
+				project = new File( value( args, ++i, arg ) );
+				break;
+			case "--new":
+				datasetXml = new File( value( args, ++i, arg ) );
+				break;
+			case "--import-mamut":
+				mamutFile = new File( value( args, ++i, arg ) );
+				break;
+			case "--import-tgmm":
+				tgmmFormat = value( args, ++i, arg );
+				break;
+			case "--tgmm-setup":
+				tgmmSetup = Integer.parseInt( value( args, ++i, arg ) );
+				break;
+			case "--tgmm-nsigmas":
+				tgmmNSigmas = Double.parseDouble( value( args, ++i, arg ) );
+				break;
+			case "--features":
+				features = value( args, ++i, arg );
+				break;
+			case "--force":
+				forceComputeAll = true;
+				break;
+			case "--export-csv":
+				csvPrefix = value( args, ++i, arg );
+				break;
+			case "--export-tsv":
+				tsvPrefix = value( args, ++i, arg );
+				break;
+			case "--export-mamut":
+				mamutExportFile = new File( value( args, ++i, arg ) );
+				break;
+			case "--save":
+				save = true;
+				break;
+			case "--save-as":
+				saveAs = new File( value( args, ++i, arg ) );
+				break;
+			case "--threads":
+				numThreads = Integer.parseInt( value( args, ++i, arg ) );
+				break;
+			default:
+				throw new IllegalArgumentException( "Unknown argument: " + arg );
+			}
+		}
+
+		final int numInputs = ( project == null ? 0 : 1 ) + ( datasetXml == null ? 0 : 1 ) + ( mamutFile == null ? 0 : 1 );
+		if ( numInputs != 1 )
+			throw new IllegalArgumentException( "Exactly one of --project, --new or --import-mamut must be specified." );
+		if ( save && project == null )
+			throw new IllegalArgumentException( "--save requires --project. Use --save-as for new projects." );
+		if ( numThreads < 1 )
+			throw new IllegalArgumentException( "--threads must be at least 1." );
+	}
+
+	private static String value( final String[] args, final int i, final String option )
+	{
+		if ( i >= args.length )
+			throw new IllegalArgumentException( "Missing value for " + option );
+		return args[ i ];
+	}
+
+	/**
+	 * Runs the pipeline and prints the time spent in each stage.
+	 *
+	 * @throws Exception
+	 *             if a stage fails. The stages that completed are reported
+	 *             anyway.
+	 */
+	public void run() throws Exception
+	{
+		final long start = System.nanoTime();
+		try (final Context context = new Context(
+				MamutFeatureComputerService.class,
+				FeatureSpecsService.class,
+				FeatureSerializationService.class ))
+		{
+			stage( "context", () -> {} );
+			final HeadlessProject hp = open( context );
+			final Model model = hp.getModel();
+			System.out.println( String.format( "Model has %d spots and %d links.",
+					model.getGraph().vertices().size(),
+					model.getGraph().edges().size() ) );
+
+			if ( tgmmFormat != null )
+				stage( "import tgmm", () -> importTgmm( hp ) );
+
+			if ( features != null )
+				stage( "features", () -> {
+					final Collection< FeatureSpec< ?, ? > > specs = featureSpecs( context );
+					if ( !hp.computeFeatures( forceComputeAll, specs ) )
+						throw new IllegalStateException( "Feature computation canceled: "
+								+ context.getService( MamutFeatureComputerService.class ).getCancelReason() );
+				} );
+
+			if ( csvPrefix != null )
+				stage( "export csv", () -> exportTable( model, csvPrefix, ".csv", FeatureTableExporter.CSV_SEPARATOR ) );
+
+			if ( tsvPrefix != null )
+				stage( "export tsv", () -> exportTable( model, tsvPrefix, ".tsv", FeatureTableExporter.TSV_SEPARATOR ) );
+
+			if ( mamutExportFile != null )
+				stage( "export mamut", () -> MamutExporter.export( mamutExportFile, model, hp.getProject() ) );
+
+			if ( saveAs != null )
+				stage( "save", () -> hp.save( saveAs ) );
+			else if ( save )
+				stage( "save", () -> hp.save( project ) );
+		}
+		finally
+		{
+			printTimings( System.out, System.nanoTime() - start );
+		}
+	}
+
+	private HeadlessProject open( final Context context ) throws Exception
+	{
+		if ( mamutFile != null )
+		{
+			final HeadlessProject[] hp = new HeadlessProject[ 1 ];
+			stage( "import mamut", () -> {
+				final TrackMateImporter importer = new TrackMateImporter( mamutFile );
+				hp[ 0 ] = new HeadlessProject( importer.createProject(), context );
+				importer.readModel( hp[ 0 ].getModel(), context.getService( FeatureSpecsService.class ) );
+			} );
+			return hp[ 0 ];
+		}
+
+		final MamutProject mp = ( project != null )
+				? new MamutProjectIO().load( project.getAbsolutePath() )
+				: new MamutProject( null, datasetXml );
+		final HeadlessProject[] hp = new HeadlessProject[ 1 ];
+		stage( "open", () -> hp[ 0 ] = new HeadlessProject( mp, context ) );
+		return hp[ 0 ];
+	}
+
+	private void importTgmm( final HeadlessProject hp ) throws Exception
+	{
+		final SpimDataMinimal spimData = hp.getSpimData();
+		final int setupID = spimData.getSequenceDescription().getViewSetupsOrdered().get( tgmmSetup ).getId();
+		TgmmImporter.read(
+				tgmmFormat,
+				spimData.getSequenceDescription().getTimePoints(),
+				TgmmImporter.getTimepointToIndex( spimData ),
+				spimData.getViewRegistrations(),
+				setupID,
+				tgmmNSigmas,
+				hp.getModel() );
+	}
+
+	private Collection< FeatureSpec< ?, ? > > featureSpecs( final Context context )
+	{
+		final MamutFeatureComputerService computerService = context.getService( MamutFeatureComputerService.class );
+		if ( features.equals( "all" ) )
+			return computerService.getFeatureSpecs();
+
+		final FeatureSpecsService specsService = context.getService( FeatureSpecsService.class );
+		final List< FeatureSpec< ?, ? > > specs = new ArrayList<>();
+		for ( final String key : features.split( "," ) )
+		{
+			final FeatureSpec< ?, ? > spec = specsService.getSpec( key.trim() );
+			if ( spec == null || computerService.getFeatureComputerFor( spec ) == null )
+				throw new IllegalArgumentException( "No feature computer for \"" + key.trim() + "\". Available: "
+						+ computerService.getFeatureSpecs().stream().map( FeatureSpec::getKey ).sorted().collect( Collectors.joining( ", " ) ) );
+			specs.add( spec );
+		}
+		return specs;
+	}
+
+	private void exportTable( final Model model, final String prefix, final String extension, final char separator ) throws Exception
+	{
+		FeatureTableExporter.exportSpots( model, new File( prefix + "-spots" + extension ), separator, numThreads );
+		FeatureTableExporter.exportLinks( model, new File( prefix + "-links" + extension ), separator, numThreads );
+	}
+
+	private interface Stage
+	{
+		void run() throws Exception;
+	}
+
+	private void stage( final String name, final Stage stage ) throws Exception
+	{
+		System.out.println( "Running " + name + "..." );
+		final long t0 = System.nanoTime();
+		try
+		{
+			stage.run();
+		}
+		finally
+		{
+			stageNames.add( name );
+			stageNanos.add( System.nanoTime() - t0 );
+		}
+	}
+
+	private void printTimings( final PrintStream out, final long totalNanos )
+	{
+		out.println();
+		out.println( String.format( Locale.ROOT, "%-16s %12s", "Stage", "Time (s)" ) );
+		for ( int i = 0; i < stageNames.size(); ++i )
+			out.println( String.format( Locale.ROOT, "%-16s %12.3f", stageNames.get( i ), stageNanos.get( i ) * 1e-9 ) );
+		out.println( String.format( Locale.ROOT, "%-16s %12.3f", "total", totalNanos * 1e-9 ) );
+	}
+
+	public static void main( final String[] args ) throws Exception
+	{
+		if ( System.getProperty( "java.awt.headless" ) == null )
+			System.setProperty( "java.awt.headless", "true" );
+
+		final MamutBatch batch;
+		try
+		{
+			batch = new MamutBatch( args );
+		}
+		catch ( final IllegalArgumentException e )
+		{
+			System.err.println( e.getMessage() );
+			System.err.println();
+			System.err.println( USAGE );
+			System.exit( 1 );
+			return;
+		}
+		try
+		{
+			batch.run();
+		}
+		catch ( final Exception e )
+		{
+			e.printStackTrace();
+			System.err.println( "Batch processing failed: " + e.getMessage() );
+			System.exit( 1 );
+		}
+		System.exit( 0 );
+	}
+}
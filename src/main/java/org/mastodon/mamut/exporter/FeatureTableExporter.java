@@ -0,0 +1,392 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.mamut.exporter;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Lock;
+
+import org.mastodon.feature.Feature;
+import org.mastodon.feature.FeatureModel;
+import org.mastodon.feature.FeatureProjection;
+import org.mastodon.feature.FeatureSpec;
+import org.mastodon.feature.IntFeatureProjection;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.model.tag.ObjTagMap;
+import org.mastodon.model.tag.ObjTags;
+import org.mastodon.model.tag.TagSetStructure.Tag;
+import org.mastodon.model.tag.TagSetStructure.TagSet;
+import org.mastodon.spatial.SpatialIndex;
+import org.mastodon.spatial.SpatioTemporalIndex;
+
+import com.opencsv.CSVWriter;
+
+/**
+ * Streams the feature values and tags of all spots or all links of a
+ * {@link Model} to a CSV or TSV file, one row per object.
+ * <p>
+ * Objects are visited timepoint by timepoint through the
+ * {@link SpatioTemporalIndex} of the model. Timepoints are formatted in
+ * parallel, each by a task that fills a reusable row buffer, and the
+ * formatted timepoints are written in order. At most a few timepoints per
+ * thread are held in memory at any time, so that models with tens of millions
+ * of spots can be exported without materializing the table.
+ * <p>
+ * Columns are the label, id and timepoint of spots (id, source id, target id
+ * and source timepoint for links), followed by one column per feature
+ * projection of the feature model, sorted by feature key, and one column per
+ * tag set, containing the label of the tag assigned to the object. Missing
+ * values are written as empty fields.
+ * <p>
+ * The graph and index read locks are held while formatting one timepoint, and
+ * released in between, so that edits wait for at most one timepoint, not for
+ * the whole export. Each timepoint is written consistently, but edits made
+ * during the export may show in the timepoints written after them.
+ */
+public class FeatureTableExporter
+{
+	/**
+	 * Separator for comma-separated files.
+	 */
+	public static final char CSV_SEPARATOR = CSVWriter.DEFAULT_SEPARATOR;
+
+	/**
+	 * Separator for tab-separated files.
+	 */
+	public static final char TSV_SEPARATOR = '\t';
+
+	/**
+	 * Writes the features and tags of all spots of the model to the
+	 * specified file.
+	 *
+	 * @param model
+	 *            the model to export.
+	 * @param file
+	 *            the file to write.
+	 * @param separator
+	 *            the field separator, e.g. {@link #CSV_SEPARATOR} or
+	 *            {@link #TSV_SEPARATOR}.
+	 * @param numThreads
+	 *            the number of threads formatting timepoints.
+	 * @throws IOException
+	 *             if the file cannot be written.
+	 */
+	public static void exportSpots( final Model model, final File file, final char separator, final int numThreads ) throws IOException
+	{
+		export( model, file, separator, numThreads, new SpotRows( model ) );
+	}
+
+	/**
+	 * Writes the features and tags of all links of the model to the
+	 * specified file. Each link is listed at the timepoint of its source spot.
+	 *
+	 * @param model
+	 *            the model to export.
+	 * @param file
+	 *            the file to write.
+	 * @param separator
+	 *            the field separator, e.g. {@link #CSV_SEPARATOR} or
+	 *            {@link #TSV_SEPARATOR}.
+	 * @param numThreads
+	 *            the number of threads formatting timepoints.
+	 * @throws IOException
+	 *             if the file cannot be written.
+	 */
+	public static void exportLinks( final Model model, final File file, final char separator, final int numThreads ) throws IOException
+	{
+		export( model, file, separator, numThreads, new LinkRows( model ) );
+	}
+
+	private static void export( final Model model, final File file, final char separator, final int numThreads, final Rows rows ) throws IOException
+	{
+		final ModelGraph graph = model.getGraph();
+		final Lock graphLock = graph.getLock().readLock();
+		final ExecutorService executor = Executors.newFixedThreadPool( Math.max( 1, numThreads ) );
+		try (final Writer out = new BufferedWriter( new OutputStreamWriter( new FileOutputStream( file ), StandardCharsets.UTF_8 ), 1 << 16 ))
+		{
+			out.write( format( separator, csv -> csv.writeNext( rows.header() ) ) );
+
+			int minTimepoint = Integer.MAX_VALUE;
+			int maxTimepoint = Integer.MIN_VALUE;
+			graphLock.lock();
+			try
+			{
+				for ( final Spot spot : graph.vertices() )
+				{
+					final int t = spot.getTimepoint();
+					minTimepoint = Math.min( minTimepoint, t );
+					maxTimepoint = Math.max( maxTimepoint, t );
+				}
+			}
+			finally
+			{
+				graphLock.unlock();
+			}
+
+			// Bound the number of formatted timepoints held in memory.
+			final int maxInFlight = 2 * Math.max( 1, numThreads );
+			final ArrayDeque< Future< String > > inFlight = new ArrayDeque<>();
+			for ( int t = minTimepoint; t <= maxTimepoint; t++ )
+			{
+				final int timepoint = t;
+				inFlight.add( executor.submit( () -> formatTimepoint( model, timepoint, separator, rows ) ) );
+				if ( inFlight.size() >= maxInFlight )
+					out.write( get( inFlight.poll() ) );
+			}
+			while ( !inFlight.isEmpty() )
+				out.write( get( inFlight.poll() ) );
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Formats the rows of the objects of one timepoint, holding the graph and
+	 * index read locks only while doing so.
+	 */
+	private static String formatTimepoint( final Model model, final int timepoint, final char separator, final Rows rows ) throws IOException
+	{
+		final SpatioTemporalIndex< Spot > index = model.getSpatioTemporalIndex();
+		final Lock graphLock = model.getGraph().getLock().readLock();
+		final Lock indexLock = index.readLock();
+		graphLock.lock();
+		indexLock.lock();
+		try
+		{
+			final SpatialIndex< Spot > spots = index.getSpatialIndex( timepoint );
+			if ( spots.isEmpty() )
+				return "";
+			return format( separator, csv -> rows.write( spots, csv ) );
+		}
+		finally
+		{
+			indexLock.unlock();
+			graphLock.unlock();
+		}
+	}
+
+	@FunctionalInterface
+	private interface CsvBlock
+	{
+		public void write( CSVWriter csv ) throws IOException;
+	}
+
+	private static String format( final char separator, final CsvBlock block ) throws IOException
+	{
+		final StringWriter sw = new StringWriter();
+		try (final CSVWriter csv = new CSVWriter( sw, separator,
+				CSVWriter.DEFAULT_QUOTE_CHARACTER,
+				CSVWriter.DEFAULT_ESCAPE_CHARACTER,
+				CSVWriter.DEFAULT_LINE_END ))
+		{
+			block.write( csv );
+		}
+		return sw.toString();
+	}
+
+	private static String get( final Future< String > future ) throws IOException
+	{
+		try
+		{
+			return future.get();
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException( "Export interrupted.", e );
+		}
+		catch ( final ExecutionException e )
+		{
+			final Throwable cause = e.getCause();
+			if ( cause instanceof IOException )
+				throw ( IOException ) cause;
+			throw new IOException( "Error while formatting a timepoint.", cause );
+		}
+	}
+
+	/**
+	 * Formats the rows of the objects of one timepoint.
+	 */
+	private static abstract class Rows
+	{
+		protected final List< String > headers = new ArrayList<>();
+
+		private final List< FeatureProjection< ? > > projections = new ArrayList<>();
+
+		private final List< ObjTagMap< ?, Tag > > tagMaps = new ArrayList<>();
+
+		protected < O > void addFeaturesAndTags( final FeatureModel featureModel, final ObjTags< O > tags, final List< TagSet > tagSets, final Class< O > clazz )
+		{
+			final List< FeatureSpec< ?, ? > > specs = new ArrayList<>();
+			for ( final FeatureSpec< ?, ? > fs : featureModel.getFeatureSpecs() )
+				if ( fs.getTargetClass().isAssignableFrom( clazz ) )
+					specs.add( fs );
+			specs.sort( Comparator.comparing( FeatureSpec::getKey ) );
+			for ( final FeatureSpec< ?, ? > fs : specs )
+			{
+				final Feature< ? > feature = featureModel.getFeature( fs );
+				if ( null == feature || null == feature.projections() )
+					continue;
+				final boolean single = feature.projections().size() == 1;
+				for ( final FeatureProjection< ? > projection : feature.projections() )
+				{
+					final String units = projection.units();
+					final String name = single ? fs.getKey() : fs.getKey() + " " + projection.getKey();
+					headers.add( ( units == null || units.isEmpty() ) ? name : name + " (" + units + ")" );
+					projections.add( projection );
+				}
+			}
+			for ( final TagSet tagSet : tagSets )
+			{
+				headers.add( tagSet.getName() );
+				tagMaps.add( tags.tags( tagSet ) );
+			}
+		}
+
+		public String[] header()
+		{
+			return headers.toArray( new String[ 0 ] );
+		}
+
+		/**
+		 * Fills the feature and tag fields of the row, starting at
+		 * {@code offset}.
+		 */
+		@SuppressWarnings( { "unchecked", "rawtypes" } )
+		protected void fill( final Object o, final String[] row, final int offset )
+		{
+			int col = offset;
+			for ( final FeatureProjection projection : projections )
+			{
+				if ( !projection.isSet( o ) )
+					row[ col++ ] = "";
+				else if ( projection instanceof IntFeatureProjection )
+					row[ col++ ] = Integer.toString( ( int ) projection.value( o ) );
+				else
+					row[ col++ ] = Double.toString( projection.value( o ) );
+			}
+			for ( final ObjTagMap tagMap : tagMaps )
+			{
+				final Tag tag = ( Tag ) tagMap.get( o );
+				row[ col++ ] = ( null == tag ) ? "" : tag.label();
+			}
+		}
+
+		public abstract void write( SpatialIndex< Spot > spots, CSVWriter csv );
+	}
+
+	private static class SpotRows extends Rows
+	{
+		public SpotRows( final Model model )
+		{
+			headers.add( "Label" );
+			headers.add( "ID" );
+			headers.add( "Frame" );
+			addFeaturesAndTags(
+					model.getFeatureModel(),
+					model.getTagSetModel().getVertexTags(),
+					model.getTagSetModel().getTagSetStructure().getTagSets(),
+					Spot.class );
+		}
+
+		@Override
+		public void write( final SpatialIndex< Spot > spots, final CSVWriter csv )
+		{
+			final String[] row = new String[ headers.size() ];
+			for ( final Spot spot : spots )
+			{
+				row[ 0 ] = spot.getLabel();
+				row[ 1 ] = Integer.toString( spot.getInternalPoolIndex() );
+				row[ 2 ] = Integer.toString( spot.getTimepoint() );
+				fill( spot, row, 3 );
+				csv.writeNext( row );
+			}
+		}
+	}
+
+	private static class LinkRows extends Rows
+	{
+		private final ModelGraph graph;
+
+		public LinkRows( final Model model )
+		{
+			this.graph = model.getGraph();
+			headers.add( "ID" );
+			headers.add( "Source ID" );
+			headers.add( "Target ID" );
+			headers.add( "Frame" );
+			addFeaturesAndTags(
+					model.getFeatureModel(),
+					model.getTagSetModel().getEdgeTags(),
+					model.getTagSetModel().getTagSetStructure().getTagSets(),
+					Link.class );
+		}
+
+		@Override
+		public void write( final SpatialIndex< Spot > spots, final CSVWriter csv )
+		{
+			final String[] row = new String[ headers.size() ];
+			final Spot ref = graph.vertexRef();
+			for ( final Spot spot : spots )
+			{
+				final String sourceId = Integer.toString( spot.getInternalPoolIndex() );
+				final String frame = Integer.toString( spot.getTimepoint() );
+				for ( final Link link : spot.outgoingEdges() )
+				{
+					row[ 0 ] = Integer.toString( link.getInternalPoolIndex() );
+					row[ 1 ] = sourceId;
+					row[ 2 ] = Integer.toString( link.getTarget( ref ).getInternalPoolIndex() );
+					row[ 3 ] = frame;
+					fill( link, row, 4 );
+					csv.writeNext( row );
+				}
+			}
+			graph.releaseRef( ref );
+		}
+	}
+}
@@ -37,6 +37,8 @@ import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.util.Collection;
 
+import org.mastodon.app.metrics.Metrics;
+import org.mastodon.app.metrics.Timer;
 import org.mastodon.collection.RefCollection;
 import org.mastodon.feature.Feature;
 import org.mastodon.feature.FeatureModel;
@@ -58,6 +60,10 @@ import org.scijava.Context;
 public class MamutRawFeatureModelIO
 {
 
+	private static final Timer SERIALIZE_TIMER = Metrics.timer( "project.save.features" );
+
+	private static final Timer DESERIALIZE_TIMER = Metrics.timer( "project.load.features" );
+
 	public static void serialize(
 			final Context context,
 			final FeatureModel featureModel,
@@ -65,6 +71,7 @@ public class MamutRawFeatureModelIO
 			final ProjectWriter writer )
 			throws IOException
 	{
+		final long t0 = System.nanoTime();
 		final FeatureSerializationService featureSerializationService = context.getService( FeatureSerializationService.class );
 		for ( final FeatureSpec< ?, ? > spec : featureModel.getFeatureSpecs() )
 		{
@@ -81,6 +88,7 @@ public class MamutRawFeatureModelIO
 			else
 				System.err.println( "Do not know how to serialize a feature that targets " + specTargetClass );
 		}
+		SERIALIZE_TIMER.record( System.nanoTime() - t0 );
 	}
 
 	public static void deserialize(
@@ -89,6 +97,7 @@ public class MamutRawFeatureModelIO
 			final FileIdToGraphMap< Spot, Link > idmap,
 			final ProjectReader reader ) throws ClassNotFoundException, IOException
 	{
+		final long t0 = System.nanoTime();
 		final FeatureSerializationService featureSerializationService = context.getService( FeatureSerializationService.class );
 		final FeatureSpecsService featureSpecsService = context.getService( FeatureSpecsService.class );
 		final Collection< String > featureKeys = reader.getFeatureKeys();
@@ -133,6 +142,7 @@ public class MamutRawFeatureModelIO
 			featureModel.declareFeature( feature );
 		}
 		featureModel.resumeListeners();
+		DESERIALIZE_TIMER.record( System.nanoTime() - t0 );
 	}
 
 	@SuppressWarnings( { "unchecked", "rawtypes" } )
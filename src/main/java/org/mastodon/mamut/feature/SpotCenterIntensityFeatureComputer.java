@@ -38,6 +38,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
 
 import org.mastodon.feature.DefaultFeatureComputerService.FeatureComputationStatus;
 import org.mastodon.feature.Feature;
@@ -129,40 +130,58 @@ public class SpotCenterIntensityFeatureComputer implements MamutFeatureComputer,
 
 		final ArrayList< SourceAndConverter< ? > > sources = bdvData.getSources();
 		int done = 0;
-		for ( int iSource = 0; iSource < sources.size(); iSource++ )
+		final ExecutorService executor = Executors.newFixedThreadPool( numThreads );
+		try
 		{
-			@SuppressWarnings( "unchecked" )
-			final Source< RealType< ? > > source = ( Source< RealType< ? > > ) sources.get( iSource ).getSpimSource();
-			for ( int timepoint = 0; timepoint < numTimepoints; timepoint++ )
+			for ( int iSource = 0; iSource < sources.size(); iSource++ )
 			{
-				status.notifyProgress( ( double ) done++ / todo );
-				if ( isCanceled() )
-					break;
-
-				final SpatialIndex< Spot > toProcess = model.getSpatioTemporalIndex().getSpatialIndex( timepoint );
-				final List< Callable< Void > > tasks = Collections.nCopies( numThreads, new SpotIntensityComputer(
-						source,
-						toProcess.iterator(),
-						getCalibration( source, timepoint ),
-						output.maps.get( iSource ),
-						recomputeAll ) );
-				try
-				{
-					final ExecutorService executor = Executors.newFixedThreadPool( numThreads );
-					final List< Future< Void > > futures = executor.invokeAll( tasks );
-					for ( final Future< Void > future : futures )
-						future.get();
-				}
-				catch ( final InterruptedException e )
-				{
-					e.printStackTrace();
-				}
-				catch ( final ExecutionException e )
+				@SuppressWarnings( "unchecked" )
+				final Source< RealType< ? > > source = ( Source< RealType< ? > > ) sources.get( iSource ).getSpimSource();
+				for ( int timepoint = 0; timepoint < numTimepoints; timepoint++ )
 				{
-					e.printStackTrace();
+					status.notifyProgress( ( double ) done++ / todo );
+					if ( isCanceled() )
+						break;
+
+					/*
+					 * Hold the read lock for one timepoint at a time, so that edits
+					 * wait for at most one timepoint, not for the whole
+					 * computation.
+					 */
+					final Lock readLock = model.getGraph().getLock().readLock();
+					readLock.lock();
+					try
+					{
+						final SpatialIndex< Spot > toProcess = model.getSpatioTemporalIndex().getSpatialIndex( timepoint );
+						final List< Callable< Void > > tasks = Collections.nCopies( numThreads, new SpotIntensityComputer(
+								source,
+								toProcess.iterator(),
+								getCalibration( source, timepoint ),
+								output.maps.get( iSource ),
+								recomputeAll ) );
+						final List< Future< Void > > futures = executor.invokeAll( tasks );
+						for ( final Future< Void > future : futures )
+							future.get();
+					}
+					catch ( final InterruptedException e )
+					{
+						e.printStackTrace();
+					}
+					catch ( final ExecutionException e )
+					{
+						e.printStackTrace();
+					}
+					finally
+					{
+						readLock.unlock();
+					}
 				}
 			}
 		}
+		finally
+		{
+			executor.shutdown();
+		}
 	}
 
 	@Override
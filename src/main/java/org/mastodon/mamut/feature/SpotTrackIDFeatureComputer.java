@@ -28,21 +28,36 @@
  */
 package org.mastodon.mamut.feature;
 
-import org.mastodon.graph.algorithm.traversal.BreadthFirstCrossComponentSearch;
-import org.mastodon.graph.algorithm.traversal.GraphSearch.SearchDirection;
 import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
 import org.mastodon.mamut.model.ModelGraph;
 import org.mastodon.mamut.model.Spot;
-import org.mastodon.graph.algorithm.traversal.SearchListener;
+import org.mastodon.model.TrackIndex;
 import org.mastodon.properties.IntPropertyMap;
 import org.scijava.ItemIO;
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
 
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+
+/**
+ * Computes the track id of each spot. Tracks are numbered consecutively from
+ * 0, in the order in which they are first encountered in the spot collection.
+ * This is the same numbering as the breadth-first search across components
+ * used before: the search visits a complete track before it starts the next
+ * one at the first unvisited spot in the spot collection.
+ * <p>
+ * Tracks are looked up in the {@link TrackIndex} of the model, which is
+ * maintained incrementally, so this does not traverse the graph.
+ */
 @Plugin( type = MamutFeatureComputer.class )
 public class SpotTrackIDFeatureComputer implements MamutFeatureComputer
 {
 
+	@Parameter
+	private Model model;
+
 	@Parameter
 	private ModelGraph graph;
 
@@ -61,37 +76,16 @@ public class SpotTrackIDFeatureComputer implements MamutFeatureComputer
 	{
 		output.map.beforeClearPool();
 
-		if ( graph.vertices().isEmpty() )
-			return;
-
-		final BreadthFirstCrossComponentSearch< Spot, Link > search = new BreadthFirstCrossComponentSearch<>( graph, SearchDirection.UNDIRECTED );
-		final SearchListener< Spot, Link, BreadthFirstCrossComponentSearch< Spot, Link > > l =
-				new SearchListener< Spot, Link, BreadthFirstCrossComponentSearch< Spot, Link > >()
-				{
-
-					private int id = 0;
-
-					@Override
-					public void processVertexLate( final Spot spot, final BreadthFirstCrossComponentSearch< Spot, Link > search )
-					{}
-
-					@Override
-					public void processVertexEarly( final Spot spot, final BreadthFirstCrossComponentSearch< Spot, Link > search )
-					{
-						output.map.set( spot, id );
-					}
-
-					@Override
-					public void processEdge( final Link link, final Spot source, final Spot target, final BreadthFirstCrossComponentSearch< Spot, Link > search )
-					{}
-
-					@Override
-					public void crossComponent( final Spot endSpot, final Spot startSpot, final BreadthFirstCrossComponentSearch< Spot, Link > search )
-					{
-						id++;
-					}
-				};
-		search.setTraversalListener( l );
-		search.start( graph.vertices().iterator().next() );
+		final TrackIndex< Spot, Link > trackIndex = model.getTrackIndex();
+		final TIntIntMap trackIdToFeatureValue = new TIntIntHashMap( 64, 0.5f, TrackIndex.NO_TRACK, -1 );
+		trackIndex.forEachTrackId( ( spot, trackId ) -> {
+			int value = trackIdToFeatureValue.get( trackId );
+			if ( value < 0 )
+			{
+				value = trackIdToFeatureValue.size();
+				trackIdToFeatureValue.put( trackId, value );
+			}
+			output.map.set( spot, value );
+		} );
 	}
 }
@@ -28,26 +28,29 @@
  */
 package org.mastodon.mamut.feature;
 
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
 import org.mastodon.mamut.model.ModelGraph;
 import org.mastodon.mamut.model.Spot;
-import org.mastodon.pool.PoolCollectionWrapper;
+import org.mastodon.model.TrackIndex;
 import org.mastodon.properties.IntPropertyMap;
 import org.scijava.ItemIO;
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
 
-import gnu.trove.map.TIntIntMap;
-import gnu.trove.map.hash.TIntIntHashMap;
-
+/**
+ * Computes the number of spots in the track of each spot, from the
+ * {@link TrackIndex} of the model.
+ */
 @Plugin( type = MamutFeatureComputer.class )
 public class TrackSizeFeatureComputer implements MamutFeatureComputer
 {
 
 	@Parameter
-	private ModelGraph graph;
+	private Model model;
 
 	@Parameter
-	private SpotTrackIDFeature trackID;
+	private ModelGraph graph;
 
 	@Parameter( type = ItemIO.OUTPUT )
 	private TrackSizeFeature output;
@@ -64,16 +67,8 @@ public class TrackSizeFeatureComputer implements MamutFeatureComputer
 	{
 		output.map.beforeClearPool();
 
-		final TIntIntMap nSpots = new TIntIntHashMap();
-		final PoolCollectionWrapper< Spot > vertices = graph.vertices();
-		for ( final Spot spot : vertices )
-		{
-			final int id = trackID.map.get( spot );
-			if ( !nSpots.increment( id ) )
-				nSpots.put( id, 1 );
-		}
-
-		for ( final Spot spot : vertices )
-			output.map.set( spot, nSpots.get( trackID.map.get( spot ) ) );
+		final TrackIndex< Spot, Link > trackIndex = model.getTrackIndex();
+		for ( final Spot spot : graph.vertices() )
+			output.map.set( spot, trackIndex.getTrackSize( spot ) );
 	}
 }
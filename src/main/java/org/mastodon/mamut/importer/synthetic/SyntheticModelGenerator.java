@@ -0,0 +1,622 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.mamut.importer.synthetic;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.mastodon.collection.RefCollections;
+import org.mastodon.collection.RefList;
+import org.mastodon.feature.FeatureSpecsService;
+import org.mastodon.feature.io.FeatureSerializationService;
+import org.mastodon.mamut.batch.HeadlessProject;
+import org.mastodon.mamut.importer.ModelImporter;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.mamut.project.MamutProject;
+import org.mastodon.model.tag.ObjTagMap;
+import org.mastodon.model.tag.TagSetStructure;
+import org.mastodon.model.tag.TagSetStructure.Tag;
+import org.mastodon.model.tag.TagSetStructure.TagSet;
+import org.mastodon.util.DummySpimData;
+import org.scijava.Context;
+
+import bdv.spimdata.SpimDataMinimal;
+import gnu.trove.list.array.TIntArrayList;
+import mpicbg.spim.data.SpimDataException;
+import net.imglib2.util.LinAlgHelpers;
+
+/**
+ * Generates synthetic lineages in a {@link Model}, to test Mastodon at scale
+ * without real data.
+ * <p>
+ * Cells start at random positions at the first timepoint, move by a random
+ * walk and divide with a fixed probability per frame. The daughters of a
+ * division are placed on either side of the mother, along a random
+ * direction. Spots are random ellipsoids. Optionally, spots are labeled with
+ * the name of their cell (root index followed by the division path, e.g.
+ * {@code R12.1.2}) and tagged in random tag sets, daughters inheriting the
+ * tags of their mother.
+ * <p>
+ * Cells live in a cube sized so that the last timepoint has the requested
+ * spot density. The matching image data is a {@link DummySpimData} of the
+ * size of this cube, see {@link #getDatasetName(Parameters)}.
+ * <p>
+ * The model is filled as an import: the spatial index, undo recording and
+ * listeners are paused until the generation finishes. The generation is
+ * deterministic for a given seed.
+ */
+public class SyntheticModelGenerator extends ModelImporter
+{
+	/**
+	 * Parameters of the generation, with defaults producing a small model.
+	 * Setters can be chained.
+	 */
+	public static class Parameters
+	{
+		private long seed = 0;
+
+		private int numRoots = 100;
+
+		private int numTimepoints = 100;
+
+		private double divisionRate = 0.02;
+
+		private double density = 10;
+
+		private double velocity = 2;
+
+		private double meanRadius = 5;
+
+		private double radiusStd = 1;
+
+		private double anisotropy = 1.5;
+
+		private boolean labels = false;
+
+		private int numTagSets = 0;
+
+		private int numTagsPerSet = 5;
+
+		private double taggedFraction = 0.8;
+
+		/**
+		 * Sets the seed of the random generator.
+		 *
+		 * @param seed
+		 *            the seed.
+		 * @return this.
+		 */
+		public Parameters seed( final long seed )
+		{
+			this.seed = seed;
+			return this;
+		}
+
+		/**
+		 * Sets the number of cells at the first timepoint.
+		 *
+		 * @param numRoots
+		 *            the number of lineage roots.
+		 * @return this.
+		 */
+		public Parameters numRoots( final int numRoots )
+		{
+			this.numRoots = numRoots;
+			return this;
+		}
+
+		/**
+		 * Sets the number of timepoints.
+		 *
+		 * @param numTimepoints
+		 *            the number of timepoints.
+		 * @return this.
+		 */
+		public Parameters numTimepoints( final int numTimepoints )
+		{
+			this.numTimepoints = numTimepoints;
+			return this;
+		}
+
+		/**
+		 * Sets the probability that a cell divides at a given frame.
+		 *
+		 * @param divisionRate
+		 *            the division probability, in {@code [0, 1]}.
+		 * @return this.
+		 */
+		public Parameters divisionRate( final double divisionRate )
+		{
+			this.divisionRate = divisionRate;
+			return this;
+		}
+
+		/**
+		 * Sets the expected number of spots per {@code 100^3} pixels at the
+		 * last timepoint. This determines the size of the volume.
+		 *
+		 * @param density
+		 *            the spot density.
+		 * @return this.
+		 */
+		public Parameters density( final double density )
+		{
+			this.density = density;
+			return this;
+		}
+
+		/**
+		 * Sets the standard deviation of the displacement of cells between
+		 * frames, along each axis.
+		 *
+		 * @param velocity
+		 *            the displacement, in pixels per frame.
+		 * @return this.
+		 */
+		public Parameters velocity( final double velocity )
+		{
+			this.velocity = velocity;
+			return this;
+		}
+
+		/**
+		 * Sets the distribution of spot radii. Radii are normally
+		 * distributed and at least 1.
+		 *
+		 * @param meanRadius
+		 *            the mean radius.
+		 * @param radiusStd
+		 *            the standard deviation of the radius.
+		 * @return this.
+		 */
+		public Parameters radius( final double meanRadius, final double radiusStd )
+		{
+			this.meanRadius = meanRadius;
+			this.radiusStd = radiusStd;
+			return this;
+		}
+
+		/**
+		 * Sets the maximal ratio between the longest and shortest semi-axes
+		 * of spots. Spots are randomly oriented. 1 produces spheres.
+		 *
+		 * @param anisotropy
+		 *            the maximal ratio, at least 1.
+		 * @return this.
+		 */
+		public Parameters anisotropy( final double anisotropy )
+		{
+			this.anisotropy = anisotropy;
+			return this;
+		}
+
+		/**
+		 * Sets whether spots are labeled with the name of their cell.
+		 *
+		 * @param labels
+		 *            whether to label spots.
+		 * @return this.
+		 */
+		public Parameters labels( final boolean labels )
+		{
+			this.labels = labels;
+			return this;
+		}
+
+		/**
+		 * Sets the tag sets to create. Each root gets a random tag of each
+		 * tag set with probability {@code taggedFraction}, and passes it on
+		 * to all its descendants.
+		 *
+		 * @param numTagSets
+		 *            the number of tag sets.
+		 * @param numTagsPerSet
+		 *            the number of tags in each tag set.
+		 * @param taggedFraction
+		 *            the fraction of tagged lineages.
+		 * @return this.
+		 */
+		public Parameters tags( final int numTagSets, final int numTagsPerSet, final double taggedFraction )
+		{
+			this.numTagSets = numTagSets;
+			this.numTagsPerSet = numTagsPerSet;
+			this.taggedFraction = taggedFraction;
+			return this;
+		}
+
+		/**
+		 * Returns the side of the cube containing the cells.
+		 *
+		 * @return the side, in pixels.
+		 */
+		public double getExtent()
+		{
+			final double expectedLastSpots = numRoots * Math.pow( 1 + divisionRate, numTimepoints - 1 );
+			return Math.max( 4 * meanRadius, 100 * Math.cbrt( expectedLastSpots / density ) );
+		}
+
+		/**
+		 * Parses parameters from {@code key=value} arguments. Keys are
+		 * {@code seed}, {@code roots}, {@code timepoints},
+		 * {@code divisionRate}, {@code density}, {@code velocity},
+		 * {@code radius}, {@code radiusStd}, {@code anisotropy},
+		 * {@code labels}, {@code tagSets}, {@code tags} and
+		 * {@code taggedFraction}.
+		 *
+		 * @param args
+		 *            the arguments.
+		 * @return the parameters.
+		 * @throws IllegalArgumentException
+		 *             if an argument cannot be parsed.
+		 */
+		public static Parameters parse( final String... args )
+		{
+			final Parameters p = new Parameters();
+			for ( final String arg : args )
+			{
+				final int i = arg.indexOf( '=' );
+				if ( i < 0 )
+					throw new IllegalArgumentException( "Expected key=value: " + arg );
+				final String key = arg.substring( 0, i );
+				final String value = arg.substring( i + 1 );
+				switch ( key )
+				{
+				case "seed":
+					p.seed = Long.parseLong( value );
+					break;
+				case "roots":
+					p.numRoots = Integer.parseInt( value );
+					break;
+				case "timepoints":
+					p.numTimepoints = Integer.parseInt( value );
+					break;
+				case "divisionRate":
+					p.divisionRate = Double.parseDouble( value );
+					break;
+				case "density":
+					p.density = Double.parseDouble( value );
+					break;
+				case "velocity":
+					p.velocity = Double.parseDouble( value );
+					break;
+				case "radius":
+					p.meanRadius = Double.parseDouble( value );
+					break;
+				case "radiusStd":
+					p.radiusStd = Double.parseDouble( value );
+					break;
+				case "anisotropy":
+					p.anisotropy = Double.parseDouble( value );
+					break;
+				case "labels":
+					p.labels = Boolean.parseBoolean( value );
+					break;
+				case "tagSets":
+					p.numTagSets = Integer.parseInt( value );
+					break;
+				case "tags":
+					p.numTagsPerSet = Integer.parseInt( value );
+					break;
+				case "taggedFraction":
+					p.taggedFraction = Double.parseDouble( value );
+					break;
+				default:
+					throw new IllegalArgumentException( "Unknown parameter: " + key );
+				}
+			}
+			return p;
+		}
+	}
+
+	/**
+	 * Fills a model with synthetic lineages. Existing tags are cleared.
+	 *
+	 * @param parameters
+	 *            the generation parameters.
+	 * @param model
+	 *            the model to fill.
+	 */
+	public static void generate( final Parameters parameters, final Model model )
+	{
+		new SyntheticModelGenerator( parameters, model );
+	}
+
+	/**
+	 * Returns the name of a {@link DummySpimData} dataset matching the
+	 * volume and timepoints of the generated model. It can be used as
+	 * dataset file of a {@link MamutProject}.
+	 *
+	 * @param parameters
+	 *            the generation parameters.
+	 * @return the dummy dataset name.
+	 */
+	public static String getDatasetName( final Parameters parameters )
+	{
+		final int size = ( int ) Math.ceil( parameters.getExtent() ) + 1;
+		return String.format( "x=%d y=%d z=%d sx=1 sy=1 sz=1 t=%d.dummy", size, size, size, parameters.numTimepoints );
+	}
+
+	/**
+	 * Creates the {@link DummySpimData} matching the generated model.
+	 *
+	 * @param parameters
+	 *            the generation parameters.
+	 * @return the image data.
+	 */
+	public static SpimDataMinimal createSpimData( final Parameters parameters )
+	{
+		return DummySpimData.tryCreate( getDatasetName( parameters ) );
+	}
+
+	private final Random random;
+
+	private final Parameters p;
+
+	private final double extent;
+
+	private final double[][] cov = new double[ 3 ][ 3 ];
+
+	private final double[][] rot = new double[ 3 ][ 3 ];
+
+	private final double[][] tmp = new double[ 3 ][ 3 ];
+
+	private final double[] q = new double[ 4 ];
+
+	private SyntheticModelGenerator( final Parameters parameters, final Model model )
+	{
+		super( model );
+		this.p = parameters;
+		this.random = new Random( parameters.seed );
+		this.extent = parameters.getExtent();
+		startImport();
+
+		final ModelGraph graph = model.getGraph();
+		final Spot ref = graph.vertexRef();
+		final Spot mother = graph.vertexRef();
+		final Link eref = graph.edgeRef();
+		final double[] pos = new double[ 3 ];
+		final double[] dir = new double[ 3 ];
+
+		/*
+		 * Tag sets, and the spots to tag with each tag, for a bulk assignment
+		 * at the end.
+		 */
+		final TagSetStructure tss = new TagSetStructure();
+		for ( int s = 0; s < p.numTagSets; ++s )
+		{
+			final TagSet tagSet = tss.createTagSet( "Tag set " + s );
+			for ( int t = 0; t < p.numTagsPerSet; ++t )
+				tagSet.createTag( "Tag " + s + "." + t, 0xff000000 | random.nextInt( 0x1000000 ) );
+		}
+		final int numTags = p.numTagSets * p.numTagsPerSet;
+		final List< RefList< Spot > > tagged = new ArrayList<>( numTags );
+		for ( int i = 0; i < numTags; ++i )
+			tagged.add( RefCollections.createRefList( graph.vertices() ) );
+
+		/*
+		 * Current cells with their name and tags (one flat tag index per tag
+		 * set, -1 for untagged).
+		 */
+		RefList< Spot > cells = RefCollections.createRefList( graph.vertices() );
+		RefList< Spot > nextCells = RefCollections.createRefList( graph.vertices() );
+		List< String > names = new ArrayList<>();
+		List< String > nextNames = new ArrayList<>();
+		TIntArrayList cellTags = new TIntArrayList();
+		TIntArrayList nextCellTags = new TIntArrayList();
+
+		for ( int r = 0; r < p.numRoots; ++r )
+		{
+			for ( int d = 0; d < 3; ++d )
+				pos[ d ] = random.nextDouble() * extent;
+			final String name = "R" + r;
+			addSpot( graph, ref, 0, pos, name );
+			cells.add( ref );
+			names.add( name );
+			for ( int s = 0; s < p.numTagSets; ++s )
+			{
+				final int tag = random.nextDouble() < p.taggedFraction
+						? s * p.numTagsPerSet + random.nextInt( p.numTagsPerSet )
+						: -1;
+				cellTags.add( tag );
+				if ( tag >= 0 )
+					tagged.get( tag ).add( ref );
+			}
+		}
+
+		for ( int t = 1; t < p.numTimepoints; ++t )
+		{
+			nextCells.clear();
+			nextNames.clear();
+			nextCellTags.resetQuick();
+			for ( int c = 0; c < cells.size(); ++c )
+			{
+				cells.get( c, mother );
+				final String name = names.get( c );
+				final boolean divides = random.nextDouble() < p.divisionRate;
+				if ( divides )
+					randomDirection( dir );
+				for ( int daughter = 0; daughter < ( divides ? 2 : 1 ); ++daughter )
+				{
+					final double offset = divides ? ( daughter == 0 ? 1 : -1 ) * p.meanRadius : 0;
+					for ( int d = 0; d < 3; ++d )
+						pos[ d ] = reflect( mother.getDoublePosition( d ) + offset * dir[ d ] + p.velocity * random.nextGaussian() );
+					final String daughterName = divides ? name + "." + ( daughter + 1 ) : name;
+					addSpot( graph, ref, t, pos, daughterName );
+					graph.addEdge( mother, ref, eref ).init();
+					nextCells.add( ref );
+					nextNames.add( daughterName );
+					for ( int s = 0; s < p.numTagSets; ++s )
+					{
+						final int tag = cellTags.getQuick( c * p.numTagSets + s );
+						nextCellTags.add( tag );
+						if ( tag >= 0 )
+							tagged.get( tag ).add( ref );
+					}
+				}
+			}
+
+			final RefList< Spot > tmpCells = cells;
+			cells = nextCells;
+			nextCells = tmpCells;
+			final List< String > tmpNames = names;
+			names = nextNames;
+			nextNames = tmpNames;
+			final TIntArrayList tmpTags = cellTags;
+			cellTags = nextCellTags;
+			nextCellTags = tmpTags;
+		}
+
+		if ( numTags > 0 )
+		{
+			model.getTagSetModel().setTagSetStructure( tss );
+			final List< TagSet > tagSets = model.getTagSetModel().getTagSetStructure().getTagSets();
+			for ( int s = 0; s < p.numTagSets; ++s )
+			{
+				final TagSet tagSet = tagSets.get( s );
+				final ObjTagMap< Spot, Tag > tagMap = model.getTagSetModel().getVertexTags().tags( tagSet );
+				for ( int t = 0; t < p.numTagsPerSet; ++t )
+					tagMap.set( tagged.get( s * p.numTagsPerSet + t ), tagSet.getTags().get( t ) );
+			}
+		}
+
+		graph.releaseRef( ref );
+		graph.releaseRef( mother );
+		graph.releaseRef( eref );
+		finishImport();
+	}
+
+	private void addSpot( final ModelGraph graph, final Spot ref, final int timepoint, final double[] pos, final String name )
+	{
+		randomCovariance();
+		graph.addVertex( ref ).init( timepoint, pos, cov );
+		if ( p.labels )
+			ref.setLabel( name );
+	}
+
+	/**
+	 * Sets {@link #cov} to a randomly oriented ellipsoid, with radius and
+	 * anisotropy drawn from the parameters.
+	 */
+	private void randomCovariance()
+	{
+		final double r = Math.max( 1, p.meanRadius + p.radiusStd * random.nextGaussian() );
+		final double s = 1 + random.nextDouble() * ( Math.sqrt( Math.max( 1, p.anisotropy ) ) - 1 );
+		final double a0 = r * s;
+		final double a1 = r;
+		final double a2 = r / s;
+
+		// Uniformly distributed random rotation.
+		final double u1 = random.nextDouble();
+		final double u2 = 2 * Math.PI * random.nextDouble();
+		final double u3 = 2 * Math.PI * random.nextDouble();
+		q[ 0 ] = Math.sqrt( 1 - u1 ) * Math.sin( u2 );
+		q[ 1 ] = Math.sqrt( 1 - u1 ) * Math.cos( u2 );
+		q[ 2 ] = Math.sqrt( u1 ) * Math.sin( u3 );
+		q[ 3 ] = Math.sqrt( u1 ) * Math.cos( u3 );
+		LinAlgHelpers.quaternionToR( q, rot );
+
+		// cov = R * diag( a^2 ) * R^T
+		for ( int i = 0; i < 3; ++i )
+		{
+			tmp[ i ][ 0 ] = rot[ i ][ 0 ] * a0 * a0;
+			tmp[ i ][ 1 ] = rot[ i ][ 1 ] * a1 * a1;
+			tmp[ i ][ 2 ] = rot[ i ][ 2 ] * a2 * a2;
+		}
+		LinAlgHelpers.multABT( tmp, rot, cov );
+	}
+
+	private void randomDirection( final double[] dir )
+	{
+		for ( int d = 0; d < 3; ++d )
+			dir[ d ] = random.nextGaussian();
+		final double norm = LinAlgHelpers.length( dir );
+		if ( norm > 0 )
+			LinAlgHelpers.scale( dir, 1 / norm, dir );
+		else
+			dir[ 0 ] = 1;
+	}
+
+	/**
+	 * Reflects a coordinate into {@code [0, extent]}.
+	 */
+	private double reflect( final double x )
+	{
+		if ( x < 0 )
+			return Math.min( -x, extent );
+		if ( x > extent )
+			return Math.max( 2 * extent - x, 0 );
+		return x;
+	}
+
+	/**
+	 * Generates a model and saves it as a Mastodon project on the matching
+	 * dummy image data.
+	 * <p>
+	 * Usage: {@code SyntheticModelGenerator <target.mastodon> [key=value ...]},
+	 * see {@link Parameters#parse(String...)} for the keys.
+	 *
+	 * @param args
+	 *            the target project followed by the parameters.
+	 * @throws IOException
+	 *             if the project cannot be written.
+	 * @throws SpimDataException
+	 *             if the dummy image data cannot be created.
+	 */
+	public static void main( final String[] args ) throws IOException, SpimDataException
+	{
+		if ( args.length < 1 )
+		{
+			System.err.println( "Usage: SyntheticModelGenerator <target.mastodon> [key=value ...]" );
+			System.exit( 1 );
+		}
+		final String[] keyValues = new String[ args.length - 1 ];
+		System.arraycopy( args, 1, keyValues, 0, keyValues.length );
+		final Parameters parameters = Parameters.parse( keyValues );
+
+		try (final Context context = new Context( FeatureSpecsService.class, FeatureSerializationService.class ))
+		{
+			final MamutProject project = new MamutProject( null, new File( getDatasetName( parameters ) ) );
+			final HeadlessProject hp = new HeadlessProject( project, context );
+			final long start = System.currentTimeMillis();
+			generate( parameters, hp.getModel() );
+			final long end = System.currentTimeMillis();
+			System.out.println( String.format( "Generated %d spots and %d links in %.1f s.",
+					hp.getModel().getGraph().vertices().size(),
+					hp.getModel().getGraph().edges().size(),
+					( end - start ) / 1000. ) );
+			hp.save( new File( args[ 0 ] ) );
+		}
+	}
+}
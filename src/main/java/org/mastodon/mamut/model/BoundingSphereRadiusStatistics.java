@@ -28,27 +28,43 @@
  */
 package org.mastodon.mamut.model;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.mastodon.graph.GraphListener;
+import org.mastodon.model.BulkEditor.BulkEditListener;
+import org.mastodon.model.BulkEditor.Summary;
 import org.mastodon.properties.PropertyChangeListener;
 import org.mastodon.spatial.SpatialIndex;
 
+import gnu.trove.iterator.TIntIterator;
+import gnu.trove.map.hash.TIntIntHashMap;
 import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.set.hash.TIntHashSet;
 
 /**
  * A class that serves statistics about the maximum bounding radius amongst all
  * the spots of a time-point in a model. This class keeps up to date with
  * changes in the graph it monitors by registering as a {@link GraphListener}.
  * <p>
+ * The bounding sphere radii of the spots of each time-point are kept in an
+ * indexed max-heap, so that adding or removing a spot, or changing its radius,
+ * takes logarithmic time in the number of spots of the time-point.
+ * <p>
  * Read and write (changes to the monitored graph) operations are protected with
  * a {@link ReentrantReadWriteLock}. Multiple clients can hold the read lock
  * simultaneously (but this blocks updates to the graph).
+ * <p>
+ * During a bulk edit of the model, changes are not applied one by one.
+ * Instead, the time-points of changed spots are collected, and their statistics
+ * are recomputed once when the bulk edit finishes.
  *
  * @author Tobias Pietzsch
  */
-public class BoundingSphereRadiusStatistics implements GraphListener< Spot, Link >, PropertyChangeListener< Spot >
+public class BoundingSphereRadiusStatistics implements GraphListener< Spot, Link >, PropertyChangeListener< Spot >, BulkEditListener
 {
 	/**
 	 * Int value used to declare that the requested timepoint is not in a map.
@@ -56,6 +72,12 @@ public class BoundingSphereRadiusStatistics implements GraphListener< Spot, Link
 	 */
 	private final static int NO_ENTRY_KEY = -1;
 
+	/**
+	 * Minimal number of spots, for which the heaps of the individual
+	 * time-points are built in parallel.
+	 */
+	private static final int MIN_PARALLEL_INIT_SPOTS = 100_000;
+
 	private final Model model;
 
 	private final ModelGraph graph;
@@ -66,6 +88,12 @@ public class BoundingSphereRadiusStatistics implements GraphListener< Spot, Link
 
     private final Lock writeLock;
 
+	/**
+	 * Time-points changed during the current bulk edit, or {@code null} if no
+	 * bulk edit is in progress.
+	 */
+	private TIntHashSet deferredTimepoints;
+
 	/**
 	 * Creates a new statistics object for the specified model. After this
 	 * constructor returns, statistics are immediately available. The returned
@@ -82,6 +110,7 @@ public class BoundingSphereRadiusStatistics implements GraphListener< Spot, Link
 		timepointToStats = new TIntObjectHashMap<>( 10, 0.5f, NO_ENTRY_KEY );
 		graph.addGraphListener( this );
 		graph.getVertexPool().boundingSphereRadiusSquProperty().propertyChangeListeners().add( this );
+		model.getBulkEditor().listeners().add( this );
 		final ReentrantReadWriteLock rwl = new ReentrantReadWriteLock();
 	    readLock = rwl.readLock();
 	    writeLock = rwl.writeLock();
@@ -135,20 +164,96 @@ public class BoundingSphereRadiusStatistics implements GraphListener< Spot, Link
 			return stats.getMaxRadiusSquared();
 	}
 
+	/**
+	 * Rebuilds the statistics of all time-points. The spots are collected
+	 * per time-point in a single pass over the graph, then the heaps of the
+	 * individual time-points are built, in parallel if the graph is large.
+	 */
 	private void init()
 	{
-	    timepointToStats.clear();
-	    for ( final Spot v : graph.vertices() )
-	    {
-	    	final int t = v.getTimepoint();
-	    	Stats stats = timepointToStats.get( t );
-	    	if ( stats == null )
-	    	{
-	    		stats = new Stats( graph.vertexRef() );
-	    		timepointToStats.put( t, stats );
-	    	}
-	    	stats.add( v );
-	    }
+		timepointToStats.clear();
+		for ( final Spot v : graph.vertices() )
+			getOrCreateStats( v.getTimepoint() ).append( v.getInternalPoolIndex(), v.getBoundingSphereRadiusSquared() );
+
+		final List< Stats > all = new ArrayList<>( timepointToStats.valueCollection() );
+		if ( graph.vertices().size() >= MIN_PARALLEL_INIT_SPOTS && all.size() > 1 )
+			all.parallelStream().forEach( Stats::heapify );
+		else
+			all.forEach( Stats::heapify );
+	}
+
+	/**
+	 * Returns the heap of the specified time-point. For testing.
+	 */
+	Stats getStats( final int timepoint )
+	{
+		return timepointToStats.get( timepoint );
+	}
+
+	private Stats getOrCreateStats( final int timepoint )
+	{
+		Stats stats = timepointToStats.get( timepoint );
+		if ( stats == null )
+		{
+			stats = new Stats();
+			timepointToStats.put( timepoint, stats );
+		}
+		return stats;
+	}
+
+	@Override
+	public void bulkEditStarted()
+	{
+		writeLock.lock();
+		try
+		{
+			deferredTimepoints = new TIntHashSet();
+		}
+		finally
+		{
+			writeLock.unlock();
+		}
+	}
+
+	@Override
+	public void bulkEditFinished( final Summary summary )
+	{
+		writeLock.lock();
+		try
+		{
+			for ( final TIntIterator it = deferredTimepoints.iterator(); it.hasNext(); )
+			{
+				final int t = it.next();
+				timepointToStats.remove( t );
+				final SpatialIndex< Spot > spatialIndex = model.getSpatioTemporalIndex().getSpatialIndex( t );
+				if ( spatialIndex.isEmpty() )
+					continue;
+				final Stats stats = new Stats();
+				for ( final Spot v : spatialIndex )
+					stats.append( v.getInternalPoolIndex(), v.getBoundingSphereRadiusSquared() );
+				stats.heapify();
+				timepointToStats.put( t, stats );
+			}
+			deferredTimepoints = null;
+		}
+		finally
+		{
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * If a bulk edit is in progress, records the time-point of the specified
+	 * spot for later update. Must be called with the write lock held.
+	 *
+	 * @return {@code true} if the change is deferred.
+	 */
+	private boolean defer( final Spot v )
+	{
+		if ( deferredTimepoints == null )
+			return false;
+		deferredTimepoints.add( v.getTimepoint() );
+		return true;
 	}
 
 	@Override
@@ -157,14 +262,9 @@ public class BoundingSphereRadiusStatistics implements GraphListener< Spot, Link
 		writeLock.lock();
 		try
 		{
-	    	final int t = v.getTimepoint();
-	    	Stats stats = timepointToStats.get( t );
-	    	if ( stats == null )
-	    	{
-	    		stats = new Stats( graph.vertexRef() );
-	    		timepointToStats.put( t, stats );
-	    	}
-	    	stats.add( v );
+			if ( defer( v ) )
+				return;
+			getOrCreateStats( v.getTimepoint() ).set( v.getInternalPoolIndex(), v.getBoundingSphereRadiusSquared() );
 		}
 		finally
 		{
@@ -178,15 +278,16 @@ public class BoundingSphereRadiusStatistics implements GraphListener< Spot, Link
 		writeLock.lock();
 		try
 		{
+			if ( defer( v ) )
+				return;
 			final int t = v.getTimepoint();
-	    	final SpatialIndex< Spot > spatialIndex = model.getSpatioTemporalIndex().getSpatialIndex( t );
-	    	if ( spatialIndex.isEmpty() )
-	    		timepointToStats.remove( t );
-	    	else
-	    	{
-		    	final Stats stats = timepointToStats.get( t );
-	    		stats.remove( v, model.getSpatioTemporalIndex().getSpatialIndex( t ) );
-	    	}
+			final Stats stats = timepointToStats.get( t );
+			if ( stats != null )
+			{
+				stats.remove( v.getInternalPoolIndex() );
+				if ( stats.isEmpty() )
+					timepointToStats.remove( t );
+			}
 		}
 		finally
 		{
@@ -222,9 +323,9 @@ public class BoundingSphereRadiusStatistics implements GraphListener< Spot, Link
 		writeLock.lock();
 		try
 		{
-			final int t = v.getTimepoint();
-	    	final Stats stats = timepointToStats.get( t );
-	    	stats.radiusChanged( v, model.getSpatioTemporalIndex().getSpatialIndex( t ) );
+			if ( defer( v ) )
+				return;
+			getOrCreateStats( v.getTimepoint() ).set( v.getInternalPoolIndex(), v.getBoundingSphereRadiusSquared() );
 		}
 		finally
 		{
@@ -232,84 +333,211 @@ public class BoundingSphereRadiusStatistics implements GraphListener< Spot, Link
 		}
 	}
 
+	/**
+	 * Indexed binary max-heap of the bounding sphere radii squared of the
+	 * spots of one time-point. Spots are identified by their internal pool
+	 * index.
+	 */
 	static class Stats
 	{
-		private double maxRadiusSquared;
+		private int[] ids;
+
+		private double[] radiiSquared;
 
-		private final Spot spotWithMaxRadiusSquared;
+		private int size;
 
-		public Stats( final Spot ref )
+		/**
+		 * Maps spot id to position in the heap.
+		 */
+		private final TIntIntHashMap idToPos;
+
+		public Stats()
 		{
-			this.spotWithMaxRadiusSquared = ref;
-			maxRadiusSquared = 0;
+			ids = new int[ 16 ];
+			radiiSquared = new double[ 16 ];
+			size = 0;
+			idToPos = new TIntIntHashMap( 16, 0.5f, -1, -1 );
 		}
 
-		public void add( final Spot spot )
+		/**
+		 * Appends a spot without restoring the heap order. After appending
+		 * all spots, {@link #heapify()} must be called before the heap is used
+		 * otherwise.
+		 *
+		 * @param id
+		 *            the spot id.
+		 * @param r2
+		 *            the bounding sphere radius squared of the spot.
+		 */
+		void append( final int id, final double r2 )
 		{
-			final double r2 = spot.getBoundingSphereRadiusSquared();
-			if ( r2 > maxRadiusSquared )
-			{
-				maxRadiusSquared = r2;
-				spotWithMaxRadiusSquared.refTo( spot );
-			}
+			ensureCapacity( size + 1 );
+			ids[ size ] = id;
+			radiiSquared[ size ] = r2;
+			++size;
 		}
 
 		/**
-		 * Ensures we still have a defined max radius squared and a spot with
-		 * this value, even after the specified spot is removed from the
-		 * collection.
-		 * <p>
-		 * If {@code spot} is the representative for the max radius, we have to
-		 * find the new max radius from all spots. Otherwise, we're lucky and
-		 * we're done. Assumes that {@code spots} does not contain {@code spot}.
+		 * Restores the heap order after {@link #append(int, double)}, and
+		 * builds the id to position map. Takes linear time.
+		 */
+		void heapify()
+		{
+			for ( int pos = size / 2 - 1; pos >= 0; --pos )
+				siftDown( pos, false );
+			idToPos.clear();
+			idToPos.ensureCapacity( size );
+			for ( int pos = 0; pos < size; ++pos )
+				idToPos.put( ids[ pos ], pos );
+		}
+
+		/**
+		 * Adds the specified spot, or updates its bounding sphere radius
+		 * squared if it is already present.
 		 *
-		 * @param spot
-		 *            the spot to check.
-		 * @param spots
-		 *            all spots (may be inspected for new max radius
-		 *            squared after the specified spot had been removed).
+		 * @param id
+		 *            the spot id.
+		 * @param r2
+		 *            the bounding sphere radius squared of the spot.
 		 */
-		public void remove( final Spot spot, final Iterable< Spot > spots )
+		public void set( final int id, final double r2 )
 		{
-			if ( spotWithMaxRadiusSquared.equals( spot ) )
+			final int pos = idToPos.get( id );
+			if ( pos < 0 )
 			{
-				maxRadiusSquared = 0;
-				for ( final Spot v : spots )
-					add( v );
+				append( id, r2 );
+				idToPos.put( id, size - 1 );
+				siftUp( size - 1 );
 			}
+			else
+			{
+				final double old = radiiSquared[ pos ];
+				radiiSquared[ pos ] = r2;
+				if ( r2 > old )
+					siftUp( pos );
+				else if ( r2 < old )
+					siftDown( pos, true );
+			}
+		}
+
+		/**
+		 * Removes the specified spot, if it is present.
+		 *
+		 * @param id
+		 *            the spot id.
+		 */
+		public void remove( final int id )
+		{
+			final int pos = idToPos.remove( id );
+			if ( pos < 0 )
+				return;
+			final int last = --size;
+			if ( pos == last )
+				return;
+			final double old = radiiSquared[ pos ];
+			move( last, pos );
+			if ( radiiSquared[ pos ] > old )
+				siftUp( pos );
+			else
+				siftDown( pos, true );
+		}
+
+		public boolean isEmpty()
+		{
+			return size == 0;
+		}
+
+		public double getMaxRadiusSquared()
+		{
+			return size == 0 ? 0 : radiiSquared[ 0 ];
+		}
+
+		int size()
+		{
+			return size;
 		}
 
 		/**
-		 * Ensures we still have a defined max radius squared and a spot with
-		 * this value, even after the specified spot has its radius changed.
-		 * <p>
-		 * If {@code spot} is the representative for the max radius and its
-		 * radius decreased, we have to find the new max radius from all spots.
+		 * Checks that no parent is smaller than its children, and that the
+		 * id to position map matches the heap. For testing.
 		 *
-		 * @param spot
-		 *            the spot to check.
-		 * @param spots
-		 *            all spots (may be inspected for new max radius
-		 *            squared after the specified spot had been removed).
+		 * @return {@code true} if the heap is consistent.
 		 */
-		public void radiusChanged( final Spot spot, final Iterable< Spot > spots )
+		boolean isValid()
 		{
-			final double r2 = spot.getBoundingSphereRadiusSquared();
-			if ( r2 > maxRadiusSquared )
+			if ( idToPos.size() != size )
+				return false;
+			for ( int pos = 0; pos < size; ++pos )
 			{
-				maxRadiusSquared = r2;
-				spotWithMaxRadiusSquared.refTo( spot );
+				if ( idToPos.get( ids[ pos ] ) != pos )
+					return false;
+				if ( pos > 0 && radiiSquared[ ( pos - 1 ) / 2 ] < radiiSquared[ pos ] )
+					return false;
 			}
-			else if ( spotWithMaxRadiusSquared.equals( spot ) && r2 < maxRadiusSquared )
+			return true;
+		}
+
+		private void siftUp( int pos )
+		{
+			final int id = ids[ pos ];
+			final double r2 = radiiSquared[ pos ];
+			while ( pos > 0 )
 			{
-				// this does the right thing though it doesn't sound like it
-				remove( spot, spots );
+				final int parent = ( pos - 1 ) / 2;
+				if ( radiiSquared[ parent ] >= r2 )
+					break;
+				move( parent, pos );
+				pos = parent;
 			}
+			ids[ pos ] = id;
+			radiiSquared[ pos ] = r2;
+			idToPos.put( id, pos );
 		}
 
-		public double getMaxRadiusSquared()
+		/**
+		 * @param updateIndex
+		 *            whether to update the id to position map. (Not needed
+		 *            while building the heap in {@link #heapify()}.)
+		 */
+		private void siftDown( int pos, final boolean updateIndex )
 		{
-			return maxRadiusSquared;
+			final int id = ids[ pos ];
+			final double r2 = radiiSquared[ pos ];
+			final int half = size / 2;
+			while ( pos < half )
+			{
+				int child = 2 * pos + 1;
+				if ( child + 1 < size && radiiSquared[ child + 1 ] > radiiSquared[ child ] )
+					++child;
+				if ( r2 >= radiiSquared[ child ] )
+					break;
+				ids[ pos ] = ids[ child ];
+				radiiSquared[ pos ] = radiiSquared[ child ];
+				if ( updateIndex )
+					idToPos.put( ids[ pos ], pos );
+				pos = child;
+			}
+			ids[ pos ] = id;
+			radiiSquared[ pos ] = r2;
+			if ( updateIndex )
+				idToPos.put( id, pos );
+		}
+
+		private void move( final int from, final int to )
+		{
+			ids[ to ] = ids[ from ];
+			radiiSquared[ to ] = radiiSquared[ from ];
+			idToPos.put( ids[ to ], to );
+		}
+
+		private void ensureCapacity( final int capacity )
+		{
+			if ( capacity > ids.length )
+			{
+				final int newLength = Math.max( capacity, ids.length * 2 );
+				ids = Arrays.copyOf( ids, newLength );
+				radiiSquared = Arrays.copyOf( radiiSquared, newLength );
+			}
 		}
 	}
 }
@@ -40,6 +40,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import org.mastodon.app.metrics.Metrics;
+import org.mastodon.app.metrics.Timer;
 import org.mastodon.feature.FeatureModel;
 import org.mastodon.graph.ReadOnlyGraph;
 import org.mastodon.graph.io.RawGraphIO.FileIdToGraphMap;
@@ -47,16 +49,21 @@ import org.mastodon.graph.io.RawGraphIO.GraphToFileIdMap;
 import org.mastodon.labels.LabelSets;
 import org.mastodon.mamut.project.MamutProject;
 import org.mastodon.model.AbstractModel;
+import org.mastodon.model.BulkEditor;
+import org.mastodon.model.ConcurrentSpatioTemporalIndex;
+import org.mastodon.model.ParallelRebuildGraphListener;
+import org.mastodon.model.TrackIndex;
+import org.mastodon.model.UndoHistoryMonitor;
+import org.mastodon.model.VertexLabelIndex;
 import org.mastodon.model.tag.DefaultTagSetModel;
 import org.mastodon.model.tag.RawTagSetModelIO;
 import org.mastodon.model.tag.TagSetModel;
 import org.mastodon.properties.Property;
 import org.mastodon.spatial.SpatioTemporalIndex;
-import org.mastodon.spatial.SpatioTemporalIndexImp;
-import org.mastodon.spatial.SpatioTemporalIndexImpRebuilderThread;
 import org.mastodon.undo.GraphUndoRecorder;
 import org.mastodon.undo.Recorder;
 import org.mastodon.undo.UndoPointMarker;
+import org.scijava.listeners.Listeners;
 
 import net.imglib2.RealLocalizable;
 
@@ -87,12 +94,58 @@ public class Model extends AbstractModel< ModelGraph, Spot, Link > implements Un
 
 	private final ReentrantReadWriteLock lock;
 
-	private final GraphUndoRecorder< Spot, Link > undoRecorder;
+	private final List< Property< Spot > > vertexUndoableProperties;
+
+	private final List< Property< Link > > edgeUndoableProperties;
+
+	/**
+	 * Records the undo history.
+	 */
+	private UndoRecording undoRecording;
+
+	/**
+	 * Records the recent part of the undo history in parallel to
+	 * {@link #undoRecording}, from the undo point at which the history
+	 * exceeded half of its budget. Replaces {@link #undoRecording} when the
+	 * history exceeds the budget, which discards the older undo points. May
+	 * be {@code null}.
+	 */
+	private UndoRecording recentUndoRecording;
+
+	/**
+	 * System property to set the memory budget of the undo history, in
+	 * megabytes.
+	 */
+	public static final String UNDO_BUDGET_PROPERTY = "mastodon.undo.budget";
+
+	private static final long DEFAULT_UNDO_BUDGET_MB = 1024;
+
+	/**
+	 * Estimated size in bytes of one recorded change of a tag or label
+	 * property, whose values have variable size.
+	 */
+	private static final long VARIABLE_PROPERTY_BYTES = 32;
+
+	private static final Timer LOAD_TIMER = Metrics.timer( "project.load.model" );
+
+	private static final Timer SAVE_TIMER = Metrics.timer( "project.save.model" );
+
+	private static final Timer UNDO_TIMER = Metrics.timer( "undo.undo" );
+
+	private static final Timer REDO_TIMER = Metrics.timer( "undo.redo" );
+
+	private final UndoHistoryMonitor< Spot, Link > undoMonitor;
+
+	private final BulkEditor< Spot, Link > bulkEditor;
 
 	private final FeatureModel featureModel;
 
 	private final DefaultTagSetModel< Spot, Link > tagSetModel;
 
+	private final VertexLabelIndex< Spot, Link > labelIndex;
+
+	private final TrackIndex< Spot, Link > trackIndex;
+
 	private final String spaceUnits;
 
 	private final String timeUnits;
@@ -107,57 +160,80 @@ public class Model extends AbstractModel< ModelGraph, Spot, Link > implements Un
 		super( new ModelGraph() );
 		this.spaceUnits = spaceUnits;
 		this.timeUnits = timeUnits;
-		final SpatioTemporalIndexImp< Spot, Link > theIndex = new SpatioTemporalIndexImp<>( modelGraph, modelGraph.idmap().vertexIdBimap() );
 		/*
-		 * Every 1 second, rebuild spatial indices with more than 100
-		 * modifications
+		 * The spatial indices of the time-points are built concurrently, and
+		 * rebuilt when they have changed enough.
 		 */
-		new SpatioTemporalIndexImpRebuilderThread( "Rebuild spatial indices", theIndex, 100, 1000, true ).start();
+		final ConcurrentSpatioTemporalIndex< Spot, Link > theIndex = new ConcurrentSpatioTemporalIndex<>( modelGraph, modelGraph.idmap().vertexIdBimap() );
+		modelGraph.addVertexPositionListener( theIndex );
 		index = theIndex;
 		lock = modelGraph.getLock();
 
+		bulkEditor = new BulkEditor<>( lock, this, modelGraph );
+		modelGraph.addGraphListener( bulkEditor );
+
+		/*
+		 * The indices are rebuilt concurrently after loading or importing,
+		 * and after bulk edits.
+		 */
+		final ParallelRebuildGraphListener< Spot, Link > indicesListener = new ParallelRebuildGraphListener<>( modelGraph );
+		indicesListener.add( theIndex );
+		modelGraph.addGraphListener( bulkEditor.defer( indicesListener ) );
+
+		labelIndex = new VertexLabelIndex<>( modelGraph, modelGraph.idmap(), lock );
+		indicesListener.add( labelIndex );
+		modelGraph.addVertexLabelListener( labelIndex );
+
+		trackIndex = new TrackIndex<>( modelGraph, modelGraph.idmap(), lock );
+		indicesListener.add( trackIndex );
+
 		final int initialCapacity = 1024;
 
-		final List< Property< Spot > > vertexUndoableProperties = new ArrayList<>();
+		vertexUndoableProperties = new ArrayList<>();
 		vertexUndoableProperties.add( modelGraph.getVertexPool().positionProperty() );
 		vertexUndoableProperties.add( modelGraph.getVertexPool().covarianceProperty() );
 		vertexUndoableProperties.add( modelGraph.getVertexPool().boundingSphereRadiusSquProperty() );
 		vertexUndoableProperties.add( modelGraph.getVertexPool().labelProperty() );
 
-		final List< Property< Link > > edgeUndoableProperties = new ArrayList<>();
+		edgeUndoableProperties = new ArrayList<>();
 
 		featureModel = new FeatureModel();
 		tagSetModel = new DefaultTagSetModel<>( getGraph() );
-		vertexUndoableProperties.add(
-				new DefaultTagSetModel.SerialisationAccess< Spot, Link >( tagSetModel )
-				{
-					@Override
-					protected LabelSets< Spot, Integer > getVertexIdLabelSets()
-					{
-						return super.getVertexIdLabelSets();
-					}
-				}.getVertexIdLabelSets() );
-		edgeUndoableProperties.add(
-				new DefaultTagSetModel.SerialisationAccess< Spot, Link >( tagSetModel )
-				{
-					@Override
-					protected LabelSets< Link, Integer > getEdgeIdLabelSets()
-					{
-						return super.getEdgeIdLabelSets();
-					}
-				}.getEdgeIdLabelSets() );
-
-		undoRecorder = new GraphUndoRecorder<>(
-				initialCapacity,
-				modelGraph,
-				modelGraph.idmap(),
-				ModelSerializer.getInstance().getVertexSerializer(),
-				ModelSerializer.getInstance().getEdgeSerializer(),
-				vertexUndoableProperties,
-				edgeUndoableProperties );
-
-		final Recorder< DefaultTagSetModel.SetTagSetStructureUndoableEdit > recorder = undoRecorder.createGenericUndoableEditRecorder();
-		tagSetModel.setUndoRecorder( recorder );
+		tagSetModel.deferIndexUpdates( bulkEditor );
+		final LabelSets< Spot, Integer > vertexTagLabelSets = new DefaultTagSetModel.SerialisationAccess< Spot, Link >( tagSetModel )
+		{
+			@Override
+			protected LabelSets< Spot, Integer > getVertexIdLabelSets()
+			{
+				return super.getVertexIdLabelSets();
+			}
+		}.getVertexIdLabelSets();
+		final LabelSets< Link, Integer > edgeTagLabelSets = new DefaultTagSetModel.SerialisationAccess< Spot, Link >( tagSetModel )
+		{
+			@Override
+			protected LabelSets< Link, Integer > getEdgeIdLabelSets()
+			{
+				return super.getEdgeIdLabelSets();
+			}
+		}.getEdgeIdLabelSets();
+		vertexUndoableProperties.add( vertexTagLabelSets );
+		edgeUndoableProperties.add( edgeTagLabelSets );
+
+		undoRecording = new UndoRecording( initialCapacity, 0 );
+		tagSetModel.setUndoRecorder( this::recordTagSetEdit );
+		tagSetModel.setUndoPointMarker( this );
+
+		undoMonitor = new UndoHistoryMonitor<>(
+				ModelSerializer.getInstance().getVertexSerializer().getNumBytes(),
+				ModelSerializer.getInstance().getEdgeSerializer().getNumBytes(),
+				Long.getLong( UNDO_BUDGET_PROPERTY, DEFAULT_UNDO_BUDGET_MB ) << 20 );
+		undoMonitor.addVertexProperty( modelGraph.getVertexPool().positionProperty(), 3 * Double.BYTES );
+		undoMonitor.addVertexProperty( modelGraph.getVertexPool().covarianceProperty(), 6 * Double.BYTES );
+		undoMonitor.addVertexProperty( modelGraph.getVertexPool().boundingSphereRadiusSquProperty(), Double.BYTES );
+		undoMonitor.addVertexProperty( modelGraph.getVertexPool().labelProperty(), VARIABLE_PROPERTY_BYTES );
+		undoMonitor.addVertexProperty( vertexTagLabelSets, VARIABLE_PROPERTY_BYTES );
+		undoMonitor.addEdgeProperty( edgeTagLabelSets, VARIABLE_PROPERTY_BYTES );
+		modelGraph.addGraphListener( undoMonitor );
 	}
 
 	/**
@@ -172,6 +248,7 @@ public class Model extends AbstractModel< ModelGraph, Spot, Link > implements Un
 	 */
 	public FileIdToGraphMap< Spot, Link > loadRaw( final MamutProject.ProjectReader reader ) throws IOException
 	{
+		final long t0 = System.nanoTime();
 		final FileIdToGraphMap< Spot, Link > idmap = modelGraph.loadRaw( reader.getRawModelInputStream(), ModelSerializer.getInstance() );
 
 		tagSetModel.pauseListeners();
@@ -186,6 +263,7 @@ public class Model extends AbstractModel< ModelGraph, Spot, Link > implements Un
 		{}
 		tagSetModel.resumeListeners();
 
+		LOAD_TIMER.record( System.nanoTime() - t0 );
 		return idmap;
 	}
 
@@ -201,6 +279,7 @@ public class Model extends AbstractModel< ModelGraph, Spot, Link > implements Un
 	 */
 	public GraphToFileIdMap< Spot, Link > saveRaw( final MamutProject.ProjectWriter writer ) throws IOException
 	{
+		final long t0 = System.nanoTime();
 		final GraphToFileIdMap< Spot, Link > idmap = modelGraph.saveRaw( writer.getRawModelOutputStream(), ModelSerializer.getInstance() );
 
 		try (
@@ -210,6 +289,7 @@ public class Model extends AbstractModel< ModelGraph, Spot, Link > implements Un
 			RawTagSetModelIO.write( tagSetModel, idmap, oos );
 		}
 
+		SAVE_TIMER.record( System.nanoTime() - t0 );
 		return idmap;
 	}
 
@@ -223,16 +303,53 @@ public class Model extends AbstractModel< ModelGraph, Spot, Link > implements Un
 		return index;
 	}
 
+	/**
+	 * Exposes the index of spot labels of this model, used to search spots by
+	 * label.
+	 *
+	 * @return the spot label index.
+	 */
+	public VertexLabelIndex< Spot, Link > getSpotLabelIndex()
+	{
+		return labelIndex;
+	}
+
+	/**
+	 * Exposes the track index of this model, that maps spots to the track
+	 * (connected component) they belong to.
+	 *
+	 * @return the track index.
+	 */
+	public TrackIndex< Spot, Link > getTrackIndex()
+	{
+		return trackIndex;
+	}
+
+	/**
+	 * Exposes the bulk editor of this model, used to group large structural
+	 * edits into a single undo point and graph change notification.
+	 *
+	 * @return the bulk editor.
+	 */
+	public BulkEditor< Spot, Link > getBulkEditor()
+	{
+		return bulkEditor;
+	}
+
 	public void undo()
 	{
 		lock.writeLock().lock();
-		try
+		try (Timer.Stopwatch s = UNDO_TIMER.start())
 		{
-			undoRecorder.undo();
+			undoMonitor.setRecording( false );
+			discardRecentUndoRecording();
+			undoRecording.recorder.undo();
+			undoMonitor.undo();
 			modelGraph.notifyGraphChanged();
 		}
 		finally
 		{
+			undoMonitor.setRecording( true );
 			lock.writeLock().unlock();
 		}
 	}
@@ -240,13 +357,17 @@ public class Model extends AbstractModel< ModelGraph, Spot, Link > implements Un
 	public void redo()
 	{
 		lock.writeLock().lock();
-		try
+		try (Timer.Stopwatch s = REDO_TIMER.start())
 		{
-			undoRecorder.redo();
+			undoMonitor.setRecording( false );
+			discardRecentUndoRecording();
+			undoRecording.recorder.redo();
+			undoMonitor.redo();
 			modelGraph.notifyGraphChanged();
 		}
 		finally
 		{
+			undoMonitor.setRecording( true );
 			lock.writeLock().unlock();
 		}
 	}
@@ -254,7 +375,160 @@ public class Model extends AbstractModel< ModelGraph, Spot, Link > implements Un
 	@Override
 	public void setUndoPoint()
 	{
-		undoRecorder.setUndoPoint();
+		undoRecording.recorder.setUndoPoint();
+		final UndoRecording recent = recentUndoRecording;
+		if ( recent != null )
+			recent.recorder.setUndoPoint();
+		undoMonitor.setUndoPoint();
+		trimUndoHistory();
+		undoMonitor.checkBudget();
+	}
+
+	/**
+	 * Keeps the undo history within its budget. Starts recording the recent
+	 * history in parallel when the history exceeds half of the budget, and
+	 * discards the older undo points when it exceeds the budget.
+	 * <p>
+	 * Does nothing if the write lock cannot be acquired, e.g. because the
+	 * current thread holds the read lock. This is retried at the next undo
+	 * point.
+	 */
+	private void trimUndoHistory()
+	{
+		final long budget = undoMonitor.getBudget();
+		final long bytes = undoMonitor.getEstimatedBytes();
+		if ( bytes <= budget / 2 || !lock.writeLock().tryLock() )
+			return;
+		try
+		{
+			// The monitor is reset when the graph is rebuilt.
+			if ( recentUndoRecording != null && recentUndoRecording.firstUndoPoint > undoMonitor.getUndoPosition() )
+				discardRecentUndoRecording();
+			if ( bytes > budget && recentUndoRecording != null && recentUndoRecording.firstUndoPoint > 0 )
+			{
+				undoRecording.detach();
+				undoRecording = recentUndoRecording;
+				recentUndoRecording = null;
+				undoMonitor.discardOldest( undoRecording.firstUndoPoint );
+			}
+			if ( recentUndoRecording == null && undoMonitor.getEstimatedBytes() > budget / 2 )
+				recentUndoRecording = new UndoRecording( 1024, undoMonitor.getUndoPosition() );
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Stops recording the recent undo history in parallel. Undo and redo are
+	 * only replayed on {@link #undoRecording}, so the recent recording would
+	 * no longer match the model. Must be called with the write lock held.
+	 */
+	private void discardRecentUndoRecording()
+	{
+		if ( recentUndoRecording != null )
+		{
+			recentUndoRecording.detach();
+			recentUndoRecording = null;
+		}
+	}
+
+	private void recordTagSetEdit( final DefaultTagSetModel.SetTagSetStructureUndoableEdit edit )
+	{
+		undoRecording.tagSetRecorder.record( edit );
+		final UndoRecording recent = recentUndoRecording;
+		if ( recent != null )
+			recent.tagSetRecorder.record( edit );
+	}
+
+	/**
+	 * A {@link GraphUndoRecorder} of the model graph and the undoable
+	 * properties, and the listeners it registered, so that it can be
+	 * detached again.
+	 */
+	private class UndoRecording
+	{
+		final GraphUndoRecorder< Spot, Link > recorder;
+
+		final Recorder< DefaultTagSetModel.SetTagSetStructureUndoableEdit > tagSetRecorder;
+
+		/**
+		 * Index (in the {@link UndoHistoryMonitor}) of the first undo point
+		 * recorded by this recording.
+		 */
+		final int firstUndoPoint;
+
+		private final List< Runnable > detachers = new ArrayList<>();
+
+		UndoRecording( final int initialCapacity, final int firstUndoPoint )
+		{
+			this.firstUndoPoint = firstUndoPoint;
+			final List< Runnable > snapshots = new ArrayList<>();
+			for ( final Property< Spot > property : vertexUndoableProperties )
+			{
+				snapshots.add( snapshot( property.beforePropertyChangeListeners() ) );
+				snapshots.add( snapshot( property.propertyChangeListeners() ) );
+			}
+			for ( final Property< Link > property : edgeUndoableProperties )
+			{
+				snapshots.add( snapshot( property.beforePropertyChangeListeners() ) );
+				snapshots.add( snapshot( property.propertyChangeListeners() ) );
+			}
+			recorder = new GraphUndoRecorder<>(
+					initialCapacity,
+					modelGraph,
+					modelGraph.idmap(),
+					ModelSerializer.getInstance().getVertexSerializer(),
+					ModelSerializer.getInstance().getEdgeSerializer(),
+					vertexUndoableProperties,
+					edgeUndoableProperties );
+			tagSetRecorder = recorder.createGenericUndoableEditRecorder();
+			snapshots.forEach( Runnable::run );
+		}
+
+		/**
+		 * Returns a {@link Runnable} that, when run after the recorder was
+		 * created, registers in {@link #detachers} the removal of the
+		 * listeners the recorder added to the specified listeners.
+		 */
+		private < T > Runnable snapshot( final Listeners< T > listeners )
+		{
+			if ( !( listeners instanceof Listeners.List ) )
+				return () -> {};
+			final List< T > list = ( ( Listeners.List< T > ) listeners ).list;
+			final List< T > before = new ArrayList<>( list );
+			return () -> {
+				final List< T > added = new ArrayList<>( list );
+				added.removeAll( before );
+				detachers.add( () -> added.forEach( listeners::remove ) );
+			};
+		}
+
+		/**
+		 * Removes the recorder from the graph and the undoable properties, so
+		 * that it stops recording and can be garbage-collected.
+		 */
+		void detach()
+		{
+			modelGraph.removeGraphListener( recorder );
+			detachers.forEach( Runnable::run );
+			detachers.clear();
+		}
+	}
+
+	/**
+	 * Exposes the monitor of the memory used by the undo history of this
+	 * model. The oldest undo points are discarded to keep the history within
+	 * the budget set by the {@value #UNDO_BUDGET_PROPERTY} system property.
+	 * The listeners of the monitor are notified if this is not possible, e.g.
+	 * because a single undo point exceeds half of the budget.
+	 *
+	 * @return the undo history monitor.
+	 */
+	public UndoHistoryMonitor< Spot, Link > getUndoHistoryMonitor()
+	{
+		return undoMonitor;
 	}
 
 	public FeatureModel getFeatureModel()
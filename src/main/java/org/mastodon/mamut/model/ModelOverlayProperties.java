@@ -28,6 +28,8 @@
  */
 package org.mastodon.mamut.model;
 
+import org.mastodon.model.OptimisticReadWriteLock;
+import org.mastodon.model.TrackIndex;
 import org.mastodon.views.bdv.overlay.OverlayGraph;
 import org.mastodon.views.bdv.overlay.wrap.OverlayProperties;
 
@@ -42,12 +44,16 @@ public class ModelOverlayProperties implements OverlayProperties< Spot, Link >
 
 	private final BoundingSphereRadiusStatistics radiusStats;
 
+	private final TrackIndex< Spot, Link > trackIndex;
+
 	public ModelOverlayProperties(
 			final ModelGraph modelGraph,
-			final BoundingSphereRadiusStatistics radiusStats )
+			final BoundingSphereRadiusStatistics radiusStats,
+			final TrackIndex< Spot, Link > trackIndex )
 	{
 		this.modelGraph = modelGraph;
 		this.radiusStats = radiusStats;
+		this.trackIndex = trackIndex;
 	}
 
 	@Override
@@ -113,6 +119,26 @@ public class ModelOverlayProperties implements OverlayProperties< Spot, Link >
 	@Override
 	public double getMaxBoundingSphereRadiusSquared( final int timepoint )
 	{
+		/*
+		 * The statistics only change while the graph is write-locked, so an
+		 * optimistic read of the graph lock is enough if no writer interferes.
+		 */
+		final OptimisticReadWriteLock lock = modelGraph.getLock();
+		final long stamp = lock.tryOptimisticRead();
+		if ( stamp != 0 )
+		{
+			try
+			{
+				final double max = radiusStats.getMaxBoundingSphereRadiusSquared( timepoint );
+				if ( lock.validate( stamp ) )
+					return max;
+			}
+			catch ( final RuntimeException e )
+			{
+				// Inconsistent statistics, retry under the read lock.
+			}
+		}
+
 		radiusStats.readLock().lock();
 		try
 		{
@@ -124,6 +150,12 @@ public class ModelOverlayProperties implements OverlayProperties< Spot, Link >
 		}
 	}
 
+	@Override
+	public int getTrackId( final Spot v )
+	{
+		return trackIndex.getTrackId( v );
+	}
+
 	@Override
 	public Spot addVertex( final Spot ref )
 	{
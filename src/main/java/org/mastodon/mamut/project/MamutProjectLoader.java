@@ -0,0 +1,144 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.mamut.project;
+
+import java.io.IOException;
+
+import org.mastodon.app.metrics.Metrics;
+import org.mastodon.app.metrics.Timer;
+import org.mastodon.graph.io.RawGraphIO.FileIdToGraphMap;
+import org.mastodon.mamut.feature.MamutRawFeatureModelIO;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.util.DummySpimData;
+import org.scijava.Context;
+
+import bdv.spimdata.SpimDataMinimal;
+import bdv.spimdata.XmlIoSpimDataMinimal;
+import mpicbg.spim.data.SpimDataException;
+import mpicbg.spim.data.SpimDataIOException;
+import mpicbg.spim.data.generic.sequence.BasicViewSetup;
+
+/**
+ * Loads the image data and the model of a {@link MamutProject}. Shared by the
+ * GUI and by headless processing.
+ */
+public class MamutProjectLoader
+{
+	private static final Timer LOAD_SPIMDATA_TIMER = Metrics.timer( "project.load.imagedata" );
+
+	/**
+	 * Loads the image data of a project. Sets the space and time units of the
+	 * project if they are not set yet.
+	 *
+	 * @param project
+	 *            the project.
+	 * @param dummyIfMissing
+	 *            if {@code true}, a dummy dataset is returned if the image data
+	 *            file cannot be read, so that the user can fix its path.
+	 *            Otherwise, the error is thrown.
+	 * @return the image data.
+	 * @throws SpimDataException
+	 *             if a spim-data exception occurs while opening the spim-data
+	 *             XML file.
+	 */
+	public static SpimDataMinimal loadSpimData( final MamutProject project, final boolean dummyIfMissing ) throws SpimDataException
+	{
+		final long t0 = System.nanoTime();
+		final String spimDataXmlFilename = project.getDatasetXmlFile().getAbsolutePath();
+		SpimDataMinimal spimData = DummySpimData.tryCreate( project.getDatasetXmlFile().getName() );
+		if ( spimData == null )
+		{
+			try
+			{
+				spimData = new XmlIoSpimDataMinimal().load( spimDataXmlFilename );
+			}
+			catch ( final SpimDataIOException e )
+			{
+				if ( !dummyIfMissing )
+					throw e;
+				e.printStackTrace();
+				System.err.println( "Could not open image data file. Opening with dummy dataset. Please fix dataset path!" );
+				spimData = DummySpimData.tryCreate( "x=100 y=100 z=100 sx=1 sy=1 sz=1 t=10.dummy" );
+			}
+		}
+
+		/*
+		 * Try to read units from spimData is they are not present
+		 */
+		if ( project.getSpaceUnits() == null )
+		{
+			project.setSpaceUnits(
+					spimData.getSequenceDescription().getViewSetupsOrdered().stream()
+							.filter( BasicViewSetup::hasVoxelSize )
+							.map( setup -> setup.getVoxelSize().unit() )
+							.findFirst()
+							.orElse( "pixel" ) );
+		}
+		if ( project.getTimeUnits() == null )
+		{
+			project.setTimeUnits( "frame" );
+		}
+		LOAD_SPIMDATA_TIMER.record( System.nanoTime() - t0 );
+		return spimData;
+	}
+
+	/**
+	 * Loads the model of a project, with its features. If
+	 * {@code project.getProjectRoot() == null} this is a new project and the
+	 * model is empty.
+	 *
+	 * @param project
+	 *            the project. Its units must be set.
+	 * @param context
+	 *            the context providing the feature serialization services.
+	 * @return the model.
+	 * @throws IOException
+	 *             if the model or its features cannot be read, including if
+	 *             they refer to classes that are not available.
+	 */
+	public static Model loadModel( final MamutProject project, final Context context ) throws IOException
+	{
+		final Model model = new Model( project.getSpaceUnits(), project.getTimeUnits() );
+		if ( project.getProjectRoot() == null )
+			return model;
+
+		try (final MamutProject.ProjectReader reader = project.openForReading())
+		{
+			final FileIdToGraphMap< Spot, Link > idmap = model.loadRaw( reader );
+			MamutRawFeatureModelIO.deserialize( context, model, idmap, reader );
+		}
+		catch ( final ClassNotFoundException e )
+		{
+			throw new IOException( "Could not read the model of " + project.getProjectRoot() + ": " + e.getMessage(), e );
+		}
+		return model;
+	}
+}
@@ -35,7 +35,6 @@ import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.mastodon.graph.GraphChangeNotifier;
 import org.mastodon.graph.GraphIdBimap;
@@ -72,7 +71,7 @@ public class AbstractModelGraph<
 	 */
 	protected final PropertyMapSerializers< V > vertexPropertySerializers;
 
-	protected final ReentrantReadWriteLock lock;
+	protected final OptimisticReadWriteLock lock;
 
 	public AbstractModelGraph( final EP edgePool )
 	{
@@ -82,7 +81,13 @@ public class AbstractModelGraph<
 		vertexPool.linkModelGraph( g );
 		idmap = new GraphIdBimap<>( vertexPool, edgePool );
 		vertexPropertySerializers = new PropertyMapSerializers<>();
-		lock = new ReentrantReadWriteLock();
+		/*
+		 * Not fair: a fair lock makes a reader wait behind a queued writer,
+		 * which deadlocks when the holder of the read lock waits for workers
+		 * that take the read lock themselves. Short queries can use optimistic
+		 * reads instead, which never delay a waiting writer.
+		 */
+		lock = new OptimisticReadWriteLock();
 	}
 
 	/**
@@ -161,7 +166,7 @@ public class AbstractModelGraph<
 		return fileIdMap;
 	}
 
-	public ReentrantReadWriteLock getLock()
+	public OptimisticReadWriteLock getLock()
 	{
 		return lock;
 	}
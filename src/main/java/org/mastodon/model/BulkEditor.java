@@ -0,0 +1,451 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.mastodon.graph.Edge;
+import org.mastodon.graph.GraphChangeNotifier;
+import org.mastodon.graph.GraphListener;
+import org.mastodon.graph.Vertex;
+import org.mastodon.undo.UndoPointMarker;
+import org.scijava.listeners.Listeners;
+
+/**
+ * Groups large structural edits of a graph (deleting or re-parenting
+ * thousands of vertices, ...) into a single bulk edit.
+ * <p>
+ * A bulk edit is opened with {@link #begin()} and closed with
+ * {@link Edit#close()}, typically in a try-with-resources block:
+ *
+ * <pre>
+ * try (BulkEditor&lt; V, E &gt;.Edit edit = bulkEditor.begin())
+ * {
+ * 	for ( final V v : vertices )
+ * 		graph.remove( v );
+ * }
+ * </pre>
+ *
+ * While the bulk edit is open, the graph write lock is held.
+ * {@link BulkEditListener}s are notified when it starts, and can defer the
+ * maintenance of derived data structures until it finishes, instead of
+ * updating them for each added or removed object. Plain
+ * {@link GraphListener}s can be made to do so with {@link #defer}. When the outermost bulk
+ * edit is closed, a single undo point is set, listeners are notified with a
+ * {@link Summary} of the changes, and a single graph change is notified.
+ * <p>
+ * Bulk edits can be nested. Only the outermost one triggers notifications.
+ *
+ * @param <V>
+ *            the type of vertices.
+ * @param <E>
+ *            the type of edges.
+ */
+public class BulkEditor< V extends Vertex< E >, E extends Edge< V > > implements GraphListener< V, E >
+{
+	/**
+	 * Interface for listeners notified when bulk edits start and finish.
+	 */
+	public interface BulkEditListener
+	{
+		/**
+		 * Called when a bulk edit starts, with the graph write lock held.
+		 */
+		public void bulkEditStarted();
+
+		/**
+		 * Called when a bulk edit finishes, with the graph write lock held,
+		 * before the graph change is notified.
+		 *
+		 * @param summary
+		 *            the changes made during the bulk edit.
+		 */
+		public void bulkEditFinished( Summary summary );
+	}
+
+	/**
+	 * Counts of the objects added and removed during a bulk edit.
+	 */
+	public static class Summary
+	{
+		private final int verticesAdded;
+
+		private final int verticesRemoved;
+
+		private final int edgesAdded;
+
+		private final int edgesRemoved;
+
+		Summary( final int verticesAdded, final int verticesRemoved, final int edgesAdded, final int edgesRemoved )
+		{
+			this.verticesAdded = verticesAdded;
+			this.verticesRemoved = verticesRemoved;
+			this.edgesAdded = edgesAdded;
+			this.edgesRemoved = edgesRemoved;
+		}
+
+		public int getVerticesAdded()
+		{
+			return verticesAdded;
+		}
+
+		public int getVerticesRemoved()
+		{
+			return verticesRemoved;
+		}
+
+		public int getEdgesAdded()
+		{
+			return edgesAdded;
+		}
+
+		public int getEdgesRemoved()
+		{
+			return edgesRemoved;
+		}
+
+		@Override
+		public String toString()
+		{
+			return "+" + verticesAdded + "/-" + verticesRemoved + " vertices, +"
+					+ edgesAdded + "/-" + edgesRemoved + " edges";
+		}
+	}
+
+	/**
+	 * An open bulk edit. Closing it finishes the bulk edit and releases the
+	 * graph write lock.
+	 */
+	public class Edit implements AutoCloseable
+	{
+		private boolean closed = false;
+
+		private Edit()
+		{}
+
+		@Override
+		public void close()
+		{
+			if ( closed )
+				return;
+			closed = true;
+			finish();
+		}
+	}
+
+	private final ReentrantReadWriteLock lock;
+
+	private final UndoPointMarker undo;
+
+	private final GraphChangeNotifier notify;
+
+	private final Listeners.List< BulkEditListener > listeners = new Listeners.SynchronizedList<>();
+
+	private int depth = 0;
+
+	private int verticesAdded;
+
+	private int verticesRemoved;
+
+	private int edgesAdded;
+
+	private int edgesRemoved;
+
+	private Summary lastSummary;
+
+	/**
+	 * Creates a bulk editor. It must be registered as a {@link GraphListener}
+	 * of the graph to count changes.
+	 *
+	 * @param lock
+	 *            the graph read/write lock.
+	 * @param undo
+	 *            used to set an undo point when a bulk edit finishes.
+	 * @param notify
+	 *            is notified when a bulk edit finishes.
+	 */
+	public BulkEditor( final ReentrantReadWriteLock lock, final UndoPointMarker undo, final GraphChangeNotifier notify )
+	{
+		this.lock = lock;
+		this.undo = undo;
+		this.notify = notify;
+	}
+
+	/**
+	 * Starts a bulk edit, acquiring the graph write lock.
+	 *
+	 * @return the bulk edit, to be closed when done.
+	 */
+	public Edit begin()
+	{
+		lock.writeLock().lock();
+		boolean started = false;
+		try
+		{
+			if ( depth++ == 0 )
+			{
+				verticesAdded = 0;
+				verticesRemoved = 0;
+				edgesAdded = 0;
+				edgesRemoved = 0;
+				notifyStarted();
+			}
+			started = true;
+		}
+		finally
+		{
+			if ( !started )
+			{
+				depth--;
+				lock.writeLock().unlock();
+			}
+		}
+		return new Edit();
+	}
+
+	/**
+	 * Notifies listeners that a bulk edit started. If a listener throws, the
+	 * listeners notified before it are finished with an empty summary, so that
+	 * none of them stays in bulk edit mode.
+	 */
+	private void notifyStarted()
+	{
+		final List< BulkEditListener > started = new ArrayList<>();
+		try
+		{
+			for ( final BulkEditListener l : listeners.list )
+			{
+				l.bulkEditStarted();
+				started.add( l );
+			}
+		}
+		catch ( final RuntimeException | Error e )
+		{
+			final Summary empty = new Summary( 0, 0, 0, 0 );
+			for ( final BulkEditListener l : started )
+			{
+				try
+				{
+					l.bulkEditFinished( empty );
+				}
+				catch ( final RuntimeException | Error suppressed )
+				{
+					e.addSuppressed( suppressed );
+				}
+			}
+			throw e;
+		}
+	}
+
+	private void finish()
+	{
+		try
+		{
+			if ( depth == 1 )
+			{
+				undo.setUndoPoint();
+				final Summary summary = new Summary( verticesAdded, verticesRemoved, edgesAdded, edgesRemoved );
+				lastSummary = summary;
+				listeners.list.forEach( l -> l.bulkEditFinished( summary ) );
+				notify.notifyGraphChanged();
+			}
+		}
+		finally
+		{
+			depth--;
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns whether a bulk edit is in progress. Must be called with the
+	 * graph lock held.
+	 *
+	 * @return {@code true} if a bulk edit is in progress.
+	 */
+	public boolean isActive()
+	{
+		return depth > 0;
+	}
+
+	/**
+	 * Returns the summary of the last finished bulk edit.
+	 *
+	 * @return the summary, or {@code null} if no bulk edit finished yet.
+	 */
+	public Summary getLastSummary()
+	{
+		return lastSummary;
+	}
+
+	public Listeners< BulkEditListener > listeners()
+	{
+		return listeners;
+	}
+
+	/**
+	 * Wraps a {@link GraphListener} so that it is not notified of each object
+	 * added or removed during a bulk edit. Instead, its
+	 * {@link GraphListener#graphRebuilt()} is called once when a bulk edit
+	 * that changed the graph finishes. Outside of bulk edits, events are
+	 * forwarded unchanged.
+	 * <p>
+	 * This suits listeners that maintain derived data (indices, views) and can
+	 * rebuild it from the graph faster than they can apply thousands of
+	 * single-object updates. These data are stale while the bulk edit is open.
+	 * <p>
+	 * The returned listener is registered as a {@link BulkEditListener} of
+	 * this editor. It must be added as a graph listener in place of the
+	 * wrapped one. When it is no longer needed, it must be removed from the
+	 * graph listeners and from {@link #listeners()}.
+	 *
+	 * @param listener
+	 *            the listener to wrap.
+	 * @return the deferring listener.
+	 */
+	public DeferringGraphListener defer( final GraphListener< V, E > listener )
+	{
+		final DeferringGraphListener deferring = new DeferringGraphListener( listener );
+		listeners.add( deferring );
+		return deferring;
+	}
+
+	/**
+	 * A {@link GraphListener} that ignores the events received during bulk
+	 * edits, and rebuilds the listener it wraps when a bulk edit finishes.
+	 *
+	 * @see BulkEditor#defer(GraphListener)
+	 */
+	public class DeferringGraphListener implements GraphListener< V, E >, BulkEditListener
+	{
+		private final GraphListener< V, E > listener;
+
+		private boolean changed = false;
+
+		private DeferringGraphListener( final GraphListener< V, E > listener )
+		{
+			this.listener = listener;
+		}
+
+		@Override
+		public void bulkEditStarted()
+		{
+			changed = false;
+		}
+
+		@Override
+		public void bulkEditFinished( final Summary summary )
+		{
+			if ( changed )
+			{
+				changed = false;
+				listener.graphRebuilt();
+			}
+		}
+
+		@Override
+		public void graphRebuilt()
+		{
+			if ( depth > 0 )
+				changed = true;
+			else
+				listener.graphRebuilt();
+		}
+
+		@Override
+		public void vertexAdded( final V vertex )
+		{
+			if ( depth > 0 )
+				changed = true;
+			else
+				listener.vertexAdded( vertex );
+		}
+
+		@Override
+		public void vertexRemoved( final V vertex )
+		{
+			if ( depth > 0 )
+				changed = true;
+			else
+				listener.vertexRemoved( vertex );
+		}
+
+		@Override
+		public void edgeAdded( final E edge )
+		{
+			if ( depth > 0 )
+				changed = true;
+			else
+				listener.edgeAdded( edge );
+		}
+
+		@Override
+		public void edgeRemoved( final E edge )
+		{
+			if ( depth > 0 )
+				changed = true;
+			else
+				listener.edgeRemoved( edge );
+		}
+	}
+
+	@Override
+	public void graphRebuilt()
+	{}
+
+	@Override
+	public void vertexAdded( final V vertex )
+	{
+		if ( depth > 0 )
+			verticesAdded++;
+	}
+
+	@Override
+	public void vertexRemoved( final V vertex )
+	{
+		if ( depth > 0 )
+			verticesRemoved++;
+	}
+
+	@Override
+	public void edgeAdded( final E edge )
+	{
+		if ( depth > 0 )
+			edgesAdded++;
+	}
+
+	@Override
+	public void edgeRemoved( final E edge )
+	{
+		if ( depth > 0 )
+			edgesRemoved++;
+	}
+}
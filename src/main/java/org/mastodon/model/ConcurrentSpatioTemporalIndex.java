@@ -0,0 +1,380 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.model;
+
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.mastodon.RefPool;
+import org.mastodon.collection.RefCollections;
+import org.mastodon.collection.RefList;
+import org.mastodon.graph.Edge;
+import org.mastodon.graph.GraphListener;
+import org.mastodon.graph.ReadOnlyGraph;
+import org.mastodon.graph.Vertex;
+import org.mastodon.spatial.HasTimepoint;
+import org.mastodon.spatial.SpatialIndex;
+import org.mastodon.spatial.SpatialIndexImp;
+import org.mastodon.spatial.SpatioTemporalIndex;
+import org.mastodon.spatial.VertexPositionListener;
+
+import gnu.trove.map.hash.TIntObjectHashMap;
+import net.imglib2.RealLocalizable;
+
+/**
+ * A {@link SpatioTemporalIndex} that keeps one {@link SpatialIndexImp} (a
+ * kd-tree with incremental additions and removals) per time-point, and builds
+ * them concurrently.
+ * <p>
+ * When the graph is rebuilt (after loading, importing or a bulk edit), the
+ * vertices are grouped by time-point in a single pass, then the kd-tree of
+ * each time-point is built in its own task on the common
+ * {@link ForkJoinPool}. {@link #graphRebuilt()} returns without waiting for
+ * them. Each time-point is marked {@link #isReady(int) ready} when its task
+ * finishes. {@link #getSpatialIndex(int)} waits for the task of the requested
+ * time-point only, so the first time-point can be displayed before the others
+ * are built.
+ * <p>
+ * Incremental changes wait for the task of the time-point they change. The
+ * kd-tree of a time-point is rebuilt when the number of changes since the last
+ * build exceeds a quarter of its size.
+ * <p>
+ * This index must be registered as a {@link GraphListener} and as a
+ * {@link VertexPositionListener} of the graph.
+ *
+ * @param <V>
+ *            the type of vertices in the graph.
+ * @param <E>
+ *            the type of edges in the graph.
+ */
+public class ConcurrentSpatioTemporalIndex< V extends Vertex< E > & RealLocalizable & HasTimepoint, E extends Edge< V > >
+		implements SpatioTemporalIndex< V >, GraphListener< V, E >, VertexPositionListener< V >
+{
+	/**
+	 * Minimal number of changes to the kd-tree of a time-point before it is
+	 * rebuilt.
+	 */
+	private static final int MIN_REBUILD_MODIFICATIONS = 100;
+
+	private final ReadOnlyGraph< V, E > graph;
+
+	private final RefPool< V > vertexPool;
+
+	private final ReentrantReadWriteLock lock;
+
+	/**
+	 * Maps time-point to its index. Guarded by {@link #lock}.
+	 */
+	private final TIntObjectHashMap< TimepointIndex > timepointToIndex;
+
+	/**
+	 * The spatial index of one time-point, possibly still being built.
+	 */
+	private class TimepointIndex
+	{
+		private final ForkJoinTask< SpatialIndexImp< V > > build;
+
+		/**
+		 * Set when the build task finishes.
+		 */
+		private volatile SpatialIndexImp< V > index;
+
+		/**
+		 * Builds the index of the specified vertices in a fork-join task.
+		 */
+		TimepointIndex( final RefList< V > vertices )
+		{
+			build = ForkJoinPool.commonPool().submit( () -> {
+				final SpatialIndexImp< V > built = new SpatialIndexImp<>( vertices, vertexPool );
+				index = built;
+				return built;
+			} );
+		}
+
+		/**
+		 * Creates an empty index.
+		 */
+		TimepointIndex()
+		{
+			build = null;
+			index = new SpatialIndexImp<>( RefCollections.createRefList( graph.vertices() ), vertexPool );
+		}
+
+		boolean isReady()
+		{
+			return index != null;
+		}
+
+		/**
+		 * Returns the index, waiting for its build task to finish if needed.
+		 */
+		SpatialIndexImp< V > get()
+		{
+			final SpatialIndexImp< V > i = index;
+			return i != null ? i : build.join();
+		}
+	}
+
+	/**
+	 * Creates an index of the vertices of the specified graph.
+	 *
+	 * @param graph
+	 *            the graph.
+	 * @param vertexPool
+	 *            the pool of the graph vertices.
+	 */
+	public ConcurrentSpatioTemporalIndex( final ReadOnlyGraph< V, E > graph, final RefPool< V > vertexPool )
+	{
+		this.graph = graph;
+		this.vertexPool = vertexPool;
+		this.lock = new ReentrantReadWriteLock();
+		this.timepointToIndex = new TIntObjectHashMap<>();
+		graphRebuilt();
+	}
+
+	/**
+	 * Returns whether the spatial index of the specified time-point is built.
+	 *
+	 * @param timepoint
+	 *            the time-point.
+	 * @return {@code true} if {@link #getSpatialIndex(int)} does not have to
+	 *         wait for the index to be built.
+	 */
+	public boolean isReady( final int timepoint )
+	{
+		lock.readLock().lock();
+		try
+		{
+			final TimepointIndex index = timepointToIndex.get( timepoint );
+			return index == null || index.isReady();
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Waits until the spatial indices of all time-points are built.
+	 */
+	public void awaitReady()
+	{
+		lock.readLock().lock();
+		try
+		{
+			timepointToIndex.forEachValue( index -> {
+				index.get();
+				return true;
+			} );
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Iterates over all vertices of the graph, which are the vertices of this
+	 * index.
+	 */
+	@Override
+	public Iterator< V > iterator()
+	{
+		return graph.vertices().iterator();
+	}
+
+	@Override
+	public Lock readLock()
+	{
+		return lock.readLock();
+	}
+
+	@Override
+	public SpatialIndex< V > getSpatialIndex( final int timepoint )
+	{
+		lock.readLock().lock();
+		try
+		{
+			final TimepointIndex index = timepointToIndex.get( timepoint );
+			return index == null
+					? new SpatialIndexImp<>( RefCollections.createRefList( graph.vertices() ), vertexPool )
+					: index.get();
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns a spatial index of the vertices of a range of time-points. It is
+	 * built on each call.
+	 */
+	@Override
+	public SpatialIndex< V > getSpatialIndex( final int fromTimepoint, final int toTimepoint )
+	{
+		lock.readLock().lock();
+		try
+		{
+			final RefList< V > vertices = RefCollections.createRefList( graph.vertices() );
+			for ( int t = fromTimepoint; t <= toTimepoint; ++t )
+			{
+				final TimepointIndex index = timepointToIndex.get( t );
+				if ( index != null )
+					for ( final V v : index.get() )
+						vertices.add( v );
+			}
+			return new SpatialIndexImp<>( vertices, vertexPool );
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void graphRebuilt()
+	{
+		final TIntObjectHashMap< RefList< V > > timepointToVertices = new TIntObjectHashMap<>();
+		for ( final V v : graph.vertices() )
+		{
+			final int t = v.getTimepoint();
+			RefList< V > vertices = timepointToVertices.get( t );
+			if ( vertices == null )
+			{
+				vertices = RefCollections.createRefList( graph.vertices() );
+				timepointToVertices.put( t, vertices );
+			}
+			vertices.add( v );
+		}
+
+		lock.writeLock().lock();
+		try
+		{
+			/*
+			 * Tasks of the previous build may still run. Their results are
+			 * discarded.
+			 */
+			timepointToIndex.clear();
+			timepointToVertices.forEachEntry( ( t, vertices ) -> {
+				timepointToIndex.put( t, new TimepointIndex( vertices ) );
+				return true;
+			} );
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void vertexAdded( final V vertex )
+	{
+		lock.writeLock().lock();
+		try
+		{
+			final int t = vertex.getTimepoint();
+			TimepointIndex index = timepointToIndex.get( t );
+			if ( index == null )
+			{
+				index = new TimepointIndex();
+				timepointToIndex.put( t, index );
+			}
+			final SpatialIndexImp< V > si = index.get();
+			si.add( vertex );
+			rebuildIfNeeded( si );
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void vertexRemoved( final V vertex )
+	{
+		lock.writeLock().lock();
+		try
+		{
+			final TimepointIndex index = timepointToIndex.get( vertex.getTimepoint() );
+			if ( index != null )
+			{
+				final SpatialIndexImp< V > si = index.get();
+				si.remove( vertex );
+				rebuildIfNeeded( si );
+			}
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void vertexPositionChanged( final V vertex )
+	{
+		lock.writeLock().lock();
+		try
+		{
+			final TimepointIndex index = timepointToIndex.get( vertex.getTimepoint() );
+			if ( index != null )
+			{
+				final SpatialIndexImp< V > si = index.get();
+				si.remove( vertex );
+				si.add( vertex );
+				rebuildIfNeeded( si );
+			}
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void edgeAdded( final E edge )
+	{}
+
+	@Override
+	public void edgeRemoved( final E edge )
+	{}
+
+	/**
+	 * Rebuilds the kd-tree of a time-point if it changed a lot since it was
+	 * built. Must be called with the write lock held.
+	 */
+	private static void rebuildIfNeeded( final SpatialIndexImp< ? > index )
+	{
+		if ( index.modCount() >= Math.max( MIN_REBUILD_MODIFICATIONS, index.size() / 4 ) )
+			index.rebuild();
+	}
+}
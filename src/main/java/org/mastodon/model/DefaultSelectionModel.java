@@ -28,7 +28,6 @@
  */
 package org.mastodon.model;
 
-import java.util.BitSet;
 import java.util.Collection;
 
 import org.mastodon.collection.RefCollections;
@@ -38,8 +37,11 @@ import org.mastodon.graph.GraphIdBimap;
 import org.mastodon.graph.GraphListener;
 import org.mastodon.graph.ListenableReadOnlyGraph;
 import org.mastodon.graph.Vertex;
+import org.mastodon.util.PersistentBitSet;
 import org.scijava.listeners.Listeners;
 
+import gnu.trove.set.hash.TIntHashSet;
+
 /**
  * A class that manages a selection of vertices and edges of a graph.
  * <p>
@@ -48,7 +50,16 @@ import org.scijava.listeners.Listeners;
  * this class is later removed from the graph, the
  * {@link #getSelectedVertices()} method will not return it.
  * <p>
- * TODO: less severe synchronization
+ * The selected state is stored in {@link PersistentBitSet}s indexed by vertex
+ * and edge ids. Modifications are synchronized, and only mark the published
+ * snapshot of the bits as stale. Readers ({@link #isSelected(Vertex)},
+ * {@link #isSelected(Edge)}, {@link #getSnapshot()}, etc.) read the current
+ * snapshot without locking. Only the first read after a modification
+ * synchronizes, to build a new snapshot. While listeners are paused,
+ * {@link #isSelected(Vertex)} and {@link #isSelected(Edge)} read modified bits
+ * directly from the builders instead, and the snapshot is published once when
+ * the listeners are resumed. This way, a loop that alternates modifications
+ * and reads builds only one snapshot if it pauses the listeners.
  *
  * @author Tobias Pietzsch
  *
@@ -64,21 +75,63 @@ public class DefaultSelectionModel< V extends Vertex< E >, E extends Edge< V > >
 
 	private final GraphIdBimap< V, E > idmap;
 
-	private final RefSet< V > selectedVertices;
+	/**
+	 * Accumulates modifications of the vertex selection. Only accessed while
+	 * holding the monitor.
+	 */
+	private final PersistentBitSet.Builder vertexBitsBuilder;
 
-	private final RefSet< E > selectedEdges;
+	/**
+	 * Accumulates modifications of the edge selection. Only accessed while
+	 * holding the monitor.
+	 */
+	private final PersistentBitSet.Builder edgeBitsBuilder;
 
-	private final BitSet vertexBits;
+	/**
+	 * The last published state of the selection. May be out of date if
+	 * {@link #dirty} is set.
+	 */
+	private volatile SelectionSnapshot< V, E > snapshot;
 
-	private final BitSet edgeBits;
+	/**
+	 * Is <code>true</code> if the bits builders were modified since
+	 * {@link #snapshot} was published.
+	 */
+	private volatile boolean dirty;
 
 	private final Listeners.List< SelectionListener > listeners;
 
 	/**
-	 * If <code>false</code>, listeners will not be notified when a
-	 * selection-change event happens.
+	 * Maximum number of vertices and edges recorded in a
+	 * {@link SelectionChange}. Larger changes are reported as
+	 * {@link SelectionChange#INCOMPLETE}.
+	 */
+	private static final int MAX_RECORDED_CHANGES = 100_000;
+
+	/**
+	 * Nesting depth of {@link #pauseListeners()}. Listeners are only notified
+	 * when this is {@code 0}.
+	 */
+	private int pauseDepth;
+
+	/*
+	 * Net change since the last notification. Only accessed while holding
+	 * the monitor.
+	 */
+
+	private final TIntHashSet addedVertexIds;
+
+	private final TIntHashSet removedVertexIds;
+
+	private final TIntHashSet addedEdgeIds;
+
+	private final TIntHashSet removedEdgeIds;
+
+	/**
+	 * Is <code>true</code> if the net change since the last notification
+	 * exceeded {@link #MAX_RECORDED_CHANGES}.
 	 */
-	private boolean emitEvents;
+	private boolean changeIncomplete;
 
 	/**
 	 * Is <code>true</code> if a selection-change event happened while the
@@ -102,13 +155,18 @@ public class DefaultSelectionModel< V extends Vertex< E >, E extends Edge< V > >
 	{
 		this.graph = graph;
 		this.idmap = idmap;
-		selectedVertices = RefCollections.createRefSet( graph.vertices() );
-		selectedEdges = RefCollections.createRefSet( graph.edges() );
-		vertexBits = new BitSet();
-		edgeBits = new BitSet();
+		vertexBitsBuilder = PersistentBitSet.EMPTY.builder();
+		edgeBitsBuilder = PersistentBitSet.EMPTY.builder();
+		snapshot = new SelectionSnapshot<>( idmap, PersistentBitSet.EMPTY, PersistentBitSet.EMPTY );
+		dirty = false;
 		listeners = new Listeners.SynchronizedList<>();
-		emitEvents = true;
+		addedVertexIds = new TIntHashSet();
+		removedVertexIds = new TIntHashSet();
+		addedEdgeIds = new TIntHashSet();
+		removedEdgeIds = new TIntHashSet();
+		pauseDepth = 0;
 		shouldEmitEvent = false;
+		changeIncomplete = false;
 	}
 
 	/**
@@ -119,9 +177,17 @@ public class DefaultSelectionModel< V extends Vertex< E >, E extends Edge< V > >
 	 * @return {@code true} if specified vertex is selected.
 	 */
 	@Override
-	public synchronized boolean isSelected( final V v )
+	public boolean isSelected( final V v )
 	{
-		return vertexBits.get( idmap.getVertexId( v ) );
+		if ( dirty )
+		{
+			synchronized ( this )
+			{
+				if ( pauseDepth > 0 )
+					return vertexBitsBuilder.get( idmap.getVertexId( v ) );
+			}
+		}
+		return currentSnapshot().isSelected( v );
 	}
 
 	/**
@@ -132,9 +198,17 @@ public class DefaultSelectionModel< V extends Vertex< E >, E extends Edge< V > >
 	 * @return {@code true} if specified edge is selected.
 	 */
 	@Override
-	public synchronized boolean isSelected( final E e )
+	public boolean isSelected( final E e )
 	{
-		return edgeBits.get( idmap.getEdgeId( e ) );
+		if ( dirty )
+		{
+			synchronized ( this )
+			{
+				if ( pauseDepth > 0 )
+					return edgeBitsBuilder.get( idmap.getEdgeId( e ) );
+			}
+		}
+		return currentSnapshot().isSelected( e );
 	}
 
 	/**
@@ -148,14 +222,11 @@ public class DefaultSelectionModel< V extends Vertex< E >, E extends Edge< V > >
 	@Override
 	public synchronized void setSelected( final V v, final boolean selected )
 	{
-		if ( isSelected( v ) != selected )
+		final int id = idmap.getVertexId( v );
+		if ( vertexBitsBuilder.set( id, selected ) )
 		{
-			vertexBits.set( idmap.getVertexId( v ), selected );
-			if ( selected )
-				selectedVertices.add( v );
-			else
-				selectedVertices.remove( v );
-			notifyListeners();
+			record( addedVertexIds, removedVertexIds, id, selected );
+			invalidateAndNotify();
 		}
 	}
 
@@ -170,14 +241,11 @@ public class DefaultSelectionModel< V extends Vertex< E >, E extends Edge< V > >
 	@Override
 	public synchronized void setSelected( final E e, final boolean selected )
 	{
-		if ( isSelected( e ) != selected )
+		final int id = idmap.getEdgeId( e );
+		if ( edgeBitsBuilder.set( id, selected ) )
 		{
-			edgeBits.set( idmap.getEdgeId( e ), selected );
-			if ( selected )
-				selectedEdges.add( e );
-			else
-				selectedEdges.remove( e );
-			notifyListeners();
+			record( addedEdgeIds, removedEdgeIds, id, selected );
+			invalidateAndNotify();
 		}
 	}
 
@@ -190,7 +258,11 @@ public class DefaultSelectionModel< V extends Vertex< E >, E extends Edge< V > >
 	@Override
 	public synchronized void toggle( final V v )
 	{
-		setSelected( v, !isSelected( v ) );
+		final int id = idmap.getVertexId( v );
+		final boolean selected = !vertexBitsBuilder.get( id );
+		vertexBitsBuilder.set( id, selected );
+		record( addedVertexIds, removedVertexIds, id, selected );
+		invalidateAndNotify();
 	}
 
 	/**
@@ -202,7 +274,11 @@ public class DefaultSelectionModel< V extends Vertex< E >, E extends Edge< V > >
 	@Override
 	public synchronized void toggle( final E e )
 	{
-		setSelected( e, !isSelected( e ) );
+		final int id = idmap.getEdgeId( e );
+		final boolean selected = !edgeBitsBuilder.get( id );
+		edgeBitsBuilder.set( id, selected );
+		record( addedEdgeIds, removedEdgeIds, id, selected );
+		invalidateAndNotify();
 	}
 
 	/**
@@ -217,22 +293,19 @@ public class DefaultSelectionModel< V extends Vertex< E >, E extends Edge< V > >
 	@Override
 	public synchronized boolean setEdgesSelected( final Collection< E > edges, final boolean selected )
 	{
+		boolean changed = false;
 		for ( final E e : edges )
-			edgeBits.set( idmap.getEdgeId( e ), selected );
-		if ( selected )
 		{
-			final boolean changed = selectedEdges.addAll( edges );
-			if ( changed )
-				notifyListeners();
-			return changed;
-		}
-		else
-		{
-			final boolean changed = selectedEdges.removeAll( edges );
-			if ( changed )
-				notifyListeners();
-			return changed;
+			final int id = idmap.getEdgeId( e );
+			if ( edgeBitsBuilder.set( id, selected ) )
+			{
+				record( addedEdgeIds, removedEdgeIds, id, selected );
+				changed = true;
+			}
 		}
+		if ( changed )
+			invalidateAndNotify();
+		return changed;
 	}
 
 	/**
@@ -247,22 +320,19 @@ public class DefaultSelectionModel< V extends Vertex< E >, E extends Edge< V > >
 	@Override
 	public synchronized boolean setVerticesSelected( final Collection< V > vertices, final boolean selected )
 	{
+		boolean changed = false;
 		for ( final V v : vertices )
-			vertexBits.set( idmap.getVertexId( v ), selected );
-		if ( selected )
 		{
-			final boolean changed = selectedVertices.addAll( vertices );
-			if ( changed )
-				notifyListeners();
-			return changed;
-		}
-		else
-		{
-			final boolean changed = selectedVertices.removeAll( vertices );
-			if ( changed )
-				notifyListeners();
-			return changed;
+			final int id = idmap.getVertexId( v );
+			if ( vertexBitsBuilder.set( id, selected ) )
+			{
+				record( addedVertexIds, removedVertexIds, id, selected );
+				changed = true;
+			}
 		}
+		if ( changed )
+			invalidateAndNotify();
+		return changed;
 	}
 
 	/**
@@ -274,14 +344,15 @@ public class DefaultSelectionModel< V extends Vertex< E >, E extends Edge< V > >
 	@Override
 	public synchronized boolean clearSelection()
 	{
-		vertexBits.clear();
-		edgeBits.clear();
-		if ( selectedEdges.isEmpty() && selectedVertices.isEmpty() )
-			return false;
-		selectedEdges.clear();
-		selectedVertices.clear();
-		notifyListeners();
-		return true;
+		final SelectionSnapshot< V, E > s = publish();
+		for ( int id = s.nextSelectedVertexId( 0 ); id >= 0 && !changeIncomplete; id = s.nextSelectedVertexId( id + 1 ) )
+			record( addedVertexIds, removedVertexIds, id, false );
+		for ( int id = s.nextSelectedEdgeId( 0 ); id >= 0 && !changeIncomplete; id = s.nextSelectedEdgeId( id + 1 ) )
+			record( addedEdgeIds, removedEdgeIds, id, false );
+		final boolean changed = vertexBitsBuilder.clear() | edgeBitsBuilder.clear();
+		if ( changed )
+			invalidateAndNotify();
+		return changed;
 	}
 
 	/**
@@ -290,10 +361,12 @@ public class DefaultSelectionModel< V extends Vertex< E >, E extends Edge< V > >
 	 * @return a <b>new</b> {@link RefSet} containing the selected edges.
 	 */
 	@Override
-	public synchronized RefSet< E > getSelectedEdges()
+	public RefSet< E > getSelectedEdges()
 	{
-		final RefSet< E > set = RefCollections.createRefSet( graph.edges() );
-		set.addAll( selectedEdges );
+		final SelectionSnapshot< V, E > s = currentSnapshot();
+		final RefSet< E > set = RefCollections.createRefSet( graph.edges(), s.numSelectedEdges() );
+		for ( final E e : s.edges() )
+			set.add( e );
 		return set;
 	}
 
@@ -303,29 +376,79 @@ public class DefaultSelectionModel< V extends Vertex< E >, E extends Edge< V > >
 	 * @return a <b>new</b> {@link RefSet} containing the selected vertices.
 	 */
 	@Override
-	public synchronized RefSet< V > getSelectedVertices()
+	public RefSet< V > getSelectedVertices()
 	{
-		final RefSet< V > set = RefCollections.createRefSet( graph.vertices() );
-		set.addAll( selectedVertices );
+		final SelectionSnapshot< V, E > s = currentSnapshot();
+		final RefSet< V > set = RefCollections.createRefSet( graph.vertices(), s.numSelectedVertices() );
+		for ( final V v : s.vertices() )
+			set.add( v );
 		return set;
 	}
 
+	/**
+	 * Get a read-only view of the current selection. This does not copy the
+	 * selection, and the returned snapshot is not affected by later
+	 * modifications of the selection.
+	 *
+	 * @return the current selection snapshot.
+	 */
+	public SelectionSnapshot< V, E > getSnapshot()
+	{
+		return currentSnapshot();
+	}
+
 	@Override
 	public boolean isEmpty()
 	{
-		return selectedVertices.isEmpty() && selectedEdges.isEmpty();
+		return currentSnapshot().isEmpty();
 	}
 
 	@Override
 	public String toString()
 	{
+		final SelectionSnapshot< V, E > s = currentSnapshot();
 		final StringBuilder sb = new StringBuilder();
 		sb.append( super.toString() );
-		sb.append( "\nVertices: " + selectedVertices );
-		sb.append( "\nEdges:    " + selectedEdges );
+		sb.append( "\nVertices: " + s.numSelectedVertices() );
+		sb.append( "\nEdges:    " + s.numSelectedEdges() );
 		return sb.toString();
 	}
 
+	/**
+	 * Mark the published snapshot as out of date, and notify listeners. Must
+	 * be called while holding the monitor.
+	 */
+	private void invalidateAndNotify()
+	{
+		dirty = true;
+		notifyListeners();
+	}
+
+	/**
+	 * Get an up-to-date snapshot. Only synchronizes if the selection was
+	 * modified since the last snapshot was published.
+	 */
+	private SelectionSnapshot< V, E > currentSnapshot()
+	{
+		return dirty ? publish() : snapshot;
+	}
+
+	/**
+	 * Publish the current state of the bits builders as a new snapshot, if it
+	 * was modified since the last snapshot was published.
+	 *
+	 * @return the published snapshot.
+	 */
+	private synchronized SelectionSnapshot< V, E > publish()
+	{
+		if ( dirty )
+		{
+			snapshot = new SelectionSnapshot<>( idmap, vertexBitsBuilder.build(), edgeBitsBuilder.build() );
+			dirty = false;
+		}
+		return snapshot;
+	}
+
 	/*
 	 * GraphListener
 	 */
@@ -362,31 +485,95 @@ public class DefaultSelectionModel< V extends Vertex< E >, E extends Edge< V > >
 		return listeners;
 	}
 
+	/**
+	 * Record a change of the selected state of the object with the specified
+	 * id in the net change since the last notification.
+	 */
+	private void record( final TIntHashSet added, final TIntHashSet removed, final int id, final boolean selected )
+	{
+		if ( changeIncomplete )
+			return;
+		if ( selected )
+		{
+			if ( !removed.remove( id ) )
+				added.add( id );
+		}
+		else
+		{
+			if ( !added.remove( id ) )
+				removed.add( id );
+		}
+		if ( addedVertexIds.size() + removedVertexIds.size() + addedEdgeIds.size() + removedEdgeIds.size() > MAX_RECORDED_CHANGES )
+		{
+			changeIncomplete = true;
+			clearRecordedChange();
+		}
+	}
+
+	private void clearRecordedChange()
+	{
+		addedVertexIds.clear();
+		removedVertexIds.clear();
+		addedEdgeIds.clear();
+		removedEdgeIds.clear();
+	}
+
+	/**
+	 * Get the net change since the last notification, and reset it.
+	 */
+	private SelectionChange takeRecordedChange()
+	{
+		final SelectionChange change;
+		if ( changeIncomplete )
+			change = SelectionChange.INCOMPLETE;
+		else
+			change = new SelectionChange(
+					addedVertexIds.toArray(),
+					removedVertexIds.toArray(),
+					addedEdgeIds.toArray(),
+					removedEdgeIds.toArray() );
+		clearRecordedChange();
+		changeIncomplete = false;
+		return change;
+	}
+
 	private void notifyListeners()
 	{
-		if ( emitEvents )
-			for ( final SelectionListener l : listeners.list )
-				l.selectionChanged();
+		if ( pauseDepth == 0 )
+			emitEvent();
 		else
 			shouldEmitEvent = true;
 	}
 
+	private void emitEvent()
+	{
+		final SelectionChange change = takeRecordedChange();
+		if ( change.isComplete() && change.size() == 0 )
+			return;
+		for ( final SelectionListener l : listeners.list )
+			l.selectionChanged( change );
+	}
+
 	@Override
-	public void resumeListeners()
+	public synchronized void resumeListeners()
 	{
-		emitEvents = true;
-		if ( shouldEmitEvent )
+		if ( pauseDepth > 0 )
+			--pauseDepth;
+		if ( pauseDepth == 0 )
 		{
-			// Catchup.
-			for ( final SelectionListener l : listeners.list )
-				l.selectionChanged();
-			shouldEmitEvent = false;
+			publish();
+			if ( shouldEmitEvent )
+			{
+				// Catchup.
+				shouldEmitEvent = false;
+				emitEvent();
+			}
 		}
 	}
 
 	@Override
-	public void pauseListeners()
+	public synchronized void pauseListeners()
 	{
-		emitEvents = false;
+		++pauseDepth;
 	}
 }
@@ -0,0 +1,217 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.model;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * A non-fair {@link ReentrantReadWriteLock} that also offers optimistic reads,
+ * like a {@link StampedLock}.
+ * <p>
+ * Short read-only queries can run without acquiring the read lock: they take a
+ * stamp with {@link #tryOptimisticRead()}, read, then check with
+ * {@link #validate(long)} that no writer acquired the write lock in the
+ * meantime. Such readers never delay a waiting writer. If validation fails,
+ * the query must be repeated under the read lock, which
+ * {@link #readOptimistically(Supplier)} does.
+ * <p>
+ * The write lock must not be used with {@link Condition}s.
+ */
+public class OptimisticReadWriteLock extends ReentrantReadWriteLock
+{
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Write-locked while the write lock of this lock is held. Never
+	 * read-locked, so only used for its stamps.
+	 */
+	private final StampedLock writes;
+
+	private final StampedWriteLock writeLock;
+
+	public OptimisticReadWriteLock()
+	{
+		super( false );
+		writes = new StampedLock();
+		writeLock = new StampedWriteLock( this );
+	}
+
+	@Override
+	public WriteLock writeLock()
+	{
+		return writeLock;
+	}
+
+	/**
+	 * Returns a stamp for an optimistic read, or zero if the write lock is
+	 * held.
+	 *
+	 * @return the stamp.
+	 */
+	public long tryOptimisticRead()
+	{
+		return writes.tryOptimisticRead();
+	}
+
+	/**
+	 * Returns whether the write lock was not acquired since the specified
+	 * stamp was issued. Always {@code false} for a zero stamp.
+	 *
+	 * @param stamp
+	 *            a stamp from {@link #tryOptimisticRead()}.
+	 * @return {@code true} if the data read since the stamp was issued is
+	 *         consistent.
+	 */
+	public boolean validate( final long stamp )
+	{
+		return writes.validate( stamp );
+	}
+
+	/**
+	 * Runs a read-only query optimistically, without acquiring the read lock.
+	 * If a writer interfered, the query is run again under the read lock.
+	 * <p>
+	 * The query must not have side effects. Exceptions thrown during the
+	 * optimistic attempt, caused by reading inconsistent data, are ignored.
+	 *
+	 * @param query
+	 *            the query.
+	 * @param <T>
+	 *            the type of the query result.
+	 * @return the query result.
+	 */
+	public < T > T readOptimistically( final Supplier< T > query )
+	{
+		final long stamp = writes.tryOptimisticRead();
+		if ( stamp != 0 )
+		{
+			try
+			{
+				final T result = query.get();
+				if ( writes.validate( stamp ) )
+					return result;
+			}
+			catch ( final RuntimeException e )
+			{
+				// Inconsistent data, retry under the read lock.
+			}
+		}
+
+		readLock().lock();
+		try
+		{
+			return query.get();
+		}
+		finally
+		{
+			readLock().unlock();
+		}
+	}
+
+	/**
+	 * Holds the write lock of {@link #writes} for as long as the write lock is
+	 * held, so that it invalidates optimistic read stamps.
+	 */
+	private class StampedWriteLock extends WriteLock
+	{
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The {@link #writes} stamp. Only accessed by the thread holding the
+		 * write lock.
+		 */
+		private long stamp;
+
+		private StampedWriteLock( final ReentrantReadWriteLock lock )
+		{
+			super( lock );
+		}
+
+		@Override
+		public void lock()
+		{
+			super.lock();
+			acquired();
+		}
+
+		@Override
+		public void lockInterruptibly() throws InterruptedException
+		{
+			super.lockInterruptibly();
+			acquired();
+		}
+
+		@Override
+		public boolean tryLock()
+		{
+			if ( !super.tryLock() )
+				return false;
+			acquired();
+			return true;
+		}
+
+		@Override
+		public boolean tryLock( final long timeout, final TimeUnit unit ) throws InterruptedException
+		{
+			if ( !super.tryLock( timeout, unit ) )
+				return false;
+			acquired();
+			return true;
+		}
+
+		@Override
+		public void unlock()
+		{
+			if ( isHeldByCurrentThread() && getHoldCount() == 1 )
+				writes.unlockWrite( stamp );
+			super.unlock();
+		}
+
+		@Override
+		public Condition newCondition()
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		/**
+		 * Called after the write lock was acquired. The {@link #writes} write
+		 * lock is never contended, because it is only taken by the holder of
+		 * the write lock.
+		 */
+		private void acquired()
+		{
+			if ( getHoldCount() == 1 )
+				stamp = writes.writeLock();
+		}
+	}
+}
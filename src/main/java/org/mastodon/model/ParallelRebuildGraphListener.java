@@ -0,0 +1,139 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.model;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.mastodon.graph.Edge;
+import org.mastodon.graph.GraphListener;
+import org.mastodon.graph.ReadOnlyGraph;
+import org.mastodon.graph.Vertex;
+
+/**
+ * Forwards graph events to a list of independent {@link GraphListener}s, and
+ * runs their {@link GraphListener#graphRebuilt()} concurrently.
+ * <p>
+ * When a graph is loaded or imported, every index over it (spatio-temporal
+ * index, label index, track index, ...) is rebuilt from scratch in
+ * {@link GraphListener#graphRebuilt()}. These rebuilds do not depend on each
+ * other, so for large graphs they are run in parallel on the common fork-join
+ * pool. {@link #graphRebuilt()} returns only when all of them are done, so
+ * that listeners registered after this one see complete indices.
+ * <p>
+ * All other events are forwarded sequentially, in the order the listeners
+ * were added. The listeners must not depend on each other, and their
+ * {@link GraphListener#graphRebuilt()} must not acquire the graph lock.
+ *
+ * @param <V>
+ *            the type of vertices in the graph.
+ * @param <E>
+ *            the type of edges in the graph.
+ *
+ * @author Tobias Pietzsch
+ */
+public class ParallelRebuildGraphListener< V extends Vertex< E >, E extends Edge< V > > implements GraphListener< V, E >
+{
+	/**
+	 * Minimal number of vertices, for which the listeners are rebuilt in
+	 * parallel.
+	 */
+	private static final int MIN_PARALLEL_VERTICES = 10_000;
+
+	private final ReadOnlyGraph< V, E > graph;
+
+	private final CopyOnWriteArrayList< GraphListener< V, E > > listeners;
+
+	public ParallelRebuildGraphListener( final ReadOnlyGraph< V, E > graph )
+	{
+		this.graph = graph;
+		this.listeners = new CopyOnWriteArrayList<>();
+	}
+
+	/**
+	 * Adds a listener to forward graph events to.
+	 *
+	 * @param listener
+	 *            the listener to add.
+	 * @return {@code true} if the listener was added, {@code false} if it was
+	 *         already present.
+	 */
+	public boolean add( final GraphListener< V, E > listener )
+	{
+		return listeners.addIfAbsent( listener );
+	}
+
+	/**
+	 * Removes a listener.
+	 *
+	 * @param listener
+	 *            the listener to remove.
+	 * @return {@code true} if the listener was present.
+	 */
+	public boolean remove( final GraphListener< V, E > listener )
+	{
+		return listeners.remove( listener );
+	}
+
+	@Override
+	public void graphRebuilt()
+	{
+		if ( listeners.size() > 1 && graph.vertices().size() >= MIN_PARALLEL_VERTICES )
+			listeners.parallelStream().forEach( GraphListener::graphRebuilt );
+		else
+			listeners.forEach( GraphListener::graphRebuilt );
+	}
+
+	@Override
+	public void vertexAdded( final V vertex )
+	{
+		for ( final GraphListener< V, E > l : listeners )
+			l.vertexAdded( vertex );
+	}
+
+	@Override
+	public void vertexRemoved( final V vertex )
+	{
+		for ( final GraphListener< V, E > l : listeners )
+			l.vertexRemoved( vertex );
+	}
+
+	@Override
+	public void edgeAdded( final E edge )
+	{
+		for ( final GraphListener< V, E > l : listeners )
+			l.edgeAdded( edge );
+	}
+
+	@Override
+	public void edgeRemoved( final E edge )
+	{
+		for ( final GraphListener< V, E > l : listeners )
+			l.edgeRemoved( edge );
+	}
+}
@@ -0,0 +1,143 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.model;
+
+/**
+ * Describes the net change of a {@link SelectionModel} that is reported to
+ * {@link SelectionListener#selectionChanged(SelectionChange)}: the ids of
+ * vertices and edges that became selected or unselected.
+ * <p>
+ * Ids refer to the {@code GraphIdBimap} of the model graph the selection is
+ * defined on. If too many objects changed, the change is reported as
+ * {@link #isComplete() incomplete}, and listeners have to re-examine the whole
+ * selection.
+ */
+public final class SelectionChange
+{
+	private static final int[] NONE = new int[ 0 ];
+
+	/**
+	 * A change that does not list the affected objects.
+	 */
+	public static final SelectionChange INCOMPLETE = new SelectionChange( false, NONE, NONE, NONE, NONE );
+
+	private final boolean complete;
+
+	private final int[] addedVertexIds;
+
+	private final int[] removedVertexIds;
+
+	private final int[] addedEdgeIds;
+
+	private final int[] removedEdgeIds;
+
+	public SelectionChange(
+			final int[] addedVertexIds,
+			final int[] removedVertexIds,
+			final int[] addedEdgeIds,
+			final int[] removedEdgeIds )
+	{
+		this( true, addedVertexIds, removedVertexIds, addedEdgeIds, removedEdgeIds );
+	}
+
+	private SelectionChange(
+			final boolean complete,
+			final int[] addedVertexIds,
+			final int[] removedVertexIds,
+			final int[] addedEdgeIds,
+			final int[] removedEdgeIds )
+	{
+		this.complete = complete;
+		this.addedVertexIds = addedVertexIds;
+		this.removedVertexIds = removedVertexIds;
+		this.addedEdgeIds = addedEdgeIds;
+		this.removedEdgeIds = removedEdgeIds;
+	}
+
+	/**
+	 * Returns whether this change lists all affected vertices and edges.
+	 *
+	 * @return {@code true} if the added and removed ids are complete.
+	 */
+	public boolean isComplete()
+	{
+		return complete;
+	}
+
+	/**
+	 * Ids of vertices that became selected. The array must not be modified.
+	 *
+	 * @return ids of newly selected vertices.
+	 */
+	public int[] getAddedVertexIds()
+	{
+		return addedVertexIds;
+	}
+
+	/**
+	 * Ids of vertices that became unselected. The array must not be modified.
+	 *
+	 * @return ids of newly unselected vertices.
+	 */
+	public int[] getRemovedVertexIds()
+	{
+		return removedVertexIds;
+	}
+
+	/**
+	 * Ids of edges that became selected. The array must not be modified.
+	 *
+	 * @return ids of newly selected edges.
+	 */
+	public int[] getAddedEdgeIds()
+	{
+		return addedEdgeIds;
+	}
+
+	/**
+	 * Ids of edges that became unselected. The array must not be modified.
+	 *
+	 * @return ids of newly unselected edges.
+	 */
+	public int[] getRemovedEdgeIds()
+	{
+		return removedEdgeIds;
+	}
+
+	/**
+	 * Returns the total number of vertices and edges whose selected state
+	 * changed.
+	 *
+	 * @return number of affected objects.
+	 */
+	public int size()
+	{
+		return addedVertexIds.length + removedVertexIds.length + addedEdgeIds.length + removedEdgeIds.length;
+	}
+}
@@ -38,4 +38,18 @@ public interface SelectionListener
 	 * Notifies when the selection has changed.
 	 */
 	public void selectionChanged();
+
+	/**
+	 * Notifies when the selection has changed, with the ids of the vertices
+	 * and edges whose selected state changed. Listeners that can update
+	 * incrementally should override this. The default implementation calls
+	 * {@link #selectionChanged()}.
+	 *
+	 * @param change
+	 *            the net change since the last notification.
+	 */
+	public default void selectionChanged( final SelectionChange change )
+	{
+		selectionChanged();
+	}
 }
@@ -163,7 +163,37 @@ public interface SelectionModel< V extends Vertex< E >, E extends Edge< V > >
 	 */
 	public Listeners< SelectionListener > listeners();
 
+	/**
+	 * Resume notifying listeners. If the selection changed while listeners
+	 * were paused, listeners are notified once with the net change. Calls to
+	 * {@link #pauseListeners()} and {@link #resumeListeners()} may be nested;
+	 * notification resumes with the outermost {@link #resumeListeners()}.
+	 */
 	public void resumeListeners();
 
+	/**
+	 * Pause notifying listeners until {@link #resumeListeners()} is called.
+	 */
 	public void pauseListeners();
+
+	/**
+	 * Run the specified modifications of the selection as one batch.
+	 * Listeners are notified once, after {@code modifications} completed,
+	 * with the net change.
+	 *
+	 * @param modifications
+	 *            modifications of this selection.
+	 */
+	public default void batch( final Runnable modifications )
+	{
+		pauseListeners();
+		try
+		{
+			modifications.run();
+		}
+		finally
+		{
+			resumeListeners();
+		}
+	}
 }
@@ -0,0 +1,190 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.model;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.IntFunction;
+
+import org.mastodon.graph.Edge;
+import org.mastodon.graph.GraphIdBimap;
+import org.mastodon.graph.Vertex;
+import org.mastodon.util.PersistentBitSet;
+
+/**
+ * An immutable, read-only view of the state of a {@link DefaultSelectionModel}
+ * at a point in time. Obtaining a snapshot does not copy the selection, and
+ * reading it never blocks writers of the selection model.
+ * <p>
+ * Vertices and edges are identified by their ids in the {@link GraphIdBimap}
+ * of the selection model. Iterating selected vertices or edges as objects is
+ * only meaningful while the graph is not modified, i.e., the graph read lock
+ * should be held.
+ *
+ * @param <V>
+ *            the type of the vertices.
+ * @param <E>
+ *            the type of the edges.
+ */
+public final class SelectionSnapshot< V extends Vertex< E >, E extends Edge< V > >
+{
+	private final GraphIdBimap< V, E > idmap;
+
+	private final PersistentBitSet vertexBits;
+
+	private final PersistentBitSet edgeBits;
+
+	SelectionSnapshot( final GraphIdBimap< V, E > idmap, final PersistentBitSet vertexBits, final PersistentBitSet edgeBits )
+	{
+		this.idmap = idmap;
+		this.vertexBits = vertexBits;
+		this.edgeBits = edgeBits;
+	}
+
+	public boolean isSelected( final V v )
+	{
+		return vertexBits.get( idmap.getVertexId( v ) );
+	}
+
+	public boolean isSelected( final E e )
+	{
+		return edgeBits.get( idmap.getEdgeId( e ) );
+	}
+
+	public boolean isVertexIdSelected( final int id )
+	{
+		return vertexBits.get( id );
+	}
+
+	public boolean isEdgeIdSelected( final int id )
+	{
+		return edgeBits.get( id );
+	}
+
+	public int numSelectedVertices()
+	{
+		return vertexBits.cardinality();
+	}
+
+	public int numSelectedEdges()
+	{
+		return edgeBits.cardinality();
+	}
+
+	public boolean isEmpty()
+	{
+		return vertexBits.isEmpty() && edgeBits.isEmpty();
+	}
+
+	/**
+	 * Returns the smallest selected vertex id that is {@code >= fromId}, or
+	 * {@code -1} if there is none.
+	 *
+	 * @param fromId
+	 *            the id to start searching from (inclusive).
+	 * @return the next selected vertex id, or {@code -1}.
+	 */
+	public int nextSelectedVertexId( final int fromId )
+	{
+		return vertexBits.nextSetBit( fromId );
+	}
+
+	/**
+	 * Returns the smallest selected edge id that is {@code >= fromId}, or
+	 * {@code -1} if there is none.
+	 *
+	 * @param fromId
+	 *            the id to start searching from (inclusive).
+	 * @return the next selected edge id, or {@code -1}.
+	 */
+	public int nextSelectedEdgeId( final int fromId )
+	{
+		return edgeBits.nextSetBit( fromId );
+	}
+
+	/**
+	 * Iterate the selected vertices, in order of their ids. The iterator
+	 * returns the same vertex reference for every element.
+	 *
+	 * @return iterable over the selected vertices.
+	 */
+	public Iterable< V > vertices()
+	{
+		return () -> {
+			final V ref = idmap.vertexIdBimap().createRef();
+			return new BitsIterator<>( vertexBits, id -> idmap.getVertex( id, ref ) );
+		};
+	}
+
+	/**
+	 * Iterate the selected edges, in order of their ids. The iterator returns
+	 * the same edge reference for every element.
+	 *
+	 * @return iterable over the selected edges.
+	 */
+	public Iterable< E > edges()
+	{
+		return () -> {
+			final E ref = idmap.edgeIdBimap().createRef();
+			return new BitsIterator<>( edgeBits, id -> idmap.getEdge( id, ref ) );
+		};
+	}
+
+	private static final class BitsIterator< O > implements Iterator< O >
+	{
+		private final PersistentBitSet bits;
+
+		private final IntFunction< O > get;
+
+		private int next;
+
+		BitsIterator( final PersistentBitSet bits, final IntFunction< O > get )
+		{
+			this.bits = bits;
+			this.get = get;
+			next = bits.nextSetBit( 0 );
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			return next >= 0;
+		}
+
+		@Override
+		public O next()
+		{
+			if ( next < 0 )
+				throw new NoSuchElementException();
+			final O o = get.apply( next );
+			next = bits.nextSetBit( next + 1 );
+			return o;
+		}
+	}
+}
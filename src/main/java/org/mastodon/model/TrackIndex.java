@@ -0,0 +1,585 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.model;
+
+import java.util.ArrayList;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.ObjIntConsumer;
+
+import org.mastodon.graph.Edge;
+import org.mastodon.graph.GraphIdBimap;
+import org.mastodon.graph.GraphListener;
+import org.mastodon.graph.ReadOnlyGraph;
+import org.mastodon.graph.Vertex;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.set.hash.TIntHashSet;
+
+/**
+ * Maintains the track (connected component) of each vertex of a graph, and
+ * the number of vertices in each track, incrementally.
+ * <p>
+ * Tracks are stored in a union-find structure over nodes. Each vertex points
+ * to a node, and the root of that node identifies the track. Adding an edge
+ * merges the tracks of its endpoints. Removing an edge or a vertex records the
+ * vertices that may have become disconnected: the endpoints of a removed edge,
+ * and the remaining neighbors of a removed vertex. A recorded vertex that is
+ * removed itself is replaced by its remaining neighbors. The next query groups
+ * the recorded vertices by track, and re-splits each affected track by
+ * traversing only that track. If a track has two recorded vertices, both
+ * sides are traversed in lockstep and only the smaller side is relabeled with
+ * a fresh node.
+ * <p>
+ * Track ids are the ids of root nodes. They are unique among the current
+ * tracks, but not stable across graph modifications: after an edit, a track
+ * may be identified by a different id.
+ * <p>
+ * The index keeps up to date with the graph by registering as a
+ * {@link GraphListener}. This has to be done by the owner of the index,
+ * typically the model. Queries acquire the read lock of the graph, so they can
+ * run on any thread.
+ *
+ * @param <V>
+ *            the type of vertices in the graph.
+ * @param <E>
+ *            the type of edges in the graph.
+ */
+public class TrackIndex< V extends Vertex< E >, E extends Edge< V > > implements GraphListener< V, E >
+{
+	/**
+	 * Value returned for vertices that are not indexed.
+	 */
+	public static final int NO_TRACK = -1;
+
+	private final ReadOnlyGraph< V, E > graph;
+
+	private final GraphIdBimap< V, E > idmap;
+
+	private final ReentrantReadWriteLock lock;
+
+	/**
+	 * Maps vertex ids to nodes.
+	 */
+	private final TIntArrayList vertexNodes = new TIntArrayList();
+
+	/**
+	 * Parent of each node. Roots are their own parent.
+	 */
+	private final TIntArrayList parents = new TIntArrayList();
+
+	/**
+	 * Number of vertices in the track of each root node.
+	 */
+	private final TIntArrayList sizes = new TIntArrayList();
+
+	/**
+	 * Ids of vertices that may have become disconnected from other vertices
+	 * of their track by edge or vertex removals.
+	 */
+	private final TIntHashSet pendingSplits = new TIntHashSet();
+
+	/**
+	 * Whether the union-find structure reflects the graph. If not, it is
+	 * rebuilt from scratch by the next query.
+	 */
+	private boolean valid = false;
+
+	/**
+	 * Creates a new track index for the specified graph. The index must be
+	 * registered as graph listener by the caller.
+	 *
+	 * @param graph
+	 *            the graph to index.
+	 * @param idmap
+	 *            the id bimap of the graph.
+	 * @param lock
+	 *            the read-write lock protecting the graph.
+	 */
+	public TrackIndex( final ReadOnlyGraph< V, E > graph, final GraphIdBimap< V, E > idmap, final ReentrantReadWriteLock lock )
+	{
+		this.graph = graph;
+		this.idmap = idmap;
+		this.lock = lock;
+	}
+
+	/**
+	 * Returns the id of the track of the specified vertex. Two vertices have
+	 * the same track id if and only if they are connected.
+	 *
+	 * @param v
+	 *            the vertex.
+	 * @return the track id, or {@link #NO_TRACK} if the vertex is not
+	 *         indexed.
+	 */
+	public int getTrackId( final V v )
+	{
+		lock.readLock().lock();
+		try
+		{
+			synchronized ( this )
+			{
+				update();
+				final int node = getNode( idmap.getVertexId( v ) );
+				return node < 0 ? NO_TRACK : find( node );
+			}
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Passes each vertex of the graph with the id of its track to the
+	 * specified action, in the iteration order of the graph vertices. Takes
+	 * the graph read lock once for all vertices, so this is preferable to
+	 * {@link #getTrackId(Vertex)} for bulk queries.
+	 *
+	 * @param action
+	 *            receives each vertex and its track id. The vertex reference
+	 *            is only valid during the call.
+	 */
+	public void forEachTrackId( final ObjIntConsumer< V > action )
+	{
+		lock.readLock().lock();
+		try
+		{
+			synchronized ( this )
+			{
+				update();
+				for ( final V v : graph.vertices() )
+				{
+					final int node = getNode( idmap.getVertexId( v ) );
+					action.accept( v, node < 0 ? NO_TRACK : find( node ) );
+				}
+			}
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of vertices in the track of the specified vertex.
+	 *
+	 * @param v
+	 *            the vertex.
+	 * @return the track size, or 0 if the vertex is not indexed.
+	 */
+	public int getTrackSize( final V v )
+	{
+		lock.readLock().lock();
+		try
+		{
+			synchronized ( this )
+			{
+				update();
+				final int node = getNode( idmap.getVertexId( v ) );
+				return node < 0 ? 0 : sizes.getQuick( find( node ) );
+			}
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public synchronized void graphRebuilt()
+	{
+		valid = false;
+		pendingSplits.clear();
+	}
+
+	@Override
+	public synchronized void vertexAdded( final V vertex )
+	{
+		if ( valid )
+		{
+			final int id = idmap.getVertexId( vertex );
+			// A recycled id does not stand for the removed vertex.
+			pendingSplits.remove( id );
+			setNode( id, newNode( 1 ) );
+		}
+	}
+
+	@Override
+	public synchronized void vertexRemoved( final V vertex )
+	{
+		if ( !valid )
+			return;
+
+		final int id = idmap.getVertexId( vertex );
+		final int node = getNode( id );
+		if ( node < 0 )
+			return;
+		final int root = find( node );
+		sizes.setQuick( root, sizes.getQuick( root ) - 1 );
+		setNode( id, -1 );
+
+		/*
+		 * The remaining neighbors of the vertex may become disconnected. If
+		 * the vertex was recorded as the endpoint of a removed edge, its
+		 * neighbors stand in for it now: they are in the same track as the far
+		 * side of that edge, so the track will still be checked.
+		 */
+		final TIntArrayList neighbors = new TIntArrayList();
+		neighbors( id, neighbors );
+		for ( int i = 0; i < neighbors.size(); ++i )
+		{
+			final int n = neighbors.getQuick( i );
+			if ( getNode( n ) >= 0 )
+				pendingSplits.add( n );
+		}
+		pendingSplits.remove( id );
+	}
+
+	@Override
+	public synchronized void edgeAdded( final E edge )
+	{
+		if ( !valid )
+			return;
+
+		final V ref = graph.vertexRef();
+		final int s = getNode( idmap.getVertexId( edge.getSource( ref ) ) );
+		final int t = getNode( idmap.getVertexId( edge.getTarget( ref ) ) );
+		graph.releaseRef( ref );
+		if ( s >= 0 && t >= 0 )
+			union( s, t );
+	}
+
+	@Override
+	public synchronized void edgeRemoved( final E edge )
+	{
+		if ( !valid )
+			return;
+
+		final V ref = graph.vertexRef();
+		final int s = idmap.getVertexId( edge.getSource( ref ) );
+		final int t = idmap.getVertexId( edge.getTarget( ref ) );
+		graph.releaseRef( ref );
+		// If an endpoint was removed already, its neighbors were recorded then.
+		if ( getNode( s ) >= 0 && getNode( t ) >= 0 )
+		{
+			pendingSplits.add( s );
+			pendingSplits.add( t );
+		}
+	}
+
+	/**
+	 * Brings the union-find structure up to date: rebuilds it if invalid,
+	 * otherwise re-splits tracks affected by removals. Must be called with
+	 * the graph read lock held.
+	 */
+	private void update()
+	{
+		if ( !valid )
+		{
+			rebuild();
+			return;
+		}
+
+		if ( pendingSplits.isEmpty() )
+			return;
+
+		/*
+		 * Group the recorded vertices by track. All recorded vertices of a
+		 * track must be checked together: checking them pairwise could leave
+		 * two parts that are disconnected from each other in the same track.
+		 */
+		final TIntObjectHashMap< TIntArrayList > pendingByTrack = new TIntObjectHashMap<>();
+		pendingSplits.forEach( id -> {
+			if ( exists( id ) )
+			{
+				final int root = find( getNode( id ) );
+				TIntArrayList ids = pendingByTrack.get( root );
+				if ( ids == null )
+				{
+					ids = new TIntArrayList();
+					pendingByTrack.put( root, ids );
+				}
+				ids.add( id );
+			}
+			return true;
+		} );
+		pendingSplits.clear();
+
+		// Relabeling moves complete parts out of a track, so it does not
+		// affect the grouping of the other tracks.
+		pendingByTrack.forEachValue( ids -> {
+			if ( ids.size() == 2 )
+				resplitPair( ids.getQuick( 0 ), ids.getQuick( 1 ) );
+			else if ( ids.size() > 2 )
+				resplitGroup( ids.toArray() );
+			return true;
+		} );
+
+		// Relabeling leaves unused nodes behind. Compact once they dominate.
+		if ( parents.size() > 2 * graph.vertices().size() + 1024 )
+			rebuild();
+	}
+
+	private void rebuild()
+	{
+		vertexNodes.clear();
+		parents.clear();
+		sizes.clear();
+		pendingSplits.clear();
+
+		for ( final V v : graph.vertices() )
+			setNode( idmap.getVertexId( v ), newNode( 1 ) );
+
+		final V ref = graph.vertexRef();
+		for ( final E e : graph.edges() )
+		{
+			final int s = getNode( idmap.getVertexId( e.getSource( ref ) ) );
+			final int t = getNode( idmap.getVertexId( e.getTarget( ref ) ) );
+			union( s, t );
+		}
+		graph.releaseRef( ref );
+
+		valid = true;
+	}
+
+	/**
+	 * Checks whether the vertices {@code a} and {@code b}, the only recorded
+	 * vertices of their track, are still connected. Traverses from both sides
+	 * in lockstep, and relabels the side that is exhausted first.
+	 */
+	private void resplitPair( final int a, final int b )
+	{
+
+		final Traversal ta = new Traversal( a );
+		final Traversal tb = new Traversal( b );
+		final TIntArrayList neighbors = new TIntArrayList();
+		while ( true )
+		{
+			if ( !ta.step( tb, neighbors ) )
+				return; // connected
+			if ( ta.isDone() )
+			{
+				relabel( ta.visited );
+				return;
+			}
+			if ( !tb.step( ta, neighbors ) )
+				return; // connected
+			if ( tb.isDone() )
+			{
+				relabel( tb.visited );
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Splits the track containing the specified vertices (all recorded
+	 * vertices of that track) into its connected parts, relabeling all parts
+	 * but the largest.
+	 */
+	private void resplitGroup( final int[] group )
+	{
+		final TIntHashSet visited = new TIntHashSet();
+		final ArrayList< TIntArrayList > parts = new ArrayList<>();
+		final TIntArrayList neighbors = new TIntArrayList();
+		for ( final int start : group )
+		{
+			if ( visited.contains( start ) || !exists( start ) )
+				continue;
+
+			final TIntArrayList part = new TIntArrayList();
+			part.add( start );
+			visited.add( start );
+			for ( int i = 0; i < part.size(); ++i )
+			{
+				neighbors.resetQuick();
+				neighbors( part.getQuick( i ), neighbors );
+				for ( int j = 0; j < neighbors.size(); ++j )
+				{
+					final int n = neighbors.getQuick( j );
+					if ( visited.add( n ) )
+						part.add( n );
+				}
+			}
+			parts.add( part );
+		}
+
+		if ( parts.size() < 2 )
+			return;
+
+		int largest = 0;
+		for ( int i = 1; i < parts.size(); ++i )
+			if ( parts.get( i ).size() > parts.get( largest ).size() )
+				largest = i;
+		for ( int i = 0; i < parts.size(); ++i )
+			if ( i != largest )
+				relabel( new TIntHashSet( parts.get( i ) ) );
+	}
+
+	/**
+	 * Moves the specified vertices (a complete connected part of the graph)
+	 * to a new track.
+	 */
+	private void relabel( final TIntHashSet vertexIds )
+	{
+		final int node = newNode( vertexIds.size() );
+		vertexIds.forEach( id -> {
+			final int root = find( getNode( id ) );
+			sizes.setQuick( root, sizes.getQuick( root ) - 1 );
+			setNode( id, node );
+			return true;
+		} );
+	}
+
+	/**
+	 * Breadth-first traversal from one endpoint of a removed edge.
+	 */
+	private class Traversal
+	{
+		final TIntHashSet visited = new TIntHashSet();
+
+		final TIntArrayList queue = new TIntArrayList();
+
+		int head = 0;
+
+		Traversal( final int start )
+		{
+			visited.add( start );
+			queue.add( start );
+		}
+
+		boolean isDone()
+		{
+			return head >= queue.size();
+		}
+
+		/**
+		 * Expands the next vertex in the queue.
+		 *
+		 * @return {@code false} if the traversal reached a vertex visited by
+		 *         {@code other}.
+		 */
+		boolean step( final Traversal other, final TIntArrayList neighbors )
+		{
+			neighbors.resetQuick();
+			neighbors( queue.getQuick( head++ ), neighbors );
+			for ( int j = 0; j < neighbors.size(); ++j )
+			{
+				final int n = neighbors.getQuick( j );
+				if ( other.visited.contains( n ) )
+					return false;
+				if ( visited.add( n ) )
+					queue.add( n );
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Appends the ids of the vertices adjacent to the vertex with the
+	 * specified id.
+	 */
+	private void neighbors( final int id, final TIntArrayList neighbors )
+	{
+		final V ref1 = graph.vertexRef();
+		final V ref2 = graph.vertexRef();
+		final V v = idmap.getVertex( id, ref1 );
+		for ( final E e : v.incomingEdges() )
+			neighbors.add( idmap.getVertexId( e.getSource( ref2 ) ) );
+		for ( final E e : v.outgoingEdges() )
+			neighbors.add( idmap.getVertexId( e.getTarget( ref2 ) ) );
+		graph.releaseRef( ref1 );
+		graph.releaseRef( ref2 );
+	}
+
+	private boolean exists( final int id )
+	{
+		if ( getNode( id ) < 0 )
+			return false;
+		final V ref = graph.vertexRef();
+		final boolean exists = idmap.getVertexIfExists( id, ref ) != null;
+		graph.releaseRef( ref );
+		return exists;
+	}
+
+	private int newNode( final int size )
+	{
+		final int node = parents.size();
+		parents.add( node );
+		sizes.add( size );
+		return node;
+	}
+
+	private int getNode( final int id )
+	{
+		return id < vertexNodes.size() ? vertexNodes.getQuick( id ) : -1;
+	}
+
+	private void setNode( final int id, final int node )
+	{
+		while ( vertexNodes.size() <= id )
+			vertexNodes.add( -1 );
+		vertexNodes.setQuick( id, node );
+	}
+
+	private int find( int node )
+	{
+		while ( true )
+		{
+			final int parent = parents.getQuick( node );
+			if ( parent == node )
+				return node;
+			// Path halving.
+			final int grandparent = parents.getQuick( parent );
+			parents.setQuick( node, grandparent );
+			node = grandparent;
+		}
+	}
+
+	private void union( final int a, final int b )
+	{
+		final int ra = find( a );
+		final int rb = find( b );
+		if ( ra == rb )
+			return;
+		final int sa = sizes.getQuick( ra );
+		final int sb = sizes.getQuick( rb );
+		if ( sa < sb )
+		{
+			parents.setQuick( ra, rb );
+			sizes.setQuick( rb, sa + sb );
+		}
+		else
+		{
+			parents.setQuick( rb, ra );
+			sizes.setQuick( ra, sa + sb );
+		}
+	}
+}
@@ -0,0 +1,360 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.model;
+
+import org.mastodon.graph.Edge;
+import org.mastodon.graph.GraphListener;
+import org.mastodon.graph.Vertex;
+import org.mastodon.properties.Property;
+import org.scijava.listeners.Listeners;
+
+import gnu.trove.list.array.TLongArrayList;
+
+/**
+ * Estimates the memory retained by the undo history of a graph.
+ * <p>
+ * The undo recorder serializes every added or removed vertex and edge, and
+ * the previous value of every change of an undoable property, and keeps these
+ * until the application exits. This monitor listens to the same graph and
+ * property events, and accumulates an estimate of the number of bytes recorded
+ * between undo points. It follows undo and redo, and drops the estimate of
+ * redoable undo points when new edits truncate the redo history, as the undo
+ * recorder does.
+ * <p>
+ * A memory budget can be set. The owner of the undo history keeps it within
+ * the budget by discarding the oldest undo points, and tells the monitor with
+ * {@link #discardOldest(int)}. If that is not possible, {@link #checkBudget()}
+ * notifies {@link UndoBudgetListener}s, once until the estimate falls back
+ * under the budget or the monitor is {@link #reset()}. The estimate is reset
+ * when the graph is rebuilt, e.g. when a project is reloaded. Callers must
+ * forward {@link #setUndoPoint()}, {@link #undo()} and {@link #redo()}, and
+ * pause the monitor with {@link #setRecording(boolean)} while undo or redo
+ * replay edits.
+ *
+ * @param <V>
+ *            the type of vertices.
+ * @param <E>
+ *            the type of edges.
+ */
+public class UndoHistoryMonitor< V extends Vertex< E >, E extends Edge< V > > implements GraphListener< V, E >
+{
+	/**
+	 * Interface for listeners notified when the undo history exceeds its
+	 * budget.
+	 */
+	public interface UndoBudgetListener
+	{
+		/**
+		 * Called when the estimated size of the undo history exceeds the
+		 * budget, and the oldest undo points could not be discarded. It may
+		 * be called with the graph write lock held, and from any thread.
+		 *
+		 * @param estimatedBytes
+		 *            the estimated size of the undo history, in bytes.
+		 * @param budget
+		 *            the budget, in bytes.
+		 */
+		public void undoBudgetExceeded( long estimatedBytes, long budget );
+	}
+
+	/**
+	 * Estimated overhead, in bytes, of one recorded edit.
+	 */
+	private static final long EDIT_OVERHEAD_BYTES = 16;
+
+	private final long vertexBytes;
+
+	private final long edgeBytes;
+
+	private long vertexPropertyBytes;
+
+	private long edgePropertyBytes;
+
+	/**
+	 * Estimated bytes recorded for each undo point, in order.
+	 */
+	private final TLongArrayList undoPointBytes = new TLongArrayList();
+
+	/**
+	 * Number of undo points that are currently applied (not undone).
+	 */
+	private int position;
+
+	/**
+	 * Estimated bytes recorded since the last undo point.
+	 */
+	private long pendingBytes;
+
+	private long totalBytes;
+
+	private long budget;
+
+	private boolean recording = true;
+
+	private boolean budgetExceededNotified = false;
+
+	private final Listeners.List< UndoBudgetListener > listeners = new Listeners.SynchronizedList<>();
+
+	/**
+	 * Creates a new monitor.
+	 *
+	 * @param vertexBytes
+	 *            the size in bytes of a serialized vertex.
+	 * @param edgeBytes
+	 *            the size in bytes of a serialized edge.
+	 * @param budget
+	 *            the memory budget of the undo history, in bytes.
+	 */
+	public UndoHistoryMonitor( final long vertexBytes, final long edgeBytes, final long budget )
+	{
+		this.vertexBytes = vertexBytes;
+		this.edgeBytes = edgeBytes;
+		this.budget = budget;
+	}
+
+	/**
+	 * Monitors changes of an undoable vertex property.
+	 *
+	 * @param property
+	 *            the property.
+	 * @param bytes
+	 *            the estimated size in bytes of a recorded property value.
+	 */
+	public synchronized void addVertexProperty( final Property< V > property, final long bytes )
+	{
+		vertexPropertyBytes += bytes;
+		property.propertyChangeListeners().add( v -> record( bytes ) );
+	}
+
+	/**
+	 * Monitors changes of an undoable edge property.
+	 *
+	 * @param property
+	 *            the property.
+	 * @param bytes
+	 *            the estimated size in bytes of a recorded property value.
+	 */
+	public synchronized void addEdgeProperty( final Property< E > property, final long bytes )
+	{
+		edgePropertyBytes += bytes;
+		property.propertyChangeListeners().add( e -> record( bytes ) );
+	}
+
+	public Listeners< UndoBudgetListener > listeners()
+	{
+		return listeners;
+	}
+
+	/**
+	 * Forgets all recorded edits, when the undo history is discarded.
+	 */
+	public synchronized void reset()
+	{
+		undoPointBytes.clear();
+		position = 0;
+		pendingBytes = 0;
+		totalBytes = 0;
+		budgetExceededNotified = false;
+	}
+
+	@Override
+	public void graphRebuilt()
+	{
+		reset();
+	}
+
+	@Override
+	public void vertexAdded( final V vertex )
+	{
+		record( vertexBytes );
+	}
+
+	@Override
+	public void vertexRemoved( final V vertex )
+	{
+		record( vertexBytes + vertexPropertyBytes );
+	}
+
+	@Override
+	public void edgeAdded( final E edge )
+	{
+		record( edgeBytes );
+	}
+
+	@Override
+	public void edgeRemoved( final E edge )
+	{
+		record( edgeBytes + edgePropertyBytes );
+	}
+
+	private synchronized void record( final long bytes )
+	{
+		if ( !recording )
+			return;
+		if ( position < undoPointBytes.size() )
+		{
+			// New edits discard the redo history.
+			for ( int i = position; i < undoPointBytes.size(); i++ )
+				totalBytes -= undoPointBytes.get( i );
+			undoPointBytes.remove( position, undoPointBytes.size() - position );
+		}
+		pendingBytes += bytes + EDIT_OVERHEAD_BYTES;
+		totalBytes += bytes + EDIT_OVERHEAD_BYTES;
+	}
+
+	/**
+	 * Pauses or resumes monitoring, e.g. while undo or redo replay edits.
+	 *
+	 * @param recording
+	 *            whether to record edits.
+	 */
+	public synchronized void setRecording( final boolean recording )
+	{
+		this.recording = recording;
+	}
+
+	public synchronized void setUndoPoint()
+	{
+		if ( pendingBytes == 0 )
+			return;
+		undoPointBytes.add( pendingBytes );
+		position = undoPointBytes.size();
+		pendingBytes = 0;
+	}
+
+	/**
+	 * Forgets the specified number of oldest undo points, when they are
+	 * discarded from the undo history.
+	 *
+	 * @param n
+	 *            the number of undo points to forget.
+	 */
+	public synchronized void discardOldest( final int n )
+	{
+		final int m = Math.min( n, undoPointBytes.size() );
+		for ( int i = 0; i < m; i++ )
+			totalBytes -= undoPointBytes.get( i );
+		undoPointBytes.remove( 0, m );
+		position = Math.max( 0, position - m );
+	}
+
+	/**
+	 * Notifies {@link UndoBudgetListener}s if the estimated size of the undo
+	 * history exceeds the budget, unless they were already notified since it
+	 * last did not.
+	 */
+	public void checkBudget()
+	{
+		final long bytes;
+		final long budget;
+		synchronized ( this )
+		{
+			if ( totalBytes <= this.budget )
+			{
+				budgetExceededNotified = false;
+				return;
+			}
+			if ( budgetExceededNotified )
+				return;
+			budgetExceededNotified = true;
+			bytes = totalBytes;
+			budget = this.budget;
+		}
+		for ( final UndoBudgetListener l : listeners.list )
+			l.undoBudgetExceeded( bytes, budget );
+	}
+
+	public synchronized void undo()
+	{
+		if ( pendingBytes > 0 )
+			setUndoPoint();
+		if ( position > 0 )
+			position--;
+	}
+
+	public synchronized void redo()
+	{
+		if ( position < undoPointBytes.size() )
+			position++;
+	}
+
+	/**
+	 * Returns the estimated number of bytes retained by the undo history,
+	 * including redoable edits.
+	 *
+	 * @return the estimated size of the undo history in bytes.
+	 */
+	public synchronized long getEstimatedBytes()
+	{
+		return totalBytes;
+	}
+
+	/**
+	 * Returns the number of undo points that are currently applied, i.e., the
+	 * index of the next undo point.
+	 *
+	 * @return the number of applied undo points.
+	 */
+	public synchronized int getUndoPosition()
+	{
+		return position;
+	}
+
+	/**
+	 * Returns the number of undo points in the history, including redoable
+	 * ones.
+	 *
+	 * @return the number of undo points.
+	 */
+	public synchronized int getNumUndoPoints()
+	{
+		return undoPointBytes.size();
+	}
+
+	public synchronized long getBudget()
+	{
+		return budget;
+	}
+
+	public synchronized void setBudget( final long budget )
+	{
+		this.budget = budget;
+	}
+
+	/**
+	 * Returns whether the estimated size of the undo history exceeds the
+	 * budget.
+	 *
+	 * @return {@code true} if the undo history is over budget.
+	 */
+	public synchronized boolean isOverBudget()
+	{
+		return totalBytes > budget;
+	}
+}
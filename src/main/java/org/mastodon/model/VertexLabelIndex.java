@@ -0,0 +1,434 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BooleanSupplier;
+
+import org.mastodon.graph.Edge;
+import org.mastodon.graph.GraphIdBimap;
+import org.mastodon.graph.GraphListener;
+import org.mastodon.graph.ReadOnlyGraph;
+import org.mastodon.graph.Vertex;
+import org.mastodon.properties.PropertyChangeListener;
+
+import gnu.trove.iterator.TIntObjectIterator;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.hash.TIntHashSet;
+
+/**
+ * An index of vertex labels that answers "starts with" and "contains" queries
+ * without visiting every vertex of the graph.
+ * <p>
+ * The index consists of a base, built from all vertices of the graph, and a
+ * delta of vertices that were added, removed or relabeled since. The base
+ * stores the labels sorted (for prefix queries by binary search) and an
+ * inverted index from label trigrams to base entries (for substring queries).
+ * The delta is a plain map that is scanned linearly, and that is folded into a
+ * new base when it grows too large.
+ * <p>
+ * The index keeps up to date with the graph by registering as a
+ * {@link GraphListener} and as a label {@link PropertyChangeListener}. This
+ * has to be done by the owner of the index, typically the model. The base is
+ * built lazily by the first query.
+ * <p>
+ * Queries acquire the read lock of the graph, so they can run on any thread.
+ *
+ * @param <V>
+ *            the type of vertices in the graph.
+ * @param <E>
+ *            the type of edges in the graph.
+ */
+public class VertexLabelIndex< V extends Vertex< E > & HasLabel, E extends Edge< V > >
+		implements GraphListener< V, E >, PropertyChangeListener< V >
+{
+	/**
+	 * When the delta and the stale base entries exceed this number, the base
+	 * is rebuilt by the next query.
+	 */
+	private static final int MAX_DELTA_SIZE = 10_000;
+
+	/**
+	 * How many entries are scanned between two checks for cancellation.
+	 */
+	private static final int CANCEL_CHECK_INTERVAL = 4096;
+
+	private static final int NGRAM = 3;
+
+	private final ReadOnlyGraph< V, E > graph;
+
+	private final GraphIdBimap< V, E > idmap;
+
+	private final ReentrantReadWriteLock lock;
+
+	/**
+	 * Labels of the base, sorted lexicographically.
+	 */
+	private String[] baseLabels = new String[ 0 ];
+
+	/**
+	 * Vertex ids of the base, in the same order as {@link #baseLabels}.
+	 */
+	private int[] baseIds = new int[ 0 ];
+
+	/**
+	 * Maps packed label trigrams to the positions in the base arrays of the
+	 * labels that contain them.
+	 */
+	private TLongObjectHashMap< TIntArrayList > baseTrigrams = new TLongObjectHashMap<>();
+
+	/**
+	 * Vertex ids whose base entry is out of date (the vertex was removed,
+	 * relabeled, or its id was reused).
+	 */
+	private final TIntHashSet staleBaseIds = new TIntHashSet();
+
+	/**
+	 * Maps vertex ids to labels of vertices added or relabeled since the base
+	 * was built.
+	 */
+	private final TIntObjectHashMap< String > delta = new TIntObjectHashMap<>();
+
+	/**
+	 * Whether the base (plus delta) reflects the graph. If not, the base is
+	 * rebuilt from scratch by the next query.
+	 */
+	private boolean valid = false;
+
+	/**
+	 * Creates a new label index for the specified graph. The index must be
+	 * registered as graph listener and label listener by the caller.
+	 *
+	 * @param graph
+	 *            the graph to index.
+	 * @param idmap
+	 *            the id bimap of the graph.
+	 * @param lock
+	 *            the read-write lock protecting the graph.
+	 */
+	public VertexLabelIndex( final ReadOnlyGraph< V, E > graph, final GraphIdBimap< V, E > idmap, final ReentrantReadWriteLock lock )
+	{
+		this.graph = graph;
+		this.idmap = idmap;
+		this.lock = lock;
+	}
+
+	/**
+	 * Returns the ids of all vertices whose label starts with (or contains)
+	 * the specified text. The ids are ordered by label, then by id.
+	 *
+	 * @param text
+	 *            the text to search for. An empty text matches nothing.
+	 * @param startsWith
+	 *            if {@code true}, labels must start with {@code text},
+	 *            otherwise they must contain it.
+	 * @param cancelled
+	 *            polled regularly during the query. If it returns
+	 *            {@code true}, the query is abandoned.
+	 * @return the ids of matching vertices, or {@code null} if the query was
+	 *         cancelled.
+	 */
+	public int[] search( final String text, final boolean startsWith, final BooleanSupplier cancelled )
+	{
+		if ( text.isEmpty() )
+			return new int[ 0 ];
+
+		lock.readLock().lock();
+		try
+		{
+			synchronized ( this )
+			{
+				if ( !valid )
+					rebuild();
+
+				final ArrayList< Match > matches = new ArrayList<>();
+				if ( startsWith )
+				{
+					for ( int i = lowerBound( text ); i < baseLabels.length && baseLabels[ i ].startsWith( text ); ++i )
+					{
+						if ( i % CANCEL_CHECK_INTERVAL == 0 && cancelled.getAsBoolean() )
+							return null;
+						addBaseMatch( i, matches );
+					}
+				}
+				else if ( text.length() >= NGRAM )
+				{
+					final TIntArrayList candidates = rarestTrigramPostings( text );
+					if ( candidates != null )
+					{
+						for ( int j = 0; j < candidates.size(); ++j )
+						{
+							if ( j % CANCEL_CHECK_INTERVAL == 0 && cancelled.getAsBoolean() )
+								return null;
+							final int i = candidates.getQuick( j );
+							if ( baseLabels[ i ].contains( text ) )
+								addBaseMatch( i, matches );
+						}
+					}
+				}
+				else
+				{
+					for ( int i = 0; i < baseLabels.length; ++i )
+					{
+						if ( i % CANCEL_CHECK_INTERVAL == 0 && cancelled.getAsBoolean() )
+							return null;
+						if ( baseLabels[ i ].contains( text ) )
+							addBaseMatch( i, matches );
+					}
+				}
+
+				for ( final TIntObjectIterator< String > it = delta.iterator(); it.hasNext(); )
+				{
+					it.advance();
+					final String label = it.value();
+					if ( startsWith ? label.startsWith( text ) : label.contains( text ) )
+						matches.add( new Match( label, it.key() ) );
+				}
+
+				if ( cancelled.getAsBoolean() )
+					return null;
+
+				matches.sort( Match.COMPARATOR );
+				final int[] ids = new int[ matches.size() ];
+				for ( int i = 0; i < ids.length; ++i )
+					ids[ i ] = matches.get( i ).id;
+				return ids;
+			}
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Gets the vertex with the specified id, if it still exists.
+	 *
+	 * @param id
+	 *            the vertex id, as returned by
+	 *            {@link #search(String, boolean, BooleanSupplier)}.
+	 * @param ref
+	 *            a vertex reference used for retrieval.
+	 * @return the vertex, or {@code null} if there is no vertex with this id.
+	 */
+	public V getVertex( final int id, final V ref )
+	{
+		return idmap.vertexIdBimap().getObjectIfExists( id, ref );
+	}
+
+	/**
+	 * Gets the id of the specified vertex.
+	 *
+	 * @param v
+	 *            the vertex.
+	 * @return the vertex id.
+	 */
+	public int getId( final V v )
+	{
+		return idmap.getVertexId( v );
+	}
+
+	@Override
+	public synchronized void graphRebuilt()
+	{
+		invalidate();
+	}
+
+	@Override
+	public synchronized void vertexAdded( final V vertex )
+	{
+		if ( valid )
+			update( vertex );
+	}
+
+	@Override
+	public synchronized void vertexRemoved( final V vertex )
+	{
+		if ( valid )
+		{
+			final int id = idmap.getVertexId( vertex );
+			staleBaseIds.add( id );
+			delta.remove( id );
+			checkDeltaSize();
+		}
+	}
+
+	@Override
+	public synchronized void propertyChanged( final V vertex )
+	{
+		if ( valid )
+			update( vertex );
+	}
+
+	@Override
+	public void edgeAdded( final E edge )
+	{}
+
+	@Override
+	public void edgeRemoved( final E edge )
+	{}
+
+	private void update( final V vertex )
+	{
+		final int id = idmap.getVertexId( vertex );
+		staleBaseIds.add( id );
+		delta.put( id, vertex.getLabel() );
+		checkDeltaSize();
+	}
+
+	private void checkDeltaSize()
+	{
+		if ( delta.size() + staleBaseIds.size() > MAX_DELTA_SIZE )
+			invalidate();
+	}
+
+	private void invalidate()
+	{
+		valid = false;
+		delta.clear();
+		staleBaseIds.clear();
+		baseLabels = new String[ 0 ];
+		baseIds = new int[ 0 ];
+		baseTrigrams = new TLongObjectHashMap<>();
+	}
+
+	/**
+	 * Rebuilds the base from all vertices of the graph. Must be called with
+	 * the graph read lock held.
+	 */
+	private void rebuild()
+	{
+		final Match[] entries = new Match[ graph.vertices().size() ];
+		int n = 0;
+		for ( final V v : graph.vertices() )
+			entries[ n++ ] = new Match( v.getLabel(), idmap.getVertexId( v ) );
+		Arrays.parallelSort( entries, 0, n, Match.COMPARATOR );
+
+		baseLabels = new String[ n ];
+		baseIds = new int[ n ];
+		baseTrigrams = new TLongObjectHashMap<>();
+		for ( int i = 0; i < n; ++i )
+		{
+			final String label = entries[ i ].label;
+			baseLabels[ i ] = label;
+			baseIds[ i ] = entries[ i ].id;
+			for ( int c = 0; c + NGRAM <= label.length(); ++c )
+			{
+				final long key = trigram( label, c );
+				TIntArrayList postings = baseTrigrams.get( key );
+				if ( postings == null )
+				{
+					postings = new TIntArrayList( 4 );
+					baseTrigrams.put( key, postings );
+				}
+				// Base positions are added in increasing order, so a repeated
+				// trigram of the same label is always the last element.
+				if ( postings.isEmpty() || postings.getQuick( postings.size() - 1 ) != i )
+					postings.add( i );
+			}
+		}
+
+		delta.clear();
+		staleBaseIds.clear();
+		valid = true;
+	}
+
+	/**
+	 * Returns the postings of the trigram of {@code text} that occurs in the
+	 * fewest base labels, or {@code null} if one of the trigrams does not
+	 * occur at all.
+	 */
+	private TIntArrayList rarestTrigramPostings( final String text )
+	{
+		TIntArrayList rarest = null;
+		for ( int c = 0; c + NGRAM <= text.length(); ++c )
+		{
+			final TIntArrayList postings = baseTrigrams.get( trigram( text, c ) );
+			if ( postings == null )
+				return null;
+			if ( rarest == null || postings.size() < rarest.size() )
+				rarest = postings;
+		}
+		return rarest;
+	}
+
+	private void addBaseMatch( final int i, final ArrayList< Match > matches )
+	{
+		final int id = baseIds[ i ];
+		if ( !staleBaseIds.contains( id ) )
+			matches.add( new Match( baseLabels[ i ], id ) );
+	}
+
+	/**
+	 * Returns the first position in {@link #baseLabels} whose label is not
+	 * smaller than {@code text}.
+	 */
+	private int lowerBound( final String text )
+	{
+		int lo = 0;
+		int hi = baseLabels.length;
+		while ( lo < hi )
+		{
+			final int mid = ( lo + hi ) >>> 1;
+			if ( baseLabels[ mid ].compareTo( text ) < 0 )
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	private static long trigram( final String s, final int c )
+	{
+		return ( ( long ) s.charAt( c ) << 32 ) | ( ( long ) s.charAt( c + 1 ) << 16 ) | s.charAt( c + 2 );
+	}
+
+	private static final class Match
+	{
+		static final Comparator< Match > COMPARATOR = ( m1, m2 ) -> {
+			final int c = m1.label.compareTo( m2.label );
+			return c != 0 ? c : Integer.compare( m1.id, m2.id );
+		};
+
+		final String label;
+
+		final int id;
+
+		Match( final String label, final int id )
+		{
+			this.label = label;
+			this.id = id;
+		}
+	}
+}
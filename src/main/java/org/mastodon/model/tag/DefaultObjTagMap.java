@@ -29,6 +29,7 @@
 package org.mastodon.model.tag;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -36,10 +37,12 @@ import java.util.List;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import org.mastodon.RefPool;
 import org.mastodon.labels.LabelSet;
 import org.mastodon.labels.LabelSets;
 import org.mastodon.model.tag.TagSetStructure.Tag;
 import org.mastodon.properties.ObjPropertyMap;
+import org.mastodon.undo.UndoPointMarker;
 
 /**
  * Default implementation of {@link ObjTagMap}.
@@ -55,6 +58,14 @@ import org.mastodon.properties.ObjPropertyMap;
  * Tags must map to {@link Integer} IDs that are globally unique across all tag
  * sets. {@code DefaultObjTagMap} is backed a {@link LabelSets} property of the
  * objects (which can be shared among all {@code DefaultObjTagMap}s).
+ * <p>
+ * For fast, allocation-free {@link #get(Object)}, the map also keeps the tag of
+ * each object as an index into the tag set, in a primitive array indexed by
+ * object id. This index must be kept in sync with the {@link LabelSets} by
+ * calling {@link #refresh(Object)} and {@link #forget(Object)} when the labels
+ * of an object are modified from outside this map (undo, object removal, ...).
+ * {@link DefaultObjTags} does this, and skips label changes made by the map
+ * itself (see {@link #isWriting()}).
  *
  * @param <O>
  *            the type of object to tag.
@@ -68,8 +79,14 @@ public class DefaultObjTagMap< O, T > implements ObjTagMap< O, T >
 {
 	private final LabelSets< O, Integer > idLabelSets;
 
+	private final RefPool< O > pool;
+
 	private final Function< T, Integer > tagToIdFunction;
 
+	private final Runnable bulkChangeNotifier;
+
+	private final UndoPointMarker undoPointMarker;
+
 	private final ArrayList< Integer > ids = new ArrayList<>();
 
 	private final HashMap< T, Integer > tagToId = new HashMap<>();
@@ -78,6 +95,24 @@ public class DefaultObjTagMap< O, T > implements ObjTagMap< O, T >
 
 	private final HashMap< Integer, List< Integer > > idToOtherIds = new HashMap<>();
 
+	/**
+	 * Tags, in the order of {@link #ids}.
+	 */
+	private final ArrayList< T > indexToTag = new ArrayList<>();
+
+	/**
+	 * Maps object id to 1 + the index of its tag in {@link #indexToTag}, or 0
+	 * if the object is not tagged. Replaced (not modified) when it needs to
+	 * grow, so that readers do not need to synchronize.
+	 */
+	private volatile int[] tagIndices = new int[ 0 ];
+
+	/**
+	 * The thread that is currently modifying the backing {@link LabelSets}
+	 * through this map, or {@code null}.
+	 */
+	private volatile Thread writer;
+
 	/**
 	 * Create a tag map with the given set of mutually exclusive {@code tags},
 	 * mapped to IDs by the specified {@code tagToIdFunction} and backed by the
@@ -85,18 +120,31 @@ public class DefaultObjTagMap< O, T > implements ObjTagMap< O, T >
 	 *
 	 * @param idLabelSets
 	 *            the backing {@code LabelSets} property.
+	 * @param pool
+	 *            the pool of objects, used to map objects to ids.
 	 * @param tags
 	 *            set of mutually exclusive {@code tags}.
 	 * @param tagToIdFunction
 	 *            maps tags to integer IDs (globally unique across all tag sets).
+	 * @param bulkChangeNotifier
+	 *            called once after each {@link #set(Collection, Object)}.
+	 * @param undoPointMarker
+	 *            sets undo points before and after each
+	 *            {@link #set(Collection, Object)} that changes tags.
 	 */
 	public DefaultObjTagMap(
 			final LabelSets< O, Integer > idLabelSets,
+			final RefPool< O > pool,
 			final Collection< T > tags,
-			final Function< T, Integer > tagToIdFunction )
+			final Function< T, Integer > tagToIdFunction,
+			final Runnable bulkChangeNotifier,
+			final UndoPointMarker undoPointMarker )
 	{
 		this.idLabelSets = idLabelSets;
+		this.pool = pool;
 		this.tagToIdFunction = tagToIdFunction;
+		this.bulkChangeNotifier = bulkChangeNotifier;
+		this.undoPointMarker = undoPointMarker;
 		update( tags );
 	}
 
@@ -111,37 +159,180 @@ public class DefaultObjTagMap< O, T > implements ObjTagMap< O, T >
 		{
 			final LabelSet< O, Integer > ref = idLabelSets.createRef();
 			final Integer id = tagToIdFunction.apply( tag );
-			final LabelSet< O, Integer > labels = idLabelSets.getLabels( object, ref );
-			labels.removeAll( idToOtherIds.get( id ) );
-			labels.add( id );
-			idLabelSets.releaseRef( ref );
+			writer = Thread.currentThread();
+			try
+			{
+				final LabelSet< O, Integer > labels = idLabelSets.getLabels( object, ref );
+				labels.removeAll( idToOtherIds.get( id ) );
+				labels.add( id );
+			}
+			finally
+			{
+				writer = null;
+				idLabelSets.releaseRef( ref );
+			}
+			setTagIndex( pool.getId( object ), 1 + ids.indexOf( id ) );
 		}
 	}
 
+	/**
+	 * Tags all the specified objects in one pass over the backing
+	 * {@link LabelSets}, skipping objects that already have the specified tag
+	 * (so that they are not recorded for undo), and notifies listeners once.
+	 * <p>
+	 * If any tag changes, undo points are set before the first and after the
+	 * last change, so that the whole batch is undone and redone as one step.
+	 * The per-object label changes in between are recorded by the undo
+	 * recorder of the backing {@link LabelSets}.
+	 */
 	@Override
-	public void remove( final O object )
+	public void set( final Collection< O > objects, final T tag )
 	{
+		final Integer id = ( tag == null ) ? null : tagToIdFunction.apply( tag );
+		final Collection< Integer > toRemove = ( id == null ) ? ids : idToOtherIds.get( id );
+		final int index = ( id == null ) ? 0 : 1 + ids.indexOf( id );
 		final LabelSet< O, Integer > ref = idLabelSets.createRef();
-		idLabelSets.getLabels( object, ref ).removeAll( ids );
-		idLabelSets.releaseRef( ref );
+		boolean changed = false;
+		writer = Thread.currentThread();
+		try
+		{
+			for ( final O object : objects )
+			{
+				final int oid = pool.getId( object );
+				final int[] indices = tagIndices;
+				final int current = oid < indices.length ? indices[ oid ] : 0;
+				if ( current == index )
+					continue;
+				if ( !changed )
+				{
+					// Separate the batch from preceding unmarked edits.
+					undoPointMarker.setUndoPoint();
+					changed = true;
+				}
+				final LabelSet< O, Integer > labels = idLabelSets.getLabels( object, ref );
+				if ( current != 0 )
+					labels.removeAll( toRemove );
+				if ( id != null )
+					labels.add( id );
+				setTagIndex( oid, index );
+			}
+		}
+		finally
+		{
+			writer = null;
+			idLabelSets.releaseRef( ref );
+			if ( changed )
+				undoPointMarker.setUndoPoint();
+		}
+		bulkChangeNotifier.run();
 	}
 
 	@Override
-	public T get( final O object )
+	public void remove( final O object )
 	{
 		final LabelSet< O, Integer > ref = idLabelSets.createRef();
+		writer = Thread.currentThread();
 		try
 		{
-			final LabelSet< O, Integer > labels = idLabelSets.getLabels( object, ref );
-			for ( final Integer id : ids )
-				if ( labels.contains( id ) )
-					return idToTag.get( id );
-			return null;
+			idLabelSets.getLabels( object, ref ).removeAll( ids );
 		}
 		finally
 		{
+			writer = null;
 			idLabelSets.releaseRef( ref );
 		}
+		setTagIndex( pool.getId( object ), 0 );
+	}
+
+	/**
+	 * Returns whether the calling thread is currently modifying the backing
+	 * {@link LabelSets} through this map. This map keeps its tag index up to
+	 * date for such modifications, and only touches the labels of its own tag
+	 * set, so they need not be {@link #refresh(Object) refreshed}.
+	 *
+	 * @return {@code true} if the current thread is writing through this map.
+	 */
+	public boolean isWriting()
+	{
+		return writer == Thread.currentThread();
+	}
+
+	@Override
+	public T get( final O object )
+	{
+		final int[] indices = tagIndices;
+		final int oid = pool.getId( object );
+		final int index = oid < indices.length ? indices[ oid ] : 0;
+		return index == 0 ? null : indexToTag.get( index - 1 );
+	}
+
+	/**
+	 * Re-reads the tag of the specified object from the backing
+	 * {@link LabelSets}.
+	 *
+	 * @param object
+	 *            the object whose labels changed.
+	 */
+	public void refresh( final O object )
+	{
+		final LabelSet< O, Integer > ref = idLabelSets.createRef();
+		int index = 0;
+		final LabelSet< O, Integer > labels = idLabelSets.getLabels( object, ref );
+		for ( int i = 0; i < ids.size(); i++ )
+		{
+			if ( labels.contains( ids.get( i ) ) )
+			{
+				index = i + 1;
+				break;
+			}
+		}
+		idLabelSets.releaseRef( ref );
+		setTagIndex( pool.getId( object ), index );
+	}
+
+	/**
+	 * Forgets the tag of the specified object, that is about to be removed.
+	 *
+	 * @param object
+	 *            the object to be removed.
+	 */
+	public void forget( final O object )
+	{
+		setTagIndex( pool.getId( object ), 0 );
+	}
+
+	/**
+	 * Re-reads the tags of all objects from the backing {@link LabelSets}.
+	 */
+	public synchronized void rebuild()
+	{
+		int[] indices = new int[ tagIndices.length ];
+		for ( int i = 0; i < ids.size(); i++ )
+		{
+			for ( final O o : idLabelSets.getLabeledWith( ids.get( i ) ) )
+			{
+				final int oid = pool.getId( o );
+				if ( oid >= indices.length )
+					indices = Arrays.copyOf( indices, Math.max( oid + 1, 2 * indices.length ) );
+				indices[ oid ] = i + 1;
+			}
+		}
+		tagIndices = indices;
+	}
+
+	private synchronized void setTagIndex( final int oid, final int index )
+	{
+		int[] indices = tagIndices;
+		if ( oid >= indices.length )
+		{
+			if ( index == 0 )
+				return;
+			indices = Arrays.copyOf( indices, Math.max( oid + 1, 2 * indices.length ) );
+			indices[ oid ] = index;
+			tagIndices = indices;
+		}
+		else
+			indices[ oid ] = index;
 	}
 
 	@Override
@@ -159,6 +350,7 @@ public class DefaultObjTagMap< O, T > implements ObjTagMap< O, T >
 	private void update( final Collection< T > tags )
 	{
 		ids.clear();
+		indexToTag.clear();
 		tagToId.clear();
 		idToTag.clear();
 		idToOtherIds.clear();
@@ -168,11 +360,13 @@ public class DefaultObjTagMap< O, T > implements ObjTagMap< O, T >
 			if ( ids.contains( id ) )
 				throw new IllegalArgumentException( "inconsistent tag set: ids are not unique" );
 			ids.add( id );
+			indexToTag.add( tag );
 			tagToId.put( tag, id );
 			idToTag.put( id, tag );
 		}
 		idToTag.keySet().forEach( id ->
 				idToOtherIds.put( id,
 						idToTag.keySet().stream().filter( oid -> oid != id ).collect( Collectors.toList() ) ) );
+		rebuild();
 	}
 }
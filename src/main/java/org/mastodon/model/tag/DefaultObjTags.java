@@ -32,9 +32,11 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.mastodon.RefPool;
 import org.mastodon.labels.LabelSets;
 import org.mastodon.model.tag.TagSetStructure.Tag;
 import org.mastodon.model.tag.TagSetStructure.TagSet;
+import org.mastodon.undo.UndoPointMarker;
 
 /**
  * Default implementation of {@link ObjTags}.
@@ -49,16 +51,32 @@ public class DefaultObjTags< O > implements ObjTags< O >
 {
 	private final LabelSets< O, Integer > idLabelSets;
 
+	private final RefPool< O > pool;
+
+	private final Runnable bulkChangeNotifier;
+
+	private final UndoPointMarker undoPointMarker;
+
 	private final Map< Tag, TagSet > tagToTagSet = new HashMap<>();
 
-	private final Map< TagSet, DefaultObjTagMap< O, Tag > > tagSetToTagMap = new HashMap<>();
+	private volatile Map< TagSet, DefaultObjTagMap< O, Tag > > tagSetToTagMap = new HashMap<>();
 
 	public DefaultObjTags(
 			final LabelSets< O, Integer > idLabelSets,
-			final TagSetStructure tagSetStructure )
+			final RefPool< O > pool,
+			final TagSetStructure tagSetStructure,
+			final Runnable bulkChangeNotifier,
+			final UndoPointMarker undoPointMarker )
 	{
 		this.idLabelSets = idLabelSets;
+		this.pool = pool;
+		this.bulkChangeNotifier = bulkChangeNotifier;
+		this.undoPointMarker = undoPointMarker;
 		update( tagSetStructure );
+		// Keep the tag indices of the tag maps in sync with label changes
+		// that do not go through the maps, e.g. undo. Changes made by a map
+		// are skipped, the map updates its index itself.
+		idLabelSets.propertyChangeListeners().add( this::labelsChanged );
 	}
 
 	@Override
@@ -94,12 +112,51 @@ public class DefaultObjTags< O > implements ObjTags< O >
 	void update( final TagSetStructure tagSetStructure )
 	{
 		tagToTagSet.clear();
-		tagSetToTagMap.clear();
+		final Map< TagSet, DefaultObjTagMap< O, Tag > > tagMaps = new HashMap<>();
 		for ( final TagSet tagSet : tagSetStructure.getTagSets() )
 		{
-			tagSetToTagMap.put( tagSet, new DefaultObjTagMap<>( idLabelSets, tagSet.getTags(), Tag::id ) );
+			tagMaps.put( tagSet, new DefaultObjTagMap<>( idLabelSets, pool, tagSet.getTags(), Tag::id, bulkChangeNotifier, undoPointMarker ) );
 			for ( final Tag tag : tagSet.getTags() )
 				tagToTagSet.put( tag, tagSet );
 		}
+		tagSetToTagMap = tagMaps;
+	}
+
+	/**
+	 * Re-reads the tags of all objects from the backing {@link LabelSets},
+	 * e.g. after they have been cleared or the graph has been rebuilt.
+	 */
+	void rebuild()
+	{
+		tagSetToTagMap.values().forEach( DefaultObjTagMap::rebuild );
+	}
+
+	/**
+	 * Notifies the tag maps that the specified object is about to be removed.
+	 */
+	void objectRemoved( final O object )
+	{
+		for ( final DefaultObjTagMap< O, Tag > tagMap : tagSetToTagMap.values() )
+			tagMap.forget( object );
+	}
+
+	/**
+	 * Notifies the tag maps that the specified object has been added, possibly
+	 * re-using the id of a removed object.
+	 */
+	void objectAdded( final O object )
+	{
+		for ( final DefaultObjTagMap< O, Tag > tagMap : tagSetToTagMap.values() )
+			tagMap.refresh( object );
+	}
+
+	private void labelsChanged( final O object )
+	{
+		final Map< TagSet, DefaultObjTagMap< O, Tag > > tagMaps = tagSetToTagMap;
+		for ( final DefaultObjTagMap< O, Tag > tagMap : tagMaps.values() )
+			if ( tagMap.isWriting() )
+				return;
+		for ( final DefaultObjTagMap< O, Tag > tagMap : tagMaps.values() )
+			tagMap.refresh( object );
 	}
 }
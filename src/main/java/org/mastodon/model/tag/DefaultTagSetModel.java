@@ -35,13 +35,17 @@ import org.mastodon.RefPool;
 import org.mastodon.collection.RefCollections;
 import org.mastodon.collection.RefSet;
 import org.mastodon.graph.Edge;
+import org.mastodon.graph.GraphListener;
+import org.mastodon.graph.ListenableReadOnlyGraph;
 import org.mastodon.graph.ReadOnlyGraph;
 import org.mastodon.graph.Vertex;
 import org.mastodon.labels.LabelSet;
 import org.mastodon.labels.LabelSets;
+import org.mastodon.model.BulkEditor;
 import org.mastodon.model.tag.TagSetStructure.Tag;
 import org.mastodon.model.tag.TagSetStructure.TagSet;
 import org.mastodon.undo.Recorder;
+import org.mastodon.undo.UndoPointMarker;
 import org.mastodon.undo.UndoableEdit;
 import org.scijava.listeners.Listeners;
 
@@ -76,8 +80,12 @@ public class DefaultTagSetModel< V extends Vertex< E >, E extends Edge< V > > im
 
 	private final Listeners.List< TagSetModelListener > listeners;
 
+	private final TagIndexUpdater indexUpdater;
+
 	private Recorder< SetTagSetStructureUndoableEdit > editRecorder;
 
+	private UndoPointMarker undoPointMarker;
+
 	private boolean emitEvents;
 
 	public DefaultTagSetModel( final ReadOnlyGraph< V, E > graph )
@@ -91,10 +99,68 @@ public class DefaultTagSetModel< V extends Vertex< E >, E extends Edge< V > > im
 		this.tagSetStructure = new TagSetStructure();
 		vertexIdLabelSets = new LabelSets<>( vertexPool );
 		edgeIdLabelSets = new LabelSets<>( edgePool );
-		vertexTags = new DefaultObjTags<>( vertexIdLabelSets, tagSetStructure );
-		edgeTags = new DefaultObjTags<>( edgeIdLabelSets, tagSetStructure );
 		listeners = new Listeners.SynchronizedList<>();
+		vertexTags = new DefaultObjTags<>( vertexIdLabelSets, vertexPool, tagSetStructure, this::notifyTagsChanged, this::setUndoPoint );
+		edgeTags = new DefaultObjTags<>( edgeIdLabelSets, edgePool, tagSetStructure, this::notifyTagsChanged, this::setUndoPoint );
 		emitEvents = true;
+		indexUpdater = new TagIndexUpdater();
+		if ( graph instanceof ListenableReadOnlyGraph )
+			( ( ListenableReadOnlyGraph< V, E > ) graph ).addGraphListener( indexUpdater );
+	}
+
+	/**
+	 * Rebuilds the tag indices once after each bulk edit of the graph, instead
+	 * of updating them for each object added or removed during the bulk edit.
+	 *
+	 * @param bulkEditor
+	 *            the bulk editor of the graph.
+	 */
+	public void deferIndexUpdates( final BulkEditor< V, E > bulkEditor )
+	{
+		if ( graph instanceof ListenableReadOnlyGraph )
+		{
+			final ListenableReadOnlyGraph< V, E > listenable = ( ListenableReadOnlyGraph< V, E > ) graph;
+			if ( listenable.removeGraphListener( indexUpdater ) )
+				listenable.addGraphListener( bulkEditor.defer( indexUpdater ) );
+		}
+	}
+
+	/**
+	 * Keeps the tag indices of the {@link DefaultObjTagMap}s in sync with
+	 * added and removed graph objects, whose ids may be recycled.
+	 */
+	private class TagIndexUpdater implements GraphListener< V, E >
+	{
+		@Override
+		public void graphRebuilt()
+		{
+			vertexTags.rebuild();
+			edgeTags.rebuild();
+		}
+
+		@Override
+		public void vertexAdded( final V vertex )
+		{
+			vertexTags.objectAdded( vertex );
+		}
+
+		@Override
+		public void vertexRemoved( final V vertex )
+		{
+			vertexTags.objectRemoved( vertex );
+		}
+
+		@Override
+		public void edgeAdded( final E edge )
+		{
+			edgeTags.objectAdded( edge );
+		}
+
+		@Override
+		public void edgeRemoved( final E edge )
+		{
+			edgeTags.objectRemoved( edge );
+		}
 	}
 
 	@Override
@@ -156,11 +222,35 @@ public class DefaultTagSetModel< V extends Vertex< E >, E extends Edge< V > > im
 		return edgeTags;
 	}
 
+	private void notifyTagsChanged()
+	{
+		if ( emitEvents )
+			listeners.list.forEach( TagSetModelListener::tagsChanged );
+	}
+
 	public void setUndoRecorder( final Recorder< SetTagSetStructureUndoableEdit > editRecorder )
 	{
 		this.editRecorder = editRecorder;
 	}
 
+	/**
+	 * Sets the marker used to make each bulk tag assignment
+	 * ({@link ObjTagMap#set(java.util.Collection, Object)}) one undo step.
+	 *
+	 * @param undoPointMarker
+	 *            the undo point marker of the model, or {@code null}.
+	 */
+	public void setUndoPointMarker( final UndoPointMarker undoPointMarker )
+	{
+		this.undoPointMarker = undoPointMarker;
+	}
+
+	private void setUndoPoint()
+	{
+		if ( undoPointMarker != null )
+			undoPointMarker.setUndoPoint();
+	}
+
 	@Override
 	public Listeners< TagSetModelListener > listeners()
 	{
@@ -186,6 +276,8 @@ public class DefaultTagSetModel< V extends Vertex< E >, E extends Edge< V > > im
 	{
 		vertexIdLabelSets.clear();
 		edgeIdLabelSets.clear();
+		vertexTags.rebuild();
+		edgeTags.rebuild();
 	}
 
 	/**
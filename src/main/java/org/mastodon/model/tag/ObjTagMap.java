@@ -72,6 +72,25 @@ public interface ObjTagMap< O, T >
 	 */
 	void set( final O object, final T tag );
 
+	/**
+	 * Tags all the specified objects with the specified {@code tag}. The
+	 * specified {@code tag} may be {@code null}, in which case the objects are
+	 * un-tagged.
+	 * <p>
+	 * Implementations may do this in a single pass and notify listeners once,
+	 * instead of once per object.
+	 *
+	 * @param objects
+	 *            the objects to tag.
+	 * @param tag
+	 *            the tag to apply.
+	 */
+	default void set( final Collection< O > objects, final T tag )
+	{
+		for ( final O object : objects )
+			set( object, tag );
+	}
+
 	/**
 	 * Un-tag the specified object.
 	 *
@@ -60,6 +60,13 @@ public interface TagSetModel< V, E >
 	interface TagSetModelListener
 	{
 		void tagSetStructureChanged();
+
+		/**
+		 * Called once after tags have been assigned to a collection of
+		 * objects in bulk, with {@link ObjTagMap#set(java.util.Collection, Object)}.
+		 */
+		default void tagsChanged()
+		{}
 	}
 
 	Listeners< TagSetModelListener > listeners();
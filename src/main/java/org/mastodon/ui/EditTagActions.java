@@ -365,8 +365,8 @@ public class EditTagActions< V extends Vertex< E >, E extends Edge< V > >
 		{
 			final ObjTagMap< V, Tag > vertexTags = tagModel.getVertexTags().tags( tagSet );
 			final ObjTagMap< E, Tag > edgeTags = tagModel.getEdgeTags().tags( tagSet );
-			vertices.forEach( v -> vertexTags.set( v, null ) );
-			edges.forEach( e -> edgeTags.set( e, null ) );
+			vertexTags.set( vertices, null );
+			edgeTags.set( edges, null );
 		}
 
 		undo.setUndoPoint();
@@ -407,8 +407,8 @@ public class EditTagActions< V extends Vertex< E >, E extends Edge< V > >
 	{
 		final ObjTagMap< V, Tag > vertexTags = tagModel.getVertexTags().tags( tagSet );
 		final ObjTagMap< E, Tag > edgeTags = tagModel.getEdgeTags().tags( tagSet );
-		vertices.forEach( v -> vertexTags.set( v, tag ) );
-		edges.forEach( e -> edgeTags.set( e, tag ) );
+		vertexTags.set( vertices, tag );
+		edgeTags.set( edges, tag );
 	}
 
 	private final static Color BACKGROUND_COLOR = new Color( 255, 255, 255, 230 );
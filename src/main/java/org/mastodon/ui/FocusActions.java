@@ -260,14 +260,18 @@ public class FocusActions< V extends Vertex< E > & Ref< V >, E extends Edge< V >
 			if ( current != null )
 			{
 				selection.pauseListeners();
+				try
+				{
+					focus.focusVertex( current );
 
-				focus.focusVertex( current );
-
-				if ( !expandSelection )
-					selection.clearSelection();
-				selection.setSelected( current, true );
-
-				selection.resumeListeners();
+					if ( !expandSelection )
+						selection.clearSelection();
+					selection.setSelected( current, true );
+				}
+				finally
+				{
+					selection.resumeListeners();
+				}
 			}
 		}
 		finally
@@ -291,34 +295,38 @@ public class FocusActions< V extends Vertex< E > & Ref< V >, E extends Edge< V >
 				return;
 
 			selection.pauseListeners();
-
-			final V current;
-			switch ( direction )
+			try
 			{
-			case CHILD:
-				current = firstBranchChild( vertex, ref2, expandSelection );
-				break;
-			case LAST_CHILD:
-				current = lastBranchChild( vertex, ref2, expandSelection );
-				break;
-			case PARENT:
-				current = firstBranchParent( vertex, ref2, expandSelection );
-				break;
-			default:
-				current = null;
-			}
+				final V current;
+				switch ( direction )
+				{
+				case CHILD:
+					current = firstBranchChild( vertex, ref2, expandSelection );
+					break;
+				case LAST_CHILD:
+					current = lastBranchChild( vertex, ref2, expandSelection );
+					break;
+				case PARENT:
+					current = firstBranchParent( vertex, ref2, expandSelection );
+					break;
+				default:
+					current = null;
+				}
 
-			if ( current != null )
-			{
-				focus.focusVertex( current );
-				if ( !expandSelection )
+				if ( current != null )
 				{
-					selection.clearSelection();
-					selection.setSelected( current, true );
+					focus.focusVertex( current );
+					if ( !expandSelection )
+					{
+						selection.clearSelection();
+						selection.setSelected( current, true );
+					}
 				}
 			}
-
-			selection.resumeListeners();
+			finally
+			{
+				selection.resumeListeners();
+			}
 		}
 		finally
 		{
@@ -42,7 +42,9 @@ import org.mastodon.graph.Vertex;
 import org.mastodon.graph.algorithm.traversal.DepthFirstSearch;
 import org.mastodon.graph.algorithm.traversal.GraphSearch.SearchDirection;
 import org.mastodon.graph.algorithm.traversal.SearchListener;
+import org.mastodon.model.BulkEditor;
 import org.mastodon.model.SelectionModel;
+import org.mastodon.model.TrackIndex;
 import org.mastodon.ui.keymap.CommandDescriptionProvider;
 import org.mastodon.ui.keymap.CommandDescriptions;
 import org.mastodon.ui.keymap.KeyConfigContexts;
@@ -51,6 +53,8 @@ import org.scijava.plugin.Plugin;
 import org.scijava.ui.behaviour.util.AbstractNamedAction;
 import org.scijava.ui.behaviour.util.Actions;
 
+import gnu.trove.set.hash.TIntHashSet;
+
 /**
  * User-interface actions that are related to a model selection.
  *
@@ -136,7 +140,49 @@ public class SelectionActions< V extends Vertex< E >, E extends Edge< V > >
 			final SelectionModel< V, E > selection,
 			final UndoPointMarker undo )
 	{
-		final SelectionActions< V, E > sa = new SelectionActions<>( graph, lock, notify, selection, undo );
+		install( actions, graph, lock, notify, selection, undo, null, null );
+	}
+
+	/**
+	 * Create selection actions and install them in the specified
+	 * {@link Actions}.
+	 *
+	 * @param <V>
+	 *            the type of vertices in the graph.
+	 * @param <E>
+	 *            the type of edges in the graph.
+	 *
+	 * @param actions
+	 *            Actions are added here.
+	 * @param graph
+	 *            the graph to define actions for.
+	 * @param lock
+	 *            a reentrant read/write lock to prevent concurrent modification
+	 *            of the graph.
+	 * @param notify
+	 *            is notified when the graph is changed by these actions.
+	 * @param selection
+	 *            the selection model.
+	 * @param undo
+	 *            used to set undo points after a batch of graph changes completes.
+	 * @param trackIndex
+	 *            the track index of the graph, used to select whole tracks
+	 *            without traversing them. May be {@code null}.
+	 * @param bulkEditor
+	 *            used to delete the selection as a single bulk edit. May be
+	 *            {@code null}.
+	 */
+	public static < V extends Vertex< E >, E extends Edge< V > > void install(
+			final Actions actions,
+			final Graph< V, E > graph,
+			final ReentrantReadWriteLock lock,
+			final GraphChangeNotifier notify,
+			final SelectionModel< V, E > selection,
+			final UndoPointMarker undo,
+			final TrackIndex< V, E > trackIndex,
+			final BulkEditor< V, E > bulkEditor )
+	{
+		final SelectionActions< V, E > sa = new SelectionActions<>( graph, lock, notify, selection, undo, trackIndex, bulkEditor );
 		actions.namedAction( sa.deleteSelectionAction, DELETE_SELECTION_KEYS );
 		actions.namedAction( sa.selectWholeTrackAction, SELECT_WHOLE_TRACK_KEYS );
 		actions.namedAction( sa.selectTrackDownwardAction, SELECT_TRACK_DOWNWARD_KEYS );
@@ -146,6 +192,13 @@ public class SelectionActions< V extends Vertex< E >, E extends Edge< V > >
 		actions.namedAction( sa.selectAllEdgesAction, SELECT_ALL_EDGES_KEYS );
 	}
 
+	/**
+	 * Whole tracks are selected by scanning the graph, rather than traversing
+	 * them, if they contain at least {@code 1 / MIN_SCANNED_FRACTION_INVERSE}
+	 * of all vertices.
+	 */
+	private static final int MIN_SCANNED_FRACTION_INVERSE = 8;
+
 	private final Graph< V, E > graph;
 
 	private final ReentrantReadWriteLock lock;
@@ -156,6 +209,10 @@ public class SelectionActions< V extends Vertex< E >, E extends Edge< V > >
 
 	private final UndoPointMarker undo;
 
+	private final TrackIndex< V, E > trackIndex;
+
+	private final BulkEditor< V, E > bulkEditor;
+
 	private final DeleteSelectionAction deleteSelectionAction;
 
 	private final TrackSelectionAction selectWholeTrackAction;
@@ -175,13 +232,17 @@ public class SelectionActions< V extends Vertex< E >, E extends Edge< V > >
 			final ReentrantReadWriteLock lock,
 			final GraphChangeNotifier notify,
 			final SelectionModel< V, E > selection,
-			final UndoPointMarker undo )
+			final UndoPointMarker undo,
+			final TrackIndex< V, E > trackIndex,
+			final BulkEditor< V, E > bulkEditor )
 	{
 		this.graph = graph;
 		this.lock = lock;
 		this.notify = notify;
 		this.selection = selection;
 		this.undo = undo;
+		this.trackIndex = trackIndex;
+		this.bulkEditor = bulkEditor;
 		deleteSelectionAction = new DeleteSelectionAction( DELETE_SELECTION );
 		selectWholeTrackAction = new TrackSelectionAction( SELECT_WHOLE_TRACK, SearchDirection.UNDIRECTED );
 		selectTrackDownwardAction = new TrackSelectionAction( SELECT_TRACK_DOWNWARD, SearchDirection.DIRECTED );
@@ -209,6 +270,12 @@ public class SelectionActions< V extends Vertex< E >, E extends Edge< V > >
 			if ( selection.isEmpty() )
 				return;
 
+			if ( bulkEditor != null )
+			{
+				deleteInBulk();
+				return;
+			}
+
 			lock.writeLock().lock();
 			try
 			{
@@ -225,13 +292,34 @@ public class SelectionActions< V extends Vertex< E >, E extends Edge< V > >
 
 				undo.setUndoPoint();
 				notify.notifyGraphChanged();
-				selection.resumeListeners();
 			}
 			finally
 			{
+				selection.resumeListeners();
 				lock.writeLock().unlock();
 			}
 		}
+
+		private void deleteInBulk()
+		{
+			try (BulkEditor< V, E >.Edit edit = bulkEditor.begin())
+			{
+				selection.pauseListeners();
+				try
+				{
+					final RefSet< E > edges = selection.getSelectedEdges();
+					final RefSet< V > vertices = selection.getSelectedVertices();
+					for ( final E e : edges )
+						graph.remove( e );
+					for ( final V v : vertices )
+						graph.remove( v );
+				}
+				finally
+				{
+					selection.resumeListeners();
+				}
+			}
+		}
 	}
 
 	class TrackSelectionAction extends AbstractNamedAction
@@ -272,6 +360,9 @@ public class SelectionActions< V extends Vertex< E >, E extends Edge< V > >
 
 				selection.clearSelection();
 
+				if ( directivity == SearchDirection.UNDIRECTED && trackIndex != null && selectTracksByIndex( vertices ) )
+					return;
+
 				// Prepare the iterator.
 				final DepthFirstSearch< V, E > search = new DepthFirstSearch<>( graph, directivity );
 				search.setTraversalListener( new SearchListener< V, E, DepthFirstSearch< V, E > >()
@@ -301,16 +392,46 @@ public class SelectionActions< V extends Vertex< E >, E extends Edge< V > >
 				for ( final V v : vertices )
 					if ( !selection.isSelected( v ) )
 						search.start( v );
-
-				selection.resumeListeners();
 			}
 			finally
 			{
+				selection.resumeListeners();
 				lock.writeLock().unlock();
 			}
 		}
 	}
 
+	/**
+	 * Selects the whole tracks of the specified vertices by scanning all
+	 * vertices and edges for their track id. This is only done if the tracks
+	 * cover a large part of the graph; otherwise traversing the tracks is
+	 * faster.
+	 *
+	 * @return {@code true} if the tracks were selected, {@code false} if they
+	 *         should be traversed instead.
+	 */
+	private boolean selectTracksByIndex( final RefSet< V > vertices )
+	{
+		final TIntHashSet trackIds = new TIntHashSet();
+		long numTrackVertices = 0;
+		for ( final V v : vertices )
+			if ( trackIds.add( trackIndex.getTrackId( v ) ) )
+				numTrackVertices += trackIndex.getTrackSize( v );
+
+		if ( numTrackVertices * MIN_SCANNED_FRACTION_INVERSE < graph.vertices().size() )
+			return false;
+
+		for ( final V v : graph.vertices() )
+			if ( trackIds.contains( trackIndex.getTrackId( v ) ) )
+				selection.setSelected( v, true );
+		final V ref = graph.vertexRef();
+		for ( final E e : graph.edges() )
+			if ( trackIds.contains( trackIndex.getTrackId( e.getSource( ref ) ) ) )
+				selection.setSelected( e, true );
+		graph.releaseRef( ref );
+		return true;
+	}
+
 	class SelectAllAction extends AbstractNamedAction
 	{
 
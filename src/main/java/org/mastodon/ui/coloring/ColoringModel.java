@@ -124,6 +124,13 @@ public class ColoringModel implements TagSetModel.TagSetModelListener, FeatureCo
 		return tagSet == null && featureColorMode == null;
 	}
 
+	@Override
+	public void tagsChanged()
+	{
+		if ( tagSet != null )
+			listeners.list.forEach( ColoringChangedListener::coloringChanged );
+	}
+
 	@Override
 	public void tagSetStructureChanged()
 	{
@@ -0,0 +1,299 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.util;
+
+import java.util.Arrays;
+
+/**
+ * An immutable set of non-negative {@code int}s, stored as bits in fixed-size
+ * chunks. Modified copies are created with a {@link Builder}, which copies
+ * only the chunks that are actually modified and shares the rest with the
+ * original. This makes it cheap to publish a new snapshot after a batch of
+ * modifications, such that readers never need to synchronize with writers.
+ */
+public final class PersistentBitSet
+{
+	/**
+	 * Each chunk holds {@code 1 << CHUNK_SHIFT} bits.
+	 */
+	private static final int CHUNK_SHIFT = 12;
+
+	private static final int WORDS_PER_CHUNK = 1 << ( CHUNK_SHIFT - 6 );
+
+	private static final long[][] NO_CHUNKS = new long[ 0 ][];
+
+	/**
+	 * The empty set.
+	 */
+	public static final PersistentBitSet EMPTY = new PersistentBitSet( NO_CHUNKS, 0 );
+
+	/**
+	 * Chunks of bits. {@code null} chunks contain no set bits.
+	 */
+	private final long[][] chunks;
+
+	private final int cardinality;
+
+	private PersistentBitSet( final long[][] chunks, final int cardinality )
+	{
+		this.chunks = chunks;
+		this.cardinality = cardinality;
+	}
+
+	/**
+	 * Returns whether the bit with the specified index is set.
+	 *
+	 * @param index
+	 *            the bit index.
+	 * @return {@code true} if the bit is set. {@code false} if it is not set
+	 *         or if {@code index < 0}.
+	 */
+	public boolean get( final int index )
+	{
+		return get( chunks, index );
+	}
+
+	/**
+	 * Returns the number of set bits.
+	 *
+	 * @return the number of set bits.
+	 */
+	public int cardinality()
+	{
+		return cardinality;
+	}
+
+	public boolean isEmpty()
+	{
+		return cardinality == 0;
+	}
+
+	/**
+	 * Returns the index of the first set bit that occurs on or after the
+	 * specified index, or {@code -1} if there is no such bit.
+	 *
+	 * @param fromIndex
+	 *            the index to start checking from (inclusive).
+	 * @return the index of the next set bit, or {@code -1}.
+	 */
+	public int nextSetBit( final int fromIndex )
+	{
+		int index = Math.max( 0, fromIndex );
+		int c = index >>> CHUNK_SHIFT;
+		int w = ( index >>> 6 ) & ( WORDS_PER_CHUNK - 1 );
+		long mask = -1L << index;
+		for ( ; c < chunks.length; ++c, w = 0, mask = -1L )
+		{
+			final long[] chunk = chunks[ c ];
+			if ( chunk == null )
+				continue;
+			for ( ; w < WORDS_PER_CHUNK; ++w, mask = -1L )
+			{
+				final long word = chunk[ w ] & mask;
+				if ( word != 0 )
+					return ( c << CHUNK_SHIFT ) + ( w << 6 ) + Long.numberOfTrailingZeros( word );
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Creates a {@link Builder} initialized with the contents of this set.
+	 *
+	 * @return a new {@link Builder}.
+	 */
+	public Builder builder()
+	{
+		return new Builder( this );
+	}
+
+	private static boolean get( final long[][] chunks, final int index )
+	{
+		if ( index < 0 )
+			return false;
+		final int c = index >>> CHUNK_SHIFT;
+		if ( c >= chunks.length )
+			return false;
+		final long[] chunk = chunks[ c ];
+		return chunk != null && ( chunk[ ( index >>> 6 ) & ( WORDS_PER_CHUNK - 1 ) ] & ( 1L << index ) ) != 0;
+	}
+
+	/**
+	 * Accumulates modifications of a {@link PersistentBitSet}. Chunks are
+	 * copied when they are first modified after the last {@link #build()}.
+	 * Building is cheap: it only resets the chunks copied since the last
+	 * build, and returns the previously built set if there were no
+	 * modifications. Builders are not thread-safe.
+	 */
+	public static final class Builder
+	{
+		private long[][] chunks;
+
+		/**
+		 * Whether {@link #chunks} (the array itself) is shared with a
+		 * published {@link PersistentBitSet}.
+		 */
+		private boolean chunksShared;
+
+		/**
+		 * {@code owned[c]} is {@code true} if chunk {@code c} was copied by
+		 * this builder since the last {@link #build()}.
+		 */
+		private boolean[] owned;
+
+		/**
+		 * The indices of the chunks marked in {@link #owned}, in the first
+		 * {@link #numOwned} elements.
+		 */
+		private int[] ownedList;
+
+		private int numOwned;
+
+		private int cardinality;
+
+		/**
+		 * The set returned by the last {@link #build()}, or {@code null} if
+		 * the builder was modified since.
+		 */
+		private PersistentBitSet built;
+
+		private Builder( final PersistentBitSet set )
+		{
+			chunks = set.chunks;
+			chunksShared = true;
+			owned = new boolean[ chunks.length ];
+			ownedList = new int[ 8 ];
+			numOwned = 0;
+			cardinality = set.cardinality;
+			built = set;
+		}
+
+		/**
+		 * Returns whether the bit with the specified index is set in the
+		 * current state of this builder.
+		 *
+		 * @param index
+		 *            the bit index.
+		 * @return {@code true} if the bit is set.
+		 */
+		public boolean get( final int index )
+		{
+			return PersistentBitSet.get( chunks, index );
+		}
+
+		/**
+		 * Sets the bit with the specified index to the specified value.
+		 *
+		 * @param index
+		 *            the bit index, must be {@code >= 0}.
+		 * @param value
+		 *            the value to set.
+		 * @return {@code true} if the bit was changed by this call.
+		 */
+		public boolean set( final int index, final boolean value )
+		{
+			if ( get( index ) == value )
+				return false;
+
+			final int c = index >>> CHUNK_SHIFT;
+			if ( chunksShared || c >= chunks.length )
+			{
+				final int length = Math.max( chunks.length, c >= chunks.length ? Math.max( c + 1, chunks.length * 3 / 2 ) : 0 );
+				chunks = Arrays.copyOf( chunks, length );
+				owned = Arrays.copyOf( owned, length );
+				chunksShared = false;
+			}
+			if ( !owned[ c ] )
+			{
+				chunks[ c ] = chunks[ c ] == null ? new long[ WORDS_PER_CHUNK ] : chunks[ c ].clone();
+				owned[ c ] = true;
+				if ( numOwned == ownedList.length )
+					ownedList = Arrays.copyOf( ownedList, 2 * numOwned );
+				ownedList[ numOwned++ ] = c;
+			}
+			built = null;
+
+			final int w = ( index >>> 6 ) & ( WORDS_PER_CHUNK - 1 );
+			if ( value )
+			{
+				chunks[ c ][ w ] |= 1L << index;
+				++cardinality;
+			}
+			else
+			{
+				chunks[ c ][ w ] &= ~( 1L << index );
+				--cardinality;
+			}
+			return true;
+		}
+
+		/**
+		 * Clears all bits.
+		 *
+		 * @return {@code true} if any bit was set before this call.
+		 */
+		public boolean clear()
+		{
+			if ( cardinality == 0 )
+				return false;
+			chunks = NO_CHUNKS;
+			chunksShared = true;
+			owned = new boolean[ 0 ];
+			numOwned = 0;
+			cardinality = 0;
+			built = null;
+			return true;
+		}
+
+		public int cardinality()
+		{
+			return cardinality;
+		}
+
+		/**
+		 * Creates an immutable {@link PersistentBitSet} from the current state
+		 * of this builder. The builder can be used for further modifications,
+		 * which will not affect the returned set.
+		 *
+		 * @return a snapshot of the current state.
+		 */
+		public PersistentBitSet build()
+		{
+			if ( built == null )
+			{
+				chunksShared = true;
+				for ( int i = 0; i < numOwned; ++i )
+					owned[ ownedList[ i ] ] = false;
+				numOwned = 0;
+				built = new PersistentBitSet( chunks, cardinality );
+			}
+			return built;
+		}
+	}
+}
@@ -248,9 +248,15 @@ public class EditBehaviours< V extends OverlayVertex< V, E >, E extends OverlayE
 					if ( SELECT_ADDED_SPOT )
 					{
 						selection.pauseListeners();
-						selection.clearSelection();
-						selection.setSelected( vertex, true );
-						selection.resumeListeners();
+						try
+						{
+							selection.clearSelection();
+							selection.setSelected( vertex, true );
+						}
+						finally
+						{
+							selection.resumeListeners();
+						}
 					}
 				}
 				finally
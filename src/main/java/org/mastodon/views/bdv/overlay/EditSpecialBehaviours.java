@@ -378,9 +378,15 @@ public class EditSpecialBehaviours< V extends OverlayVertex< V, E >, E extends O
 						if ( SELECT_ADDED_SPOT )
 						{
 							selection.pauseListeners();
-							selection.clearSelection();
-							selection.setSelected( target, true );
-							selection.resumeListeners();
+							try
+							{
+								selection.clearSelection();
+								selection.setSelected( target, true );
+							}
+							finally
+							{
+								selection.resumeListeners();
+							}
 						}
 					}
 
@@ -514,9 +520,15 @@ public class EditSpecialBehaviours< V extends OverlayVertex< V, E >, E extends O
 				if ( SELECT_ADDED_SPOT )
 				{
 					selection.pauseListeners();
-					selection.clearSelection();
-					selection.setSelected( target, true );
-					selection.resumeListeners();
+					try
+					{
+						selection.clearSelection();
+						selection.setSelected( target, true );
+					}
+					finally
+					{
+						selection.resumeListeners();
+					}
 				}
 
 				moving = false;
@@ -74,6 +74,12 @@ public class OverlayContext< V extends OverlayVertex< V, ? > > implements
 		return renderer.getVisibleVertices( transform, timepoint );
 	}
 
+	@Override
+	public Iterable< V > getInsideVertices( final int fromTimepoint, final int toTimepoint )
+	{
+		return renderer.getVisibleVertices( transform, fromTimepoint, toTimepoint );
+	}
+
 	@Override
 	public int getTimepoint()
 	{
@@ -42,6 +42,17 @@ public interface OverlayGraph< V extends OverlayVertex< V, E >, E extends Overla
 
 	public double getMaxBoundingSphereRadiusSquared( final int timepoint );
 
+	/**
+	 * Returns the id of the track (connected component) of the specified
+	 * vertex. Two vertices have the same track id if and only if they are
+	 * connected. Track ids may change when the graph is modified.
+	 *
+	 * @param v
+	 *            the vertex.
+	 * @return the track id.
+	 */
+	public int getTrackId( final V v );
+
 	public ReentrantReadWriteLock getLock();
 
 	/**
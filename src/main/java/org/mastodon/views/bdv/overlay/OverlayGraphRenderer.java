@@ -41,6 +41,8 @@ import java.awt.geom.AffineTransform;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.Rectangle2D;
 
+import org.mastodon.app.metrics.Metrics;
+import org.mastodon.app.metrics.Timer;
 import org.mastodon.collection.RefCollection;
 import org.mastodon.collection.RefCollections;
 import org.mastodon.collection.RefList;
@@ -49,7 +51,6 @@ import org.mastodon.kdtree.IncrementalNearestNeighborSearch;
 import org.mastodon.model.FocusModel;
 import org.mastodon.model.HighlightModel;
 import org.mastodon.model.SelectionModel;
-import org.mastodon.spatial.SpatialIndex;
 import org.mastodon.spatial.SpatioTemporalIndex;
 import org.mastodon.ui.coloring.GraphColorGenerator;
 import org.mastodon.util.GeometryUtil;
@@ -57,6 +58,7 @@ import org.mastodon.views.bdv.overlay.ScreenVertexMath.Ellipse;
 import org.mastodon.views.bdv.overlay.Visibilities.Visibility;
 import org.mastodon.views.bdv.overlay.Visibilities.VisibilityMode;
 import org.mastodon.views.bdv.overlay.util.BdvRendererUtil;
+import org.mastodon.views.bdv.overlay.util.TimeWindowClip;
 
 import bdv.util.Affine3DHelpers;
 import bdv.viewer.OverlayRenderer;
@@ -100,6 +102,8 @@ import net.imglib2.util.LinAlgHelpers;
 public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends OverlayEdge< E, V > >
 		implements OverlayRenderer, TransformListener< AffineTransform3D >, TimePointListener
 {
+	private static final Timer PAINT_TIMER = Metrics.timer( "bdv.overlay.paint" );
+
 	private int width;
 
 	private int height;
@@ -136,7 +140,7 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 		this.focus = focus;
 		this.selection = selection;
 		this.coloring = coloring;
-		this.visibilities = new Visibilities<>( graph, selection, focus, graph.getLock() );
+		this.visibilities = new Visibilities<>( graph, selection, focus, graph::getTrackId, graph.getLock() );
 		index = graph.getIndex();
 		renderTransform = new AffineTransform3D();
 		setRenderSettings( RenderSettings.defaultStyle() ); // default RenderSettings
@@ -369,9 +373,30 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 			final AffineTransform3D transform,
 			final int timepoint )
 	{
+		return getOverlappingPolytopeGlobal( xMin, xMax, yMin, yMax, transform, timepoint, timepoint );
+	}
+
+	/**
+	 * Get the {@link ConvexPolytope} around the specified viewer coordinate
+	 * range that is large enough to ensure that it contains the center of
+	 * every ellipsoid at time-points {@code [fromTimepoint, toTimepoint]}
+	 * overlapping that range.
+	 */
+	private ConvexPolytope getOverlappingPolytopeGlobal(
+			final double xMin,
+			final double xMax,
+			final double yMin,
+			final double yMax,
+			final AffineTransform3D transform,
+			final int fromTimepoint,
+			final int toTimepoint )
+	{
+		double maxRadiusSquared = graph.getMaxBoundingSphereRadiusSquared( fromTimepoint );
+		for ( int t = fromTimepoint + 1; t <= toTimepoint; ++t )
+			maxRadiusSquared = Math.max( maxRadiusSquared, graph.getMaxBoundingSphereRadiusSquared( t ) );
 		final double maxDepth = getMaxDepth( transform );
 		final double globalToViewerScale = Affine3DHelpers.extractScale( transform, 0 );
-		final double border = globalToViewerScale * Math.sqrt( graph.getMaxBoundingSphereRadiusSquared( timepoint ) );
+		final double border = globalToViewerScale * Math.sqrt( maxRadiusSquared );
 		return BdvRendererUtil.getPolytopeGlobal( transform,
 				xMin - border, xMax + border,
 				yMin - border, yMax + border,
@@ -410,6 +435,34 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 		return getOverlappingPolytopeGlobal( 0, width, 0, height, transform, timepoint );
 	}
 
+	/**
+	 * Get the {@link ConvexPolytope} bounding the visible region of global
+	 * space, extended by a large enough border to ensure that it contains the
+	 * center of every ellipsoid at time-points
+	 * {@code [fromTimepoint, toTimepoint]} that intersects the visible volume.
+	 */
+	private ConvexPolytope getVisiblePolytopeGlobal(
+			final AffineTransform3D transform,
+			final int fromTimepoint,
+			final int toTimepoint )
+	{
+		return getOverlappingPolytopeGlobal( 0, width, 0, height, transform, fromTimepoint, toTimepoint );
+	}
+
+	/**
+	 * Get the vertices inside the specified polytope at time-points
+	 * {@code [fromTimepoint, toTimepoint]}, ordered by time-point.
+	 */
+	private Iterable< V > clipVertices(
+			final ConvexPolytope polytopeGlobal,
+			final int fromTimepoint,
+			final int toTimepoint )
+	{
+		final TimeWindowClip< V > clip = new TimeWindowClip<>( index );
+		clip.clip( polytopeGlobal, fromTimepoint, toTimepoint );
+		return clip.getInsideValues();
+	}
+
 	/**
 	 * Get the {@link ConvexPolytope} around the specified viewer coordinate
 	 * that is large enough to ensure that it contains the center of every
@@ -495,42 +548,44 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 				? currentTimepoint + timeLimit - 1
 				: currentTimepoint;
 
-		for ( int t = minT; t <= maxT; ++t )
+		final ConvexPolytope visiblePolytopeGlobal = getVisiblePolytopeGlobal( transform, minT, maxT );
+		int t = -1;
+		double td0 = 0;
+		double td1 = 0;
+		for ( final V vertex : clipVertices( visiblePolytopeGlobal, minT, maxT ) )
 		{
-			final double td0 = timeDistance( t - 1, currentTimepoint, timeLimit );
-			final double td1 = timeDistance( t, currentTimepoint, timeLimit );
-
-			final SpatialIndex< V > si = index.getSpatialIndex( t );
-			final ClipConvexPolytope< V > ccp = si.getClipConvexPolytope();
-			ccp.clip( getVisiblePolytopeGlobal( transform, t ) );
-			for ( final V vertex : ccp.getInsideValues() )
+			if ( vertex.getTimepoint() != t )
 			{
-				vertex.localize( gPos );
-				transform.apply( gPos, lPos );
-				final int x1 = ( int ) lPos[ 0 ];
-				final int y1 = ( int ) lPos[ 1 ];
+				t = vertex.getTimepoint();
+				td0 = timeDistance( t - 1, currentTimepoint, timeLimit );
+				td1 = timeDistance( t, currentTimepoint, timeLimit );
+			}
 
-				final double z1 = lPos[ 2 ];
-				final double sd1 = sliceDistance( z1, maxDepth );
+			vertex.localize( gPos );
+			transform.apply( gPos, lPos );
+			final int x1 = ( int ) lPos[ 0 ];
+			final int y1 = ( int ) lPos[ 1 ];
 
-				for ( final E edge : vertex.incomingEdges() )
-				{
-					if ( !visibility.isVisible( edge ) )
-						continue;
+			final double z1 = lPos[ 2 ];
+			final double sd1 = sliceDistance( z1, maxDepth );
 
-					final V source = edge.getSource( ref );
-					source.localize( gPos );
-					transform.apply( gPos, lPos );
-					final int x0 = ( int ) lPos[ 0 ];
-					final int y0 = ( int ) lPos[ 1 ];
+			for ( final E edge : vertex.incomingEdges() )
+			{
+				if ( !visibility.isVisible( edge ) )
+					continue;
 
-					final double z0 = lPos[ 2 ];
-					final double sd0 = sliceDistance( z0, maxDepth );
+				final V source = edge.getSource( ref );
+				source.localize( gPos );
+				transform.apply( gPos, lPos );
+				final int x0 = ( int ) lPos[ 0 ];
+				final int y0 = ( int ) lPos[ 1 ];
 
-					if ( ( sd0 > -1 && sd0 < 1 ) || ( sd1 > -1 && sd1 < 1 ) )
-					{
-						edgeOperation.apply( edge, td0, td1, sd0, sd1, x0, y0, x1, y1 );
-					}
+				final double z0 = lPos[ 2 ];
+				final double sd0 = sliceDistance( z0, maxDepth );
+
+				if ( ( sd0 > -1 && sd0 < 1 ) || ( sd1 > -1 && sd1 < 1 ) )
+				{
+					edgeOperation.apply( edge, td0, td1, sd0, sd1, x0, y0, x1, y1 );
 				}
 			}
 		}
@@ -544,6 +599,7 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 		if ( visibilities.getMode() == VisibilityMode.NONE )
 			return;
 
+		final long t0 = System.nanoTime();
 		final Graphics2D graphics = ( Graphics2D ) g;
 		final BasicStroke defaultVertexStroke = new BasicStroke( ( float ) settings.getSpotStrokeWidth() );
 		final BasicStroke highlightedVertexStroke = new BasicStroke( 4f );
@@ -782,6 +838,7 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 		graph.releaseRef( ref3 );
 		graph.releaseRef( source );
 		graph.releaseRef( target );
+		PAINT_TIMER.record( System.nanoTime() - t0 );
 	}
 
 	static void drawEllipse( final Graphics2D graphics, final Ellipse ellipse, AffineTransform torig, final boolean fillSpots )
@@ -1100,6 +1157,31 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 	 *         and the specified {@code transform} and {@code timepoint}.
 	 */
 	RefCollection< V > getVisibleVertices( final AffineTransform3D transform, final int timepoint )
+	{
+		return getVisibleVertices( transform, timepoint, timepoint );
+	}
+
+	/**
+	 * Get all vertices that would be visible with the current display settings
+	 * and the specified {@code transform}, at any time-point in the window
+	 * {@code [fromTimepoint, toTimepoint]}. This is used to compute
+	 * {@link OverlayContext}.
+	 * <p>
+	 * The visible region is computed once for the whole window, and empty
+	 * time-points are skipped.
+	 * <p>
+	 * Note, that it doesn't lock the {@link SpatioTemporalIndex}: we assumed,
+	 * that this is already done by the caller.
+	 *
+	 * @param transform
+	 * @param fromTimepoint
+	 *            the first time-point of the window (inclusive).
+	 * @param toTimepoint
+	 *            the last time-point of the window (inclusive).
+	 * @return vertices that would be visible with the current display settings
+	 *         and the specified {@code transform}, ordered by time-point.
+	 */
+	RefCollection< V > getVisibleVertices( final AffineTransform3D transform, final int fromTimepoint, final int toTimepoint )
 	{
 		final RefList< V > contextList = RefCollections.createRefList( graph.vertices() );
 		if ( visibilities.getMode() == VisibilityMode.NONE )
@@ -1113,10 +1195,8 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 		final ScreenVertexMath screenVertexMath = new ScreenVertexMath();
 		final Visibility< V, E > visibility = visibilities.getVisibility();
 
-		final ConvexPolytope cropPolytopeGlobal = getVisiblePolytopeGlobal( transform, timepoint );
-		final ClipConvexPolytope< V > ccp = index.getSpatialIndex( timepoint ).getClipConvexPolytope();
-		ccp.clip( cropPolytopeGlobal );
-		for ( final V vertex : ccp.getInsideValues() )
+		final ConvexPolytope cropPolytopeGlobal = getVisiblePolytopeGlobal( transform, fromTimepoint, toTimepoint );
+		for ( final V vertex : clipVertices( cropPolytopeGlobal, fromTimepoint, toTimepoint ) )
 		{
 			if ( !visibility.isVisible( vertex ) )
 				continue;
@@ -31,14 +31,12 @@ package org.mastodon.views.bdv.overlay;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.ToIntFunction;
 
-import org.mastodon.collection.RefCollections;
-import org.mastodon.collection.RefSet;
 import org.mastodon.graph.Edge;
+import org.mastodon.graph.GraphChangeListener;
 import org.mastodon.graph.ReadOnlyGraph;
 import org.mastodon.graph.Vertex;
-import org.mastodon.graph.algorithm.AbstractGraphAlgorithm;
-import org.mastodon.graph.algorithm.util.Graphs;
 import org.mastodon.model.FocusListener;
 import org.mastodon.model.FocusModel;
 import org.mastodon.model.SelectionListener;
@@ -63,9 +61,11 @@ import org.scijava.listeners.Listeners;
  * <ul>
  * <li>when the visibility mode changes;</li>
  * <li>when the selection changes in the {@link VisibilityMode#SELECTION} mode;
- * <li>when the focus changes in the
+ * <li>when the focus or the graph changes in the
  * {@link VisibilityMode#TRACK_OF_FOCUSED_VERTEX} mode.
  * </ul>
+ * For the latter, this class must be registered as a
+ * {@link GraphChangeListener} of the graph.
  *
  * @author Jean-Yves Tinevez
  * @param <V>
@@ -73,15 +73,22 @@ import org.scijava.listeners.Listeners;
  * @param <E>
  *            the type of model edge.
  */
-public class Visibilities< V extends Vertex< E >, E extends Edge< V > >
+public class Visibilities< V extends Vertex< E >, E extends Edge< V > > implements GraphChangeListener
 {
 
+	/**
+	 * Focused track id when no vertex is focused.
+	 */
+	private static final int NO_TRACK = -1;
+
 	private final ReadOnlyGraph< V, E > graph;
 
 	private final SelectionModel< V, E > selectionModel;
 
 	private final FocusModel< V, E > focusModel;
 
+	private final ToIntFunction< V > trackIds;
+
 	private VisibilityMode currentMode;
 
 	private Visibility< V, E > currentVisibility;
@@ -102,6 +109,12 @@ public class Visibilities< V extends Vertex< E >, E extends Edge< V > >
 	 */
 	private FocusListener previousFocusListener;
 
+	/**
+	 * The current visibility, if it needs to be updated when the graph
+	 * changes.
+	 */
+	private GraphChangeListener previousGraphChangeListener;
+
 	/**
 	 * Creates a new visibilities instance.
 	 *
@@ -113,6 +126,11 @@ public class Visibilities< V extends Vertex< E >, E extends Edge< V > >
 	 * @param focusModel
 	 *            a focus model built on the specified graph, to be used on the
 	 *            {@link VisibilityMode#TRACK_OF_FOCUSED_VERTEX} mode.
+	 * @param trackIds
+	 *            maps vertices to the id of their track (connected component),
+	 *            used on the {@link VisibilityMode#TRACK_OF_FOCUSED_VERTEX}
+	 *            mode. Vertices have the same id if and only if they are in
+	 *            the same track.
 	 * @param lock
 	 *            the lock on the specified graph, used to read-lock the graph
 	 *            when building the {@link Visibility} instances.
@@ -121,11 +139,13 @@ public class Visibilities< V extends Vertex< E >, E extends Edge< V > >
 			final ReadOnlyGraph< V, E > graph,
 			final SelectionModel< V, E > selectionModel,
 			final FocusModel< V, E > focusModel,
+			final ToIntFunction< V > trackIds,
 			final ReentrantReadWriteLock lock )
 	{
 		this.graph = graph;
 		this.selectionModel = selectionModel;
 		this.focusModel = focusModel;
+		this.trackIds = trackIds;
 		this.lock = lock;
 		this.visibilityListeners = new Listeners.SynchronizedList<>();
 		setMode( VisibilityMode.ALL );
@@ -188,6 +208,8 @@ public class Visibilities< V extends Vertex< E >, E extends Edge< V > >
 			focusModel.listeners().remove( previousFocusListener );
 			previousFocusListener = null;
 		}
+		// Forget previous graph change listener.
+		previousGraphChangeListener = null;
 		// Deregister previous selection listener.
 		if ( null != previousSelectionListener )
 		{
@@ -210,16 +232,32 @@ public class Visibilities< V extends Vertex< E >, E extends Edge< V > >
 			previousSelectionListener = selectionVisibility;
 			return selectionVisibility;
 		case TRACK_OF_FOCUSED_VERTEX:
-			final TrackOfFocusedVisibility trackOfFocusedVisibility = new TrackOfFocusedVisibility( graph, focusModel, lock );
-			trackOfFocusedVisibility.focusChanged();
+			final TrackOfFocusedVisibility trackOfFocusedVisibility = new TrackOfFocusedVisibility( graph, trackIds, focusModel, lock );
+			trackOfFocusedVisibility.updateFocusedTrack();
+			notifyListeners();
 			focusModel.listeners().add( trackOfFocusedVisibility );
 			previousFocusListener = trackOfFocusedVisibility;
+			previousGraphChangeListener = trackOfFocusedVisibility;
 			return trackOfFocusedVisibility;
 		default:
 			throw new IllegalArgumentException( "Unknwon VisibilityMode: " + currentMode );
 		}
 	}
 
+	/**
+	 * Updates the current visibility after changes to the graph. Must be
+	 * called when the graph changes, for the
+	 * {@link VisibilityMode#TRACK_OF_FOCUSED_VERTEX} mode to reflect added and
+	 * removed vertices and edges.
+	 */
+	@Override
+	public void graphChanged()
+	{
+		final GraphChangeListener l = previousGraphChangeListener;
+		if ( null != l )
+			l.graphChanged();
+	}
+
 	private void notifyListeners()
 	{
 		for ( final VisibilityListener l : visibilityListeners.list )
@@ -285,89 +323,91 @@ public class Visibilities< V extends Vertex< E >, E extends Edge< V > >
 		public boolean isVisible( E e );
 	}
 
-	private class TrackOfFocusedVisibility implements Visibility< V, E >, FocusListener
+	/**
+	 * Shows the track (connected component) of the focused vertex.
+	 * <p>
+	 * Track ids are provided by the graph, so moving the focus only looks up
+	 * the track id of the focused vertex, without traversing the graph. The
+	 * focused track id is looked up again when the graph changes, because
+	 * track ids may change with edits.
+	 */
+	private class TrackOfFocusedVisibility implements Visibility< V, E >, FocusListener, GraphChangeListener
 	{
 
 		private final FocusModel< V, E > focusModel;
 
 		private final ReadOnlyGraph< V, E > graph;
 
-		private final RefSet< V > vertices;
-
-		private final RefSet< E > edges;
+		private final ToIntFunction< V > trackIds;
 
 		private final ReentrantReadWriteLock lock;
 
-		public TrackOfFocusedVisibility( final ReadOnlyGraph< V, E > graph, final FocusModel< V, E > focusModel, final ReentrantReadWriteLock lock )
+		/**
+		 * Reference used to get the source of edges in
+		 * {@link #isVisible(Edge)}.
+		 */
+		private final V edgeSourceRef;
+
+		private volatile int focusedTrackId = NO_TRACK;
+
+		public TrackOfFocusedVisibility( final ReadOnlyGraph< V, E > graph, final ToIntFunction< V > trackIds, final FocusModel< V, E > focusModel, final ReentrantReadWriteLock lock )
 		{
 			this.graph = graph;
+			this.trackIds = trackIds;
 			this.focusModel = focusModel;
 			this.lock = lock;
-			this.vertices = RefCollections.createRefSet( graph.vertices() );
-			this.edges = RefCollections.createRefSet( graph.edges() );
+			this.edgeSourceRef = graph.vertexRef();
 		}
 
 		@Override
 		public boolean isVisible( final V v )
 		{
-			return vertices.contains( v );
+			final int trackId = focusedTrackId;
+			return trackId != NO_TRACK && trackIds.applyAsInt( v ) == trackId;
 		}
 
 		@Override
-		public boolean isVisible( final E e )
+		public synchronized boolean isVisible( final E e )
 		{
-			return edges.contains( e );
+			final int trackId = focusedTrackId;
+			return trackId != NO_TRACK && trackIds.applyAsInt( e.getSource( edgeSourceRef ) ) == trackId;
 		}
 
 		@Override
 		public void focusChanged()
 		{
-			vertices.clear();
-			edges.clear();
-			lock.readLock().lock();
-			try
-			{
-				final V focused = focusModel.getFocusedVertex( graph.vertexRef() );
-				if ( null != focused )
-				{
-					final ConnectedComponent< V, E > visitor = new ConnectedComponent<>( graph, vertices, edges );
-					visitor.visit( focused );
-				}
+			if ( updateFocusedTrack() )
 				notifyListeners();
-			}
-			finally
-			{
-				lock.readLock().unlock();
-			}
 		}
 
-	}
-
-	private static class ConnectedComponent< V extends Vertex< E >, E extends Edge< V > > extends AbstractGraphAlgorithm< V, E >
-	{
-
-		private final RefSet< V > vertices;
-
-		private final RefSet< E > edges;
-
-		public ConnectedComponent( final ReadOnlyGraph< V, E > graph, final RefSet< V > vertices, final RefSet< E > edges )
+		@Override
+		public void graphChanged()
 		{
-			super( graph );
-			this.vertices = vertices;
-			this.edges = edges;
+			updateFocusedTrack();
+			notifyListeners();
 		}
 
-		public void visit( final V v )
+		/**
+		 * Looks up the track id of the focused vertex.
+		 *
+		 * @return whether the focused track changed.
+		 */
+		private boolean updateFocusedTrack()
 		{
-			vertices.add( v );
-			for ( final E e : v.edges() )
+			lock.readLock().lock();
+			final V ref = graph.vertexRef();
+			try
 			{
-				edges.add( e );
-				final V target = Graphs.getOppositeVertex( e, v, graph.vertexRef() );
-				if ( vertices.contains( target ) )
-					continue;
-
-				visit( target );
+				final V focused = focusModel.getFocusedVertex( ref );
+				final int trackId = null == focused ? NO_TRACK : trackIds.applyAsInt( focused );
+				final boolean changed = trackId != focusedTrackId;
+				focusedTrackId = trackId;
+				return changed;
+			}
+			finally
+			{
+				graph.releaseRef( ref );
+				lock.readLock().unlock();
 			}
 		}
 	}
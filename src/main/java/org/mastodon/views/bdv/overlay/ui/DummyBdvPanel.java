@@ -230,7 +230,7 @@ public class DummyBdvPanel extends JPanel
 				idmap,
 				spatioTemporalIndex,
 				graph.getLock(),
-				new ModelOverlayProperties( graph, radiusStats ) );
+				new ModelOverlayProperties( graph, radiusStats, model.getTrackIndex() ) );
 		final RefBimap< Spot, OverlayVertexWrapper< Spot, Link > > vertexMap = viewGraph.getVertexMap();
 		final RefBimap< Link, OverlayEdgeWrapper< Spot, Link > > edgeMap = viewGraph.getEdgeMap();
 
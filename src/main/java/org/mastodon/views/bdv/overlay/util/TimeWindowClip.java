@@ -0,0 +1,133 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.views.bdv.overlay.util;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.mastodon.kdtree.ClipConvexPolytope;
+import org.mastodon.spatial.SpatialIndex;
+import org.mastodon.spatial.SpatioTemporalIndex;
+
+import net.imglib2.algorithm.kdtree.ConvexPolytope;
+
+/**
+ * Clips a {@link SpatioTemporalIndex} with a {@link ConvexPolytope} over a
+ * window of time-points.
+ * <p>
+ * Answers "all objects inside polytope P at time-points {@code [t0, t1]}" as
+ * one query. The per-time-point spatial indices serve as time buckets: empty
+ * time-points are skipped, and each non-empty time-point is clipped only when
+ * iteration reaches it. Objects are returned ordered by time-point.
+ * <p>
+ * Like {@link ClipConvexPolytope}, the values returned by
+ * {@link #getInsideValues()} are only valid until the next call to
+ * {@link #clip(ConvexPolytope, int, int)}, and the caller is responsible for
+ * locking the index.
+ *
+ * @param <O>
+ *            the type of objects in the index.
+ */
+public class TimeWindowClip< O >
+{
+	private final SpatioTemporalIndex< O > index;
+
+	private ConvexPolytope polytope;
+
+	private int fromTimepoint;
+
+	private int toTimepoint;
+
+	public TimeWindowClip( final SpatioTemporalIndex< O > index )
+	{
+		this.index = index;
+		this.fromTimepoint = 0;
+		this.toTimepoint = -1;
+	}
+
+	/**
+	 * Sets the polytope and the time window of the query.
+	 *
+	 * @param polytope
+	 *            the polytope, in global coordinates.
+	 * @param fromTimepoint
+	 *            the first time-point of the window (inclusive).
+	 * @param toTimepoint
+	 *            the last time-point of the window (inclusive).
+	 */
+	public void clip( final ConvexPolytope polytope, final int fromTimepoint, final int toTimepoint )
+	{
+		this.polytope = polytope;
+		this.fromTimepoint = Math.max( 0, fromTimepoint );
+		this.toTimepoint = toTimepoint;
+	}
+
+	/**
+	 * Returns the objects inside the polytope in the time window of the last
+	 * {@link #clip(ConvexPolytope, int, int)}.
+	 *
+	 * @return the objects inside the polytope.
+	 */
+	public Iterable< O > getInsideValues()
+	{
+		final ConvexPolytope p = polytope;
+		final int from = fromTimepoint;
+		final int to = toTimepoint;
+		return () -> new Iterator< O >()
+		{
+			private int t = from;
+
+			private Iterator< O > it = Collections.emptyIterator();
+
+			@Override
+			public boolean hasNext()
+			{
+				while ( !it.hasNext() && t <= to )
+				{
+					final SpatialIndex< O > si = index.getSpatialIndex( t++ );
+					if ( si == null || si.isEmpty() )
+						continue;
+					final ClipConvexPolytope< O > ccp = si.getClipConvexPolytope();
+					ccp.clip( p );
+					it = ccp.getInsideValues().iterator();
+				}
+				return it.hasNext();
+			}
+
+			@Override
+			public O next()
+			{
+				if ( !hasNext() )
+					throw new NoSuchElementException();
+				return it.next();
+			}
+		};
+	}
+}
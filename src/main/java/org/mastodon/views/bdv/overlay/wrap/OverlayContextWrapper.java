@@ -78,7 +78,17 @@ public class OverlayContextWrapper< V extends Vertex< E >, E extends Edge< V > >
 	@Override
 	public Iterable< V > getInsideVertices( final int timepoint )
 	{
-		final Iterable< OverlayVertexWrapper< V, E > > insideVertices = context.getInsideVertices( timepoint );
+		return unwrap( context.getInsideVertices( timepoint ) );
+	}
+
+	@Override
+	public Iterable< V > getInsideVertices( final int fromTimepoint, final int toTimepoint )
+	{
+		return unwrap( context.getInsideVertices( fromTimepoint, toTimepoint ) );
+	}
+
+	private Iterable< V > unwrap( final Iterable< OverlayVertexWrapper< V, E > > insideVertices )
+	{
 		return new Iterable< V >()
 		{
 			@Override
@@ -171,6 +171,12 @@ public class OverlayGraphWrapper< V extends Vertex< E >, E extends Edge< V > > i
 		return overlayProperties.getMaxBoundingSphereRadiusSquared( timepoint );
 	}
 
+	@Override
+	public int getTrackId( final OverlayVertexWrapper< V, E > v )
+	{
+		return overlayProperties.getTrackId( v.wv );
+	}
+
 	@Override
 	public OverlayVertexWrapper< V, E > addVertex()
 	{
@@ -52,6 +52,8 @@ public interface OverlayProperties< V, E > // TODO: rename to ModelGraphProperti
 
 	public double getMaxBoundingSphereRadiusSquared( int timepoint );
 
+	public int getTrackId( V v );
+
 	public V addVertex( V ref );
 
 	// TODO: remove? use covariance version instead?
@@ -28,6 +28,9 @@
  */
 package org.mastodon.views.context;
 
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.concurrent.locks.Lock;
 
 public interface Context< V >
@@ -36,5 +39,46 @@ public interface Context< V >
 
 	public Iterable< V > getInsideVertices( final int timepoint );
 
+	/**
+	 * Get the vertices inside this context at any time-point in the window
+	 * {@code [fromTimepoint, toTimepoint]}, ordered by time-point.
+	 * <p>
+	 * The default implementation concatenates
+	 * {@link #getInsideVertices(int)} for each time-point of the window.
+	 * Implementations should override this if they can answer the query for
+	 * the whole window at once.
+	 *
+	 * @param fromTimepoint
+	 *            the first time-point of the window (inclusive).
+	 * @param toTimepoint
+	 *            the last time-point of the window (inclusive).
+	 * @return the vertices inside this context in the time window.
+	 */
+	public default Iterable< V > getInsideVertices( final int fromTimepoint, final int toTimepoint )
+	{
+		return () -> new Iterator< V >()
+		{
+			private int t = fromTimepoint;
+
+			private Iterator< V > it = Collections.emptyIterator();
+
+			@Override
+			public boolean hasNext()
+			{
+				while ( !it.hasNext() && t <= toTimepoint )
+					it = getInsideVertices( t++ ).iterator();
+				return it.hasNext();
+			}
+
+			@Override
+			public V next()
+			{
+				if ( !hasNext() )
+					throw new NoSuchElementException();
+				return it.next();
+			}
+		};
+	}
+
 	public int getTimepoint();
 }
@@ -74,27 +74,36 @@ import javax.swing.table.JTableHeader;
 import javax.swing.table.TableCellRenderer;
 import javax.swing.table.TableColumn;
 import javax.swing.table.TableColumnModel;
-import javax.swing.table.TableRowSorter;
 import javax.swing.text.JTextComponent;
 
 import org.mastodon.RefPool;
+import org.mastodon.app.metrics.Metrics;
+import org.mastodon.app.metrics.Timer;
 import org.mastodon.feature.Feature;
 import org.mastodon.feature.FeatureProjection;
 import org.mastodon.feature.FeatureSpec;
 import org.mastodon.feature.IntFeatureProjection;
+import org.mastodon.model.tag.ObjTagMap;
 import org.mastodon.model.tag.ObjTags;
 import org.mastodon.model.tag.TagSetStructure.Tag;
 import org.mastodon.model.tag.TagSetStructure.TagSet;
 import org.mastodon.ui.coloring.ColorGenerator;
 import org.mastodon.undo.UndoPointMarker;
 
+import gnu.trove.iterator.TIntIterator;
+import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.set.hash.TIntHashSet;
 
 public class FeatureTagTablePanel< O > extends JPanel
 {
 
 	private static final long serialVersionUID = 1L;
 
+	private static final Timer SET_ROWS_TIMER = Metrics.timer( "table.setRows" );
+
+	private static final Timer UPDATE_ROWS_TIMER = Metrics.timer( "table.updateRows" );
+
 	private static final Color HIGHLIGHT_BORDER_COLOR = Color.BLACK;
 
 	private static final Color HEADER_BG_COLOR = new Color( 245, 245, 245 );
@@ -138,25 +147,32 @@ public class FeatureTagTablePanel< O > extends JPanel
 	/**
 	 * Map of model row in the table to the id of the object the row display.
 	 */
-	private TIntIntHashMap rowMap = new TIntIntHashMap( 1, 0.5f, -1, -1 );
+	private TIntArrayList rowMap = new TIntArrayList();
 
 	/**
 	 * Map of object ids to their model row in the table.
 	 */
 	private TIntIntHashMap idMap = new TIntIntHashMap( 1, 0.5f, -1, -1 );
 
+	private final PrimitiveTableRowSorter< MyTableModel > sorter;
+
+	/**
+	 * Ids of objects added since the last update of the table rows.
+	 */
+	private final TIntHashSet pendingAdded = new TIntHashSet();
+
 	/**
-	 * Map of filtered model row in the table to the id of the object the row
-	 * display.
+	 * Ids of objects removed since the last update of the table rows.
 	 */
-	private TIntIntHashMap filterRowMap;
+	private final TIntHashSet pendingRemoved = new TIntHashSet();
 
 	/**
-	 * Map of filtered object ids to their model row in the table.
+	 * Ids of objects removed, then added again (with a recycled id), since
+	 * the last update of the table rows.
 	 */
-	private TIntIntHashMap filterIdMap = new TIntIntHashMap( 1, 0.5f, -1, -1 );
+	private final TIntHashSet pendingUpdated = new TIntHashSet();
 
-	private boolean doFilter = false;
+	private boolean updateScheduled = false;
 
 	private final ColorGenerator< O > coloring;
 
@@ -236,7 +252,7 @@ public class FeatureTagTablePanel< O > extends JPanel
 		table.getSelectionModel().setSelectionMode( ListSelectionModel.MULTIPLE_INTERVAL_SELECTION );
 		refreshColumns();
 
-		final TableRowSorter< MyTableModel > sorter = new TableRowSorter<>( tableModel );
+		this.sorter = new PrimitiveTableRowSorter<>( tableModel, new MySortKeys() );
 		table.setRowSorter( sorter );
 
 		this.scrollPane = new JScrollPane( table, JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED, JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED );
@@ -271,16 +287,56 @@ public class FeatureTagTablePanel< O > extends JPanel
 		if ( viewRowIndex < 0 )
 			return null;
 		final int modelRow = table.convertRowIndexToModel( viewRowIndex );
-		final int id = doFilter ? filterRowMap.get( modelRow ) : rowMap.get( modelRow );
+		final int id = rowMap.get( modelRow );
 		return idBimap.getObjectIfExists( id, ref );
 	}
 
 	public int getViewRowForObject( final O o )
 	{
-		final int modeRow = doFilter ? filterIdMap.get( idBimap.getId( o ) ) : idMap.get( idBimap.getId( o ) );
-		if ( modeRow < 0 ) // Object not in table.
+		return getViewRowForId( idBimap.getId( o ) );
+	}
+
+	/**
+	 * Returns the <b>view</b> row index of the object with the specified id.
+	 *
+	 * @param id
+	 *            the object id.
+	 * @return the view row index, or {@code -1} if the object is not
+	 *         currently displayed.
+	 */
+	public int getViewRowForId( final int id )
+	{
+		final int modelRow = idMap.get( id );
+		if ( modelRow < 0 ) // Object not in table.
 			return -1;
-		return table.convertRowIndexToView( modeRow );
+		// -1 if the row is filtered out.
+		return table.convertRowIndexToView( modelRow );
+	}
+
+	/**
+	 * Adds the rows of the objects with the specified ids to the table
+	 * selection, or removes them from it. Objects that are not displayed are
+	 * ignored.
+	 *
+	 * @param ids
+	 *            the object ids.
+	 * @param selected
+	 *            whether to add the rows to, or remove them from, the table
+	 *            selection.
+	 */
+	public void setRowsSelected( final int[] ids, final boolean selected )
+	{
+		final ListSelectionModel lsm = table.getSelectionModel();
+		for ( final int id : ids )
+		{
+			final int row = getViewRowForId( id );
+			if ( row < 0 )
+				continue;
+			if ( selected )
+				lsm.addSelectionInterval( row, row );
+			else
+				lsm.removeSelectionInterval( row, row );
+		}
 	}
 
 	/**
@@ -312,57 +368,201 @@ public class FeatureTagTablePanel< O > extends JPanel
 	 */
 	public void setRows( final Collection< O > rows )
 	{
+		final long t0 = System.nanoTime();
 		final TIntIntHashMap idMap = new TIntIntHashMap( rows.size(), 0.5f, -1, -1 );
-		final TIntIntHashMap rowMap = new TIntIntHashMap( rows.size(), 0.5f, -1, -1 );
-		int row = 0;
+		final TIntArrayList rowMap = new TIntArrayList( rows.size() );
 		for ( final O o : rows )
 		{
 			final int id = idBimap.getId( o );
-			rowMap.put( row, id );
-			idMap.put( id, row );
-			row++;
+			idMap.put( id, rowMap.size() );
+			rowMap.add( id );
 		}
 
 		synchronized ( this )
 		{
 			this.rowMap = rowMap;
 			this.idMap = idMap;
+			pendingAdded.clear();
+			pendingRemoved.clear();
+			pendingUpdated.clear();
 		}
 		tableModel.fireTableDataChanged();
+		SET_ROWS_TIMER.record( System.nanoTime() - t0 );
 	}
 
-	public void filter( final Collection< O > content )
+	/**
+	 * Records that the specified object was added and should be displayed in
+	 * this table. The table is not updated until
+	 * {@link #commitRowChanges()} is called.
+	 * <p>
+	 * Can be called from any thread, typically from a
+	 * {@link org.mastodon.graph.GraphListener}.
+	 *
+	 * @param o
+	 *            the added object.
+	 */
+	public synchronized void rowAdded( final O o )
 	{
-		if ( null == content )
+		final int id = idBimap.getId( o );
+		if ( pendingRemoved.remove( id ) )
+			pendingUpdated.add( id );
+		else
+			pendingAdded.add( id );
+	}
+
+	/**
+	 * Records that the specified object was removed and should not be
+	 * displayed in this table anymore. The table is not updated until
+	 * {@link #commitRowChanges()} is called.
+	 * <p>
+	 * Can be called from any thread, typically from a
+	 * {@link org.mastodon.graph.GraphListener}, before the object is actually
+	 * removed.
+	 *
+	 * @param o
+	 *            the object to be removed.
+	 */
+	public synchronized void rowRemoved( final O o )
+	{
+		final int id = idBimap.getId( o );
+		if ( !pendingAdded.remove( id ) )
 		{
-			doFilter = false;
+			pendingUpdated.remove( id );
+			pendingRemoved.add( id );
 		}
-		else
+	}
+
+	/**
+	 * Schedules an update of the table with the rows added and removed since
+	 * the last update. All changes committed before the update runs on the
+	 * event dispatch thread are coalesced into a single update, that fires
+	 * row insertion, deletion and update events instead of a full table data
+	 * change.
+	 */
+	public synchronized void commitRowChanges()
+	{
+		if ( updateScheduled )
+			return;
+		if ( pendingAdded.isEmpty() && pendingRemoved.isEmpty() && pendingUpdated.isEmpty() )
+			return;
+		updateScheduled = true;
+		SwingUtilities.invokeLater( this::updateRows );
+	}
+
+	/**
+	 * Applies pending row changes. Removed rows are replaced by the last row
+	 * of the table, so that the model row of all other objects is stable, and
+	 * added rows are appended.
+	 * <p>
+	 * The model rows whose object changed are announced to the sorter, which
+	 * repositions only these rows and the appended rows. A single event is
+	 * fired: a deletion or insertion at the end of the table if the row count
+	 * changed, or an update spanning the changed rows otherwise.
+	 */
+	private void updateRows()
+	{
+		final long t0 = System.nanoTime();
+		final int oldCount;
+		final int newCount;
+		final TIntHashSet touched = new TIntHashSet();
+		synchronized ( this )
 		{
-			doFilter = true;
-			final TIntIntHashMap filterIdMap = new TIntIntHashMap( content.size(), 0.5f, -1, -1 );
-			final TIntIntHashMap filterRowMap = new TIntIntHashMap( content.size(), 0.5f, -1, -1 );
+			updateScheduled = false;
+			oldCount = rowMap.size();
 
-			int filteredRow = 0;
-			for ( final O o : content )
+			// Removals.
+			for ( final TIntIterator it = pendingRemoved.iterator(); it.hasNext(); )
 			{
-				final int id = idBimap.getId( o );
-				final int row = idMap.get( id );
+				final int row = idMap.remove( it.next() );
 				if ( row < 0 )
 					continue;
+				final int last = rowMap.size() - 1;
+				final int lastId = rowMap.removeAt( last );
+				if ( row != last )
+				{
+					rowMap.set( row, lastId );
+					idMap.put( lastId, row );
+					touched.add( row );
+				}
+			}
+			final int remaining = rowMap.size();
 
-				filterIdMap.put( id, filteredRow );
-				filterRowMap.put( filteredRow, id );
-				filteredRow++;
+			// Additions.
+			for ( final TIntIterator it = pendingAdded.iterator(); it.hasNext(); )
+			{
+				final int id = it.next();
+				if ( idMap.containsKey( id ) )
+				{
+					pendingUpdated.add( id );
+					continue;
+				}
+				idMap.put( id, rowMap.size() );
+				rowMap.add( id );
 			}
+			newCount = rowMap.size();
 
-			synchronized ( this )
+			// Updates.
+			for ( final TIntIterator it = pendingUpdated.iterator(); it.hasNext(); )
 			{
-				this.filterIdMap = filterIdMap;
-				this.filterRowMap = filterRowMap;
+				final int row = idMap.get( it.next() );
+				if ( row >= 0 )
+					touched.add( row );
 			}
+			// Rows freed by removals and reused by additions.
+			final int common = Math.min( oldCount, newCount );
+			for ( int row = remaining; row < common; row++ )
+				touched.add( row );
+
+			pendingAdded.clear();
+			pendingRemoved.clear();
+			pendingUpdated.clear();
+		}
+
+		// Rows beyond the new row count are dropped by the deletion event.
+		int minTouched = Integer.MAX_VALUE;
+		int maxTouched = -1;
+		final int[] changedRows = new int[ touched.size() ];
+		int numChanged = 0;
+		for ( final TIntIterator it = touched.iterator(); it.hasNext(); )
+		{
+			final int row = it.next();
+			if ( row >= newCount )
+				continue;
+			changedRows[ numChanged++ ] = row;
+			minTouched = Math.min( minTouched, row );
+			maxTouched = Math.max( maxTouched, row );
+		}
+
+		if ( newCount != oldCount || numChanged > 0 )
+			sorter.setChangedRows( Arrays.copyOf( changedRows, numChanged ) );
+		if ( newCount < oldCount )
+			tableModel.fireTableRowsDeleted( newCount, oldCount - 1 );
+		else if ( newCount > oldCount )
+			tableModel.fireTableRowsInserted( oldCount, newCount - 1 );
+		else if ( numChanged > 0 )
+			tableModel.fireTableRowsUpdated( minTouched, maxTouched );
+		UPDATE_ROWS_TIMER.record( System.nanoTime() - t0 );
+	}
+
+	/**
+	 * Restricts the rows shown to the objects of the specified collection.
+	 *
+	 * @param content
+	 *            the objects to show, or {@code null} to show all rows.
+	 */
+	public void filter( final Collection< O > content )
+	{
+		if ( null == content )
+		{
+			sorter.setRowFilter( null );
+		}
+		else
+		{
+			final TIntHashSet ids = new TIntHashSet( content.size() );
+			for ( final O o : content )
+				ids.add( idBimap.getId( o ) );
+			sorter.setRowFilter( row -> ids.contains( rowMap.get( row ) ) );
 		}
-		tableModel.fireTableDataChanged();
 	}
 
 	private void refreshColumns()
@@ -502,6 +702,7 @@ public class FeatureTagTablePanel< O > extends JPanel
 
 	public void setFeatures( final Map< FeatureSpec< ?, O >, Feature< O > > features )
 	{
+		final List< String > oldColumns = projectionColumnKeys();
 		this.featureMap.clear();
 		if ( features != null )
 		{
@@ -510,7 +711,50 @@ public class FeatureTagTablePanel< O > extends JPanel
 			for ( final FeatureSpec< ?, O > fs : fss )
 				this.featureMap.put( fs, features.get( fs ) );
 		}
-		refreshColumns();
+
+		if ( !oldColumns.equals( projectionColumnKeys() ) )
+		{
+			refreshColumns();
+			return;
+		}
+
+		/*
+		 * Same columns, only the values changed. Point the columns to the new
+		 * projections and update the rows, preserving sorting and column
+		 * layout.
+		 */
+		mapToProjections.clear();
+		for ( final Feature< ? > feature : featureMap.values() )
+		{
+			if ( null == feature.projections() )
+				continue;
+			for ( final FeatureProjection< ? > projection : feature.projections() )
+			{
+				@SuppressWarnings( "unchecked" )
+				final FeatureProjection< O > fp = ( FeatureProjection< O > ) projection;
+				mapToProjections.add( fp );
+			}
+		}
+		final int rowCount = tableModel.getRowCount();
+		if ( rowCount > 0 )
+			tableModel.fireTableRowsUpdated( 0, rowCount - 1 );
+	}
+
+	/**
+	 * Returns the keys of the feature projection columns, in column order.
+	 */
+	private List< String > projectionColumnKeys()
+	{
+		final List< String > keys = new ArrayList<>();
+		for ( final Map.Entry< FeatureSpec< ?, ? >, Feature< ? > > entry : featureMap.entrySet() )
+		{
+			final Feature< ? > feature = entry.getValue();
+			if ( null == feature.projections() )
+				continue;
+			for ( final FeatureProjection< ? > projection : feature.projections() )
+				keys.add( entry.getKey().getKey() + "/" + projection.getKey() + "/" + ( projection instanceof IntFeatureProjection ) );
+		}
+		return keys;
 	}
 
 	public void setTagSets( final List< TagSet > tagSets )
@@ -580,7 +824,7 @@ public class FeatureTagTablePanel< O > extends JPanel
 		@Override
 		public int getRowCount()
 		{
-			return doFilter ? filterIdMap.size() : idMap.size();
+			return rowMap.size();
 		}
 
 		@Override
@@ -592,7 +836,7 @@ public class FeatureTagTablePanel< O > extends JPanel
 		@Override
 		public Object getValueAt( final int rowIndex, final int columnIndex )
 		{
-			final int id = doFilter ? filterRowMap.get( rowIndex ) : rowMap.get( rowIndex );
+			final int id = rowMap.get( rowIndex );
 
 			final O o = idBimap.getObjectIfExists( id, ref );
 			if ( null == o )
@@ -632,7 +876,7 @@ public class FeatureTagTablePanel< O > extends JPanel
 		{
 			if ( columnIndex == 0 )
 			{
-				final int id = doFilter ? filterRowMap.get( rowIndex ) : rowMap.get( rowIndex );
+				final int id = rowMap.get( rowIndex );
 
 				final O o = idBimap.getObjectIfExists( id, ref );
 				if ( null == o )
@@ -644,7 +888,7 @@ public class FeatureTagTablePanel< O > extends JPanel
 			else if ( columnIndex >= 2 + mapToProjections.size() )
 			{
 				final boolean isSet = ( boolean ) aValue;
-				final int id = doFilter ? filterRowMap.get( rowIndex ) : rowMap.get( rowIndex );
+				final int id = rowMap.get( rowIndex );
 
 				final O o = idBimap.getObjectIfExists( id, ref );
 				if ( null == o )
@@ -664,6 +908,92 @@ public class FeatureTagTablePanel< O > extends JPanel
 		}
 	}
 
+	/**
+	 * Extracts sort keys of all model rows directly from labels, feature
+	 * projections and tags, without going through the boxed values of the
+	 * table model.
+	 */
+	private class MySortKeys implements PrimitiveTableRowSorter.SortKeys
+	{
+
+		private final O ref = idBimap.createRef();
+
+		@Override
+		public boolean isStringColumn( final int column )
+		{
+			return column == 0;
+		}
+
+		@Override
+		public void getStringKeys( final int column, final String[] keys )
+		{
+			getStringKeys( column, keys, null, keys.length );
+		}
+
+		@Override
+		public void getNumericKeys( final int column, final double[] keys )
+		{
+			getNumericKeys( column, keys, null, keys.length );
+		}
+
+		/**
+		 * Fills the keys of the specified model rows, or of the first
+		 * {@code numRows} model rows if {@code rows} is {@code null}.
+		 */
+		@Override
+		public void getStringKeys( final int column, final String[] keys, final int[] rows, final int numRows )
+		{
+			for ( int i = 0; i < numRows; i++ )
+			{
+				final int row = ( null == rows ) ? i : rows[ i ];
+				final O o = idBimap.getObjectIfExists( rowMap.get( row ), ref );
+				keys[ row ] = ( null == o ) ? null : labelGenerator.apply( o );
+			}
+		}
+
+		/**
+		 * Fills the keys of the specified model rows, or of the first
+		 * {@code numRows} model rows if {@code rows} is {@code null}.
+		 */
+		@Override
+		public void getNumericKeys( final int column, final double[] keys, final int[] rows, final int numRows )
+		{
+			if ( column == 1 )
+			{
+				for ( int i = 0; i < numRows; i++ )
+				{
+					final int row = ( null == rows ) ? i : rows[ i ];
+					keys[ row ] = rowMap.get( row );
+				}
+			}
+			else if ( column < 2 + mapToProjections.size() )
+			{
+				final FeatureProjection< O > featureProjection = mapToProjections.get( column - 2 );
+				for ( int i = 0; i < numRows; i++ )
+				{
+					final int row = ( null == rows ) ? i : rows[ i ];
+					final O o = idBimap.getObjectIfExists( rowMap.get( row ), ref );
+					keys[ row ] = ( null != o && featureProjection.isSet( o ) )
+							? featureProjection.value( o )
+							: Double.NaN;
+				}
+			}
+			else
+			{
+				final int[] ids = mapToTagIndices.get( column - ( 2 + mapToProjections.size() ) );
+				final TagSet tagSet = tagSets.get( ids[ 0 ] );
+				final Tag columnTag = tagSet.getTags().get( ids[ 1 ] );
+				final ObjTagMap< O, Tag > tagMap = tags.tags( tagSet );
+				for ( int i = 0; i < numRows; i++ )
+				{
+					final int row = ( null == rows ) ? i : rows[ i ];
+					final O o = idBimap.getObjectIfExists( rowMap.get( row ), ref );
+					keys[ row ] = ( null != o && columnTag.equals( tagMap.get( o ) ) ) ? 1. : 0.;
+				}
+			}
+		}
+	}
+
 	private class MyTagHeaderRenderer extends DefaultTableCellRenderer
 	{
 
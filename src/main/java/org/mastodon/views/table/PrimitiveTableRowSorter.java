@@ -0,0 +1,740 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.views.table;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntPredicate;
+
+import javax.swing.RowSorter;
+import javax.swing.SortOrder;
+import javax.swing.table.TableModel;
+
+import org.mastodon.app.metrics.Metrics;
+import org.mastodon.app.metrics.Timer;
+
+/**
+ * A {@link RowSorter} for large tables, that sorts on primitive keys.
+ * <p>
+ * Unlike {@link javax.swing.table.TableRowSorter}, which compares boxed cell
+ * values obtained through {@link TableModel#getValueAt(int, int)} for every
+ * comparison, this sorter extracts the sort columns once per sort into
+ * primitive {@code double[]} (or {@code String[]}) arrays indexed by model
+ * row, and sorts an {@code int[]} permutation of model rows with a parallel
+ * stable merge sort. Rows can be filtered by an {@link IntPredicate} over
+ * model rows.
+ * <p>
+ * Keys extracted by the last sort are kept. When the table model announces
+ * the rows it changed with {@link #setChangedRows(int[])}, or changes only a
+ * few rows, appends rows or truncates rows, only the changed rows are
+ * filtered, sorted and merged into the current permutation, instead of
+ * sorting all rows again.
+ *
+ * @param <M>
+ *            the type of table model.
+ */
+public class PrimitiveTableRowSorter< M extends TableModel > extends RowSorter< M >
+{
+	private static final Timer SORT_TIMER = Metrics.timer( "table.sort" );
+
+	/**
+	 * Provides sort keys for the columns of a table.
+	 */
+	public interface SortKeys
+	{
+		/**
+		 * Returns whether the specified column is sorted by string keys
+		 * rather than numeric keys.
+		 *
+		 * @param column
+		 *            the model column.
+		 * @return {@code true} for string keys.
+		 */
+		public boolean isStringColumn( int column );
+
+		/**
+		 * Fills {@code keys[ row ]} with the numeric key of each model row
+		 * for the specified column. Missing values should be
+		 * {@link Double#NaN}, and are sorted last.
+		 *
+		 * @param column
+		 *            the model column.
+		 * @param keys
+		 *            the array to fill, of length the model row count.
+		 */
+		public void getNumericKeys( int column, double[] keys );
+
+		/**
+		 * Fills {@code keys[ row ]} with the string key of each model row for
+		 * the specified column. Missing values should be {@code null}, and
+		 * are sorted last.
+		 *
+		 * @param column
+		 *            the model column.
+		 * @param keys
+		 *            the array to fill, of length the model row count.
+		 */
+		public void getStringKeys( int column, String[] keys );
+
+		/**
+		 * Fills {@code keys[ rows[ i ] ]} with the numeric key of the first
+		 * {@code numRows} model rows of {@code rows} for the specified
+		 * column.
+		 *
+		 * @param column
+		 *            the model column.
+		 * @param keys
+		 *            the array to fill, of length at least the model row
+		 *            count.
+		 * @param rows
+		 *            the model rows to fill.
+		 * @param numRows
+		 *            the number of elements of {@code rows} to fill.
+		 */
+		public void getNumericKeys( int column, double[] keys, int[] rows, int numRows );
+
+		/**
+		 * Fills {@code keys[ rows[ i ] ]} with the string key of the first
+		 * {@code numRows} model rows of {@code rows} for the specified
+		 * column.
+		 *
+		 * @param column
+		 *            the model column.
+		 * @param keys
+		 *            the array to fill, of length at least the model row
+		 *            count.
+		 * @param rows
+		 *            the model rows to fill.
+		 * @param numRows
+		 *            the number of elements of {@code rows} to fill.
+		 */
+		public void getStringKeys( int column, String[] keys, int[] rows, int numRows );
+	}
+
+	/**
+	 * Compares two model rows.
+	 */
+	@FunctionalInterface
+	private interface RowComparator
+	{
+		public int compare( int row1, int row2 );
+	}
+
+	/**
+	 * Below this size, merge sort runs sequentially.
+	 */
+	private static final int PARALLEL_SORT_THRESHOLD = 1 << 13;
+
+	private static final int INSERTION_SORT_THRESHOLD = 32;
+
+	private static final int MAX_SORT_KEYS = 3;
+
+	/**
+	 * Changes to more than {@code 1 / INCREMENTAL_FRACTION} of the model rows
+	 * are handled by sorting all rows.
+	 */
+	private static final int INCREMENTAL_FRACTION = 4;
+
+	private static final int[] NO_ROWS = new int[ 0 ];
+
+	private static final int[] IDENTITY = new int[ 0 ];
+
+	private final M model;
+
+	private final SortKeys keys;
+
+	private List< SortKey > sortKeys = Collections.emptyList();
+
+	private IntPredicate rowFilter;
+
+	/**
+	 * Maps view rows to model rows. {@code null} if the view is the identity
+	 * (neither sorted nor filtered).
+	 */
+	private int[] viewToModel;
+
+	/**
+	 * Maps model rows to view rows, -1 for filtered-out rows. {@code null} if
+	 * the view is the identity.
+	 */
+	private int[] modelToView;
+
+	/**
+	 * Keys of the sort columns extracted by the last sort, and refreshed for
+	 * the rows changed since, indexed by model row. Element {@code i} is the
+	 * {@code double[]} or {@code String[]} for {@code sortKeys.get( i )}, or
+	 * {@code null} for unsorted keys. Empty if the view is not sorted.
+	 */
+	private Object[] keyCache = new Object[ 0 ];
+
+	/**
+	 * Model rows announced by {@link #setChangedRows(int[])} for the next
+	 * model event, or {@code null}.
+	 */
+	private int[] changedRows;
+
+	public PrimitiveTableRowSorter( final M model, final SortKeys keys )
+	{
+		this.model = model;
+		this.keys = keys;
+	}
+
+	@Override
+	public M getModel()
+	{
+		return model;
+	}
+
+	/**
+	 * Sets the filter deciding which model rows are shown.
+	 *
+	 * @param rowFilter
+	 *            tests model row indices. {@code null} shows all rows.
+	 */
+	public void setRowFilter( final IntPredicate rowFilter )
+	{
+		this.rowFilter = rowFilter;
+		sortAndNotify();
+	}
+
+	/**
+	 * Announces the model rows whose content changed, for the next model
+	 * event. The table model calls this right before firing a single
+	 * insertion, deletion or update event for a batch of changes. The sorter
+	 * then repositions only the specified rows, and the rows appended since
+	 * the last event, instead of all rows. Rows removed from the end of the
+	 * model are dropped from the view.
+	 *
+	 * @param rows
+	 *            the distinct model rows that changed, excluding rows
+	 *            appended or removed from the end of the model.
+	 */
+	public void setChangedRows( final int[] rows )
+	{
+		changedRows = rows;
+	}
+
+	@Override
+	public void toggleSortOrder( final int column )
+	{
+		final List< SortKey > keys = new ArrayList<>( sortKeys );
+		SortKey sortKey = null;
+		int index;
+		for ( index = keys.size() - 1; index >= 0; index-- )
+		{
+			if ( keys.get( index ).getColumn() == column )
+				break;
+		}
+		if ( index == -1 )
+		{
+			// Key doesn't exist.
+			sortKey = new SortKey( column, SortOrder.ASCENDING );
+			keys.add( 0, sortKey );
+		}
+		else if ( index == 0 )
+		{
+			// It's the primary sorting key, toggle it.
+			keys.set( 0, toggle( keys.get( 0 ) ) );
+		}
+		else
+		{
+			// It's not the first, but was sorted on, remove old entry,
+			// insert as first with ascending.
+			keys.remove( index );
+			keys.add( 0, new SortKey( column, SortOrder.ASCENDING ) );
+		}
+		if ( keys.size() > MAX_SORT_KEYS )
+			keys.subList( MAX_SORT_KEYS, keys.size() ).clear();
+		setSortKeys( keys );
+	}
+
+	private static SortKey toggle( final SortKey key )
+	{
+		if ( key.getSortOrder() == SortOrder.ASCENDING )
+			return new SortKey( key.getColumn(), SortOrder.DESCENDING );
+		return new SortKey( key.getColumn(), SortOrder.ASCENDING );
+	}
+
+	@Override
+	public int convertRowIndexToModel( final int index )
+	{
+		if ( viewToModel == null )
+		{
+			if ( index < 0 || index >= model.getRowCount() )
+				throw new IndexOutOfBoundsException( "Invalid index" );
+			return index;
+		}
+		return viewToModel[ index ];
+	}
+
+	@Override
+	public int convertRowIndexToView( final int index )
+	{
+		if ( modelToView == null )
+		{
+			if ( index < 0 || index >= model.getRowCount() )
+				throw new IndexOutOfBoundsException( "Invalid index" );
+			return index;
+		}
+		return modelToView[ index ];
+	}
+
+	@Override
+	public void setSortKeys( final List< ? extends SortKey > keys )
+	{
+		final List< SortKey > old = sortKeys;
+		if ( keys == null || keys.isEmpty() )
+			sortKeys = Collections.emptyList();
+		else
+			sortKeys = Collections.unmodifiableList( new ArrayList<>( keys ) );
+		if ( !sortKeys.equals( old ) )
+		{
+			fireSortOrderChanged();
+			sortAndNotify();
+		}
+	}
+
+	@Override
+	public List< ? extends SortKey > getSortKeys()
+	{
+		return sortKeys;
+	}
+
+	@Override
+	public int getViewRowCount()
+	{
+		return viewToModel == null ? model.getRowCount() : viewToModel.length;
+	}
+
+	@Override
+	public int getModelRowCount()
+	{
+		return model.getRowCount();
+	}
+
+	@Override
+	public void modelStructureChanged()
+	{
+		changedRows = null;
+		sortKeys = Collections.emptyList();
+		sortAndNotify();
+	}
+
+	@Override
+	public void allRowsChanged()
+	{
+		changedRows = null;
+		sortAndNotify();
+	}
+
+	@Override
+	public void rowsInserted( final int firstRow, final int endRow )
+	{
+		final int[] rows = takeChangedRows();
+		if ( rows != null )
+			updateAndNotify( rows );
+		else if ( modelToView != null && firstRow == modelToView.length )
+			updateAndNotify( NO_ROWS );
+		else
+			sortAndNotify();
+	}
+
+	@Override
+	public void rowsDeleted( final int firstRow, final int endRow )
+	{
+		final int[] rows = takeChangedRows();
+		if ( rows != null )
+			updateAndNotify( rows );
+		else if ( modelToView != null && endRow == modelToView.length - 1 )
+			updateAndNotify( NO_ROWS );
+		else
+			sortAndNotify();
+	}
+
+	@Override
+	public void rowsUpdated( final int firstRow, final int endRow )
+	{
+		final int[] rows = takeChangedRows();
+		updateAndNotify( rows != null ? rows : range( firstRow, endRow ) );
+	}
+
+	@Override
+	public void rowsUpdated( final int firstRow, final int endRow, final int column )
+	{
+		final int[] rows = takeChangedRows();
+		for ( final SortKey key : sortKeys )
+		{
+			if ( key.getColumn() == column )
+			{
+				updateAndNotify( rows != null ? rows : range( firstRow, endRow ) );
+				return;
+			}
+		}
+		if ( rowFilter != null )
+			updateAndNotify( rows != null ? rows : range( firstRow, endRow ) );
+	}
+
+	private int[] takeChangedRows()
+	{
+		final int[] rows = changedRows;
+		changedRows = null;
+		return rows;
+	}
+
+	private static int[] range( final int firstRow, final int endRow )
+	{
+		final int[] rows = new int[ Math.max( 0, endRow - firstRow + 1 ) ];
+		for ( int i = 0; i < rows.length; ++i )
+			rows[ i ] = firstRow + i;
+		return rows;
+	}
+
+	private void sortAndNotify()
+	{
+		final int[] previousViewToModel = viewToModel == null ? IDENTITY : viewToModel;
+		final long t0 = System.nanoTime();
+		sort();
+		SORT_TIMER.record( System.nanoTime() - t0 );
+		fireRowSorterChanged( previousViewToModel );
+	}
+
+	/**
+	 * Repositions the specified changed rows and the appended rows, or sorts
+	 * all rows if the view is the identity or too many rows changed.
+	 */
+	private void updateAndNotify( final int[] rows )
+	{
+		if ( viewToModel == null || rows.length > model.getRowCount() / INCREMENTAL_FRACTION )
+		{
+			sortAndNotify();
+			return;
+		}
+		final int[] previousViewToModel = viewToModel;
+		final long t0 = System.nanoTime();
+		update( rows );
+		SORT_TIMER.record( System.nanoTime() - t0 );
+		fireRowSorterChanged( previousViewToModel );
+	}
+
+	private void sort()
+	{
+		final int numRows = model.getRowCount();
+		final boolean sorted = !sortKeys.isEmpty() && sortKeys.get( 0 ).getSortOrder() != SortOrder.UNSORTED;
+		keyCache = new Object[ 0 ];
+		if ( !sorted && rowFilter == null )
+		{
+			viewToModel = null;
+			modelToView = null;
+			return;
+		}
+
+		// Collect shown model rows.
+		int[] rows = new int[ numRows ];
+		int n = 0;
+		for ( int r = 0; r < numRows; ++r )
+			if ( rowFilter == null || rowFilter.test( r ) )
+				rows[ n++ ] = r;
+		if ( n < numRows )
+			rows = Arrays.copyOf( rows, n );
+
+		if ( sorted )
+		{
+			extractKeys( numRows );
+			if ( n > 1 )
+				parallelSort( rows, createComparator() );
+		}
+
+		final int[] m2v = new int[ numRows ];
+		Arrays.fill( m2v, -1 );
+		for ( int v = 0; v < n; ++v )
+			m2v[ rows[ v ] ] = v;
+
+		viewToModel = rows;
+		modelToView = m2v;
+	}
+
+	/**
+	 * Removes the changed rows and the rows beyond the model row count from
+	 * the current permutation, then sorts the changed and appended rows that
+	 * pass the filter and merges them in. Keys of unchanged rows are taken
+	 * from the {@link #keyCache}. The result is the same as {@link #sort()}.
+	 */
+	private void update( final int[] rows )
+	{
+		final int numRows = model.getRowCount();
+		final int oldNumRows = modelToView.length;
+		final int common = Math.min( numRows, oldNumRows );
+
+		// Changed and appended rows. Changed rows are marked -2 in modelToView.
+		final int[] dirty = new int[ rows.length + Math.max( 0, numRows - oldNumRows ) ];
+		int numDirty = 0;
+		for ( final int r : rows )
+		{
+			if ( r < 0 || r >= common || modelToView[ r ] == -2 )
+				continue;
+			modelToView[ r ] = -2;
+			if ( rowFilter == null || rowFilter.test( r ) )
+				dirty[ numDirty++ ] = r;
+		}
+		for ( int r = oldNumRows; r < numRows; ++r )
+			if ( rowFilter == null || rowFilter.test( r ) )
+				dirty[ numDirty++ ] = r;
+
+		updateKeys( dirty, numDirty, numRows );
+		final RowComparator c = createComparator();
+		mergeSort( dirty, new int[ numDirty ], 0, numDirty, c );
+
+		// Merge with the unchanged rows, which are still sorted.
+		final int[] v2m = new int[ viewToModel.length + numDirty ];
+		int n = 0;
+		int j = 0;
+		for ( final int r : viewToModel )
+		{
+			if ( r >= numRows || modelToView[ r ] == -2 )
+				continue;
+			while ( j < numDirty && c.compare( dirty[ j ], r ) < 0 )
+				v2m[ n++ ] = dirty[ j++ ];
+			v2m[ n++ ] = r;
+		}
+		while ( j < numDirty )
+			v2m[ n++ ] = dirty[ j++ ];
+
+		final int[] m2v = new int[ numRows ];
+		Arrays.fill( m2v, -1 );
+		for ( int v = 0; v < n; ++v )
+			m2v[ v2m[ v ] ] = v;
+
+		viewToModel = n < v2m.length ? Arrays.copyOf( v2m, n ) : v2m;
+		modelToView = m2v;
+	}
+
+	/**
+	 * Extracts keys of the sort columns for all model rows into the
+	 * {@link #keyCache}.
+	 */
+	private void extractKeys( final int numRows )
+	{
+		final Object[] cache = new Object[ sortKeys.size() ];
+		for ( int i = 0; i < cache.length; ++i )
+		{
+			final SortKey key = sortKeys.get( i );
+			if ( key.getSortOrder() == SortOrder.UNSORTED )
+				continue;
+			final int column = key.getColumn();
+			if ( keys.isStringColumn( column ) )
+			{
+				final String[] k = new String[ numRows ];
+				keys.getStringKeys( column, k );
+				cache[ i ] = k;
+			}
+			else
+			{
+				final double[] k = new double[ numRows ];
+				keys.getNumericKeys( column, k );
+				cache[ i ] = k;
+			}
+		}
+		keyCache = cache;
+	}
+
+	/**
+	 * Refreshes the {@link #keyCache} for the specified model rows, growing
+	 * it to the model row count if needed.
+	 */
+	private void updateKeys( final int[] rows, final int n, final int numRows )
+	{
+		for ( int i = 0; i < keyCache.length; ++i )
+		{
+			final Object k = keyCache[ i ];
+			if ( k == null )
+				continue;
+			final int column = sortKeys.get( i ).getColumn();
+			if ( k instanceof String[] )
+			{
+				String[] s = ( String[] ) k;
+				if ( s.length < numRows )
+					s = Arrays.copyOf( s, numRows );
+				keys.getStringKeys( column, s, rows, n );
+				keyCache[ i ] = s;
+			}
+			else
+			{
+				double[] d = ( double[] ) k;
+				if ( d.length < numRows )
+					d = Arrays.copyOf( d, numRows );
+				keys.getNumericKeys( column, d, rows, n );
+				keyCache[ i ] = d;
+			}
+		}
+	}
+
+	/**
+	 * Returns a comparator of model rows on the keys of the
+	 * {@link #keyCache}. Ties are broken by model row, for stability.
+	 */
+	private RowComparator createComparator()
+	{
+		RowComparator comparator = ( r1, r2 ) -> Integer.compare( r1, r2 );
+		for ( int i = keyCache.length - 1; i >= 0; --i )
+		{
+			if ( keyCache[ i ] == null )
+				continue;
+			final int sign = sortKeys.get( i ).getSortOrder() == SortOrder.ASCENDING ? 1 : -1;
+			final RowComparator next = comparator;
+			if ( keyCache[ i ] instanceof String[] )
+			{
+				final String[] k = ( String[] ) keyCache[ i ];
+				comparator = ( r1, r2 ) -> {
+					final String s1 = k[ r1 ];
+					final String s2 = k[ r2 ];
+					final int c;
+					if ( s1 == null )
+						c = s2 == null ? 0 : 1;
+					else if ( s2 == null )
+						c = -1;
+					else
+						c = sign * s1.compareTo( s2 );
+					return c != 0 ? c : next.compare( r1, r2 );
+				};
+			}
+			else
+			{
+				final double[] k = ( double[] ) keyCache[ i ];
+				comparator = ( r1, r2 ) -> {
+					final double d1 = k[ r1 ];
+					final double d2 = k[ r2 ];
+					final int c;
+					if ( Double.isNaN( d1 ) )
+						c = Double.isNaN( d2 ) ? 0 : 1;
+					else if ( Double.isNaN( d2 ) )
+						c = -1;
+					else
+						c = sign * Double.compare( d1, d2 );
+					return c != 0 ? c : next.compare( r1, r2 );
+				};
+			}
+		}
+		return comparator;
+	}
+
+	/*
+	 * Parallel stable merge sort of int arrays with a primitive comparator.
+	 */
+
+	private static void parallelSort( final int[] a, final RowComparator c )
+	{
+		final int[] tmp = new int[ a.length ];
+		if ( a.length < PARALLEL_SORT_THRESHOLD )
+			mergeSort( a, tmp, 0, a.length, c );
+		else
+			ForkJoinPool.commonPool().invoke( new MergeSortTask( a, tmp, 0, a.length, c ) );
+	}
+
+	private static class MergeSortTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final int[] a;
+
+		private final int[] tmp;
+
+		private final int from;
+
+		private final int to;
+
+		private final RowComparator c;
+
+		MergeSortTask( final int[] a, final int[] tmp, final int from, final int to, final RowComparator c )
+		{
+			this.a = a;
+			this.tmp = tmp;
+			this.from = from;
+			this.to = to;
+			this.c = c;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if ( to - from < PARALLEL_SORT_THRESHOLD )
+			{
+				mergeSort( a, tmp, from, to, c );
+				return;
+			}
+			final int mid = ( from + to ) >>> 1;
+			invokeAll(
+					new MergeSortTask( a, tmp, from, mid, c ),
+					new MergeSortTask( a, tmp, mid, to, c ) );
+			merge( a, tmp, from, mid, to, c );
+		}
+	}
+
+	private static void mergeSort( final int[] a, final int[] tmp, final int from, final int to, final RowComparator c )
+	{
+		if ( to - from <= INSERTION_SORT_THRESHOLD )
+		{
+			for ( int i = from + 1; i < to; ++i )
+			{
+				final int x = a[ i ];
+				int j = i - 1;
+				while ( j >= from && c.compare( a[ j ], x ) > 0 )
+				{
+					a[ j + 1 ] = a[ j ];
+					--j;
+				}
+				a[ j + 1 ] = x;
+			}
+			return;
+		}
+		final int mid = ( from + to ) >>> 1;
+		mergeSort( a, tmp, from, mid, c );
+		mergeSort( a, tmp, mid, to, c );
+		merge( a, tmp, from, mid, to, c );
+	}
+
+	private static void merge( final int[] a, final int[] tmp, final int from, final int mid, final int to, final RowComparator c )
+	{
+		if ( c.compare( a[ mid - 1 ], a[ mid ] ) <= 0 )
+			return;
+		System.arraycopy( a, from, tmp, from, to - from );
+		int i = from;
+		int j = mid;
+		for ( int k = from; k < to; ++k )
+		{
+			if ( j >= to || ( i < mid && c.compare( tmp[ i ], tmp[ j ] ) <= 0 ) )
+				a[ k ] = tmp[ i++ ];
+			else
+				a[ k ] = tmp[ j++ ];
+		}
+	}
+}
@@ -40,6 +40,7 @@ import java.util.stream.Collectors;
 import javax.swing.Box;
 import javax.swing.JTabbedPane;
 import javax.swing.JTable;
+import javax.swing.ListSelectionModel;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 
@@ -65,6 +66,7 @@ import org.mastodon.model.HighlightListener;
 import org.mastodon.model.HighlightModel;
 import org.mastodon.model.NavigationHandler;
 import org.mastodon.model.NavigationListener;
+import org.mastodon.model.SelectionChange;
 import org.mastodon.model.SelectionListener;
 import org.mastodon.model.SelectionModel;
 import org.mastodon.model.tag.ObjTags;
@@ -96,6 +98,12 @@ public class TableViewFrame<
 
 	private static final long serialVersionUID = 1L;
 
+	/**
+	 * Selection changes affecting more objects than this are handled by
+	 * re-reading the whole selection.
+	 */
+	private static final int MAX_INCREMENTAL_SELECTION_CHANGE = 10_000;
+
 	private final SelectionModel< V, E > selectionModel;
 
 	private final FocusModel< V, E > focusModel;
@@ -203,14 +211,20 @@ public class TableViewFrame<
 				if ( mirrorSelection )
 				{
 					selectionModel.pauseListeners();
-					final RefSet< E > selectedEdges = selectionModel.getSelectedEdges();
-					selectionModel.clearSelection();
-					final int[] selectedRows = vt.getSelectedRows();
-					for ( final int row : selectedRows )
-						selectionModel.setSelected( vertexTable.getObjectForViewRow( row, ref ), true );
-					for ( final E e : selectedEdges )
-						selectionModel.setSelected( e, true );
-					selectionModel.resumeListeners();
+					try
+					{
+						final RefSet< E > selectedEdges = selectionModel.getSelectedEdges();
+						selectionModel.clearSelection();
+						final int[] selectedRows = vt.getSelectedRows();
+						for ( final int row : selectedRows )
+							selectionModel.setSelected( vertexTable.getObjectForViewRow( row, ref ), true );
+						for ( final E e : selectedEdges )
+							selectionModel.setSelected( e, true );
+					}
+					finally
+					{
+						selectionModel.resumeListeners();
+					}
 				}
 
 				// Navigate and focus.
@@ -281,14 +295,20 @@ public class TableViewFrame<
 				if ( mirrorSelection )
 				{
 					selectionModel.pauseListeners();
-					final RefSet< V > selectedVertices = selectionModel.getSelectedVertices();
-					selectionModel.clearSelection();
-					final int[] selectedRows = et.getSelectedRows();
-					for ( final int row : selectedRows )
-						selectionModel.setSelected( edgeTable.getObjectForViewRow( row, eref ), true );
-					for ( final V v : selectedVertices )
-						selectionModel.setSelected( v, true );
-					selectionModel.resumeListeners();
+					try
+					{
+						final RefSet< V > selectedVertices = selectionModel.getSelectedVertices();
+						selectionModel.clearSelection();
+						final int[] selectedRows = et.getSelectedRows();
+						for ( final int row : selectedRows )
+							selectionModel.setSelected( edgeTable.getObjectForViewRow( row, eref ), true );
+						for ( final V v : selectedVertices )
+							selectionModel.setSelected( v, true );
+					}
+					finally
+					{
+						selectionModel.resumeListeners();
+					}
 				}
 
 				// Navigate and focus.
@@ -376,6 +396,33 @@ public class TableViewFrame<
 		this.mirrorSelection = mirrorSelection;
 	}
 
+	@Override
+	public void selectionChanged( final SelectionChange change )
+	{
+		if ( !change.isComplete() || change.size() > MAX_INCREMENTAL_SELECTION_CHANGE )
+		{
+			selectionChanged();
+			return;
+		}
+		if ( ignoreSelectionChange )
+			return;
+		ignoreTableSelectionChange = true;
+
+		final ListSelectionModel vlsm = vertexTable.getTable().getSelectionModel();
+		vlsm.setValueIsAdjusting( true );
+		vertexTable.setRowsSelected( change.getRemovedVertexIds(), false );
+		vertexTable.setRowsSelected( change.getAddedVertexIds(), true );
+		vlsm.setValueIsAdjusting( false );
+
+		final ListSelectionModel elsm = edgeTable.getTable().getSelectionModel();
+		elsm.setValueIsAdjusting( true );
+		edgeTable.setRowsSelected( change.getRemovedEdgeIds(), false );
+		edgeTable.setRowsSelected( change.getAddedEdgeIds(), true );
+		elsm.setValueIsAdjusting( false );
+
+		ignoreTableSelectionChange = false;
+	}
+
 	@Override
 	public void selectionChanged()
 	{
@@ -450,6 +497,13 @@ public class TableViewFrame<
 		ignoreTableSelectionChange = false;
 	}
 
+	@Override
+	public void tagsChanged()
+	{
+		vertexTable.getTable().repaint();
+		edgeTable.getTable().repaint();
+	}
+
 	public FeatureTagTablePanel< ? > getCurrentlyDisplayedTable()
 	{
 		final int selectedIndex = pane.getSelectedIndex();
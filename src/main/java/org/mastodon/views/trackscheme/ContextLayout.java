@@ -106,16 +106,13 @@ public class ContextLayout
 		context.readLock().lock();
 		try
 		{
-			for ( int t = minTimepoint; t <= maxTimepoint; ++t )
+			for ( final TrackSchemeVertex tv : context.getInsideVertices( minTimepoint, maxTimepoint ) )
 			{
-				for ( final TrackSchemeVertex tv : context.getInsideVertices( t ) )
-				{
-					tv.setLayoutTimestamp( mark );
-					if ( t == minTimepoint )
-						roots.add( tv );
-					else
-						buildContextTraceParents( tv, ghostmark, minTimepoint, roots );
-				}
+				tv.setLayoutTimestamp( mark );
+				if ( tv.getTimepoint() <= minTimepoint )
+					roots.add( tv );
+				else
+					buildContextTraceParents( tv, ghostmark, minTimepoint, roots );
 			}
 		}
 		finally
@@ -0,0 +1,324 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.views.trackscheme;
+
+import java.util.ArrayList;
+
+import gnu.trove.iterator.TIntIterator;
+import gnu.trove.list.TIntList;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+
+/**
+ * Hierarchical density of a {@link LineageTreeLayout}. For every timepoint row
+ * of the layout, the number of vertices in bins of {@code layoutX} is counted.
+ * Level {@code 0} has the finest bins, the bin width doubles with each level,
+ * up to a level with a single bin.
+ * <p>
+ * This is used to paint a zoomed-out TrackScheme without visiting individual
+ * vertices, and to paint an overview of the whole layout.
+ */
+public class LayoutDensityPyramid
+{
+	/**
+	 * Maximum number of bins in a row at level 0.
+	 */
+	private static final int MAX_BINS_PER_ROW = 8192;
+
+	/**
+	 * Minimum number of bins in a row at level 0.
+	 */
+	private static final int MIN_BINS_PER_ROW = 256;
+
+	/**
+	 * Upper bound on the total number of level 0 bins (summed over all rows).
+	 */
+	private static final int MAX_TOTAL_BINS = 1 << 22;
+
+	/**
+	 * Maps timepoint to row index.
+	 */
+	private final TIntIntHashMap timepointToRow = new TIntIntHashMap( 10, 0.5f, -1, -1 );
+
+	/**
+	 * {@code counts.get( level )[ row ][ bin ]} is the number of vertices in
+	 * the specified bin.
+	 */
+	private final ArrayList< int[][] > counts = new ArrayList<>();
+
+	/**
+	 * {@code maxCounts.get( level )} is the maximum bin count at that level.
+	 */
+	private final ArrayList< Integer > maxCounts = new ArrayList<>();
+
+	private double minX;
+
+	private double maxX;
+
+	private double baseBinWidth = 1;
+
+	private int minTimepoint;
+
+	private int maxTimepoint;
+
+	/**
+	 * Rebuild the pyramid from the specified layout rows.
+	 *
+	 * @param timepoints
+	 *            ordered list of timepoints in the layout.
+	 * @param timepointToOrderedVertices
+	 *            maps timepoints to the vertices in that timepoint, ordered by
+	 *            {@code layoutX}.
+	 * @param minX
+	 *            minimum {@code layoutX} in the layout.
+	 * @param maxX
+	 *            maximum {@code layoutX} in the layout.
+	 * @param ref
+	 *            a vertex reference that is used for iterating.
+	 */
+	public void build(
+			final TIntList timepoints,
+			final TIntObjectMap< TrackSchemeVertexList > timepointToOrderedVertices,
+			final double minX,
+			final double maxX,
+			final TrackSchemeVertex ref )
+	{
+		timepointToRow.clear();
+		counts.clear();
+		maxCounts.clear();
+
+		final int numRows = timepoints.size();
+		this.minX = minX;
+		this.maxX = Math.max( minX, maxX );
+		minTimepoint = numRows == 0 ? 0 : timepoints.get( 0 );
+		maxTimepoint = numRows == 0 ? 0 : timepoints.get( numRows - 1 );
+
+		final int maxBins = Math.max( MIN_BINS_PER_ROW, Math.min( MAX_BINS_PER_ROW, MAX_TOTAL_BINS / Math.max( 1, numRows ) ) );
+		final double width = this.maxX - this.minX + 1;
+		baseBinWidth = Math.max( 1.0, width / maxBins );
+		final int numBins = binIndex( this.maxX, baseBinWidth ) + 1;
+
+		// level 0
+		final int[][] base = new int[ numRows ][];
+		int max = 0;
+		int row = 0;
+		final TIntIterator iter = timepoints.iterator();
+		while ( iter.hasNext() )
+		{
+			final int timepoint = iter.next();
+			timepointToRow.put( timepoint, row );
+			final int[] bins = new int[ numBins ];
+			final TrackSchemeVertexList vertices = timepointToOrderedVertices.get( timepoint );
+			if ( vertices != null )
+			{
+				for ( int i = 0; i < vertices.size(); ++i )
+				{
+					final int b = binIndex( vertices.get( i, ref ).getLayoutX(), baseBinWidth );
+					if ( b >= 0 && b < numBins )
+						max = Math.max( max, ++bins[ b ] );
+				}
+			}
+			base[ row++ ] = bins;
+		}
+		counts.add( base );
+		maxCounts.add( max );
+
+		// coarser levels, summing pairs of bins of the previous level
+		int[][] prev = base;
+		int prevNumBins = numBins;
+		while ( prevNumBins > 1 )
+		{
+			final int levelNumBins = ( prevNumBins + 1 ) / 2;
+			final int[][] level = new int[ numRows ][ levelNumBins ];
+			max = 0;
+			for ( int r = 0; r < numRows; ++r )
+			{
+				final int[] src = prev[ r ];
+				final int[] dst = level[ r ];
+				for ( int b = 0; b < prevNumBins; ++b )
+					dst[ b >> 1 ] += src[ b ];
+				for ( int b = 0; b < levelNumBins; ++b )
+					max = Math.max( max, dst[ b ] );
+			}
+			counts.add( level );
+			maxCounts.add( max );
+			prev = level;
+			prevNumBins = levelNumBins;
+		}
+	}
+
+	private int binIndex( final double layoutX, final double binWidth )
+	{
+		return ( int ) ( ( layoutX - minX ) / binWidth );
+	}
+
+	/**
+	 * Get the number of levels of the pyramid. This is {@code 0} if the pyramid
+	 * has not been built yet.
+	 *
+	 * @return the number of levels.
+	 */
+	public int numLevels()
+	{
+		return counts.size();
+	}
+
+	/**
+	 * Get the width (in {@code layoutX} units) of bins at the specified level.
+	 *
+	 * @param level
+	 *            pyramid level.
+	 * @return width of bins at {@code level}.
+	 */
+	public double getBinWidth( final int level )
+	{
+		return baseBinWidth * ( 1L << level );
+	}
+
+	/**
+	 * Get the number of bins per row at the specified level.
+	 *
+	 * @param level
+	 *            pyramid level.
+	 * @return number of bins per row at {@code level}.
+	 */
+	public int numBins( final int level )
+	{
+		final int[][] c = counts.get( level );
+		return c.length == 0 ? 0 : c[ 0 ].length;
+	}
+
+	/**
+	 * Get the {@code layoutX} coordinate of the left border of the specified
+	 * bin.
+	 *
+	 * @param level
+	 *            pyramid level.
+	 * @param bin
+	 *            bin index.
+	 * @return {@code layoutX} of the left border of the bin.
+	 */
+	public double getBinMinX( final int level, final int bin )
+	{
+		return minX + bin * getBinWidth( level );
+	}
+
+	/**
+	 * Get the index of the bin containing the specified {@code layoutX}
+	 * coordinate, clamped to the valid range of bin indices.
+	 *
+	 * @param level
+	 *            pyramid level.
+	 * @param layoutX
+	 *            layout coordinate.
+	 * @return bin index.
+	 */
+	public int getBin( final int level, final double layoutX )
+	{
+		final int b = ( int ) Math.floor( ( layoutX - minX ) / getBinWidth( level ) );
+		return Math.max( 0, Math.min( numBins( level ) - 1, b ) );
+	}
+
+	/**
+	 * Get the finest level at which bins are at least
+	 * {@code minBinScreenWidth} pixels wide at the specified scale.
+	 *
+	 * @param xScale
+	 *            screen pixels per {@code layoutX} unit.
+	 * @param minBinScreenWidth
+	 *            minimum bin width in screen pixels.
+	 * @return pyramid level.
+	 */
+	public int getLevel( final double xScale, final double minBinScreenWidth )
+	{
+		final int n = numLevels();
+		for ( int level = 0; level < n; ++level )
+			if ( getBinWidth( level ) * xScale >= minBinScreenWidth )
+				return level;
+		return Math.max( 0, n - 1 );
+	}
+
+	/**
+	 * Get the bin counts of the specified timepoint row.
+	 *
+	 * @param level
+	 *            pyramid level.
+	 * @param timepoint
+	 *            the timepoint.
+	 * @return bin counts of the row, or {@code null} if there is no such row.
+	 *         The array must not be modified.
+	 */
+	public int[] getRow( final int level, final int timepoint )
+	{
+		final int row = timepointToRow.get( timepoint );
+		return row < 0 ? null : counts.get( level )[ row ];
+	}
+
+	/**
+	 * Get the maximum bin count at the specified level.
+	 *
+	 * @param level
+	 *            pyramid level.
+	 * @return maximum bin count.
+	 */
+	public int getMaxCount( final int level )
+	{
+		return maxCounts.get( level );
+	}
+
+	/**
+	 * Get the width (in {@code layoutX} units) of bins at level 0.
+	 *
+	 * @return the finest bin width.
+	 */
+	public double getBaseBinWidth()
+	{
+		return baseBinWidth;
+	}
+
+	public double getMinX()
+	{
+		return minX;
+	}
+
+	public double getMaxX()
+	{
+		return maxX;
+	}
+
+	public int getMinTimepoint()
+	{
+		return minTimepoint;
+	}
+
+	public int getMaxTimepoint()
+	{
+		return maxTimepoint;
+	}
+}
@@ -32,25 +32,34 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
+import org.mastodon.app.metrics.Metrics;
+import org.mastodon.app.metrics.Timer;
 import org.mastodon.collection.RefCollections;
 import org.mastodon.collection.RefList;
 import org.mastodon.collection.RefSet;
 import org.mastodon.graph.Edges;
+import org.mastodon.graph.GraphListener;
 import org.mastodon.model.SelectionModel;
 import org.mastodon.ui.coloring.GraphColorGenerator;
 import org.mastodon.views.trackscheme.ScreenEdge.ScreenEdgePool;
 import org.mastodon.views.trackscheme.ScreenVertex.ScreenVertexPool;
 import org.mastodon.views.trackscheme.ScreenVertexRange.ScreenVertexRangePool;
+import org.mastodon.views.trackscheme.display.PaintGraph;
 import org.scijava.listeners.Listeners;
 
 import gnu.trove.iterator.TIntAlternatingIterator;
+import gnu.trove.TIntCollection;
 import gnu.trove.iterator.TIntIterator;
 import gnu.trove.list.TDoubleList;
 import gnu.trove.list.array.TDoubleArrayList;
 import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.map.TIntObjectArrayMap;
 import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.set.hash.TIntHashSet;
 import net.imglib2.RealLocalizable;
 
 /**
@@ -73,6 +82,13 @@ import net.imglib2.RealLocalizable;
  *
  * We call vertices contained in the current layout <em>active</em>.
  *
+ * <p>
+ * When the whole graph is laid out with {@link #layout()}, graph changes are
+ * tracked per layout column (i.e., per track). The next {@link #layout()} then
+ * only recomputes the columns that were touched by graph changes, and shifts
+ * the layoutX of unchanged columns. The results of a layout are built into
+ * new data structures which replace the current ones when the layout is
+ * complete.
  *
  *
  * TODO TODO TODO
@@ -83,6 +99,10 @@ import net.imglib2.RealLocalizable;
  */
 public class LineageTreeLayout
 {
+	private static final Timer LAYOUT_TIMER = Metrics.timer( "trackscheme.layout" );
+
+	private static final Timer CROP_AND_SCALE_TIMER = Metrics.timer( "trackscheme.cropAndScale" );
+
 	public interface LayoutListener
 	{
 
@@ -127,16 +147,18 @@ public class LineageTreeLayout
 	/**
 	 *  ordered list of all existing timpoints.
 	 */
-	private final TIntArrayList timepoints;
+	private TIntArrayList timepoints;
 
 	/**
 	 * Maps timepoint to {@link TrackSchemeVertexList} that contains all
 	 * layouted vertices of that timepoint ordered by ascending layout X
 	 * coordinate.
 	 * <p>
-	 * This is built during TODO TODO TODO
+	 * This is built during layout into
+	 * {@link #nextTimepointToOrderedVertices}, and replaced when the layout is
+	 * complete.
 	 */
-	private final TIntObjectMap< TrackSchemeVertexList > timepointToOrderedVertices;
+	private TIntObjectMap< TrackSchemeVertexList > timepointToOrderedVertices;
 
 	/**
 	 * the minimum layoutX coordinate assigned to any vertex in the current
@@ -158,12 +180,94 @@ public class LineageTreeLayout
 	/**
 	 * The column layout X coordinates.
 	 */
-	private final TDoubleList currentLayoutColumnX;
+	private TDoubleList currentLayoutColumnX;
 
 	/**
 	 * The list of roots for each column.
 	 */
-	private final RefList< TrackSchemeVertex > currentLayoutColumnRoot;
+	private RefList< TrackSchemeVertex > currentLayoutColumnRoot;
+
+	/**
+	 * For each column {@code c} of the current layout, the segments of the
+	 * {@link #timepointToOrderedVertices} lists that are occupied by vertices
+	 * of that column. Segments are stored as {@code (timepoint, start, count)}
+	 * triples, for column {@code c} from index {@code columnSegmentsOffset[c]}
+	 * (inclusive) to {@code columnSegmentsOffset[c+1]} (exclusive).
+	 */
+	private TIntArrayList columnSegments;
+
+	private TIntArrayList columnSegmentsOffset;
+
+	/**
+	 * Minimum number of vertices in visible timepoint rows above which
+	 * {@link #cropAndScale} computes rows concurrently.
+	 */
+	private static final int MIN_PARALLEL_CROP_VERTICES = 20000;
+
+	/**
+	 * Minimum number of vertices in visible timepoint rows above which
+	 * {@link #cropAndScale} may paint the {@link LayoutDensityPyramid} instead
+	 * of individual vertices.
+	 */
+	private static final int MIN_DENSITY_PYRAMID_VERTICES = 100000;
+
+	/**
+	 * {@link #cropAndScale} paints the {@link LayoutDensityPyramid} if the
+	 * finest bins are at most this many pixels wide.
+	 */
+	private static final double MIN_DENSITY_BIN_SCREEN_WIDTH = 2;
+
+	private final LayoutDensityPyramid densityPyramid = new LayoutDensityPyramid();
+
+	/**
+	 * Layout timestamp for which {@link #densityPyramid} was built.
+	 */
+	private int densityPyramidTimestamp = -1;
+
+	/**
+	 * Timepoint rows of the last {@link #cropAndScale} call. Reused to avoid
+	 * reallocation for every frame.
+	 */
+	private final ArrayList< Row > rows = new ArrayList<>();
+
+	private boolean parallelCropAndScale = true;
+
+	/**
+	 * Whether the current layout was computed by {@link #layout()}, i.e., from
+	 * all graph roots without ghosts, and can be updated incrementally.
+	 */
+	private boolean incrementalLayoutValid;
+
+	/**
+	 * Indices of columns of the current layout that were touched by graph
+	 * changes since the layout was computed.
+	 */
+	private final TIntHashSet dirtyColumns;
+
+	private final DirtyColumnTracker dirtyColumnTracker;
+
+	/*
+	 * The next layout is built into the following, which replace the current
+	 * ones when the layout is complete.
+	 */
+
+	private TIntArrayList nextTimepoints;
+
+	private TIntObjectMap< TrackSchemeVertexList > nextTimepointToOrderedVertices;
+
+	private TDoubleList nextLayoutColumnX;
+
+	private RefList< TrackSchemeVertex > nextLayoutColumnRoot;
+
+	private TIntArrayList nextColumnSegments;
+
+	private TIntArrayList nextColumnSegmentsOffset;
+
+	/**
+	 * Maps timepoint to the index in {@link #nextColumnSegments} of the last
+	 * segment created for that timepoint.
+	 */
+	private final TIntIntHashMap lastSegmentOfTimepoint;
 
 	public LineageTreeLayout(
 			final TrackSchemeGraph< ?, ? > graph,
@@ -178,19 +282,44 @@ public class LineageTreeLayout
 		timepointToOrderedVertices = new TIntObjectArrayMap< >();
 		currentLayoutColumnX = new TDoubleArrayList();
 		currentLayoutColumnRoot = RefCollections.createRefList( graph.vertices() );
+		columnSegments = new TIntArrayList();
+		columnSegmentsOffset = new TIntArrayList();
+		incrementalLayoutValid = false;
+		dirtyColumns = new TIntHashSet();
+		lastSegmentOfTimepoint = new TIntIntHashMap( 10, 0.5f, -1, -1 );
 		stack = new ArrayList<>();
 		stack.add( new StackFrame( null ) );
+		dirtyColumnTracker = new DirtyColumnTracker();
+		graph.graphListeners().add( dirtyColumnTracker );
+	}
+
+	/**
+	 * Stop tracking changes of the underlying graph. Must be called when the
+	 * layout is no longer used, otherwise it is kept alive (and kept updated)
+	 * by the graph listener.
+	 */
+	public void close()
+	{
+		graph.graphListeners().remove( dirtyColumnTracker );
 	}
 
 	/**
 	 * Layout graph in trackscheme coordinates starting from the graphs roots.
+	 * No vertices will me marked as ghosts.
 	 * <p>
-	 * This calls {@link #layout(Collection, int)} with parameter {@code mark = -1},
-	 * that is, no vertices will me marked as ghosts.
+	 * If the previous layout was also done by this method, only the columns
+	 * (tracks) affected by graph changes since then are laid out again. The
+	 * remaining columns are shifted to their new position. If too many columns
+	 * were affected, or the order of the unaffected columns changed, the
+	 * complete graph is laid out.
 	 */
 	public void layout()
 	{
-		layout( LexicographicalVertexOrder.sort( graph, graph.getRoots() ), -1 );
+		final long t0 = System.nanoTime();
+		final RefList< TrackSchemeVertex > roots = LexicographicalVertexOrder.sort( graph, graph.getRoots() );
+		if ( !layoutIncremental( roots ) )
+			layout( roots, -1, true );
+		LAYOUT_TIMER.record( System.nanoTime() - t0 );
 	}
 
 	/**
@@ -229,34 +358,182 @@ public class LineageTreeLayout
 	 *            (Ghost vertices were marked with {@code mark-1}.)
 	 */
 	public void layout( final Collection< TrackSchemeVertex > layoutRoots, final int mark )
+	{
+		final long t0 = System.nanoTime();
+		layout( layoutRoots, mark, false );
+		LAYOUT_TIMER.record( System.nanoTime() - t0 );
+	}
+
+	/**
+	 * Layout graph in trackscheme coordinates starting from specified roots.
+	 *
+	 * @param layoutRoots
+	 *            root vertices from which to start layout.
+	 * @param mark
+	 *            timestamp value that was used to mark vertices to be laid out.
+	 * @param allGraphRoots
+	 *            whether {@code layoutRoots} are all graph roots and
+	 *            {@code mark = -1}, such that the layout can be updated
+	 *            incrementally later.
+	 */
+	private void layout( final Collection< TrackSchemeVertex > layoutRoots, final int mark, final boolean allGraphRoots )
 	{
 		++timestamp;
-		rightmost = 0;
-		timepoints.clear();
-		timepointToOrderedVertices.clear();
-		currentLayoutColumnX.clear();
-		currentLayoutColumnRoot.clear();
+		this.mark = mark;
+		beginLayout();
 		final TrackSchemeVertex previousGraphRoot = graph.vertexRef();
 		final TrackSchemeVertex currentGraphRoot = graph.vertexRef();
-		this.mark = mark;
 		boolean first = true;
-		currentLayoutColumnX.add( rightmost );
 		for ( final TrackSchemeVertex root : layoutRoots )
 		{
 			layoutX_iterative( root );
 			getGraphRoot( root, currentGraphRoot );
 			if ( first || !currentGraphRoot.equals( previousGraphRoot ) )
 			{
-				currentLayoutColumnRoot.add( currentGraphRoot );
-				currentLayoutColumnX.add( rightmost );
+				endColumn( currentGraphRoot );
 				first = false;
 				previousGraphRoot.refTo( currentGraphRoot );
 			}
 		}
-		currentLayoutMinX = 0;
-		currentLayoutMaxX = rightmost - 1;
 		graph.releaseRef( previousGraphRoot );
 		graph.releaseRef( currentGraphRoot );
+		endLayout( allGraphRoots );
+	}
+
+	/**
+	 * Update the current layout, laying out only columns that were touched by
+	 * graph changes, and new columns. Vertices of unchanged columns are moved
+	 * to their new column position.
+	 *
+	 * @param layoutRoots
+	 *            all graph roots, in layout order.
+	 * @return {@code true} if the layout was updated, {@code false} if a full
+	 *         layout is required.
+	 */
+	private boolean layoutIncremental( final RefList< TrackSchemeVertex > layoutRoots )
+	{
+		if ( !incrementalLayoutValid )
+			return false;
+
+		final int numColumns = currentLayoutColumnRoot.size();
+		if ( dirtyColumns.size() * 4 > numColumns )
+			return false;
+
+		/*
+		 * Map roots of unchanged columns to column index. Unchanged columns
+		 * must appear in the same order as before, otherwise vertices with
+		 * multiple parents could be assigned to a different column.
+		 */
+		final TrackSchemeVertex ref = graph.vertexRef();
+		final TIntIntHashMap cleanColumnOfRoot = new TIntIntHashMap( 2 * numColumns, 0.5f, -1, -1 );
+		for ( int c = 0; c < numColumns; ++c )
+			if ( !dirtyColumns.contains( c ) )
+				cleanColumnOfRoot.put( currentLayoutColumnRoot.get( c, ref ).getInternalPoolIndex(), c );
+		int previousColumn = -1;
+		for ( final TrackSchemeVertex root : layoutRoots )
+		{
+			final int c = cleanColumnOfRoot.get( root.getInternalPoolIndex() );
+			if ( c >= 0 )
+			{
+				if ( c < previousColumn )
+				{
+					graph.releaseRef( ref );
+					return false;
+				}
+				previousColumn = c;
+			}
+		}
+
+		final TIntObjectMap< TrackSchemeVertexList > oldOrderedVertices = timepointToOrderedVertices;
+		final TDoubleList oldColumnX = currentLayoutColumnX;
+		final TIntArrayList oldSegments = columnSegments;
+		final TIntArrayList oldSegmentsOffset = columnSegmentsOffset;
+
+		++timestamp;
+		mark = -1;
+		beginLayout();
+		for ( final TrackSchemeVertex root : layoutRoots )
+		{
+			final int c = cleanColumnOfRoot.get( root.getInternalPoolIndex() );
+			if ( c < 0 )
+				layoutX_iterative( root );
+			else
+			{
+				final double oldLeft = oldColumnX.get( c );
+				final double delta = rightmost - oldLeft;
+				final int end = oldSegmentsOffset.get( c + 1 );
+				for ( int s = oldSegmentsOffset.get( c ); s < end; s += 3 )
+				{
+					final TrackSchemeVertexList oldList = oldOrderedVertices.get( oldSegments.get( s ) );
+					final int from = oldSegments.get( s + 1 );
+					final int to = from + oldSegments.get( s + 2 );
+					for ( int i = from; i < to; ++i )
+					{
+						oldList.get( i, ref );
+						if ( delta != 0 )
+							ref.setLayoutX( ref.getLayoutX() + delta );
+						ref.setLayoutTimestamp( timestamp );
+						appendToOrderedVertices( ref );
+					}
+				}
+				rightmost += oldColumnX.get( c + 1 ) - oldLeft;
+			}
+			endColumn( root );
+		}
+		graph.releaseRef( ref );
+		endLayout( true );
+		return true;
+	}
+
+	/**
+	 * Prepare data structures for building a new layout.
+	 */
+	private void beginLayout()
+	{
+		rightmost = 0;
+		nextTimepoints = new TIntArrayList();
+		nextTimepointToOrderedVertices = new TIntObjectArrayMap<>();
+		nextLayoutColumnX = new TDoubleArrayList();
+		nextLayoutColumnX.add( rightmost );
+		nextLayoutColumnRoot = RefCollections.createRefList( graph.vertices() );
+		nextColumnSegments = new TIntArrayList();
+		nextColumnSegmentsOffset = new TIntArrayList();
+		nextColumnSegmentsOffset.add( 0 );
+		lastSegmentOfTimepoint.clear();
+	}
+
+	/**
+	 * Finish the column that is currently built.
+	 *
+	 * @param root
+	 *            the graph root of the column.
+	 */
+	private void endColumn( final TrackSchemeVertex root )
+	{
+		nextLayoutColumnRoot.add( root );
+		nextLayoutColumnX.add( rightmost );
+		nextColumnSegmentsOffset.add( nextColumnSegments.size() );
+	}
+
+	/**
+	 * Replace the current layout by the one that was built, and notify
+	 * listeners.
+	 *
+	 * @param incremental
+	 *            whether the new layout can be updated incrementally.
+	 */
+	private void endLayout( final boolean incremental )
+	{
+		timepoints = nextTimepoints;
+		timepointToOrderedVertices = nextTimepointToOrderedVertices;
+		currentLayoutColumnX = nextLayoutColumnX;
+		currentLayoutColumnRoot = nextLayoutColumnRoot;
+		columnSegments = nextColumnSegments;
+		columnSegmentsOffset = nextColumnSegmentsOffset;
+		currentLayoutMinX = 0;
+		currentLayoutMaxX = rightmost - 1;
+		incrementalLayoutValid = incremental;
+		dirtyColumns.clear();
 		notifyListeners();
 	}
 
@@ -334,6 +611,7 @@ public class LineageTreeLayout
 			final int decorationsOffsetY,
 			final GraphColorGenerator< TrackSchemeVertex, TrackSchemeEdge > colorGenerator )
 	{
+		final long t0 = System.nanoTime();
 		final double minX = transform.getMinX();
 		final double maxX = transform.getMaxX();
 		final double minY = transform.getMinY();
@@ -342,32 +620,18 @@ public class LineageTreeLayout
 		final double yScale = transform.getScaleY();
 		screenEntities.screenTransform().set( transform );
 
-		final RefList< ScreenVertex > screenVertices = screenEntities.getVertices();
-		final RefList< ScreenEdge > screenEdges = screenEntities.getEdges();
-		final RefList< ScreenVertexRange > vertexRanges = screenEntities.getRanges();
-		final ScreenVertexPool screenVertexPool = screenEntities.getVertexPool();
-		final ScreenEdgePool screenEdgePool = screenEntities.getEdgePool();
-		final ScreenVertexRangePool screenRangePool = screenEntities.getRangePool();
-
-		final TrackSchemeVertex v1 = graph.vertexRef();
-		final TrackSchemeVertex v2 = graph.vertexRef();
-		final ScreenVertex sv = screenVertexPool.createRef();
-		final ScreenEdge se = screenEdgePool.createRef();
-		final ScreenVertexRange sr = screenRangePool.createRef();
-
-		final double allowedMinD = 2.0 / xScale;
-
+		/*
+		 * Select visible timepoint rows and the range of visible vertices in
+		 * each row.
+		 */
+		int numRows = 0;
+		long numRowVertices = 0;
 		final TIntIterator iter = timepoints.iterator();
 		while ( iter.hasNext() )
 		{
 			final int timepoint = iter.next();
 			if ( timepoint + 1 >= minY && timepoint - 1 <= maxY )
 			{
-				final int timepointStartScreenVertexIndex = screenVertices.size();
-				// screen y of vertices of timepoint
-				final double y = ( timepoint - minY ) * yScale + decorationsOffsetY;
-				// screen y of vertices of (timepoint-1)
-				final double prevY = ( timepoint - 1 - minY ) * yScale + decorationsOffsetY;
 				final TrackSchemeVertexList vertexList = timepointToOrderedVertices.get( timepoint );
 				// largest index of vertex with layoutX <= minX
 				int minIndex = vertexList.binarySearch( minX );
@@ -385,89 +649,34 @@ public class LineageTreeLayout
 				if ( maxIndex < vertexList.size() - 1 )
 					maxIndex++;
 
-				final double minLayoutX = vertexList.getMinLayoutXDistance();
-				TIntArrayList denseRanges = vertexList.getDenseRanges( minIndex, maxIndex + 1, minLayoutX, allowedMinD, 3, v1 );
-				if ( denseRanges == null )
-					denseRanges = new TIntArrayList();
-				denseRanges.add( maxIndex + 1 );
-
-				final TIntIterator riter = denseRanges.iterator();
-				int nextRangeStart = riter.next();
-
-				double prevX = Double.NEGATIVE_INFINITY;
-				double minVertexScreenDist = yScale;
-				for ( int i = minIndex; i <= maxIndex; ++i )
-				{
-					if ( i < nextRangeStart )
-					{
-						vertexList.get( i, v1 );
-						final int v1si = screenVertices.size();
-						v1.setScreenVertexIndex( v1si );
-						final int id = v1.getInternalPoolIndex();
-						final String label = v1.getLabel();
-						final double x = ( v1.getLayoutX() - minX ) * xScale + decorationsOffsetX;
-						final boolean selected = selection.isSelected( v1 );
-						final boolean ghost = v1.isGhost();
-						screenVertexPool.create( sv ).init( id, label, x, y, selected, ghost, colorGenerator.color( v1 ) );
-						screenVertices.add( sv );
-
-						minVertexScreenDist = Math.min( minVertexScreenDist, x - prevX );
-						prevX = x;
-
-						for ( final TrackSchemeEdge edge : v1.incomingEdges() )
-						{
-							edge.getSource( v2 );
-							int v2si = v2.getScreenVertexIndex();
-
-							// TODO: additionally to checking for id ref consistency, the following should be decided by layout timestamp
-							if ( v2si < 0 || v2si >= screenVertices.size() || screenVertices.get( v2si, sv ).getTrackSchemeVertexId() != v2.getInternalPoolIndex() )
-							{
-								// ScreenVertex for v2 not found. Adding one...
-								v2si = screenVertices.size();
-								v2.setScreenVertexIndex( v2si );
-								final int nid = v2.getInternalPoolIndex();
-								final String nlabel = v2.getLabel();
-								final double nx = ( v2.getLayoutX() - minX ) * xScale + decorationsOffsetX;
-								final double ny = ( v2.getTimepoint() - minY ) * yScale + decorationsOffsetY;
-								final boolean nselected = selection.isSelected( v2 );
-								final boolean nghost = v2.isGhost();
-								screenVertexPool.create( sv ).init( nid, nlabel, nx, ny, nselected, nghost, colorGenerator.color( v2 ) );
-								screenVertices.add( sv );
-							}
-
-							final int eid = edge.getInternalPoolIndex();
-							final int sourceScreenVertexIndex = v2si;
-							final int targetScreenVertexIndex = v1si;
-							final boolean eselected = selection.isSelected( edge );
-							screenEdgePool.create( se ).init( eid, sourceScreenVertexIndex, targetScreenVertexIndex, eselected, colorGenerator.color( edge, v2, v1 ) );
-							screenEdges.add( se );
-							final int sei = se.getInternalPoolIndex();
-							edge.setScreenEdgeIndex( sei );
-						}
-					}
-					else
-					{
-						final int rangeMinIndex = nextRangeStart;
-						final int rangeMaxIndex = riter.next();
-						nextRangeStart = riter.next();
-						i = rangeMaxIndex;
-						final double svMinX = ( vertexList.get( rangeMinIndex, v1 ).getLayoutX() - minX ) * xScale + decorationsOffsetX;
-						final double svMaxX = ( vertexList.get( rangeMaxIndex, v1 ).getLayoutX() - minX ) * xScale + decorationsOffsetX; // TODO: make minimum width (maybe only when painting...)
-						vertexRanges.add( screenRangePool.create( sr ).init( svMinX, svMaxX, prevY, y ) );
-						minVertexScreenDist = 0; // TODO: WHY = 0?
-					}
-				}
-				for ( int i = timepointStartScreenVertexIndex; i < screenVertices.size(); ++i )
-				{
-					screenVertices.get( i, sv ).setVertexDist( minVertexScreenDist );
-				}
+				if ( rows.size() == numRows )
+					rows.add( new Row() );
+				rows.get( numRows++ ).set( timepoint, vertexList, minIndex, maxIndex );
+				numRowVertices += maxIndex - minIndex + 1;
 			}
 		}
 
-		screenEdgePool.releaseRef( se );
-		screenVertexPool.releaseRef( sv );
-		graph.releaseRef( v1 );
-		graph.releaseRef( v2 );
+		final CropAndScaleParams params = new CropAndScaleParams( minX, minY, xScale, yScale, decorationsOffsetX, decorationsOffsetY, colorGenerator );
+		if ( numRowVertices >= MIN_DENSITY_PYRAMID_VERTICES && useDensityPyramid( xScale ) )
+		{
+			/*
+			 * Zoomed out far on a large layout: paint binned vertex counts
+			 * instead of individual vertices.
+			 */
+			addDensityRanges( numRows, maxX, params, screenEntities );
+		}
+		else
+		{
+			/*
+			 * Compute the contents of each row. Rows are independent, so this
+			 * can be done in parallel.
+			 */
+			if ( parallelCropAndScale && numRows > 1 && numRowVertices >= MIN_PARALLEL_CROP_VERTICES )
+				computeRowsParallel( numRows, params );
+			else
+				computeRows( 0, numRows, params );
+			concatenateRows( numRows, params, screenEntities );
+		}
 
 		/*
 		 * Columns
@@ -505,6 +714,438 @@ public class LineageTreeLayout
 			final ScreenColumn column = new ScreenColumn( root.getLabel(), xLeft, columnWidth );
 			screenColumns.add( column );
 		}
+		CROP_AND_SCALE_TIMER.record( System.nanoTime() - t0 );
+	}
+
+	/**
+	 * Update the selected state of the screen vertices and edges in
+	 * {@code screenEntities} that represent the specified model vertices and
+	 * edges. This is used to reflect selection changes in the result of a
+	 * previous {@link #cropAndScale} call, without cropping and scaling
+	 * again. Objects that are not represented in {@code screenEntities} are
+	 * ignored.
+	 *
+	 * @param screenEntities
+	 *            screen entities computed for the current layout.
+	 * @param modelVertexIds
+	 *            ids of model vertices whose selected state changed.
+	 * @param modelEdgeIds
+	 *            ids of model edges whose selected state changed.
+	 */
+	public void updateSelection( final ScreenEntities screenEntities, final TIntCollection modelVertexIds, final TIntCollection modelEdgeIds )
+	{
+		final RefList< ScreenVertex > screenVertices = screenEntities.getVertices();
+		final RefList< ScreenEdge > screenEdges = screenEntities.getEdges();
+		final ScreenVertex sv = screenEntities.getVertexPool().createRef();
+		final ScreenEdge se = screenEntities.getEdgePool().createRef();
+		final TrackSchemeVertex v = graph.vertexRef();
+		final TrackSchemeEdge e = graph.edgeRef();
+
+		final TIntIterator vi = modelVertexIds.iterator();
+		while ( vi.hasNext() )
+		{
+			if ( graph.getTrackSchemeVertexForModelId( vi.next(), v ) == null )
+				continue;
+			final int si = v.getScreenVertexIndex();
+			if ( si >= 0 && si < screenVertices.size() && screenVertices.get( si, sv ).getTrackSchemeVertexId() == v.getInternalPoolIndex() )
+				sv.setSelected( selection.isSelected( v ) );
+		}
+
+		final TIntIterator ei = modelEdgeIds.iterator();
+		while ( ei.hasNext() )
+		{
+			if ( graph.getTrackSchemeEdgeForModelId( ei.next(), e ) == null )
+				continue;
+			final int si = e.getScreenEdgeIndex();
+			if ( si >= 0 && si < screenEdges.size() && screenEdges.get( si, se ).getTrackSchemeEdgeId() == e.getInternalPoolIndex() )
+				se.setSelected( selection.isSelected( e ) );
+		}
+
+		graph.releaseRef( e );
+		graph.releaseRef( v );
+		screenEntities.getEdgePool().releaseRef( se );
+		screenEntities.getVertexPool().releaseRef( sv );
+	}
+
+	/**
+	 * Get the density pyramid of the current layout. The pyramid is rebuilt if
+	 * the layout changed since it was last requested.
+	 *
+	 * @return density pyramid of the current layout.
+	 */
+	public LayoutDensityPyramid getDensityPyramid()
+	{
+		if ( densityPyramidTimestamp != timestamp )
+		{
+			final TrackSchemeVertex ref = graph.vertexRef();
+			densityPyramid.build( timepoints, timepointToOrderedVertices, currentLayoutMinX, currentLayoutMaxX, ref );
+			graph.releaseRef( ref );
+			densityPyramidTimestamp = timestamp;
+		}
+		return densityPyramid;
+	}
+
+	/**
+	 * Whether the finest density pyramid bins are narrow enough at the
+	 * specified scale to be painted instead of individual vertices.
+	 */
+	private boolean useDensityPyramid( final double xScale )
+	{
+		return getDensityPyramid().getBaseBinWidth() * xScale <= MIN_DENSITY_BIN_SCREEN_WIDTH;
+	}
+
+	/**
+	 * Add {@link ScreenVertexRange}s for the non-empty density pyramid bins in
+	 * the first {@code numRows} rows.
+	 */
+	private void addDensityRanges( final int numRows, final double maxX, final CropAndScaleParams p, final ScreenEntities screenEntities )
+	{
+		final LayoutDensityPyramid pyramid = getDensityPyramid();
+		final int level = pyramid.getLevel( p.xScale, MIN_DENSITY_BIN_SCREEN_WIDTH );
+		final int minBin = pyramid.getBin( level, p.minX );
+		final int maxBin = pyramid.getBin( level, maxX );
+
+		final RefList< ScreenVertexRange > vertexRanges = screenEntities.getRanges();
+		final ScreenVertexRangePool screenRangePool = screenEntities.getRangePool();
+		final ScreenVertexRange sr = screenRangePool.createRef();
+		for ( int r = 0; r < numRows; ++r )
+		{
+			final int timepoint = rows.get( r ).timepoint;
+			final int[] bins = pyramid.getRow( level, timepoint );
+			if ( bins == null )
+				continue;
+			final double y = ( timepoint - p.minY ) * p.yScale + p.decorationsOffsetY;
+			final double prevY = ( timepoint - 1 - p.minY ) * p.yScale + p.decorationsOffsetY;
+			for ( int b = minBin; b <= maxBin; ++b )
+			{
+				if ( bins[ b ] == 0 )
+					continue;
+				final int runStart = b;
+				while ( b < maxBin && bins[ b + 1 ] != 0 )
+					++b;
+				final double svMinX = ( pyramid.getBinMinX( level, runStart ) - p.minX ) * p.xScale + p.decorationsOffsetX;
+				final double svMaxX = ( pyramid.getBinMinX( level, b + 1 ) - p.minX ) * p.xScale + p.decorationsOffsetX;
+				vertexRanges.add( screenRangePool.create( sr ).init( svMinX, svMaxX, prevY, y ) );
+			}
+		}
+		screenRangePool.releaseRef( sr );
+	}
+
+	/**
+	 * Concatenate the first {@code numRows} computed rows into
+	 * {@code screenEntities}, and link edges to screen vertices (possibly in
+	 * other rows).
+	 */
+	private void concatenateRows( final int numRows, final CropAndScaleParams p, final ScreenEntities screenEntities )
+	{
+		final RefList< ScreenVertex > screenVertices = screenEntities.getVertices();
+		final RefList< ScreenEdge > screenEdges = screenEntities.getEdges();
+		final RefList< ScreenVertexRange > vertexRanges = screenEntities.getRanges();
+		final ScreenVertexPool screenVertexPool = screenEntities.getVertexPool();
+		final ScreenEdgePool screenEdgePool = screenEntities.getEdgePool();
+		final ScreenVertexRangePool screenRangePool = screenEntities.getRangePool();
+
+		final TrackSchemeVertex v1 = graph.vertexRef();
+		final TrackSchemeVertex v2 = graph.vertexRef();
+		final TrackSchemeEdge edge = graph.edgeRef();
+		final ScreenVertex sv = screenVertexPool.createRef();
+		final ScreenEdge se = screenEdgePool.createRef();
+		final ScreenVertexRange sr = screenRangePool.createRef();
+
+		for ( int r = 0; r < numRows; ++r )
+		{
+			final Row row = rows.get( r );
+			final int timepointStartScreenVertexIndex = screenVertices.size();
+			int ei = 0;
+			for ( int k = 0; k < row.vertexIds.size(); ++k )
+			{
+				final int id = row.vertexIds.getQuick( k );
+				graph.getVertexPool().getObject( id, v1 );
+				final int v1si = screenVertices.size();
+				v1.setScreenVertexIndex( v1si );
+				final int flags = row.vertexFlags.getQuick( k );
+				final boolean selected = ( flags & SELECTED ) != 0;
+				final boolean ghost = ( flags & GHOST ) != 0;
+				screenVertexPool.create( sv ).init( id, row.vertexX.getQuick( k ), row.y, selected, ghost, row.vertexColor.getQuick( k ) );
+				screenVertices.add( sv );
+
+				final int edgesEnd = row.vertexEdgesEnd.getQuick( k );
+				for ( ; ei < edgesEnd; ++ei )
+				{
+					graph.getVertexPool().getObject( row.edgeSourceIds.getQuick( ei ), v2 );
+					int v2si = v2.getScreenVertexIndex();
+
+					// TODO: additionally to checking for id ref consistency, the following should be decided by layout timestamp
+					if ( v2si < 0 || v2si >= screenVertices.size() || screenVertices.get( v2si, sv ).getTrackSchemeVertexId() != v2.getInternalPoolIndex() )
+					{
+						// ScreenVertex for v2 not found. Adding one...
+						v2si = screenVertices.size();
+						v2.setScreenVertexIndex( v2si );
+						final int nid = v2.getInternalPoolIndex();
+						final double nx = ( v2.getLayoutX() - p.minX ) * p.xScale + p.decorationsOffsetX;
+						final double ny = ( v2.getTimepoint() - p.minY ) * p.yScale + p.decorationsOffsetY;
+						final boolean nselected = selection.isSelected( v2 );
+						final boolean nghost = v2.isGhost();
+						screenVertexPool.create( sv ).init( nid, nx, ny, nselected, nghost, p.colorGenerator.color( v2 ) );
+						screenVertices.add( sv );
+					}
+
+					final int eid = row.edgeIds.getQuick( ei );
+					final int sourceScreenVertexIndex = v2si;
+					final int targetScreenVertexIndex = v1si;
+					final boolean eselected = ( row.edgeFlags.getQuick( ei ) & SELECTED ) != 0;
+					screenEdgePool.create( se ).init( eid, sourceScreenVertexIndex, targetScreenVertexIndex, eselected, row.edgeColor.getQuick( ei ) );
+					screenEdges.add( se );
+					final int sei = se.getInternalPoolIndex();
+					graph.getEdgePool().getObject( eid, edge ).setScreenEdgeIndex( sei );
+				}
+			}
+
+			for ( int k = 0; k < row.rangesX.size(); k += 2 )
+				vertexRanges.add( screenRangePool.create( sr ).init( row.rangesX.getQuick( k ), row.rangesX.getQuick( k + 1 ), row.prevY, row.y ) );
+
+			// Smaller vertices are painted without label.
+			final boolean labeled = row.minVertexScreenDist >= PaintGraph.minDisplayVertexDist;
+			for ( int i = timepointStartScreenVertexIndex; i < screenVertices.size(); ++i )
+			{
+				screenVertices.get( i, sv ).setVertexDist( row.minVertexScreenDist );
+				if ( labeled )
+					sv.setLabel( graph.getVertexPool().getObject( sv.getTrackSchemeVertexId(), v1 ).getLabel() );
+			}
+		}
+
+		screenRangePool.releaseRef( sr );
+		screenEdgePool.releaseRef( se );
+		screenVertexPool.releaseRef( sv );
+		graph.releaseRef( v1 );
+		graph.releaseRef( v2 );
+		graph.releaseRef( edge );
+	}
+
+	/**
+	 * Compute the contents of rows {@code from} (inclusive) to {@code to}
+	 * (exclusive) of {@link #rows}.
+	 */
+	private void computeRows( final int from, final int to, final CropAndScaleParams params )
+	{
+		final TrackSchemeVertex v1 = graph.vertexRef();
+		final TrackSchemeVertex v2 = graph.vertexRef();
+		final TrackSchemeEdge edge = graph.edgeRef();
+		for ( int r = from; r < to; ++r )
+			rows.get( r ).compute( params, v1, v2, edge );
+		graph.releaseRef( v1 );
+		graph.releaseRef( v2 );
+		graph.releaseRef( edge );
+	}
+
+	/**
+	 * Compute the contents of the first {@code numRows} rows of {@link #rows}
+	 * concurrently, in the common {@link ForkJoinPool}. Returns when all rows
+	 * are computed. Exceptions thrown while computing a row are propagated.
+	 */
+	private void computeRowsParallel( final int numRows, final CropAndScaleParams params )
+	{
+		final int numTasks = Math.min( numRows, 4 * ForkJoinPool.getCommonPoolParallelism() );
+		IntStream.range( 0, numTasks ).parallel().forEach( t -> {
+			final int from = ( int ) ( ( long ) numRows * t / numTasks );
+			final int to = ( int ) ( ( long ) numRows * ( t + 1 ) / numTasks );
+			computeRows( from, to, params );
+		} );
+	}
+
+	/**
+	 * Sets whether {@link #cropAndScale} computes timepoint rows concurrently
+	 * when many vertices are visible.
+	 *
+	 * @param parallel
+	 *            whether to compute rows concurrently.
+	 */
+	public void setParallelCropAndScale( final boolean parallel )
+	{
+		this.parallelCropAndScale = parallel;
+	}
+
+	/**
+	 * Parameters of the {@link #cropAndScale} call that are shared by all
+	 * rows.
+	 */
+	private static final class CropAndScaleParams
+	{
+		final double minX;
+
+		final double minY;
+
+		final double xScale;
+
+		final double yScale;
+
+		final int decorationsOffsetX;
+
+		final int decorationsOffsetY;
+
+		final GraphColorGenerator< TrackSchemeVertex, TrackSchemeEdge > colorGenerator;
+
+		CropAndScaleParams(
+				final double minX,
+				final double minY,
+				final double xScale,
+				final double yScale,
+				final int decorationsOffsetX,
+				final int decorationsOffsetY,
+				final GraphColorGenerator< TrackSchemeVertex, TrackSchemeEdge > colorGenerator )
+		{
+			this.minX = minX;
+			this.minY = minY;
+			this.xScale = xScale;
+			this.yScale = yScale;
+			this.decorationsOffsetX = decorationsOffsetX;
+			this.decorationsOffsetY = decorationsOffsetY;
+			this.colorGenerator = colorGenerator;
+		}
+	}
+
+	private static final int SELECTED = 1;
+
+	private static final int GHOST = 2;
+
+	/**
+	 * The screen entities of one timepoint row, computed by
+	 * {@link #compute(CropAndScaleParams, TrackSchemeVertex, TrackSchemeVertex, TrackSchemeEdge)}
+	 * in primitive lists. This only reads the layout, the selection, and the
+	 * color generator, so rows can be computed concurrently. Rows are reused
+	 * between {@link #cropAndScale} calls.
+	 */
+	private final class Row
+	{
+		private int timepoint;
+
+		private TrackSchemeVertexList vertexList;
+
+		private int minIndex;
+
+		private int maxIndex;
+
+		/**
+		 * screen y of vertices of timepoint.
+		 */
+		private double y;
+
+		/**
+		 * screen y of vertices of (timepoint-1).
+		 */
+		private double prevY;
+
+		private double minVertexScreenDist;
+
+		private final TIntArrayList vertexIds = new TIntArrayList();
+
+		private final TDoubleArrayList vertexX = new TDoubleArrayList();
+
+		private final TIntArrayList vertexFlags = new TIntArrayList();
+
+		private final TIntArrayList vertexColor = new TIntArrayList();
+
+		/**
+		 * For each vertex, the end index (exclusive) of its incoming edges in
+		 * the edge lists.
+		 */
+		private final TIntArrayList vertexEdgesEnd = new TIntArrayList();
+
+		private final TIntArrayList edgeIds = new TIntArrayList();
+
+		private final TIntArrayList edgeSourceIds = new TIntArrayList();
+
+		private final TIntArrayList edgeFlags = new TIntArrayList();
+
+		private final TIntArrayList edgeColor = new TIntArrayList();
+
+		/**
+		 * (minX, maxX) screen coordinates of dense vertex ranges.
+		 */
+		private final TDoubleArrayList rangesX = new TDoubleArrayList();
+
+		private final TIntArrayList denseRanges = new TIntArrayList();
+
+		void set( final int timepoint, final TrackSchemeVertexList vertexList, final int minIndex, final int maxIndex )
+		{
+			this.timepoint = timepoint;
+			this.vertexList = vertexList;
+			this.minIndex = minIndex;
+			this.maxIndex = maxIndex;
+		}
+
+		void compute(
+				final CropAndScaleParams p,
+				final TrackSchemeVertex v1,
+				final TrackSchemeVertex v2,
+				final TrackSchemeEdge edge )
+		{
+			vertexIds.resetQuick();
+			vertexX.resetQuick();
+			vertexFlags.resetQuick();
+			vertexColor.resetQuick();
+			vertexEdgesEnd.resetQuick();
+			edgeIds.resetQuick();
+			edgeSourceIds.resetQuick();
+			edgeFlags.resetQuick();
+			edgeColor.resetQuick();
+			rangesX.resetQuick();
+
+			y = ( timepoint - p.minY ) * p.yScale + p.decorationsOffsetY;
+			prevY = ( timepoint - 1 - p.minY ) * p.yScale + p.decorationsOffsetY;
+
+			final double allowedMinD = 2.0 / p.xScale;
+			final double minLayoutX = vertexList.getMinLayoutXDistance();
+			denseRanges.resetQuick();
+			vertexList.getDenseRanges( minIndex, maxIndex + 1, minLayoutX, allowedMinD, 3, v1, denseRanges );
+			denseRanges.add( maxIndex + 1 );
+
+			int nextRange = 0;
+			int nextRangeStart = denseRanges.getQuick( nextRange++ );
+
+			double prevX = Double.NEGATIVE_INFINITY;
+			minVertexScreenDist = p.yScale;
+			for ( int i = minIndex; i <= maxIndex; ++i )
+			{
+				if ( i < nextRangeStart )
+				{
+					vertexList.get( i, v1 );
+					final double x = ( v1.getLayoutX() - p.minX ) * p.xScale + p.decorationsOffsetX;
+					vertexIds.add( v1.getInternalPoolIndex() );
+					vertexX.add( x );
+					vertexFlags.add( ( selection.isSelected( v1 ) ? SELECTED : 0 ) | ( v1.isGhost() ? GHOST : 0 ) );
+					vertexColor.add( p.colorGenerator.color( v1 ) );
+
+					minVertexScreenDist = Math.min( minVertexScreenDist, x - prevX );
+					prevX = x;
+
+					final Edges< TrackSchemeEdge > incoming = v1.incomingEdges();
+					final int numIncoming = incoming.size();
+					for ( int ei = 0; ei < numIncoming; ++ei )
+					{
+						incoming.get( ei, edge );
+						edge.getSource( v2 );
+						edgeIds.add( edge.getInternalPoolIndex() );
+						edgeSourceIds.add( v2.getInternalPoolIndex() );
+						edgeFlags.add( selection.isSelected( edge ) ? SELECTED : 0 );
+						edgeColor.add( p.colorGenerator.color( edge, v2, v1 ) );
+					}
+					vertexEdgesEnd.add( edgeIds.size() );
+				}
+				else
+				{
+					final int rangeMinIndex = nextRangeStart;
+					final int rangeMaxIndex = denseRanges.getQuick( nextRange++ );
+					nextRangeStart = denseRanges.getQuick( nextRange++ );
+					i = rangeMaxIndex;
+					final double svMinX = ( vertexList.get( rangeMinIndex, v1 ).getLayoutX() - p.minX ) * p.xScale + p.decorationsOffsetX;
+					final double svMaxX = ( vertexList.get( rangeMaxIndex, v1 ).getLayoutX() - p.minX ) * p.xScale + p.decorationsOffsetX; // TODO: make minimum width (maybe only when painting...)
+					rangesX.add( svMinX );
+					rangesX.add( svMaxX );
+					minVertexScreenDist = 0; // TODO: WHY = 0?
+				}
+			}
+		}
 	}
 
 	/**
@@ -969,14 +1610,82 @@ A:		while ( true )
 	private void appendToOrderedVertices( final TrackSchemeVertex v )
 	{
 		final int tp = v.getTimepoint();
-		TrackSchemeVertexList vlist = timepointToOrderedVertices.get( tp );
+		TrackSchemeVertexList vlist = nextTimepointToOrderedVertices.get( tp );
 		if ( vlist == null )
 		{
 			vlist = new TrackSchemeVertexList( graph );
-			timepointToOrderedVertices.put( tp, vlist );
-			timepoints.insert( -( 1 + timepoints.binarySearch( tp ) ), tp );
+			nextTimepointToOrderedVertices.put( tp, vlist );
+			nextTimepoints.insert( -( 1 + nextTimepoints.binarySearch( tp ) ), tp );
 		}
 		vlist.add( v );
+
+		// record the list segment occupied by the current column
+		final int s = lastSegmentOfTimepoint.get( tp );
+		if ( s >= nextColumnSegmentsOffset.get( nextColumnSegmentsOffset.size() - 1 ) )
+			nextColumnSegments.setQuick( s + 2, nextColumnSegments.getQuick( s + 2 ) + 1 );
+		else
+		{
+			lastSegmentOfTimepoint.put( tp, nextColumnSegments.size() );
+			nextColumnSegments.add( tp );
+			nextColumnSegments.add( vlist.size() - 1 );
+			nextColumnSegments.add( 1 );
+		}
+	}
+
+	/**
+	 * Mark the column containing the specified vertex as changed, if the vertex
+	 * is active in a layout that can be updated incrementally.
+	 */
+	private void markColumnDirty( final TrackSchemeVertex v )
+	{
+		if ( !incrementalLayoutValid || v.getLayoutTimestamp() != timestamp )
+			return;
+
+		int c = currentLayoutColumnX.binarySearch( v.getLayoutX() );
+		if ( c < 0 )
+			c = -c - 2;
+		if ( c >= 0 && c < currentLayoutColumnRoot.size() )
+			dirtyColumns.add( c );
+	}
+
+	/**
+	 * Tracks which layout columns are affected by graph changes.
+	 */
+	private class DirtyColumnTracker implements GraphListener< TrackSchemeVertex, TrackSchemeEdge >
+	{
+		private final TrackSchemeVertex ref = graph.vertexRef();
+
+		@Override
+		public void graphRebuilt()
+		{
+			incrementalLayoutValid = false;
+		}
+
+		@Override
+		public void vertexAdded( final TrackSchemeVertex vertex )
+		{
+			// New vertices are roots, which are laid out as new columns.
+		}
+
+		@Override
+		public void vertexRemoved( final TrackSchemeVertex vertex )
+		{
+			markColumnDirty( vertex );
+		}
+
+		@Override
+		public void edgeAdded( final TrackSchemeEdge edge )
+		{
+			markColumnDirty( edge.getSource( ref ) );
+			markColumnDirty( edge.getTarget( ref ) );
+		}
+
+		@Override
+		public void edgeRemoved( final TrackSchemeEdge edge )
+		{
+			markColumnDirty( edge.getSource( ref ) );
+			markColumnDirty( edge.getTarget( ref ) );
+		}
 	}
 
 	/**
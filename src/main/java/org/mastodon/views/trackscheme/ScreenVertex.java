@@ -137,7 +137,6 @@ public class ScreenVertex extends PoolObject< ScreenVertex, ScreenVertexPool, By
 
 	public ScreenVertex init(
 			final int id,
-			final String label,
 			final double x,
 			final double y,
 			final boolean selected,
@@ -145,7 +144,7 @@ public class ScreenVertex extends PoolObject< ScreenVertex, ScreenVertexPool, By
 			final int color )
 	{
 		setTrackSchemeVertexId( id );
-		setLabel( label );
+		setLabel( null );
 		setX( x );
 		setY( y );
 		setSelected( selected );
@@ -219,20 +218,34 @@ public class ScreenVertex extends PoolObject< ScreenVertex, ScreenVertexPool, By
 	}
 
 	/**
-	 * Get the label of the vertex. This calls
+	 * Get the label of the vertex, i.e., the
 	 * {@link TrackSchemeVertex#getLabel()} of the associated
 	 * {@link TrackSchemeVertex}.
+	 * <p>
+	 * Labels are only copied from the {@link TrackSchemeVertex} (by
+	 * {@link LineageTreeLayout#cropAndScale}, under the graph lock) for
+	 * vertices that are painted large enough to show a label. For all other
+	 * vertices this returns an empty string.
 	 *
-	 * @return label of the vertex.
+	 * @return label of the vertex, or an empty string if the label was not
+	 *         resolved.
 	 */
 	public String getLabel()
 	{
-		return pool.label.get( this );
+		final String label = pool.label.get( this );
+		return label == null ? "" : label;
 	}
 
 	protected void setLabel( final String label )
 	{
-		pool.label.set( this, label );
+		if ( label == null )
+		{
+			// Pooled vertices are re-initialized every frame, and most have no label.
+			if ( pool.label.get( this ) != null )
+				pool.label.remove( this );
+		}
+		else
+			pool.label.set( this, label );
 	}
 
 	/**
@@ -357,7 +370,7 @@ public class ScreenVertex extends PoolObject< ScreenVertex, ScreenVertexPool, By
 	ScreenVertex cloneFrom( final ScreenVertex v )
 	{
 		setTrackSchemeVertexId( v.getTrackSchemeVertexId() );
-		setLabel( v.getLabel() );
+		setLabel( v.pool.label.get( v ) );
 		setX( v.getX() );
 		setY( v.getY() );
 		setVertexDist( v.getVertexDist() );
@@ -124,8 +124,17 @@ public class TrackSchemeContextListener< V extends Vertex< ? > >  implements Con
 		@Override
 		public Iterable< TrackSchemeVertex > getInsideVertices( final int timepoint )
 		{
-			final Iterable< V > insideVertices = context.getInsideVertices( timepoint );
+			return toTrackSchemeVertices( context.getInsideVertices( timepoint ) );
+		}
+
+		@Override
+		public Iterable< TrackSchemeVertex > getInsideVertices( final int fromTimepoint, final int toTimepoint )
+		{
+			return toTrackSchemeVertices( context.getInsideVertices( fromTimepoint, toTimepoint ) );
+		}
 
+		private Iterable< TrackSchemeVertex > toTrackSchemeVertices( final Iterable< V > insideVertices )
+		{
 			return new Iterable< TrackSchemeVertex >()
 			{
 				@Override
@@ -142,13 +142,36 @@ public class TrackSchemeVertexList extends RefArrayList< TrackSchemeVertex >
 		return high;
 	}
 
-	protected TIntArrayList getDenseRanges(
+	/**
+	 * Computes ranges of vertices in the specified index range that are too
+	 * dense to be painted individually, and appends them to {@code ranges} as
+	 * {@code (first, last)} index pairs. Adjacent ranges (where the last index
+	 * of a range is the first index of the next one) are merged.
+	 *
+	 * @param fromIndex
+	 *            the lower boundary of the range (inclusive)
+	 * @param toIndex
+	 *            the upper boundary of the range (exclusive)
+	 * @param minLayoutX
+	 *            the minimal layoutX distance between neighboring vertices.
+	 * @param allowedMinD
+	 *            the minimal layoutX distance below which vertices are
+	 *            considered dense.
+	 * @param minSubDivSize
+	 *            ranges smaller than this are not subdivided further.
+	 * @param vref
+	 *            a vertex reference used internally.
+	 * @param ranges
+	 *            list to which the dense ranges are appended.
+	 */
+	protected void getDenseRanges(
 			final int fromIndex,
 			final int toIndex,
 			final double minLayoutX,
 			final double allowedMinD,
 			final int minSubDivSize,
-			final TrackSchemeVertex vref )
+			final TrackSchemeVertex vref,
+			final TIntArrayList ranges )
 	{
 		if ( fromIndex < 0 )
 			throw new ArrayIndexOutOfBoundsException( fromIndex );
@@ -163,37 +186,21 @@ public class TrackSchemeVertexList extends RefArrayList< TrackSchemeVertex >
 
 		if ( ( xj - xi ) - minLayoutX * ( j - i - 1 ) < allowedMinD )
 		{
-			final TIntArrayList ranges = new TIntArrayList();
-			ranges.add( i );
-			ranges.add( j );
-			return ranges;
-		}
-		else
-		{
-			if ( toIndex - fromIndex < minSubDivSize )
-				return null;
-			final int k = ( i + j ) / 2;
-			final TIntArrayList rangesL = getDenseRanges( i, k + 1, minLayoutX, allowedMinD, minSubDivSize, vref );
-			final TIntArrayList rangesR = getDenseRanges( k, j + 1, minLayoutX, allowedMinD, minSubDivSize, vref );
-			if ( rangesL == null )
-				return rangesR;
-			else if ( rangesR == null )
-				return rangesL;
+			final int n = ranges.size();
+			if ( n > 0 && ranges.getQuick( n - 1 ) == i )
+				ranges.setQuick( n - 1, j );
 			else
 			{
-				if ( rangesL.get( rangesL.size() - 1 ) == rangesR.get( 0 ) )
-				{
-					rangesL.set( rangesL.size() - 1, rangesR.get( 1 ) );
-					for ( int r = 2; r < rangesR.size(); ++r )
-						rangesL.add( rangesR.get( r ) );
-				}
-				else
-				{
-					rangesL.addAll( rangesR );
-				}
-				return rangesL;
+				ranges.add( i );
+				ranges.add( j );
 			}
 		}
+		else if ( toIndex - fromIndex >= minSubDivSize )
+		{
+			final int k = ( i + j ) / 2;
+			getDenseRanges( i, k + 1, minLayoutX, allowedMinD, minSubDivSize, vref, ranges );
+			getDenseRanges( k, j + 1, minLayoutX, allowedMinD, minSubDivSize, vref, ranges );
+		}
 	}
 
 	protected double getMinLayoutX()
@@ -0,0 +1,490 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.views.trackscheme.display;
+
+import static org.mastodon.views.trackscheme.ScreenVertex.Transition.APPEAR;
+import static org.mastodon.views.trackscheme.ScreenVertex.Transition.DISAPPEAR;
+import static org.mastodon.views.trackscheme.ScreenVertex.Transition.NONE;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.VolatileImage;
+import java.util.Arrays;
+
+import org.mastodon.collection.RefList;
+import org.mastodon.views.trackscheme.ScreenEdge;
+import org.mastodon.views.trackscheme.ScreenEntities;
+import org.mastodon.views.trackscheme.ScreenVertex;
+import org.mastodon.views.trackscheme.ScreenVertex.Transition;
+import org.mastodon.views.trackscheme.ScreenVertexRange;
+import org.mastodon.views.trackscheme.display.style.TrackSchemeStyle;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+/**
+ * A {@link PaintGraph} that batches painting of the bulk of the graph.
+ * <p>
+ * Edges and simplified vertices that are not highlighted, focused, ghosted or
+ * in a transition can only take a handful of different colors. Instead of
+ * issuing one {@link Graphics2D} call (and computing one {@link Color}) per
+ * {@link ScreenEdge} and {@link ScreenVertex}, this class
+ * </p>
+ * <ul>
+ * <li>accumulates such edges per ARGB color into primitive coordinate arrays,
+ * chaining consecutive segments into polylines, and draws each batch with a
+ * single color change;</li>
+ * <li>writes such simplified vertices with opaque colors directly into the
+ * {@link DataBufferInt} of an offscreen ARGB image (only when there are more
+ * than {@link #MIN_RASTERIZED_VERTICES} of them; otherwise they are painted as
+ * usual). The image is copied into a {@link VolatileImage}, which can live in
+ * video memory, and drawn in one call. As long as the rasterized vertices do
+ * not change, e.g. when only the highlight or the focus changes, the
+ * {@link VolatileImage} is drawn again without writing the pixels;</li>
+ * <li>caches {@link Color} objects for specified colors, so that painting does
+ * not allocate per element.</li>
+ * </ul>
+ * <p>
+ * All other entities (full vertices, highlighted/focused/ghost entities and
+ * entities in a transition) are painted by the {@link PaintGraph} methods,
+ * after the batched entities, so that they appear on top.
+ * </p>
+ */
+public class BatchedPaintGraph extends PaintGraph
+{
+	/**
+	 * Minimum number of simplified vertices for which painting them into the
+	 * offscreen raster pays off.
+	 */
+	private static final int MIN_RASTERIZED_VERTICES = 2000;
+
+	/**
+	 * Maximum number of cached {@link Color} objects before the cache is
+	 * flushed.
+	 */
+	private static final int MAX_CACHED_COLORS = 4096;
+
+	private final TIntObjectHashMap< EdgeBatch > edgeBatches = new TIntObjectHashMap<>();
+
+	private final TIntObjectHashMap< Color > colorCache = new TIntObjectHashMap<>();
+
+	/**
+	 * Indices of {@link ScreenEdge}s that are not batched.
+	 */
+	private final TIntArrayList unbatchedEdges = new TIntArrayList();
+
+	/**
+	 * Indices of {@link ScreenVertex}es that are not rasterized.
+	 */
+	private final TIntArrayList unrasterizedVertices = new TIntArrayList();
+
+	private int[] scratchX = new int[ 64 ];
+
+	private int[] scratchY = new int[ 64 ];
+
+	/**
+	 * Pixels of rasterized vertices. A {@link BufferedImage}, because a
+	 * {@link VolatileImage} does not expose its pixel buffer.
+	 */
+	private BufferedImage raster;
+
+	/**
+	 * Copy of {@link #raster} drawn on screen, possibly accelerated.
+	 */
+	private VolatileImage layer;
+
+	/**
+	 * Hash of the rasterized vertices and the clip the {@link #layer} was
+	 * painted for.
+	 */
+	private long layerHash;
+
+	private int normalRasterColor;
+
+	private int selectedRasterColor;
+
+	private int ghostRasterColor;
+
+	private int ghostSelectedRasterColor;
+
+	@Override
+	public void paintGraph(
+			final Graphics2D g2,
+			final ScreenEntities entities,
+			final int highlightedVertexId,
+			final int highlightedEdgeId,
+			final int focusedVertexId,
+			final TrackSchemeStyle style )
+	{
+		this.g2 = g2;
+		this.highlightedVertexId = highlightedVertexId;
+		this.highlightedEdgeId = highlightedEdgeId;
+		this.focusedVertexId = focusedVertexId;
+		this.style = style;
+
+		if ( colorCache.size() > MAX_CACHED_COLORS )
+			colorCache.clear();
+
+		final RefList< ScreenEdge > edges = entities.getEdges();
+		final RefList< ScreenVertex > vertices = entities.getVertices();
+		final RefList< ScreenVertexRange > vertexRanges = entities.getRanges();
+
+		final ScreenVertex vt = vertices.createRef();
+		final ScreenVertex vs = vertices.createRef();
+		final ScreenEdge eref = edges.createRef();
+
+		beforeDrawEdges();
+		batchEdges( edges, vertices, vs, vt );
+		drawEdgeBatches();
+		for ( int i = 0; i < unbatchedEdges.size(); ++i )
+		{
+			final ScreenEdge edge = edges.get( unbatchedEdges.getQuick( i ), eref );
+			vertices.get( edge.getSourceScreenVertexIndex(), vs );
+			vertices.get( edge.getTargetScreenVertexIndex(), vt );
+			drawEdge( edge, vs, vt );
+		}
+
+		beforeDrawVertices();
+		rasterizeVertices( vertices );
+		for ( int i = 0; i < unrasterizedVertices.size(); ++i )
+			drawVertex( vertices.get( unrasterizedVertices.getQuick( i ), vs ) );
+
+		beforeDrawVertexRanges();
+		for ( final ScreenVertexRange range : vertexRanges )
+			drawVertexRange( range );
+
+		edges.releaseRef( eref );
+		vertices.releaseRef( vs );
+		vertices.releaseRef( vt );
+	}
+
+	@Override
+	protected Color getColor(
+			final boolean isSelected,
+			final boolean isGhost,
+			final Transition transition,
+			final double completionRatio,
+			final int specifiedColor,
+			final Color normalColor,
+			final Color selectedColor,
+			final Color ghostNormalColor,
+			final Color ghostSelectedColor )
+	{
+		if ( transition == NONE && !isGhost && !isSelected && specifiedColor != 0 )
+			return cachedColor( specifiedColor );
+		return super.getColor( isSelected, isGhost, transition, completionRatio, specifiedColor, normalColor, selectedColor, ghostNormalColor, ghostSelectedColor );
+	}
+
+	/**
+	 * Sorts edges into per-color batches. Edges that cannot be batched are
+	 * recorded in {@link #unbatchedEdges}.
+	 */
+	private void batchEdges(
+			final RefList< ScreenEdge > edges,
+			final RefList< ScreenVertex > vertices,
+			final ScreenVertex vs,
+			final ScreenVertex vt )
+	{
+		edgeBatches.forEachValue( batch -> {
+			batch.clear();
+			return true;
+		} );
+		unbatchedEdges.resetQuick();
+
+		final int normalColor = style.getEdgeColor().getRGB();
+		final int selectedColor = style.getSelectedEdgeColor().getRGB();
+
+		int i = 0;
+		for ( final ScreenEdge edge : edges )
+		{
+			vertices.get( edge.getSourceScreenVertexIndex(), vs );
+			vertices.get( edge.getTargetScreenVertexIndex(), vt );
+			final boolean batchable = edge.getTransition() == NONE
+					&& vt.getTransition() != APPEAR
+					&& vs.getTransition() != APPEAR
+					&& vs.getTransition() != DISAPPEAR
+					&& !( vs.isGhost() && vt.isGhost() )
+					&& !( highlightedEdgeId >= 0 && edge.getTrackSchemeEdgeId() == highlightedEdgeId );
+			if ( batchable )
+			{
+				final int argb;
+				if ( edge.isSelected() )
+					argb = selectedColor;
+				else if ( edge.getColor() == 0 )
+					argb = normalColor;
+				else
+					argb = edge.getColor();
+				EdgeBatch batch = edgeBatches.get( argb );
+				if ( batch == null )
+				{
+					batch = new EdgeBatch();
+					edgeBatches.put( argb, batch );
+				}
+				batch.add( ( int ) vs.getX(), ( int ) vs.getY(), ( int ) vt.getX(), ( int ) vt.getY() );
+			}
+			else
+				unbatchedEdges.add( i );
+			++i;
+		}
+	}
+
+	private void drawEdgeBatches()
+	{
+		edgeBatches.forEachEntry( ( argb, batch ) -> {
+			if ( batch.runStarts.isEmpty() )
+				return true;
+			g2.setColor( cachedColor( argb ) );
+			final int numRuns = batch.runStarts.size();
+			for ( int r = 0; r < numRuns; ++r )
+			{
+				final int start = batch.runStarts.getQuick( r );
+				final int end = ( r + 1 < numRuns ) ? batch.runStarts.getQuick( r + 1 ) : batch.size;
+				final int n = end - start;
+				if ( n == 2 )
+					g2.drawLine( batch.xs[ start ], batch.ys[ start ], batch.xs[ start + 1 ], batch.ys[ start + 1 ] );
+				else
+				{
+					if ( scratchX.length < n )
+					{
+						scratchX = new int[ 2 * n ];
+						scratchY = new int[ 2 * n ];
+					}
+					System.arraycopy( batch.xs, start, scratchX, 0, n );
+					System.arraycopy( batch.ys, start, scratchY, 0, n );
+					g2.drawPolyline( scratchX, scratchY, n );
+				}
+			}
+			return true;
+		} );
+	}
+
+	/**
+	 * Writes plain simplified vertices with opaque colors into the offscreen
+	 * raster and draws it. Vertices that are not rasterized are recorded in
+	 * {@link #unrasterizedVertices}.
+	 * <p>
+	 * Pixels are written without compositing, so only opaque colors are
+	 * rasterized. Vertices with translucent colors are painted as usual, on
+	 * top of the raster.
+	 */
+	private void rasterizeVertices( final RefList< ScreenVertex > vertices )
+	{
+		unrasterizedVertices.resetQuick();
+
+		normalRasterColor = style.getSimplifiedVertexFillColor().getRGB();
+		selectedRasterColor = style.getSelectedSimplifiedVertexFillColor().getRGB();
+		ghostRasterColor = style.getGhostSimplifiedVertexFillColor().getRGB();
+		ghostSelectedRasterColor = style.getGhostSelectedSimplifiedVertexFillColor().getRGB();
+
+		final Rectangle clip = g2.getClipBounds();
+		final int r = ( int ) simplifiedVertexRadius;
+
+		// Record vertices that are not rasterized, and hash the others.
+		long hash = 17;
+		int numRasterized = 0;
+		int i = 0;
+		for ( final ScreenVertex vertex : vertices )
+		{
+			final int argb = rasterColor( vertex );
+			if ( argb != 0 )
+			{
+				hash = 31 * ( 31 * ( 31 * hash + ( int ) vertex.getX() ) + ( int ) vertex.getY() ) + argb;
+				++numRasterized;
+			}
+			else
+				unrasterizedVertices.add( i );
+			++i;
+		}
+
+		if ( clip == null || clip.isEmpty() || numRasterized < MIN_RASTERIZED_VERTICES )
+		{
+			unrasterizedVertices.resetQuick();
+			for ( int j = 0; j < vertices.size(); ++j )
+				unrasterizedVertices.add( j );
+			return;
+		}
+		hash = 31 * ( 31 * ( 31 * ( 31 * ( 31 * hash + r ) + clip.x ) + clip.y ) + clip.width ) + clip.height;
+
+		if ( raster == null || raster.getWidth() < clip.width || raster.getHeight() < clip.height )
+		{
+			raster = new BufferedImage( clip.width, clip.height, BufferedImage.TYPE_INT_ARGB );
+			layer = null;
+		}
+
+		final GraphicsConfiguration gc = g2.getDeviceConfiguration();
+		do
+		{
+			boolean upToDate = layer != null && layerHash == hash;
+			final int status = ( layer == null ) ? VolatileImage.IMAGE_INCOMPATIBLE : layer.validate( gc );
+			if ( status == VolatileImage.IMAGE_INCOMPATIBLE )
+			{
+				layer = gc.createCompatibleVolatileImage( raster.getWidth(), raster.getHeight(), Transparency.TRANSLUCENT );
+				upToDate = false;
+			}
+			else if ( status == VolatileImage.IMAGE_RESTORED )
+				upToDate = false;
+
+			if ( !upToDate )
+			{
+				fillRaster( vertices, clip, r );
+				final Graphics2D lg = layer.createGraphics();
+				lg.setComposite( AlphaComposite.Src );
+				lg.drawImage( raster, 0, 0, null );
+				lg.dispose();
+				layerHash = hash;
+			}
+			g2.drawImage( layer, clip.x, clip.y, null );
+		}
+		while ( layer.contentsLost() );
+	}
+
+	/**
+	 * Writes the rasterized vertices into the pixels of {@link #raster}.
+	 */
+	private void fillRaster( final RefList< ScreenVertex > vertices, final Rectangle clip, final int r )
+	{
+		final int w = raster.getWidth();
+		final int h = raster.getHeight();
+		final int[] data = ( ( DataBufferInt ) raster.getRaster().getDataBuffer() ).getData();
+		Arrays.fill( data, 0 );
+
+		for ( final ScreenVertex vertex : vertices )
+		{
+			final int argb = rasterColor( vertex );
+			if ( argb == 0 )
+				continue;
+			/*
+			 * Fill the pixels that Graphics2D.fillOval() fills for the same
+			 * bounding box: pixel (x, y) is filled if its offset (dx, dy)
+			 * from the integer center satisfies -half <= dx < half, with half
+			 * = sqrt(r^2 - dy^2). (Java2D may differ on single boundary
+			 * pixels for radii larger than used here.)
+			 */
+			final int cx = ( int ) vertex.getX() - clip.x;
+			final int cy = ( int ) vertex.getY() - clip.y;
+			for ( int dy = -r + 1; dy < r; ++dy )
+			{
+				final int y = cy + dy;
+				if ( y < 0 || y >= h )
+					continue;
+				final double half = Math.sqrt( r * r - dy * dy );
+				final int x0 = Math.max( 0, cx - ( int ) Math.floor( half ) );
+				final int x1 = Math.min( w, cx + ( int ) Math.ceil( half ) );
+				if ( x0 < x1 )
+					Arrays.fill( data, y * w + x0, y * w + x1, argb );
+			}
+		}
+	}
+
+	/**
+	 * Returns the ARGB color in which to rasterize the specified vertex, or
+	 * {@code 0} if the vertex is not a plain simplified vertex or its color is
+	 * not opaque.
+	 */
+	private int rasterColor( final ScreenVertex vertex )
+	{
+		final double d = vertex.getVertexDist();
+		final int id = vertex.getTrackSchemeVertexId();
+		if ( d < minDisplaySimplifiedVertexDist
+				|| d >= minDisplayVertexDist
+				|| vertex.getTransition() != NONE
+				|| ( highlightedVertexId >= 0 && id == highlightedVertexId )
+				|| ( focusedVertexId >= 0 && id == focusedVertexId ) )
+			return 0;
+
+		final int argb;
+		if ( vertex.isGhost() )
+			argb = vertex.isSelected() ? ghostSelectedRasterColor : ghostRasterColor;
+		else if ( vertex.isSelected() )
+			argb = selectedRasterColor;
+		else if ( vertex.getColor() == 0 )
+			argb = normalRasterColor;
+		else
+			argb = vertex.getColor();
+		return ( argb >>> 24 ) == 0xff ? argb : 0;
+	}
+
+	private Color cachedColor( final int argb )
+	{
+		Color color = colorCache.get( argb );
+		if ( color == null )
+		{
+			color = new Color( argb, true );
+			colorCache.put( argb, color );
+		}
+		return color;
+	}
+
+	/**
+	 * Edges of one color, stored as polylines in primitive coordinate arrays.
+	 * A segment that starts where the previous one ended is appended to the
+	 * current polyline, otherwise a new polyline is started.
+	 */
+	private static final class EdgeBatch
+	{
+		int[] xs = new int[ 256 ];
+
+		int[] ys = new int[ 256 ];
+
+		int size = 0;
+
+		final TIntArrayList runStarts = new TIntArrayList();
+
+		void clear()
+		{
+			size = 0;
+			runStarts.resetQuick();
+		}
+
+		void add( final int x1, final int y1, final int x2, final int y2 )
+		{
+			if ( size + 2 > xs.length )
+			{
+				xs = Arrays.copyOf( xs, 2 * xs.length );
+				ys = Arrays.copyOf( ys, 2 * ys.length );
+			}
+			if ( size == 0 || xs[ size - 1 ] != x1 || ys[ size - 1 ] != y1 )
+			{
+				runStarts.add( size );
+				xs[ size ] = x1;
+				ys[ size ] = y1;
+				++size;
+			}
+			xs[ size ] = x2;
+			ys[ size ] = y2;
+			++size;
+		}
+	}
+}
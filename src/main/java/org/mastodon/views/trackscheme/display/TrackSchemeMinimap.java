@@ -0,0 +1,338 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.views.trackscheme.display;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+import org.mastodon.ui.keymap.CommandDescriptionProvider;
+import org.mastodon.ui.keymap.CommandDescriptions;
+import org.mastodon.ui.keymap.KeyConfigContexts;
+import org.mastodon.views.trackscheme.LayoutDensityPyramid;
+import org.mastodon.views.trackscheme.ScreenTransform;
+import org.scijava.plugin.Plugin;
+import org.scijava.ui.behaviour.util.Actions;
+
+import bdv.viewer.OverlayRenderer;
+import bdv.viewer.TransformListener;
+
+/**
+ * An {@link OverlayRenderer} that paints an overview of the whole TrackScheme
+ * layout in a corner of the display, and the currently visible region in it.
+ * Clicking in the overview centers the display on the clicked location.
+ * <p>
+ * The overview image is computed from the {@link LayoutDensityPyramid} of the
+ * layout, in {@link #update(LayoutDensityPyramid)}, which is called by the
+ * {@link TrackSchemePanel} painter thread when the layout changed.
+ */
+public class TrackSchemeMinimap extends MouseAdapter implements OverlayRenderer, TransformListener< ScreenTransform >
+{
+	public static final String TOGGLE_MINIMAP = "toggle minimap";
+
+	private static final String[] TOGGLE_MINIMAP_KEYS = new String[] { "not mapped" };
+
+	/*
+	 * Command descriptions for all provided commands
+	 */
+	@Plugin( type = CommandDescriptionProvider.class )
+	public static class Descriptions extends CommandDescriptionProvider
+	{
+		public Descriptions()
+		{
+			super( KeyConfigContexts.TRACKSCHEME );
+		}
+
+		@Override
+		public void getCommandDescriptions( final CommandDescriptions descriptions )
+		{
+			descriptions.add( TOGGLE_MINIMAP, TOGGLE_MINIMAP_KEYS, "Show or hide the overview of the whole TrackScheme layout." );
+		}
+	}
+
+	public static final boolean DEFAULT_VISIBLE = false;
+
+	private static final int MAX_WIDTH = 200;
+
+	private static final int MAX_HEIGHT = 150;
+
+	private static final int INSET = 5;
+
+	private static final Color BACKGROUND_COLOR = new Color( 255, 255, 255, 200 );
+
+	private static final Color BORDER_COLOR = Color.GRAY;
+
+	private static final Color VIEWPORT_COLOR = Color.RED;
+
+	private static final int DENSITY_RGB = 0x404040;
+
+	public static void install( final Actions actions, final TrackSchemePanel panel )
+	{
+		actions.runnableAction( () -> panel.setMinimapVisible( !panel.isMinimapVisible() ), TOGGLE_MINIMAP, TOGGLE_MINIMAP_KEYS );
+	}
+
+	/**
+	 * The overview image and the layout region it covers. Replaced as a whole
+	 * when the layout changes.
+	 */
+	private static final class Overview
+	{
+		final BufferedImage image;
+
+		final double minX;
+
+		final double maxX;
+
+		final double minY;
+
+		final double maxY;
+
+		Overview( final BufferedImage image, final double minX, final double maxX, final double minY, final double maxY )
+		{
+			this.image = image;
+			this.minX = minX;
+			this.maxX = maxX;
+			this.minY = minY;
+			this.maxY = maxY;
+		}
+
+		double toImageX( final double layoutX )
+		{
+			return ( layoutX - minX ) * image.getWidth() / ( maxX - minX );
+		}
+
+		double toImageY( final double layoutY )
+		{
+			return ( layoutY - minY ) * image.getHeight() / ( maxY - minY );
+		}
+
+		double toLayoutX( final double imageX )
+		{
+			return minX + imageX * ( maxX - minX ) / image.getWidth();
+		}
+
+		double toLayoutY( final double imageY )
+		{
+			return minY + imageY * ( maxY - minY ) / image.getHeight();
+		}
+	}
+
+	private final InertialScreenTransformEventHandler transformEventHandler;
+
+	private final ScreenTransform screenTransform = new ScreenTransform();
+
+	private volatile Overview overview;
+
+	private volatile boolean visible = DEFAULT_VISIBLE;
+
+	private int canvasWidth;
+
+	private int canvasHeight;
+
+	public TrackSchemeMinimap( final InertialScreenTransformEventHandler transformEventHandler )
+	{
+		this.transformEventHandler = transformEventHandler;
+	}
+
+	public boolean isVisible()
+	{
+		return visible;
+	}
+
+	public void setVisible( final boolean visible )
+	{
+		this.visible = visible;
+	}
+
+	/**
+	 * Recompute the overview image from the specified density pyramid. The
+	 * caller must hold the graph read lock.
+	 *
+	 * @param pyramid
+	 *            density pyramid of the current layout.
+	 */
+	public void update( final LayoutDensityPyramid pyramid )
+	{
+		if ( pyramid.numLevels() == 0 )
+		{
+			overview = null;
+			return;
+		}
+
+		final double minX = pyramid.getMinX() - 0.5;
+		final double maxX = pyramid.getMaxX() + 0.5;
+		final double minY = pyramid.getMinTimepoint() - 0.5;
+		final double maxY = pyramid.getMaxTimepoint() + 0.5;
+		final int width = ( int ) Math.max( 1, Math.min( MAX_WIDTH, Math.ceil( maxX - minX ) ) );
+		final int height = ( int ) Math.max( 1, Math.min( MAX_HEIGHT, Math.ceil( maxY - minY ) ) );
+		final double xScale = width / ( maxX - minX );
+		final double yScale = height / ( maxY - minY );
+
+		// accumulate bin counts into image pixels
+		final int level = pyramid.getLevel( xScale, 1 );
+		final int numBins = pyramid.numBins( level );
+		final long[] sums = new long[ width * height ];
+		for ( int t = pyramid.getMinTimepoint(); t <= pyramid.getMaxTimepoint(); ++t )
+		{
+			final int[] bins = pyramid.getRow( level, t );
+			if ( bins == null )
+				continue;
+			final int py = Math.min( height - 1, ( int ) ( ( t - minY ) * yScale ) );
+			for ( int b = 0; b < numBins; ++b )
+			{
+				if ( bins[ b ] == 0 )
+					continue;
+				final double bx = pyramid.getBinMinX( level, b ) + 0.5 * pyramid.getBinWidth( level );
+				final int px = Math.max( 0, Math.min( width - 1, ( int ) ( ( bx - minX ) * xScale ) ) );
+				sums[ py * width + px ] += bins[ b ];
+			}
+		}
+
+		long max = 0;
+		for ( final long s : sums )
+			max = Math.max( max, s );
+		final double logMax = Math.log1p( max );
+
+		// log-scaled density as alpha
+		final BufferedImage image = new BufferedImage( width, height, BufferedImage.TYPE_INT_ARGB );
+		final int[] pixels = ( ( DataBufferInt ) image.getRaster().getDataBuffer() ).getData();
+		for ( int i = 0; i < sums.length; ++i )
+		{
+			if ( sums[ i ] == 0 )
+				continue;
+			final int alpha = 64 + ( int ) ( 191 * Math.log1p( sums[ i ] ) / logMax );
+			pixels[ i ] = ( alpha << 24 ) | DENSITY_RGB;
+		}
+
+		overview = new Overview( image, minX, maxX, minY, maxY );
+	}
+
+	@Override
+	public void drawOverlays( final Graphics g )
+	{
+		final Overview o = overview;
+		if ( !visible || o == null )
+			return;
+
+		final int w = o.image.getWidth();
+		final int h = o.image.getHeight();
+		final int x0 = originX( w );
+		final int y0 = originY();
+
+		g.setColor( BACKGROUND_COLOR );
+		g.fillRect( x0 - INSET, y0 - INSET, w + 2 * INSET, h + 2 * INSET );
+		g.setColor( BORDER_COLOR );
+		g.drawRect( x0 - INSET, y0 - INSET, w + 2 * INSET, h + 2 * INSET );
+		g.drawImage( o.image, x0, y0, null );
+
+		final double tMinX, tMaxX, tMinY, tMaxY;
+		synchronized ( screenTransform )
+		{
+			tMinX = screenTransform.getMinX();
+			tMaxX = screenTransform.getMaxX();
+			tMinY = screenTransform.getMinY();
+			tMaxY = screenTransform.getMaxY();
+		}
+		final int vx0 = Math.max( -INSET, ( int ) o.toImageX( tMinX ) );
+		final int vx1 = Math.min( w + INSET, ( int ) o.toImageX( tMaxX ) );
+		final int vy0 = Math.max( -INSET, ( int ) o.toImageY( tMinY ) );
+		final int vy1 = Math.min( h + INSET, ( int ) o.toImageY( tMaxY ) );
+		if ( vx1 >= vx0 && vy1 >= vy0 )
+		{
+			g.setColor( VIEWPORT_COLOR );
+			g.drawRect( x0 + vx0, y0 + vy0, Math.max( 1, vx1 - vx0 ), Math.max( 1, vy1 - vy0 ) );
+		}
+	}
+
+	@Override
+	public void setCanvasSize( final int width, final int height )
+	{
+		canvasWidth = width;
+		canvasHeight = height;
+	}
+
+	@Override
+	public void transformChanged( final ScreenTransform transform )
+	{
+		synchronized ( screenTransform )
+		{
+			screenTransform.set( transform );
+		}
+	}
+
+	/**
+	 * Whether the specified screen position is inside the (visible) minimap,
+	 * including its border. Clicks there only recenter the view and are ignored
+	 * by the TrackScheme selection and focus behaviours.
+	 *
+	 * @param x
+	 *            screen X coordinate.
+	 * @param y
+	 *            screen Y coordinate.
+	 * @return whether {@code (x, y)} is inside the minimap.
+	 */
+	public boolean contains( final int x, final int y )
+	{
+		final Overview o = overview;
+		if ( !visible || o == null )
+			return false;
+
+		final int w = o.image.getWidth();
+		final int h = o.image.getHeight();
+		final int x0 = originX( w ) - INSET;
+		final int y0 = originY() - INSET;
+		return x >= x0 && y >= y0 && x <= x0 + w + 2 * INSET && y <= y0 + h + 2 * INSET;
+	}
+
+	@Override
+	public void mouseClicked( final MouseEvent e )
+	{
+		final Overview o = overview;
+		if ( !visible || o == null )
+			return;
+
+		final int x = e.getX() - originX( o.image.getWidth() );
+		final int y = e.getY() - originY();
+		if ( x >= 0 && y >= 0 && x < o.image.getWidth() && y < o.image.getHeight() )
+			transformEventHandler.centerOn( o.toLayoutX( x ), o.toLayoutY( y ) );
+	}
+
+	private int originX( final int imageWidth )
+	{
+		return canvasWidth - imageWidth - 2 * INSET;
+	}
+
+	private int originY()
+	{
+		return Math.min( canvasHeight, 2 * INSET + 20 );
+	}
+}
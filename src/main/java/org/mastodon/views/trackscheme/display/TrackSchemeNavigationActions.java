@@ -312,35 +312,39 @@ public class TrackSchemeNavigationActions
 				return null;
 
 			selection.pauseListeners();
-
-			final TrackSchemeVertex current;
-			switch ( direction )
+			try
 			{
-			case CHILD:
-				current = layout.getFirstActiveChild( vertex, ref );
-				break;
-			case PARENT:
-				current = layout.getFirstActiveParent( vertex, ref );
-				break;
-			case LEFT_SIBLING:
-				current = layout.getLeftSibling( vertex, ref );
-				break;
-			case RIGHT_SIBLING:
-			default:
-				current = layout.getRightSibling( vertex, ref );
-				break;
-			}
+				final TrackSchemeVertex current;
+				switch ( direction )
+				{
+				case CHILD:
+					current = layout.getFirstActiveChild( vertex, ref );
+					break;
+				case PARENT:
+					current = layout.getFirstActiveParent( vertex, ref );
+					break;
+				case LEFT_SIBLING:
+					current = layout.getLeftSibling( vertex, ref );
+					break;
+				case RIGHT_SIBLING:
+				default:
+					current = layout.getRightSibling( vertex, ref );
+					break;
+				}
 
-			if ( current != null )
+				if ( current != null )
+				{
+					focus.focusVertex( current );
+					if ( clearSelection )
+						selection.clearSelection();
+					selection.setSelected( current, true );
+				}
+				return current;
+			}
+			finally
 			{
-				focus.focusVertex( current );
-				if ( clearSelection )
-					selection.clearSelection();
-				selection.setSelected( current, true );
+				selection.resumeListeners();
 			}
-
-			selection.resumeListeners();
-			return current;
 		}
 		finally
 		{
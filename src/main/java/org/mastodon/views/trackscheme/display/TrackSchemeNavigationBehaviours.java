@@ -115,6 +115,8 @@ public class TrackSchemeNavigationBehaviours implements TransformListener< Scree
 
 	private final TrackSchemeOverlay graphOverlay;
 
+	private final TrackSchemeMinimap minimap;
+
 	private final FocusModel< TrackSchemeVertex, TrackSchemeEdge > focus;
 
 	private final ScreenTransform screenTransform;
@@ -146,6 +148,7 @@ public class TrackSchemeNavigationBehaviours implements TransformListener< Scree
 			final TrackSchemeGraph< ?, ? > graph,
 			final LineageTreeLayout layout,
 			final TrackSchemeOverlay graphOverlay,
+			final TrackSchemeMinimap minimap,
 			final FocusModel< TrackSchemeVertex, TrackSchemeEdge > focus,
 			final NavigationHandler< TrackSchemeVertex, TrackSchemeEdge > navigation,
 			final SelectionModel< TrackSchemeVertex, TrackSchemeEdge > selection )
@@ -155,6 +158,7 @@ public class TrackSchemeNavigationBehaviours implements TransformListener< Scree
 		this.lock = graph.getLock();
 		this.layout = layout;
 		this.graphOverlay = graphOverlay;
+		this.minimap = minimap;
 		this.focus = focus;
 		this.navigation = navigation;
 		this.selection = selection;
@@ -189,73 +193,90 @@ public class TrackSchemeNavigationBehaviours implements TransformListener< Scree
 	 * PRIVATE METHODS
 	 */
 
+	/**
+	 * Whether the specified screen position is on the headers or the minimap,
+	 * where clicks must not select or focus anything.
+	 */
+	private boolean isOutsideGraphArea( final int x, final int y )
+	{
+		return x < headerWidth || y < headerHeight || minimap.contains( x, y );
+	}
+
 	private void selectWithin( final int x1, final int y1, final int x2, final int y2, final boolean addToSelection )
 	{
 		selection.pauseListeners();
-
-		if ( !addToSelection )
-			selection.clearSelection();
-
-		final double lx1, ly1, lx2, ly2;
-		synchronized ( screenTransform )
+		try
 		{
-			lx1 = screenTransform.screenToLayoutX( x1 );
-			ly1 = screenTransform.screenToLayoutY( y1 );
-			lx2 = screenTransform.screenToLayoutX( x2 );
-			ly2 = screenTransform.screenToLayoutY( y2 );
-		}
+			if ( !addToSelection )
+				selection.clearSelection();
 
-		final RefSet< TrackSchemeVertex > vs = layout.getActiveVerticesWithin( lx1, ly1, lx2, ly2 );
-		final TrackSchemeVertex vertexRef = graph.vertexRef();
-		for ( final TrackSchemeVertex v : vs )
-		{
-			selection.setSelected( v, true );
-			for ( final TrackSchemeEdge e : v.outgoingEdges() )
+			final double lx1, ly1, lx2, ly2;
+			synchronized ( screenTransform )
 			{
-				final TrackSchemeVertex t = e.getTarget( vertexRef );
-				if ( vs.contains( t ) )
-					selection.setSelected( e, true );
+				lx1 = screenTransform.screenToLayoutX( x1 );
+				ly1 = screenTransform.screenToLayoutY( y1 );
+				lx2 = screenTransform.screenToLayoutX( x2 );
+				ly2 = screenTransform.screenToLayoutY( y2 );
 			}
-		}
 
-		focus.focusVertex( layout.getClosestActiveVertexWithin( lx1, ly1, lx2, ly2, ratioXtoY, vertexRef ) );
+			final RefSet< TrackSchemeVertex > vs = layout.getActiveVerticesWithin( lx1, ly1, lx2, ly2 );
+			final TrackSchemeVertex vertexRef = graph.vertexRef();
+			for ( final TrackSchemeVertex v : vs )
+			{
+				selection.setSelected( v, true );
+				for ( final TrackSchemeEdge e : v.outgoingEdges() )
+				{
+					final TrackSchemeVertex t = e.getTarget( vertexRef );
+					if ( vs.contains( t ) )
+						selection.setSelected( e, true );
+				}
+			}
 
-		graph.releaseRef( vertexRef );
+			focus.focusVertex( layout.getClosestActiveVertexWithin( lx1, ly1, lx2, ly2, ratioXtoY, vertexRef ) );
 
-		selection.resumeListeners();
+			graph.releaseRef( vertexRef );
+		}
+		finally
+		{
+			selection.resumeListeners();
+		}
 	}
 
 	private void select( final int x, final int y, final boolean addToSelection )
 	{
 		selection.pauseListeners();
-
-		final TrackSchemeVertex vertex = graph.vertexRef();
-		final TrackSchemeEdge edge = graph.edgeRef();
-
-		// See if we can select a vertex.
-		if ( graphOverlay.getVertexAt( x, y, vertex ) != null )
+		try
 		{
-			final boolean selected = selection.isSelected( vertex );
-			if ( !addToSelection )
+			final TrackSchemeVertex vertex = graph.vertexRef();
+			final TrackSchemeEdge edge = graph.edgeRef();
+
+			// See if we can select a vertex.
+			if ( graphOverlay.getVertexAt( x, y, vertex ) != null )
+			{
+				final boolean selected = selection.isSelected( vertex );
+				if ( !addToSelection )
+					selection.clearSelection();
+				selection.setSelected( vertex, !selected );
+			}
+			// See if we can select an edge.
+			else if ( graphOverlay.getEdgeAt( x, y, EDGE_SELECT_DISTANCE_TOLERANCE, edge ) != null )
+			{
+				final boolean selected = selection.isSelected( edge );
+				if ( !addToSelection )
+					selection.clearSelection();
+				selection.setSelected( edge, !selected );
+			}
+			// Nothing found. clear selection if addToSelection == false
+			else if ( !addToSelection )
 				selection.clearSelection();
-			selection.setSelected( vertex, !selected );
+
+			graph.releaseRef( vertex );
+			graph.releaseRef( edge );
 		}
-		// See if we can select an edge.
-		else if ( graphOverlay.getEdgeAt( x, y, EDGE_SELECT_DISTANCE_TOLERANCE, edge ) != null )
+		finally
 		{
-			final boolean selected = selection.isSelected( edge );
-			if ( !addToSelection )
-				selection.clearSelection();
-			selection.setSelected( edge, !selected );
+			selection.resumeListeners();
 		}
-		// Nothing found. clear selection if addToSelection == false
-		else if ( !addToSelection )
-			selection.clearSelection();
-
-		graph.releaseRef( vertex );
-		graph.releaseRef( edge );
-
-		selection.resumeListeners();
 	}
 
 	private void navigate( final int x, final int y )
@@ -308,7 +329,7 @@ public class TrackSchemeNavigationBehaviours implements TransformListener< Scree
 		@Override
 		public void click( final int x, final int y )
 		{
-			if ( x < headerWidth || y < headerHeight )
+			if ( isOutsideGraphArea( x, y ) )
 				return;
 
 			lock.readLock().lock();
@@ -339,7 +360,7 @@ public class TrackSchemeNavigationBehaviours implements TransformListener< Scree
 		@Override
 		public void click( final int x, final int y )
 		{
-			if ( x < headerWidth || y < headerHeight )
+			if ( isOutsideGraphArea( x, y ) )
 				return;
 
 			lock.readLock().lock();
@@ -373,7 +394,7 @@ public class TrackSchemeNavigationBehaviours implements TransformListener< Scree
 		@Override
 		public void click( final int x, final int y )
 		{
-			if ( x < headerWidth || y < headerHeight )
+			if ( isOutsideGraphArea( x, y ) )
 				return;
 
 			lock.readLock().lock();
@@ -426,7 +447,7 @@ public class TrackSchemeNavigationBehaviours implements TransformListener< Scree
 			oX = x;
 			oY = y;
 			dragging = false;
-			ignore = x < headerWidth || y < headerHeight;
+			ignore = isOutsideGraphArea( x, y );
 		}
 
 		@Override
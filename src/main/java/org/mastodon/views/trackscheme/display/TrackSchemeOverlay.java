@@ -34,6 +34,9 @@ import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.util.concurrent.CopyOnWriteArrayList;
 
+import org.mastodon.app.metrics.Counter;
+import org.mastodon.app.metrics.Metrics;
+import org.mastodon.app.metrics.Timer;
 import org.mastodon.collection.RefList;
 import org.mastodon.model.FocusModel;
 import org.mastodon.model.HighlightModel;
@@ -82,6 +85,16 @@ import org.mastodon.views.trackscheme.display.style.TrackSchemeStyle;
  */
 public class TrackSchemeOverlay implements OverlayRenderer, OffsetHeadersListener
 {
+	/**
+	 * Time in nanoseconds that painting one frame may take, for 60 frames per
+	 * second.
+	 */
+	public static final long FRAME_BUDGET_NANOS = 16_000_000L;
+
+	private static final Timer PAINT_TIMER = Metrics.timer( "trackscheme.paint" );
+
+	private static final Counter SLOW_PAINT_COUNTER = Metrics.counter( "trackscheme.paint.overBudget" );
+
 	/**
 	 * The {@link ScreenEntities} that are actually drawn on the canvas.
 	 */
@@ -169,6 +182,7 @@ public class TrackSchemeOverlay implements OverlayRenderer, OffsetHeadersListene
 	@Override
 	public void drawOverlays( final Graphics g )
 	{
+		final long t0 = System.nanoTime();
 		final Graphics2D g2 = ( Graphics2D ) g;
 		g2.setRenderingHint( RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON );
 
@@ -202,6 +216,10 @@ public class TrackSchemeOverlay implements OverlayRenderer, OffsetHeadersListene
 			g2.setRenderingHint( RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON );
 
 		paintDecorations.paintHeaders( g2, width, height, headerWidth, headerHeight, entities, currentTimepoint, style );
+		final long t = System.nanoTime() - t0;
+		PAINT_TIMER.record( t );
+		if ( t > FRAME_BUDGET_NANOS )
+			SLOW_PAINT_COUNTER.increment();
 	}
 
 	/**
@@ -428,7 +446,7 @@ public class TrackSchemeOverlay implements OverlayRenderer, OffsetHeadersListene
 				final FocusModel< TrackSchemeVertex, TrackSchemeEdge > focus,
 				final TrackSchemeOptions options )
 		{
-			return new TrackSchemeOverlay( graph, highlight, focus, new PaintDecorations(), new PaintGraph(), options );
+			return new TrackSchemeOverlay( graph, highlight, focus, new PaintDecorations(), new BatchedPaintGraph(), options );
 		}
 	}
 }
@@ -50,6 +50,7 @@ import org.mastodon.model.HighlightListener;
 import org.mastodon.model.HighlightModel;
 import org.mastodon.model.NavigationHandler;
 import org.mastodon.model.NavigationListener;
+import org.mastodon.model.SelectionChange;
 import org.mastodon.model.SelectionListener;
 import org.mastodon.model.SelectionModel;
 import org.mastodon.model.TimepointListener;
@@ -74,6 +75,7 @@ import bdv.viewer.InteractiveDisplayCanvas;
 import bdv.viewer.OverlayRenderer;
 import bdv.viewer.TransformListener;
 import bdv.viewer.render.PainterThread;
+import gnu.trove.set.hash.TIntHashSet;
 
 public class TrackSchemePanel extends JPanel implements
 		TransformListener< ScreenTransform >,
@@ -132,6 +134,33 @@ public class TrackSchemePanel extends JPanel implements
 
 	private final TrackSchemeOverlay graphOverlay;
 
+	/**
+	 * Overview of the whole layout.
+	 */
+	private final TrackSchemeMinimap minimap;
+
+	/**
+	 * Selection changes since the last {@link #paint()}.
+	 */
+	private final PendingSelectionChanges pendingSelectionChanges = new PendingSelectionChanges();
+
+	/**
+	 * Ids of model vertices whose selected state changed, taken from
+	 * {@link #pendingSelectionChanges} in {@link #paint()}.
+	 */
+	private final TIntHashSet changedVertexIds = new TIntHashSet();
+
+	/**
+	 * Ids of model edges whose selected state changed, taken from
+	 * {@link #pendingSelectionChanges} in {@link #paint()}.
+	 */
+	private final TIntHashSet changedEdgeIds = new TIntHashSet();
+
+	/**
+	 * Layout timestamp for which the {@link #minimap} was last updated.
+	 */
+	private int minimapLayoutTimestamp = -1;
+
 	/**
 	 * TODO
 	 */
@@ -230,6 +259,11 @@ public class TrackSchemePanel extends JPanel implements
 
 		display.overlays().add( graphOverlay );
 
+		minimap = new TrackSchemeMinimap( transformEventHandler );
+		display.overlays().add( minimap );
+		display.addMouseListener( minimap );
+		screenTransform.listeners().add( minimap );
+
 		// This should be the last OverlayRenderer in display.
 		// It triggers repainting if there is currently an ongoing animation.
 		display.overlays().add( new OverlayRenderer()
@@ -263,7 +297,7 @@ public class TrackSchemePanel extends JPanel implements
 
 		navigationActions = new TrackSchemeNavigationActions( graph, layout, autoFocus, selection );
 
-		navigationBehaviours = new TrackSchemeNavigationBehaviours( display, graph, layout, graphOverlay, autoFocus, navigation, selection );
+		navigationBehaviours = new TrackSchemeNavigationBehaviours( display, graph, layout, graphOverlay, minimap, autoFocus, navigation, selection );
 		screenTransform.listeners().add( navigationBehaviours );
 
 		offsetHeaders = new OffsetHeaders();
@@ -328,11 +362,12 @@ public class TrackSchemePanel extends JPanel implements
 	}
 
 	/**
-	 * Stop the painter thread.
+	 * Stop the painter thread and detach the layout from the graph.
 	 */
 	public void stop()
 	{
 		painterThread.interrupt();
+		layout.close();
 	}
 
 	/**
@@ -368,6 +403,7 @@ public class TrackSchemePanel extends JPanel implements
 		{
 			final ScreenTransform transform = screenTransform.get();
 			final Flags flags = this.flags.clear();
+			final boolean selectionChangesValid = pendingSelectionChanges.take( changedVertexIds, changedEdgeIds );
 			if ( flags.graphChanged )
 			{
 //				System.out.println( "paint: graphChanged" );
@@ -394,7 +430,8 @@ public class TrackSchemePanel extends JPanel implements
 			else if ( flags.selectionChanged )
 			{
 //				System.out.println( "paint: selectionChanged" );
-				entityAnimator.startAnimation( transform, ANIMATION_MILLISECONDS );
+				if ( !( selectionChangesValid && entityAnimator.startSelectionAnimation( changedVertexIds, changedEdgeIds, ANIMATION_MILLISECONDS ) ) )
+					entityAnimator.startAnimation( transform, ANIMATION_MILLISECONDS );
 			}
 			else if ( flags.contextChanged )
 			{
@@ -418,6 +455,12 @@ public class TrackSchemePanel extends JPanel implements
 				entityAnimator.continueAnimation( transform, 0 );
 			}
 
+			if ( minimap.isVisible() && minimapLayoutTimestamp != layout.getCurrentLayoutTimestamp() )
+			{
+				minimap.update( layout.getDensityPyramid() );
+				minimapLayoutTimestamp = layout.getCurrentLayoutTimestamp();
+			}
+
 			entityAnimator.setTime( System.currentTimeMillis() );
 			entityAnimator.setPaintEntities( graphOverlay );
 			display.repaint();
@@ -485,6 +528,15 @@ public class TrackSchemePanel extends JPanel implements
 	@Override
 	public void selectionChanged()
 	{
+		pendingSelectionChanges.invalidate();
+		flags.setSelectionChanged();
+		painterThread.requestRepaint();
+	}
+
+	@Override
+	public void selectionChanged( final SelectionChange change )
+	{
+		pendingSelectionChanges.add( change );
 		flags.setSelectionChanged();
 		painterThread.requestRepaint();
 	}
@@ -736,6 +788,23 @@ public class TrackSchemePanel extends JPanel implements
 		}
 	}
 
+	/**
+	 * Show or hide the overview of the whole layout.
+	 *
+	 * @param visible
+	 *            whether to show the overview.
+	 */
+	public void setMinimapVisible( final boolean visible )
+	{
+		minimap.setVisible( visible );
+		painterThread.requestRepaint();
+	}
+
+	public boolean isMinimapVisible()
+	{
+		return minimap.isVisible();
+	}
+
 	public ScreenTransformState getScreenTransform()
 	{
 		return screenTransform;
@@ -880,6 +949,39 @@ public class TrackSchemePanel extends JPanel implements
 			}
 		}
 
+		/**
+		 * Start animating a selection change. Instead of cropping and scaling
+		 * the layout again, the last computed entities are copied and the
+		 * selected state of the specified vertices and edges is updated.
+		 *
+		 * @param modelVertexIds
+		 *            ids of model vertices whose selected state changed.
+		 * @param modelEdgeIds
+		 *            ids of model edges whose selected state changed.
+		 * @param duration
+		 *            animation duration (in time units), may be 0.
+		 * @return {@code false} if the selection change could not be applied
+		 *         because another animation is running.
+		 */
+		public boolean startSelectionAnimation( final TIntHashSet modelVertexIds, final TIntHashSet modelEdgeIds, final long duration )
+		{
+			if ( interpolator != null )
+				return false;
+
+			reset( duration );
+			copyIpStart();
+			screenEntities.set( screenEntitiesIpStart );
+			layout.updateSelection( screenEntities, modelVertexIds, modelEdgeIds );
+			if ( duration > 0 )
+			{
+				swapIpEnd();
+				interpolator = new ScreenEntitiesInterpolator( screenEntitiesIpStart, screenEntitiesIpEnd );
+			}
+			else
+				lastComputedScreenEntities = screenEntities;
+			return true;
+		}
+
 		public void continueAnimation( final ScreenTransform transform, final long duration )
 		{
 			if ( interpolator != null )
@@ -943,6 +1045,66 @@ public class TrackSchemePanel extends JPanel implements
 		}
 	}
 
+	/**
+	 * Accumulates the ids of model vertices and edges whose selected state
+	 * changed between two {@link TrackSchemePanel#paint()} calls. Becomes
+	 * invalid if a change without ids is reported, or if there are too many
+	 * changes to be worth applying incrementally.
+	 */
+	private static class PendingSelectionChanges
+	{
+		private static final int MAX_CHANGES = 10_000;
+
+		private final TIntHashSet vertexIds = new TIntHashSet();
+
+		private final TIntHashSet edgeIds = new TIntHashSet();
+
+		private boolean valid = true;
+
+		public synchronized void add( final SelectionChange change )
+		{
+			if ( !valid )
+				return;
+			if ( !change.isComplete() || vertexIds.size() + edgeIds.size() + change.size() > MAX_CHANGES )
+			{
+				invalidate();
+				return;
+			}
+			vertexIds.addAll( change.getAddedVertexIds() );
+			vertexIds.addAll( change.getRemovedVertexIds() );
+			edgeIds.addAll( change.getAddedEdgeIds() );
+			edgeIds.addAll( change.getRemovedEdgeIds() );
+		}
+
+		public synchronized void invalidate()
+		{
+			valid = false;
+			vertexIds.clear();
+			edgeIds.clear();
+		}
+
+		/**
+		 * Move the accumulated changes into the specified sets, and reset.
+		 *
+		 * @return whether the accumulated changes were valid.
+		 */
+		public synchronized boolean take( final TIntHashSet vertexIdsOut, final TIntHashSet edgeIdsOut )
+		{
+			vertexIdsOut.clear();
+			edgeIdsOut.clear();
+			final boolean wasValid = valid;
+			if ( wasValid )
+			{
+				vertexIdsOut.addAll( vertexIds );
+				edgeIdsOut.addAll( edgeIds );
+			}
+			vertexIds.clear();
+			edgeIds.clear();
+			valid = true;
+			return wasValid;
+		}
+	}
+
 	static class Flags
 	{
 		private boolean transformChanged;
@@ -0,0 +1,116 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.mastodon.feature.FeatureSpec;
+import org.mastodon.feature.FeatureSpecsService;
+import org.mastodon.feature.io.FeatureSerializationService;
+import org.mastodon.mamut.batch.HeadlessProject;
+import org.mastodon.mamut.feature.MamutFeatureComputerService;
+import org.mastodon.mamut.feature.SpotCenterIntensityFeature;
+import org.mastodon.mamut.feature.SpotTrackIDFeature;
+import org.mastodon.mamut.importer.synthetic.SyntheticModelGenerator;
+import org.mastodon.mamut.project.MamutProject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.scijava.Context;
+
+import mpicbg.spim.data.SpimDataException;
+
+/**
+ * Feature computation on a synthetic model. Intensity features are computed
+ * on a dummy image of the size of the model.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 2 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class FeatureComputerBenchmark
+{
+	@Param( { "100000" } )
+	public int numSpots;
+
+	private Context context;
+
+	private HeadlessProject project;
+
+	@Setup( Level.Trial )
+	public void setup() throws IOException, SpimDataException
+	{
+		final int numTimepoints = 50;
+		context = new Context(
+				MamutFeatureComputerService.class,
+				FeatureSpecsService.class,
+				FeatureSerializationService.class );
+		final SyntheticModelGenerator.Parameters parameters = new SyntheticModelGenerator.Parameters()
+				.numRoots( numSpots / numTimepoints )
+				.numTimepoints( numTimepoints )
+				.divisionRate( 0 )
+				.seed( 1 );
+		final MamutProject mp = new MamutProject( null, new File( SyntheticModelGenerator.getDatasetName( parameters ) ) );
+		project = new HeadlessProject( mp, context );
+		SyntheticModelGenerator.generate( parameters, project.getModel() );
+	}
+
+	@TearDown( Level.Trial )
+	public void tearDown()
+	{
+		context.dispose();
+	}
+
+	@Benchmark
+	public boolean trackId()
+	{
+		return project.computeFeatures( true, Collections.< FeatureSpec< ?, ? > >singleton( SpotTrackIDFeature.SPEC ) );
+	}
+
+	@Benchmark
+	public boolean centerIntensity()
+	{
+		return project.computeFeatures( true, Collections.< FeatureSpec< ?, ? > >singleton( SpotCenterIntensityFeature.SPEC ) );
+	}
+}
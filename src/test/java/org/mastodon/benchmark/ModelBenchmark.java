@@ -0,0 +1,144 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.mastodon.mamut.importer.synthetic.SyntheticModelGenerator;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.mamut.project.MamutProject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Spot creation and raw model serialization.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class ModelBenchmark
+{
+	@Param( { "100000", "1000000" } )
+	public int numSpots;
+
+	private double[][] positions;
+
+	private Model model;
+
+	private File projectRoot;
+
+	private MamutProject project;
+
+	@Setup( Level.Trial )
+	public void setup() throws IOException
+	{
+		final Random random = new Random( 1 );
+		positions = new double[ numSpots ][ 3 ];
+		for ( final double[] pos : positions )
+			for ( int d = 0; d < 3; ++d )
+				pos[ d ] = random.nextDouble() * 1000;
+
+		final int numTimepoints = 100;
+		final SyntheticModelGenerator.Parameters parameters = new SyntheticModelGenerator.Parameters()
+				.numRoots( numSpots / numTimepoints )
+				.numTimepoints( numTimepoints )
+				.divisionRate( 0 )
+				.seed( 1 );
+		model = new Model();
+		SyntheticModelGenerator.generate( parameters, model );
+		projectRoot = Files.createTempDirectory( "mastodon-benchmark" ).toFile();
+		project = new MamutProject( projectRoot, new File( SyntheticModelGenerator.getDatasetName( parameters ) ) );
+		try (final MamutProject.ProjectWriter writer = project.openForWriting())
+		{
+			model.saveRaw( writer );
+		}
+	}
+
+	@TearDown( Level.Trial )
+	public void tearDown()
+	{
+		final File[] files = projectRoot.listFiles();
+		if ( files != null )
+			for ( final File file : files )
+				file.delete();
+		projectRoot.delete();
+	}
+
+	@Benchmark
+	public Model createSpots()
+	{
+		final Model m = new Model();
+		final ModelGraph graph = m.getGraph();
+		final Spot ref = graph.vertexRef();
+		for ( int i = 0; i < numSpots; ++i )
+			graph.addVertex( ref ).init( i % 100, positions[ i ], 3 );
+		graph.releaseRef( ref );
+		return m;
+	}
+
+	@Benchmark
+	public void saveRaw() throws IOException
+	{
+		try (final MamutProject.ProjectWriter writer = project.openForWriting())
+		{
+			model.saveRaw( writer );
+		}
+	}
+
+	@Benchmark
+	public Model loadRaw() throws IOException
+	{
+		final Model m = new Model();
+		try (final MamutProject.ProjectReader reader = project.openForReading())
+		{
+			m.loadRaw( reader );
+		}
+		return m;
+	}
+}
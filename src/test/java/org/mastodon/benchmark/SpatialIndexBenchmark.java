@@ -0,0 +1,167 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.mastodon.kdtree.ClipConvexPolytope;
+import org.mastodon.kdtree.IncrementalNearestNeighborSearch;
+import org.mastodon.mamut.importer.synthetic.SyntheticModelGenerator;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.spatial.SpatialIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.imglib2.RealPoint;
+import net.imglib2.algorithm.kdtree.ConvexPolytope;
+import net.imglib2.algorithm.kdtree.HyperPlane;
+import net.imglib2.neighborsearch.NearestNeighborSearch;
+
+/**
+ * Queries of the spatial index of one timepoint: nearest neighbors,
+ * incremental nearest neighbors and clipping to a box.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class SpatialIndexBenchmark
+{
+	private static final int NUM_QUERIES = 1000;
+
+	@Param( { "10000", "100000" } )
+	public int numSpotsPerTimepoint;
+
+	private Model model;
+
+	private double extent;
+
+	private RealPoint[] queries;
+
+	@Setup( Level.Trial )
+	public void setup()
+	{
+		final SyntheticModelGenerator.Parameters parameters = new SyntheticModelGenerator.Parameters()
+				.numRoots( numSpotsPerTimepoint )
+				.numTimepoints( 3 )
+				.divisionRate( 0 )
+				.seed( 1 );
+		model = new Model();
+		SyntheticModelGenerator.generate( parameters, model );
+		extent = parameters.getExtent();
+		final Random random = new Random( 2 );
+		queries = new RealPoint[ NUM_QUERIES ];
+		for ( int i = 0; i < NUM_QUERIES; ++i )
+			queries[ i ] = new RealPoint( random.nextDouble() * extent, random.nextDouble() * extent, random.nextDouble() * extent );
+		// Build the index of the queried timepoint before measuring.
+		model.getSpatioTemporalIndex().getSpatialIndex( 1 ).size();
+	}
+
+	@Benchmark
+	public void nearestNeighbor( final Blackhole bh )
+	{
+		model.getSpatioTemporalIndex().readLock().lock();
+		try
+		{
+			final NearestNeighborSearch< Spot > search = model.getSpatioTemporalIndex().getSpatialIndex( 1 ).getNearestNeighborSearch();
+			for ( final RealPoint query : queries )
+			{
+				search.search( query );
+				bh.consume( search.getSquareDistance() );
+			}
+		}
+		finally
+		{
+			model.getSpatioTemporalIndex().readLock().unlock();
+		}
+	}
+
+	@Benchmark
+	public void incrementalNearestNeighbors( final Blackhole bh )
+	{
+		model.getSpatioTemporalIndex().readLock().lock();
+		try
+		{
+			final IncrementalNearestNeighborSearch< Spot > search = model.getSpatioTemporalIndex().getSpatialIndex( 1 ).getIncrementalNearestNeighborSearch();
+			for ( final RealPoint query : queries )
+			{
+				search.search( query );
+				for ( int k = 0; k < 10 && search.hasNext(); ++k )
+					bh.consume( search.next() );
+			}
+		}
+		finally
+		{
+			model.getSpatioTemporalIndex().readLock().unlock();
+		}
+	}
+
+	@Benchmark
+	public int clipBox()
+	{
+		model.getSpatioTemporalIndex().readLock().lock();
+		try
+		{
+			final SpatialIndex< Spot > index = model.getSpatioTemporalIndex().getSpatialIndex( 1 );
+			final ClipConvexPolytope< Spot > clip = index.getClipConvexPolytope();
+			final double min = 0.25 * extent;
+			final double max = 0.75 * extent;
+			clip.clip( new ConvexPolytope(
+					new HyperPlane( 1, 0, 0, min ),
+					new HyperPlane( -1, 0, 0, -max ),
+					new HyperPlane( 0, 1, 0, min ),
+					new HyperPlane( 0, -1, 0, -max ),
+					new HyperPlane( 0, 0, 1, min ),
+					new HyperPlane( 0, 0, -1, -max ) ) );
+			int n = 0;
+			for ( @SuppressWarnings( "unused" ) final Spot spot : clip.getInsideValues() )
+				++n;
+			return n;
+		}
+		finally
+		{
+			model.getSpatioTemporalIndex().readLock().unlock();
+		}
+	}
+}
@@ -0,0 +1,213 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.RowSorter.SortKey;
+import javax.swing.SortOrder;
+import javax.swing.table.AbstractTableModel;
+
+import org.mastodon.views.table.PrimitiveTableRowSorter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sorting and filtering of feature tables with
+ * {@link PrimitiveTableRowSorter}. Column 0 holds numeric keys with few
+ * distinct values, column 1 numeric keys with NaNs, column 2 string keys.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class TableSortBenchmark
+{
+	@Param( { "100000", "1000000" } )
+	public int numRows;
+
+	private PrimitiveTableRowSorter< Table > sorter;
+
+	private boolean ascending;
+
+	private static class Table extends AbstractTableModel implements PrimitiveTableRowSorter.SortKeys
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final double[] frames;
+
+		private final double[] values;
+
+		private final String[] labels;
+
+		Table( final int numRows )
+		{
+			final Random random = new Random( 1 );
+			frames = new double[ numRows ];
+			values = new double[ numRows ];
+			labels = new String[ numRows ];
+			for ( int i = 0; i < numRows; ++i )
+			{
+				frames[ i ] = random.nextInt( 100 );
+				values[ i ] = random.nextDouble() < 0.1 ? Double.NaN : random.nextGaussian();
+				labels[ i ] = Integer.toString( random.nextInt( numRows ) );
+			}
+		}
+
+		@Override
+		public int getRowCount()
+		{
+			return frames.length;
+		}
+
+		@Override
+		public int getColumnCount()
+		{
+			return 3;
+		}
+
+		@Override
+		public Object getValueAt( final int rowIndex, final int columnIndex )
+		{
+			switch ( columnIndex )
+			{
+			case 0:
+				return frames[ rowIndex ];
+			case 1:
+				return values[ rowIndex ];
+			default:
+				return labels[ rowIndex ];
+			}
+		}
+
+		@Override
+		public boolean isStringColumn( final int column )
+		{
+			return column == 2;
+		}
+
+		@Override
+		public void getNumericKeys( final int column, final double[] keys )
+		{
+			System.arraycopy( column == 0 ? frames : values, 0, keys, 0, keys.length );
+		}
+
+		@Override
+		public void getStringKeys( final int column, final String[] keys )
+		{
+			System.arraycopy( labels, 0, keys, 0, keys.length );
+		}
+
+		@Override
+		public void getNumericKeys( final int column, final double[] keys, final int[] rows, final int numRows )
+		{
+			final double[] values = column == 0 ? frames : this.values;
+			for ( int i = 0; i < numRows; ++i )
+				keys[ rows[ i ] ] = values[ rows[ i ] ];
+		}
+
+		@Override
+		public void getStringKeys( final int column, final String[] keys, final int[] rows, final int numRows )
+		{
+			for ( int i = 0; i < numRows; ++i )
+				keys[ rows[ i ] ] = labels[ rows[ i ] ];
+		}
+	}
+
+	@Setup( Level.Trial )
+	public void setup()
+	{
+		final Table table = new Table( numRows );
+		sorter = new PrimitiveTableRowSorter<>( table, table );
+	}
+
+	private SortOrder nextOrder()
+	{
+		ascending = !ascending;
+		return ascending ? SortOrder.ASCENDING : SortOrder.DESCENDING;
+	}
+
+	@Benchmark
+	public int sortNumeric()
+	{
+		sorter.setSortKeys( Arrays.asList( new SortKey( 1, nextOrder() ) ) );
+		return sorter.convertRowIndexToModel( 0 );
+	}
+
+	@Benchmark
+	public int sortString()
+	{
+		sorter.setSortKeys( Arrays.asList( new SortKey( 2, nextOrder() ) ) );
+		return sorter.convertRowIndexToModel( 0 );
+	}
+
+	@Benchmark
+	public int sortTwoKeys()
+	{
+		final SortOrder order = nextOrder();
+		sorter.setSortKeys( Arrays.asList( new SortKey( 0, order ), new SortKey( 1, order ) ) );
+		return sorter.convertRowIndexToModel( 0 );
+	}
+
+	@Benchmark
+	public int updateRows()
+	{
+		if ( sorter.getSortKeys().isEmpty() )
+			sorter.setSortKeys( Arrays.asList( new SortKey( 1, SortOrder.ASCENDING ) ) );
+		final int[] rows = new int[ 100 ];
+		for ( int i = 0; i < rows.length; ++i )
+			rows[ i ] = i * ( numRows / rows.length );
+		sorter.setChangedRows( rows );
+		sorter.rowsUpdated( rows[ 0 ], rows[ rows.length - 1 ] );
+		return sorter.convertRowIndexToModel( 0 );
+	}
+
+	@Benchmark
+	public int filter()
+	{
+		final int mod = ascending ? 2 : 3;
+		ascending = !ascending;
+		sorter.setRowFilter( row -> row % mod == 0 );
+		return sorter.getViewRowCount();
+	}
+}
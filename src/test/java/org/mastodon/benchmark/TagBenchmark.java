@@ -0,0 +1,125 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.mastodon.mamut.importer.synthetic.SyntheticModelGenerator;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.model.tag.ObjTagMap;
+import org.mastodon.model.tag.TagSetStructure;
+import org.mastodon.model.tag.TagSetStructure.Tag;
+import org.mastodon.model.tag.TagSetStructure.TagSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Tag assignment to all spots of a model, one by one and in bulk, and tag
+ * lookup. Each invocation switches all spots to the other of two tags, so
+ * that every assignment changes the tag of the spot.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class TagBenchmark
+{
+	@Param( { "100000", "1000000" } )
+	public int numSpots;
+
+	private Model model;
+
+	private ObjTagMap< Spot, Tag > tagMap;
+
+	private Tag[] tags;
+
+	private int next;
+
+	@Setup( Level.Trial )
+	public void setup()
+	{
+		final int numTimepoints = 100;
+		model = new Model();
+		SyntheticModelGenerator.generate( new SyntheticModelGenerator.Parameters()
+				.numRoots( numSpots / numTimepoints )
+				.numTimepoints( numTimepoints )
+				.divisionRate( 0 )
+				.seed( 1 ), model );
+		final TagSetStructure tss = new TagSetStructure();
+		final TagSet tagSet = tss.createTagSet( "cell type" );
+		tagSet.createTag( "A", 0xffff0000 );
+		tagSet.createTag( "B", 0xff00ff00 );
+		model.getTagSetModel().setTagSetStructure( tss );
+
+		final TagSet modelTagSet = model.getTagSetModel().getTagSetStructure().getTagSets().get( 0 );
+		tagMap = model.getTagSetModel().getVertexTags().tags( modelTagSet );
+		tags = modelTagSet.getTags().toArray( new Tag[ 0 ] );
+	}
+
+	private Tag nextTag()
+	{
+		next = 1 - next;
+		return tags[ next ];
+	}
+
+	@Benchmark
+	public void setEach()
+	{
+		final Tag tag = nextTag();
+		for ( final Spot spot : model.getGraph().vertices() )
+			tagMap.set( spot, tag );
+	}
+
+	@Benchmark
+	public void setBulk()
+	{
+		tagMap.set( model.getGraph().vertices(), nextTag() );
+	}
+
+	@Benchmark
+	public void get( final Blackhole bh )
+	{
+		for ( final Spot spot : model.getGraph().vertices() )
+			bh.consume( tagMap.get( spot ) );
+	}
+}
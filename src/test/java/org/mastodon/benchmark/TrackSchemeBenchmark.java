@@ -0,0 +1,197 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.benchmark;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.mastodon.adapter.SelectionModelAdapter;
+import org.mastodon.collection.RefList;
+import org.mastodon.mamut.importer.synthetic.SyntheticModelGenerator;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraphTrackSchemeProperties;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.model.DefaultSelectionModel;
+import org.mastodon.ui.coloring.DefaultGraphColorGenerator;
+import org.mastodon.views.trackscheme.LexicographicalVertexOrder;
+import org.mastodon.views.trackscheme.LineageTreeLayout;
+import org.mastodon.views.trackscheme.ScreenEntities;
+import org.mastodon.views.trackscheme.ScreenTransform;
+import org.mastodon.views.trackscheme.TrackSchemeEdge;
+import org.mastodon.views.trackscheme.TrackSchemeGraph;
+import org.mastodon.views.trackscheme.TrackSchemeVertex;
+import org.mastodon.views.trackscheme.display.BatchedPaintGraph;
+import org.mastodon.views.trackscheme.display.PaintGraph;
+import org.mastodon.views.trackscheme.display.style.TrackSchemeStyle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * TrackScheme layout of a complete model,
+ * {@link LineageTreeLayout#cropAndScale} of the whole layout (zoomed out) and
+ * of a small window (zoomed in), and painting the zoomed-out screen entities
+ * into a full HD image with {@link PaintGraph} and {@link BatchedPaintGraph}.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class TrackSchemeBenchmark
+{
+	private static final int NUM_TIMEPOINTS = 200;
+
+	private static final int WIDTH = 1920;
+
+	private static final int HEIGHT = 1080;
+
+	@Param( { "100", "1000" } )
+	public int numRoots;
+
+	@Param( { "true", "false" } )
+	public boolean parallelCropAndScale;
+
+	private TrackSchemeGraph< Spot, Link > graph;
+
+	private LineageTreeLayout layout;
+
+	private RefList< TrackSchemeVertex > roots;
+
+	private ScreenEntities screenEntities;
+
+	private DefaultGraphColorGenerator< TrackSchemeVertex, TrackSchemeEdge > colorGenerator;
+
+	private ScreenEntities overviewEntities;
+
+	private BufferedImage image;
+
+	private Graphics2D g2;
+
+	private final TrackSchemeStyle style = TrackSchemeStyle.defaultStyle();
+
+	private final PaintGraph paintGraph = new PaintGraph();
+
+	private final PaintGraph batchedPaintGraph = new BatchedPaintGraph();
+
+	@Setup( Level.Trial )
+	public void setup()
+	{
+		final Model model = new Model();
+		SyntheticModelGenerator.generate( new SyntheticModelGenerator.Parameters()
+				.numRoots( numRoots )
+				.numTimepoints( NUM_TIMEPOINTS )
+				.divisionRate( 0.01 )
+				.seed( 1 ), model );
+		graph = new TrackSchemeGraph<>(
+				model.getGraph(),
+				model.getGraphIdBimap(),
+				new ModelGraphTrackSchemeProperties( model.getGraph() ),
+				model.getGraph().getLock() );
+		final DefaultSelectionModel< Spot, Link > selection = new DefaultSelectionModel<>( model.getGraph(), model.getGraphIdBimap() );
+		layout = new LineageTreeLayout( graph, new SelectionModelAdapter<>( selection, graph.getVertexMap(), graph.getEdgeMap() ) );
+		layout.setParallelCropAndScale( parallelCropAndScale );
+		roots = LexicographicalVertexOrder.sort( graph, graph.getRoots() );
+		layout.layout( roots );
+		screenEntities = new ScreenEntities( graph );
+		colorGenerator = new DefaultGraphColorGenerator<>();
+
+		overviewEntities = new ScreenEntities( graph );
+		layout.cropAndScale( overviewTransform(), overviewEntities, 0, 0, colorGenerator );
+		image = new BufferedImage( WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB );
+		g2 = image.createGraphics();
+		g2.setClip( 0, 0, WIDTH, HEIGHT );
+	}
+
+	@TearDown( Level.Trial )
+	public void tearDown()
+	{
+		g2.dispose();
+	}
+
+	private ScreenTransform overviewTransform()
+	{
+		return new ScreenTransform(
+				layout.getCurrentLayoutMinX(), layout.getCurrentLayoutMaxX(),
+				0, NUM_TIMEPOINTS,
+				WIDTH, HEIGHT );
+	}
+
+	@Benchmark
+	public void layout()
+	{
+		layout.layout( roots );
+	}
+
+	@Benchmark
+	public ScreenEntities cropAndScaleOverview()
+	{
+		screenEntities.clear();
+		layout.cropAndScale( overviewTransform(), screenEntities, 0, 0, colorGenerator );
+		return screenEntities;
+	}
+
+	@Benchmark
+	public ScreenEntities cropAndScaleDetail()
+	{
+		final double minX = 0.5 * ( layout.getCurrentLayoutMinX() + layout.getCurrentLayoutMaxX() );
+		final double minY = 0.5 * NUM_TIMEPOINTS;
+		final ScreenTransform transform = new ScreenTransform( minX, minX + 40, minY, minY + 20, WIDTH, HEIGHT );
+		screenEntities.clear();
+		layout.cropAndScale( transform, screenEntities, 0, 0, colorGenerator );
+		return screenEntities;
+	}
+
+	@Benchmark
+	public BufferedImage paintOverview()
+	{
+		paintGraph.paintGraph( g2, overviewEntities, -1, -1, -1, style );
+		return image;
+	}
+
+	@Benchmark
+	public BufferedImage paintOverviewBatched()
+	{
+		batchedPaintGraph.paintGraph( g2, overviewEntities, -1, -1, -1, style );
+		return image;
+	}
+}
@@ -0,0 +1,203 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.mamut.exporter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mastodon.graph.GraphIdBimap;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.model.tag.ObjTagMap;
+import org.mastodon.model.tag.TagSetStructure;
+import org.mastodon.model.tag.TagSetStructure.Tag;
+import org.mastodon.model.tag.TagSetStructure.TagSet;
+
+public class FeatureTableExporterTest
+{
+	private static final int NUM_TIMEPOINTS = 60;
+
+	private static final int NUM_THREADS = 4;
+
+	private Model model;
+
+	private ModelGraph graph;
+
+	private ObjTagMap< Spot, Tag > spotFates;
+
+	private ObjTagMap< Link, Tag > linkFates;
+
+	/**
+	 * Builds a model with a varying number of spots per timepoint, some
+	 * timepoints being empty, each spot linked to a spot of the next non-empty
+	 * timepoint, and a tag set.
+	 */
+	@Before
+	public void setUp()
+	{
+		model = new Model();
+		graph = model.getGraph();
+		final TagSetStructure tss = new TagSetStructure();
+		final TagSet fate = tss.createTagSet( "Fate" );
+		fate.createTag( "Neuron", 0xffff0000 );
+		fate.createTag( "Glia", 0xff00ff00 );
+		model.getTagSetModel().setTagSetStructure( tss );
+		final TagSet modelFate = model.getTagSetModel().getTagSetStructure().getTagSets().get( 0 );
+		spotFates = model.getTagSetModel().getVertexTags().tags( modelFate );
+		linkFates = model.getTagSetModel().getEdgeTags().tags( modelFate );
+		final List< Tag > tags = modelFate.getTags();
+
+		final Random random = new Random( 11 );
+		final Link eref = graph.edgeRef();
+		List< Spot > previous = new ArrayList<>();
+		for ( int t = 0; t < NUM_TIMEPOINTS; t++ )
+		{
+			final int n = random.nextInt( 4 ) == 0 ? 0 : 1 + random.nextInt( 8 );
+			final List< Spot > current = new ArrayList<>();
+			for ( int i = 0; i < n; i++ )
+			{
+				final Spot spot = graph.addVertex().init( t, new double[] { i, t, 0 }, 1 );
+				if ( random.nextBoolean() )
+					spotFates.set( spot, tags.get( random.nextInt( tags.size() ) ) );
+				if ( !previous.isEmpty() )
+				{
+					final Link link = graph.addEdge( previous.get( random.nextInt( previous.size() ) ), spot, eref ).init();
+					if ( random.nextBoolean() )
+						linkFates.set( link, tags.get( random.nextInt( tags.size() ) ) );
+				}
+				current.add( spot );
+			}
+			if ( !current.isEmpty() )
+				previous = current;
+		}
+		graph.releaseRef( eref );
+	}
+
+	@Test
+	public void testSpotColumns() throws IOException
+	{
+		final List< String[] > rows = export( true );
+		assertArrayEquals( new String[] { "Label", "ID", "Frame", "Fate" }, rows.get( 0 ) );
+		assertEquals( graph.vertices().size() + 1, rows.size() );
+
+		final GraphIdBimap< Spot, Link > idBimap = model.getGraphIdBimap();
+		final Spot ref = graph.vertexRef();
+		for ( final String[] row : rows.subList( 1, rows.size() ) )
+		{
+			assertEquals( 4, row.length );
+			final Spot spot = idBimap.getVertex( Integer.parseInt( row[ 1 ] ), ref );
+			assertEquals( spot.getLabel(), row[ 0 ] );
+			assertEquals( spot.getTimepoint(), Integer.parseInt( row[ 2 ] ) );
+			assertEquals( label( spotFates.get( spot ) ), row[ 3 ] );
+		}
+		graph.releaseRef( ref );
+	}
+
+	@Test
+	public void testLinkColumns() throws IOException
+	{
+		final List< String[] > rows = export( false );
+		assertArrayEquals( new String[] { "ID", "Source ID", "Target ID", "Frame", "Fate" }, rows.get( 0 ) );
+		assertEquals( graph.edges().size() + 1, rows.size() );
+
+		final GraphIdBimap< Spot, Link > idBimap = model.getGraphIdBimap();
+		final Link ref = graph.edgeRef();
+		final Spot vref = graph.vertexRef();
+		for ( final String[] row : rows.subList( 1, rows.size() ) )
+		{
+			assertEquals( 5, row.length );
+			final Link link = idBimap.getEdge( Integer.parseInt( row[ 0 ] ), ref );
+			assertEquals( link.getSource( vref ).getInternalPoolIndex(), Integer.parseInt( row[ 1 ] ) );
+			assertEquals( vref.getTimepoint(), Integer.parseInt( row[ 3 ] ) );
+			assertEquals( link.getTarget( vref ).getInternalPoolIndex(), Integer.parseInt( row[ 2 ] ) );
+			assertEquals( label( linkFates.get( link ) ), row[ 4 ] );
+		}
+		graph.releaseRef( ref );
+		graph.releaseRef( vref );
+	}
+
+	/**
+	 * Timepoints are formatted in parallel, but must be written in order, each
+	 * as one contiguous block.
+	 */
+	@Test
+	public void testBlocksWrittenInOrder() throws IOException
+	{
+		for ( final boolean spots : new boolean[] { true, false } )
+		{
+			final List< String[] > rows = export( spots );
+			final int frameColumn = spots ? 2 : 3;
+			int previousFrame = Integer.MIN_VALUE;
+			for ( final String[] row : rows.subList( 1, rows.size() ) )
+			{
+				final int frame = Integer.parseInt( row[ frameColumn ] );
+				assertTrue( "Frame " + frame + " written after frame " + previousFrame, frame >= previousFrame );
+				previousFrame = frame;
+			}
+		}
+	}
+
+	private List< String[] > export( final boolean spots ) throws IOException
+	{
+		final File file = File.createTempFile( "features", ".tsv" );
+		file.deleteOnExit();
+		if ( spots )
+			FeatureTableExporter.exportSpots( model, file, FeatureTableExporter.TSV_SEPARATOR, NUM_THREADS );
+		else
+			FeatureTableExporter.exportLinks( model, file, FeatureTableExporter.TSV_SEPARATOR, NUM_THREADS );
+		final List< String[] > rows = new ArrayList<>();
+		for ( final String line : Files.readAllLines( file.toPath(), StandardCharsets.UTF_8 ) )
+		{
+			final String[] fields = line.split( "\t", -1 );
+			for ( int i = 0; i < fields.length; i++ )
+				fields[ i ] = fields[ i ].replaceAll( "^\"|\"$", "" );
+			rows.add( fields );
+		}
+		file.delete();
+		return rows;
+	}
+
+	private static String label( final Tag tag )
+	{
+		return tag == null ? "" : tag.label();
+	}
+}
@@ -0,0 +1,218 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.mamut.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+import org.mastodon.collection.RefCollections;
+import org.mastodon.collection.RefList;
+import org.mastodon.mamut.model.BoundingSphereRadiusStatistics.Stats;
+
+public class BoundingSphereRadiusStatisticsTest
+{
+	/**
+	 * Random additions, updates and removals keep the heap consistent and its
+	 * top equal to the maximum.
+	 */
+	@Test
+	public void testHeapInvariant()
+	{
+		final Random random = new Random( 1 );
+		final Stats stats = new Stats();
+		final Map< Integer, Double > expected = new HashMap<>();
+		for ( int i = 0; i < 20_000; ++i )
+		{
+			final int id = random.nextInt( 500 );
+			if ( random.nextInt( 3 ) == 0 )
+			{
+				stats.remove( id );
+				expected.remove( id );
+			}
+			else
+			{
+				final double r2 = random.nextInt( 100 );
+				stats.set( id, r2 );
+				expected.put( id, r2 );
+			}
+			assertTrue( stats.isValid() );
+			assertEquals( expected.size(), stats.size() );
+			assertEquals( max( expected ), stats.getMaxRadiusSquared(), 0 );
+		}
+	}
+
+	/**
+	 * Removing the top, a leaf, or an inner element restores the heap.
+	 */
+	@Test
+	public void testMaxAfterRemove()
+	{
+		final int n = 1000;
+		final Stats stats = new Stats();
+		final Random random = new Random( 2 );
+		for ( int i = 0; i < n; ++i )
+			stats.append( i, random.nextDouble() );
+		stats.heapify();
+		assertTrue( stats.isValid() );
+
+		final Map< Integer, Double > expected = new HashMap<>();
+		random.setSeed( 2 );
+		for ( int i = 0; i < n; ++i )
+			expected.put( i, random.nextDouble() );
+
+		while ( !expected.isEmpty() )
+		{
+			final int id;
+			switch ( expected.size() % 3 )
+			{
+			case 0:
+				id = argMax( expected );
+				break;
+			case 1:
+				id = expected.keySet().iterator().next();
+				break;
+			default:
+				id = expected.keySet().stream().skip( expected.size() / 2 ).findFirst().get();
+				break;
+			}
+			stats.remove( id );
+			expected.remove( id );
+			assertTrue( stats.isValid() );
+			assertEquals( max( expected ), stats.getMaxRadiusSquared(), 0 );
+		}
+		assertTrue( stats.isEmpty() );
+
+		// Removing an absent id does nothing.
+		stats.remove( 0 );
+		assertTrue( stats.isEmpty() );
+	}
+
+	/**
+	 * With more than 100k spots, the heaps of the time-points are built in
+	 * parallel. They must be consistent, and stay so after removals and radius
+	 * changes.
+	 */
+	@Test
+	public void testParallelInit()
+	{
+		final int numTimepoints = 12;
+		final int spotsPerTimepoint = 10_000;
+		final Model model = new Model();
+		final ModelGraph graph = model.getGraph();
+		final Random random = new Random( 3 );
+		final Spot ref = graph.vertexRef();
+		for ( int t = 0; t < numTimepoints; ++t )
+			for ( int i = 0; i < spotsPerTimepoint; ++i )
+			{
+				final double[] pos = { random.nextDouble() * 100, random.nextDouble() * 100, random.nextDouble() * 100 };
+				graph.addVertex( ref ).init( t, pos, 1 + random.nextDouble() * 10 );
+			}
+
+		final BoundingSphereRadiusStatistics radiusStats = new BoundingSphereRadiusStatistics( model );
+		assertStats( graph, radiusStats, numTimepoints );
+
+		// Remove the largest spot of each time-point.
+		for ( int t = 0; t < numTimepoints; ++t )
+		{
+			final Spot largest = largest( graph, t, ref );
+			graph.remove( largest );
+		}
+		assertStats( graph, radiusStats, numTimepoints );
+
+		// Shrink the largest spot and grow another one.
+		final double[][] cov = new double[ 3 ][ 3 ];
+		for ( int t = 0; t < numTimepoints; ++t )
+		{
+			final Spot largest = largest( graph, t, ref );
+			cov[ 0 ][ 0 ] = cov[ 1 ][ 1 ] = cov[ 2 ][ 2 ] = 0.5;
+			largest.setCovariance( cov );
+		}
+		graph.vertices().iterator().next().setCovariance( new double[][] { { 200, 0, 0 }, { 0, 200, 0 }, { 0, 0, 200 } } );
+		assertStats( graph, radiusStats, numTimepoints );
+
+		// Remove all spots of the first time-point.
+		final RefList< Spot > first = RefCollections.createRefList( graph.vertices() );
+		for ( final Spot spot : graph.vertices() )
+			if ( spot.getTimepoint() == 0 )
+				first.add( spot );
+		for ( final Spot spot : first )
+			graph.remove( spot );
+		assertNull( radiusStats.getStats( 0 ) );
+		assertEquals( -1, radiusStats.getMaxBoundingSphereRadiusSquared( 0 ), 0 );
+
+		graph.releaseRef( ref );
+	}
+
+	private static void assertStats( final ModelGraph graph, final BoundingSphereRadiusStatistics radiusStats, final int numTimepoints )
+	{
+		final double[] max = new double[ numTimepoints ];
+		final int[] count = new int[ numTimepoints ];
+		for ( final Spot spot : graph.vertices() )
+		{
+			final int t = spot.getTimepoint();
+			max[ t ] = Math.max( max[ t ], spot.getBoundingSphereRadiusSquared() );
+			count[ t ]++;
+		}
+		for ( int t = 0; t < numTimepoints; ++t )
+		{
+			final Stats stats = radiusStats.getStats( t );
+			assertTrue( stats.isValid() );
+			assertEquals( count[ t ], stats.size() );
+			assertEquals( max[ t ], radiusStats.getMaxBoundingSphereRadiusSquared( t ), 0 );
+		}
+	}
+
+	private static Spot largest( final ModelGraph graph, final int timepoint, final Spot ref )
+	{
+		double max = -1;
+		for ( final Spot spot : graph.vertices() )
+			if ( spot.getTimepoint() == timepoint && spot.getBoundingSphereRadiusSquared() > max )
+			{
+				max = spot.getBoundingSphereRadiusSquared();
+				ref.refTo( spot );
+			}
+		return ref;
+	}
+
+	private static double max( final Map< Integer, Double > values )
+	{
+		return values.values().stream().mapToDouble( Double::doubleValue ).max().orElse( 0 );
+	}
+
+	private static int argMax( final Map< Integer, Double > values )
+	{
+		return values.entrySet().stream().max( Map.Entry.comparingByValue() ).get().getKey();
+	}
+}
@@ -0,0 +1,186 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.mastodon.graph.GraphListener;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.model.BulkEditor.BulkEditListener;
+import org.mastodon.model.BulkEditor.Summary;
+
+public class BulkEditorTest
+{
+	/**
+	 * If a listener throws when the bulk edit starts, the write lock is
+	 * released and the listeners already notified are finished.
+	 */
+	@Test
+	public void testFailedBeginReleasesLock()
+	{
+		final Model model = new Model();
+		final BulkEditor< Spot, Link > bulkEditor = model.getBulkEditor();
+		final AtomicInteger finished = new AtomicInteger();
+		bulkEditor.listeners().add( new BulkEditListener()
+		{
+			@Override
+			public void bulkEditStarted()
+			{}
+
+			@Override
+			public void bulkEditFinished( final Summary summary )
+			{
+				finished.incrementAndGet();
+			}
+		} );
+		bulkEditor.listeners().add( new BulkEditListener()
+		{
+			@Override
+			public void bulkEditStarted()
+			{
+				throw new IllegalStateException();
+			}
+
+			@Override
+			public void bulkEditFinished( final Summary summary )
+			{}
+		} );
+
+		try
+		{
+			bulkEditor.begin();
+			fail( "Expected the listener exception." );
+		}
+		catch ( final IllegalStateException e )
+		{}
+
+		assertFalse( model.getGraph().getLock().isWriteLockedByCurrentThread() );
+		assertFalse( bulkEditor.isActive() );
+		assertEquals( 1, finished.get() );
+	}
+
+	/**
+	 * Deferred listeners are not notified of the objects added and removed
+	 * during a bulk edit, and are rebuilt once when it finishes.
+	 */
+	@Test
+	public void testDeferredListenerIsRebuiltOnce()
+	{
+		final Model model = new Model();
+		final ModelGraph graph = model.getGraph();
+		final CountingListener counts = new CountingListener();
+		graph.addGraphListener( model.getBulkEditor().defer( counts ) );
+
+		final Spot ref = graph.vertexRef();
+		try (BulkEditor< Spot, Link >.Edit edit = model.getBulkEditor().begin())
+		{
+			for ( int i = 0; i < 100; ++i )
+				graph.addVertex( ref ).init( i, new double[ 3 ], 1 );
+			graph.remove( ref );
+			assertEquals( 0, counts.events );
+			assertEquals( 0, counts.rebuilds );
+		}
+		assertEquals( 0, counts.events );
+		assertEquals( 1, counts.rebuilds );
+
+		graph.addVertex( ref ).init( 0, new double[ 3 ], 1 );
+		assertEquals( 1, counts.events );
+		assertEquals( 1, counts.rebuilds );
+
+		// An empty bulk edit does not rebuild.
+		try (BulkEditor< Spot, Link >.Edit edit = model.getBulkEditor().begin())
+		{}
+		assertEquals( 1, counts.rebuilds );
+		graph.releaseRef( ref );
+	}
+
+	/**
+	 * The model indices are up to date after a bulk edit.
+	 */
+	@Test
+	public void testIndicesAfterBulkEdit()
+	{
+		final Model model = new Model();
+		final ModelGraph graph = model.getGraph();
+		final Spot ref = graph.vertexRef();
+		try (BulkEditor< Spot, Link >.Edit edit = model.getBulkEditor().begin())
+		{
+			for ( int i = 0; i < 10; ++i )
+				graph.addVertex( ref ).init( 3, new double[] { i, 0, 0 }, 1 ).setLabel( "s" + i );
+		}
+		assertEquals( 10, model.getSpatioTemporalIndex().getSpatialIndex( 3 ).size() );
+		assertEquals( 1, model.getSpotLabelIndex().search( "s4", false, () -> false ).length );
+		graph.releaseRef( ref );
+	}
+
+	private static class CountingListener implements GraphListener< Spot, Link >
+	{
+		int events = 0;
+
+		int rebuilds = 0;
+
+		@Override
+		public void graphRebuilt()
+		{
+			rebuilds++;
+		}
+
+		@Override
+		public void vertexAdded( final Spot vertex )
+		{
+			events++;
+		}
+
+		@Override
+		public void vertexRemoved( final Spot vertex )
+		{
+			events++;
+		}
+
+		@Override
+		public void edgeAdded( final Link edge )
+		{
+			events++;
+		}
+
+		@Override
+		public void edgeRemoved( final Link edge )
+		{
+			events++;
+		}
+	}
+}
@@ -0,0 +1,132 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.spatial.SpatialIndex;
+
+import net.imglib2.RealPoint;
+import net.imglib2.neighborsearch.NearestNeighborSearch;
+
+public class ConcurrentSpatioTemporalIndexTest
+{
+	private static final int NUM_TIMEPOINTS = 8;
+
+	private static final int SPOTS_PER_TIMEPOINT = 2000;
+
+	/**
+	 * After a bulk edit, the indices of all time-points are rebuilt
+	 * concurrently and become ready.
+	 */
+	@Test
+	public void testRebuildAfterBulkEdit()
+	{
+		final Model model = new Model();
+		fill( model, new Random( 1 ) );
+		final ConcurrentSpatioTemporalIndex< Spot, Link > index = ( ConcurrentSpatioTemporalIndex< Spot, Link > ) model.getSpatioTemporalIndex();
+		index.awaitReady();
+		for ( int t = 0; t < NUM_TIMEPOINTS; ++t )
+		{
+			assertTrue( index.isReady( t ) );
+			assertEquals( SPOTS_PER_TIMEPOINT, index.getSpatialIndex( t ).size() );
+		}
+		assertEquals( 2 * SPOTS_PER_TIMEPOINT, index.getSpatialIndex( 2, 3 ).size() );
+		assertTrue( index.getSpatialIndex( NUM_TIMEPOINTS ).isEmpty() );
+	}
+
+	/**
+	 * Incremental additions, removals and moves are visible to nearest
+	 * neighbor searches, also across automatic rebuilds.
+	 */
+	@Test
+	public void testIncrementalChanges()
+	{
+		final Model model = new Model();
+		final ModelGraph graph = model.getGraph();
+		final Random random = new Random( 2 );
+		fill( model, random );
+		final SpatialIndex< Spot > index = model.getSpatioTemporalIndex().getSpatialIndex( 0 );
+
+		final Spot ref = graph.vertexRef();
+		final Spot found = graph.vertexRef();
+		final double[] pos = new double[ 3 ];
+		for ( int i = 0; i < 1000; ++i )
+		{
+			pos[ 0 ] = 1000 + i;
+			final Spot spot = graph.addVertex( ref ).init( 0, pos, 1 );
+			assertEquals( spot, nearest( model, 0, pos, found ) );
+
+			pos[ 1 ] = 500;
+			spot.setPosition( pos );
+			assertEquals( spot, nearest( model, 0, pos, found ) );
+			pos[ 1 ] = 0;
+
+			if ( random.nextBoolean() )
+				graph.remove( spot );
+		}
+		assertEquals( graph.vertices().stream().filter( s -> s.getTimepoint() == 0 ).count(), index.size() );
+		graph.releaseRef( found );
+		graph.releaseRef( ref );
+	}
+
+	private static Spot nearest( final Model model, final int timepoint, final double[] pos, final Spot ref )
+	{
+		final NearestNeighborSearch< Spot > search = model.getSpatioTemporalIndex().getSpatialIndex( timepoint ).getNearestNeighborSearch();
+		search.search( RealPoint.wrap( pos ) );
+		ref.refTo( search.getSampler().get() );
+		return ref;
+	}
+
+	private static void fill( final Model model, final Random random )
+	{
+		final ModelGraph graph = model.getGraph();
+		final Spot ref = graph.vertexRef();
+		final double[] pos = new double[ 3 ];
+		try (BulkEditor< Spot, Link >.Edit edit = model.getBulkEditor().begin())
+		{
+			for ( int t = 0; t < NUM_TIMEPOINTS; ++t )
+				for ( int i = 0; i < SPOTS_PER_TIMEPOINT; ++i )
+				{
+					for ( int d = 0; d < 3; ++d )
+						pos[ d ] = random.nextDouble() * 100;
+					graph.addVertex( ref ).init( t, pos, 1 );
+				}
+		}
+		graph.releaseRef( ref );
+	}
+}
@@ -0,0 +1,214 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+
+public class DefaultSelectionModelTest
+{
+	private Model model;
+
+	private ModelGraph graph;
+
+	private DefaultSelectionModel< Spot, Link > selection;
+
+	private final List< SelectionChange > changes = new ArrayList<>();
+
+	@Before
+	public void setUp()
+	{
+		model = new Model();
+		graph = model.getGraph();
+		selection = new DefaultSelectionModel<>( graph, model.getGraphIdBimap() );
+		selection.listeners().add( new SelectionListener()
+		{
+			@Override
+			public void selectionChanged()
+			{}
+
+			@Override
+			public void selectionChanged( final SelectionChange change )
+			{
+				changes.add( change );
+			}
+		} );
+	}
+
+	@Test
+	public void testSnapshotIsolation()
+	{
+		final Spot a = addSpot( 0 );
+		final Spot b = addSpot( 1 );
+		final Link link = graph.addEdge( a, b, graph.edgeRef() ).init();
+
+		selection.setSelected( a, true );
+		final SelectionSnapshot< Spot, Link > snapshot = selection.getSnapshot();
+		assertSame( snapshot, selection.getSnapshot() );
+
+		selection.setSelected( a, false );
+		selection.setSelected( b, true );
+		selection.setSelected( link, true );
+
+		assertTrue( snapshot.isSelected( a ) );
+		assertFalse( snapshot.isSelected( b ) );
+		assertFalse( snapshot.isSelected( link ) );
+		assertEquals( 1, snapshot.numSelectedVertices() );
+		assertEquals( 0, snapshot.numSelectedEdges() );
+
+		final SelectionSnapshot< Spot, Link > current = selection.getSnapshot();
+		assertFalse( current.isSelected( a ) );
+		assertTrue( current.isSelected( b ) );
+		assertTrue( current.isSelected( link ) );
+
+		selection.clearSelection();
+		assertTrue( selection.isEmpty() );
+		assertTrue( current.isSelected( b ) );
+	}
+
+	@Test
+	public void testRemovedVertexIsUnselected()
+	{
+		final Spot a = addSpot( 0 );
+		final Spot b = addSpot( 1 );
+		selection.setSelected( a, true );
+		selection.setSelected( b, true );
+		graph.remove( a );
+		assertEquals( 1, selection.getSnapshot().numSelectedVertices() );
+		assertTrue( selection.isSelected( b ) );
+	}
+
+	/**
+	 * While listeners are paused, reads see modifications immediately, and the
+	 * snapshot is published once on resume.
+	 */
+	@Test
+	public void testReadsWhilePaused()
+	{
+		final List< Spot > spots = addSpots( 100 );
+		final SelectionSnapshot< Spot, Link > before = selection.getSnapshot();
+
+		selection.pauseListeners();
+		for ( final Spot spot : spots )
+		{
+			selection.setSelected( spot, true );
+			assertTrue( selection.isSelected( spot ) );
+		}
+		selection.toggle( spots.get( 0 ) );
+		assertFalse( selection.isSelected( spots.get( 0 ) ) );
+		assertTrue( changes.isEmpty() );
+		selection.resumeListeners();
+
+		assertTrue( before.isEmpty() );
+		assertEquals( 99, selection.getSnapshot().numSelectedVertices() );
+		assertEquals( 1, changes.size() );
+		assertTrue( changes.get( 0 ).isComplete() );
+		assertEquals( 99, changes.get( 0 ).getAddedVertexIds().length );
+	}
+
+	@Test
+	public void testNetChange()
+	{
+		final List< Spot > spots = addSpots( 3 );
+		selection.setSelected( spots.get( 0 ), true );
+		changes.clear();
+
+		selection.pauseListeners();
+		selection.setSelected( spots.get( 0 ), false );
+		selection.setSelected( spots.get( 1 ), true );
+		selection.setSelected( spots.get( 2 ), true );
+		selection.setSelected( spots.get( 2 ), false );
+		selection.resumeListeners();
+
+		assertEquals( 1, changes.size() );
+		final SelectionChange change = changes.get( 0 );
+		assertTrue( change.isComplete() );
+		assertEquals( 2, change.size() );
+		assertEquals( spots.get( 1 ).getInternalPoolIndex(), change.getAddedVertexIds()[ 0 ] );
+		assertEquals( spots.get( 0 ).getInternalPoolIndex(), change.getRemovedVertexIds()[ 0 ] );
+	}
+
+	/**
+	 * Changes of up to 100k objects are reported in full, larger changes as
+	 * {@link SelectionChange#INCOMPLETE}.
+	 */
+	@Test
+	public void testIncompleteCutoff()
+	{
+		final List< Spot > spots = addSpots( 100_001 );
+
+		selection.pauseListeners();
+		selection.setVerticesSelected( spots.subList( 0, 100_000 ), true );
+		selection.resumeListeners();
+		assertEquals( 1, changes.size() );
+		assertTrue( changes.get( 0 ).isComplete() );
+		assertEquals( 100_000, changes.get( 0 ).size() );
+
+		selection.clearSelection();
+		assertEquals( 2, changes.size() );
+		assertTrue( changes.get( 1 ).isComplete() );
+		assertEquals( 100_000, changes.get( 1 ).getRemovedVertexIds().length );
+
+		selection.setVerticesSelected( spots, true );
+		assertEquals( 3, changes.size() );
+		assertSame( SelectionChange.INCOMPLETE, changes.get( 2 ) );
+		assertEquals( 100_001, selection.getSnapshot().numSelectedVertices() );
+
+		// The next change is recorded in full again.
+		selection.setSelected( spots.get( 0 ), false );
+		assertEquals( 4, changes.size() );
+		assertTrue( changes.get( 3 ).isComplete() );
+		assertEquals( 1, changes.get( 3 ).size() );
+	}
+
+	private Spot addSpot( final int timepoint )
+	{
+		return graph.addVertex().init( timepoint, new double[ 3 ], 1 );
+	}
+
+	private List< Spot > addSpots( final int n )
+	{
+		final List< Spot > spots = new ArrayList<>();
+		for ( int i = 0; i < n; ++i )
+			spots.add( addSpot( 0 ) );
+		return spots;
+	}
+}
@@ -0,0 +1,111 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class OptimisticReadWriteLockTest
+{
+	@Test
+	public void testWriteInvalidatesStamp()
+	{
+		final OptimisticReadWriteLock lock = new OptimisticReadWriteLock();
+		final long stamp = lock.tryOptimisticRead();
+		assertTrue( stamp != 0 );
+		assertTrue( lock.validate( stamp ) );
+
+		lock.writeLock().lock();
+		assertEquals( 0, lock.tryOptimisticRead() );
+		assertFalse( lock.validate( stamp ) );
+		lock.writeLock().unlock();
+
+		assertFalse( lock.validate( stamp ) );
+		assertTrue( lock.validate( lock.tryOptimisticRead() ) );
+	}
+
+	@Test
+	public void testReentrantWriteLock()
+	{
+		final OptimisticReadWriteLock lock = new OptimisticReadWriteLock();
+		lock.writeLock().lock();
+		assertTrue( lock.writeLock().tryLock() );
+		lock.writeLock().unlock();
+		assertEquals( 0, lock.tryOptimisticRead() );
+
+		// The writer can read.
+		assertEquals( "read", lock.readOptimistically( () -> "read" ) );
+
+		lock.writeLock().unlock();
+		assertTrue( lock.tryOptimisticRead() != 0 );
+		assertFalse( lock.isWriteLocked() );
+	}
+
+	/**
+	 * Optimistic reads never see a half-done write.
+	 */
+	@Test
+	public void testReadsAreConsistent() throws InterruptedException
+	{
+		final OptimisticReadWriteLock lock = new OptimisticReadWriteLock();
+		final int[] pair = new int[ 2 ];
+		final AtomicBoolean stop = new AtomicBoolean();
+		final Thread writer = new Thread( () -> {
+			while ( !stop.get() )
+			{
+				lock.writeLock().lock();
+				try
+				{
+					pair[ 0 ]++;
+					pair[ 1 ]++;
+				}
+				finally
+				{
+					lock.writeLock().unlock();
+				}
+			}
+		} );
+		writer.start();
+		try
+		{
+			for ( int i = 0; i < 100_000; ++i )
+				assertEquals( 0, lock.readOptimistically( () -> pair[ 1 ] - pair[ 0 ] ).intValue() );
+		}
+		finally
+		{
+			stop.set( true );
+			writer.join();
+		}
+	}
+}
@@ -0,0 +1,257 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+
+public class TrackIndexTest
+{
+	private Model model;
+
+	private ModelGraph graph;
+
+	private TrackIndex< Spot, Link > index;
+
+	@Before
+	public void setUp()
+	{
+		model = new Model();
+		graph = model.getGraph();
+		index = model.getTrackIndex();
+	}
+
+	@Test
+	public void testEdgeCut()
+	{
+		final Spot[] track = chain( 6 );
+		validate();
+
+		graph.remove( graph.getEdge( track[ 2 ], track[ 3 ], graph.edgeRef() ) );
+		assertNotEquals( index.getTrackId( track[ 0 ] ), index.getTrackId( track[ 5 ] ) );
+		assertEquals( 3, index.getTrackSize( track[ 0 ] ) );
+		assertEquals( 3, index.getTrackSize( track[ 5 ] ) );
+		assertEquivalentToRebuild();
+	}
+
+	@Test
+	public void testVertexDelete()
+	{
+		final Spot[] track = chain( 6 );
+		final Spot branch = addSpot( 3 );
+		graph.addEdge( track[ 2 ], branch, graph.edgeRef() ).init();
+		validate();
+
+		// Removes a dividing spot, splitting the track in three.
+		graph.remove( track[ 2 ] );
+		assertEquals( 2, index.getTrackSize( track[ 0 ] ) );
+		assertEquals( 3, index.getTrackSize( track[ 5 ] ) );
+		assertEquals( 1, index.getTrackSize( branch ) );
+		assertEquivalentToRebuild();
+	}
+
+	@Test
+	public void testEdgeThenVertexDelete()
+	{
+		// Track a-s-t-b. Remove link s-t, then spots s and t before querying.
+		final Spot[] track = chain( 4 );
+		validate();
+
+		graph.remove( graph.getEdge( track[ 1 ], track[ 2 ], graph.edgeRef() ) );
+		graph.remove( track[ 1 ] );
+		graph.remove( track[ 2 ] );
+		assertNotEquals( index.getTrackId( track[ 0 ] ), index.getTrackId( track[ 3 ] ) );
+		assertEquivalentToRebuild();
+	}
+
+	@Test
+	public void testCutThenDeleteDanglingSpot()
+	{
+		final Spot[] track = chain( 5 );
+		validate();
+
+		graph.remove( graph.getEdge( track[ 2 ], track[ 3 ], graph.edgeRef() ) );
+		graph.remove( track[ 2 ] );
+		assertEquals( 2, index.getTrackSize( track[ 0 ] ) );
+		assertEquals( 2, index.getTrackSize( track[ 4 ] ) );
+		assertEquivalentToRebuild();
+	}
+
+	@Test
+	public void testIdRecycling()
+	{
+		final Spot[] track = chain( 4 );
+		validate();
+
+		// The new spot may reuse the id of the removed one.
+		graph.remove( graph.getEdge( track[ 1 ], track[ 2 ], graph.edgeRef() ) );
+		graph.remove( track[ 1 ] );
+		final Spot added = addSpot( 1 );
+		graph.addEdge( track[ 0 ], added, graph.edgeRef() ).init();
+		assertNotEquals( index.getTrackId( track[ 0 ] ), index.getTrackId( track[ 3 ] ) );
+		assertEquals( index.getTrackId( track[ 0 ] ), index.getTrackId( added ) );
+		assertEquivalentToRebuild();
+	}
+
+	@Test
+	public void testRandomEdits()
+	{
+		final Random random = new Random( 1 );
+		final ArrayList< Spot > spots = new ArrayList<>();
+		for ( int i = 0; i < 200; ++i )
+			spots.add( addSpot( i % 20 ) );
+		for ( int i = 0; i < 220; ++i )
+			link( spots.get( random.nextInt( spots.size() ) ), spots.get( random.nextInt( spots.size() ) ) );
+		validate();
+
+		for ( int step = 0; step < 2000; ++step )
+		{
+			final int op = random.nextInt( 4 );
+			if ( op == 0 && !graph.edges().isEmpty() )
+				graph.remove( nth( graph.edges(), random.nextInt( graph.edges().size() ), graph.edgeRef() ) );
+			else if ( op == 1 && !graph.vertices().isEmpty() )
+				graph.remove( nth( graph.vertices(), random.nextInt( graph.vertices().size() ), graph.vertexRef() ) );
+			else if ( op == 2 )
+				addSpot( random.nextInt( 20 ) );
+			else if ( graph.vertices().size() > 1 )
+				link(
+						nth( graph.vertices(), random.nextInt( graph.vertices().size() ), graph.vertexRef() ),
+						nth( graph.vertices(), random.nextInt( graph.vertices().size() ), graph.vertexRef() ) );
+
+			if ( random.nextInt( 20 ) == 0 )
+				assertEquivalentToRebuild();
+		}
+		assertEquivalentToRebuild();
+	}
+
+	@Test
+	public void testForEachTrackId()
+	{
+		final Spot[] track = chain( 4 );
+		final Spot single = addSpot( 0 );
+		validate();
+		graph.remove( graph.getEdge( track[ 1 ], track[ 2 ], graph.edgeRef() ) );
+
+		final TIntIntMap trackIds = new TIntIntHashMap( 16, 0.5f, -1, -1 );
+		index.forEachTrackId( ( spot, trackId ) -> trackIds.put( spot.getInternalPoolIndex(), trackId ) );
+		assertEquals( graph.vertices().size(), trackIds.size() );
+		for ( final Spot spot : graph.vertices() )
+			assertEquals( index.getTrackId( spot ), trackIds.get( spot.getInternalPoolIndex() ) );
+		assertNotEquals( trackIds.get( track[ 0 ].getInternalPoolIndex() ), trackIds.get( track[ 3 ].getInternalPoolIndex() ) );
+		assertNotEquals( trackIds.get( track[ 0 ].getInternalPoolIndex() ), trackIds.get( single.getInternalPoolIndex() ) );
+	}
+
+	/**
+	 * Queries the index once, so that subsequent edits are applied
+	 * incrementally.
+	 */
+	private void validate()
+	{
+		index.getTrackId( graph.vertices().iterator().next() );
+	}
+
+	/**
+	 * Compares the incrementally updated index with an index built from
+	 * scratch: both must partition the vertices into the same tracks, with
+	 * the same sizes.
+	 */
+	private void assertEquivalentToRebuild()
+	{
+		final TrackIndex< Spot, Link > rebuilt = new TrackIndex<>( graph, model.getGraphIdBimap(), graph.getLock() );
+		final TIntIntMap incrementalToRebuilt = new TIntIntHashMap( 16, 0.5f, -1, -1 );
+		final TIntIntMap rebuiltToIncremental = new TIntIntHashMap( 16, 0.5f, -1, -1 );
+		for ( final Spot spot : graph.vertices() )
+		{
+			final int incrementalId = index.getTrackId( spot );
+			final int rebuiltId = rebuilt.getTrackId( spot );
+			assertNotEquals( TrackIndex.NO_TRACK, incrementalId );
+			final int previousRebuilt = incrementalToRebuilt.put( incrementalId, rebuiltId );
+			final int previousIncremental = rebuiltToIncremental.put( rebuiltId, incrementalId );
+			if ( previousRebuilt >= 0 )
+				assertEquals( "separate tracks share an id", previousRebuilt, rebuiltId );
+			if ( previousIncremental >= 0 )
+				assertEquals( "track was not split", previousIncremental, incrementalId );
+			assertEquals( rebuilt.getTrackSize( spot ), index.getTrackSize( spot ) );
+		}
+	}
+
+	private Spot addSpot( final int timepoint )
+	{
+		return graph.addVertex().init( timepoint, new double[ 3 ], 1 );
+	}
+
+	private void link( final Spot source, final Spot target )
+	{
+		if ( !source.equals( target ) )
+			graph.addEdge( source, target, graph.edgeRef() ).init();
+	}
+
+	private Spot[] chain( final int length )
+	{
+		final Spot[] spots = new Spot[ length ];
+		for ( int i = 0; i < length; ++i )
+		{
+			spots[ i ] = addSpot( i );
+			if ( i > 0 )
+				link( spots[ i - 1 ], spots[ i ] );
+		}
+		return spots;
+	}
+
+	private static Spot nth( final Iterable< Spot > spots, final int n, final Spot ref )
+	{
+		int i = 0;
+		for ( final Spot spot : spots )
+			if ( i++ == n )
+				return ref.refTo( spot );
+		throw new IndexOutOfBoundsException();
+	}
+
+	private static Link nth( final Iterable< Link > links, final int n, final Link ref )
+	{
+		int i = 0;
+		for ( final Link link : links )
+			if ( i++ == n )
+				return ref.refTo( link );
+		throw new IndexOutOfBoundsException();
+	}
+}
@@ -0,0 +1,111 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+
+public class UndoHistoryBudgetTest
+{
+	private static final long BUDGET = 64 * 1024;
+
+	/**
+	 * The oldest undo points are discarded to stay within the budget. The
+	 * remaining ones can be undone and redone.
+	 */
+	@Test
+	public void testOldestUndoPointsAreDiscarded()
+	{
+		final Model model = new Model();
+		final ModelGraph graph = model.getGraph();
+		final UndoHistoryMonitor< Spot, Link > monitor = model.getUndoHistoryMonitor();
+		monitor.setBudget( BUDGET );
+		final AtomicInteger notifications = new AtomicInteger();
+		monitor.listeners().add( ( bytes, budget ) -> notifications.incrementAndGet() );
+
+		final int numSteps = 1000;
+		for ( int i = 0; i < numSteps; ++i )
+		{
+			final Spot spot = graph.addVertex().init( i, new double[ 3 ], 1 );
+			spot.setLabel( "spot " + i );
+			model.setUndoPoint();
+			assertTrue( monitor.getEstimatedBytes() <= BUDGET );
+		}
+		assertEquals( 0, notifications.get() );
+
+		final int numUndoPoints = monitor.getNumUndoPoints();
+		assertTrue( numUndoPoints < numSteps );
+		assertTrue( monitor.getEstimatedBytes() > BUDGET / 2 );
+
+		for ( int i = 0; i < numUndoPoints; ++i )
+			model.undo();
+		assertEquals( numSteps - numUndoPoints, graph.vertices().size() );
+
+		// Discarded undo points cannot be undone.
+		model.undo();
+		assertEquals( numSteps - numUndoPoints, graph.vertices().size() );
+
+		for ( int i = 0; i < numUndoPoints; ++i )
+			model.redo();
+		assertEquals( numSteps, graph.vertices().size() );
+	}
+
+	/**
+	 * Listeners are notified if a single undo point exceeds the budget.
+	 */
+	@Test
+	public void testNotifiesIfUndoPointExceedsBudget()
+	{
+		final Model model = new Model();
+		final ModelGraph graph = model.getGraph();
+		final UndoHistoryMonitor< Spot, Link > monitor = model.getUndoHistoryMonitor();
+		monitor.setBudget( BUDGET );
+		final AtomicInteger notifications = new AtomicInteger();
+		monitor.listeners().add( ( bytes, budget ) -> notifications.incrementAndGet() );
+
+		for ( int i = 0; i < 2000; ++i )
+			graph.addVertex().init( 0, new double[ 3 ], 1 );
+		model.setUndoPoint();
+		assertTrue( monitor.getEstimatedBytes() > BUDGET );
+		assertEquals( 1, notifications.get() );
+
+		// Only notified once.
+		graph.addVertex().init( 0, new double[ 3 ], 1 );
+		model.setUndoPoint();
+		assertEquals( 1, notifications.get() );
+	}
+}
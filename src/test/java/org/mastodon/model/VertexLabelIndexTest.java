@@ -0,0 +1,188 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.model;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+
+public class VertexLabelIndexTest
+{
+	private static final String[] QUERIES = { "a", "ab", "abc", "cell", "ell", "ll_1", "_1", "x", "b_2" };
+
+	private Model model;
+
+	private ModelGraph graph;
+
+	private VertexLabelIndex< Spot, Link > index;
+
+	@Before
+	public void setUp()
+	{
+		model = new Model();
+		graph = model.getGraph();
+		index = model.getSpotLabelIndex();
+	}
+
+	@Test
+	public void testAddRemoveRelabel()
+	{
+		final List< Spot > spots = new ArrayList<>();
+		for ( int i = 0; i < 50; ++i )
+			spots.add( addSpot( "cell_" + i ) );
+		assertConsistent();
+
+		// Changes after the base was built go to the delta.
+		spots.add( addSpot( "abc" ) );
+		assertConsistent();
+		spots.get( 3 ).setLabel( "ab_3" );
+		assertConsistent();
+		graph.remove( spots.remove( 10 ) );
+		assertConsistent();
+
+		// A removed id may be reused by the next added spot.
+		spots.add( addSpot( "xcell" ) );
+		assertConsistent();
+		spots.get( 3 ).setLabel( "cell_3" );
+		assertConsistent();
+	}
+
+	@Test
+	public void testUndoRedo()
+	{
+		final List< Spot > spots = new ArrayList<>();
+		for ( int i = 0; i < 20; ++i )
+			spots.add( addSpot( "cell_" + i ) );
+		model.setUndoPoint();
+		assertConsistent();
+
+		spots.get( 0 ).setLabel( "abc_0" );
+		model.setUndoPoint();
+		graph.remove( spots.get( 1 ) );
+		model.setUndoPoint();
+		addSpot( "b_2" );
+		model.setUndoPoint();
+		assertConsistent();
+
+		model.undo();
+		assertConsistent();
+		model.undo();
+		assertConsistent();
+		model.undo();
+		assertConsistent();
+		model.redo();
+		assertConsistent();
+		model.redo();
+		assertConsistent();
+		model.redo();
+		assertConsistent();
+	}
+
+	/**
+	 * Enough changes to overflow the delta, so that the base is rebuilt.
+	 */
+	@Test
+	public void testRandomEdits()
+	{
+		final Random random = new Random( 1 );
+		final List< Spot > spots = new ArrayList<>();
+		for ( int i = 0; i < 1000; ++i )
+			spots.add( addSpot( randomLabel( random ) ) );
+		assertConsistent();
+
+		for ( int round = 0; round < 30; ++round )
+		{
+			for ( int i = 0; i < 500; ++i )
+			{
+				final int op = random.nextInt( 3 );
+				if ( op == 0 || spots.isEmpty() )
+					spots.add( addSpot( randomLabel( random ) ) );
+				else if ( op == 1 )
+					graph.remove( spots.remove( random.nextInt( spots.size() ) ) );
+				else
+					spots.get( random.nextInt( spots.size() ) ).setLabel( randomLabel( random ) );
+			}
+			assertConsistent();
+		}
+	}
+
+	private Spot addSpot( final String label )
+	{
+		final Spot spot = graph.addVertex().init( 0, new double[ 3 ], 1 );
+		spot.setLabel( label );
+		return spot;
+	}
+
+	private static String randomLabel( final Random random )
+	{
+		final String[] prefixes = { "a", "ab", "abc", "cell", "b" };
+		return prefixes[ random.nextInt( prefixes.length ) ] + "_" + random.nextInt( 30 );
+	}
+
+	private void assertConsistent()
+	{
+		for ( final String query : QUERIES )
+		{
+			assertArrayEquals( query, bruteForce( query, true ), index.search( query, true, () -> false ) );
+			assertArrayEquals( query, bruteForce( query, false ), index.search( query, false, () -> false ) );
+		}
+	}
+
+	private int[] bruteForce( final String text, final boolean startsWith )
+	{
+		final List< Integer > ids = new ArrayList<>();
+		final Map< Integer, String > labels = new HashMap<>();
+		for ( final Spot spot : graph.vertices() )
+		{
+			final String label = spot.getLabel();
+			if ( startsWith ? label.startsWith( text ) : label.contains( text ) )
+			{
+				final int id = index.getId( spot );
+				ids.add( id );
+				labels.put( id, label );
+			}
+		}
+		ids.sort( ( id1, id2 ) -> {
+			final int c = labels.get( id1 ).compareTo( labels.get( id2 ) );
+			return c != 0 ? c : Integer.compare( id1, id2 );
+		} );
+		return ids.stream().mapToInt( Integer::intValue ).toArray();
+	}
+}
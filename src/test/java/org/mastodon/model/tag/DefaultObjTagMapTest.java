@@ -0,0 +1,271 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.model.tag;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.model.tag.TagSetStructure.Tag;
+import org.mastodon.model.tag.TagSetStructure.TagSet;
+
+public class DefaultObjTagMapTest
+{
+	private Model model;
+
+	private ModelGraph graph;
+
+	private TagSet fruits;
+
+	private TagSet colors;
+
+	private ObjTagMap< Spot, Tag > fruitTags;
+
+	private ObjTagMap< Spot, Tag > colorTags;
+
+	@Before
+	public void setUp()
+	{
+		model = new Model();
+		graph = model.getGraph();
+		final TagSetStructure tss = new TagSetStructure();
+		final TagSet f = tss.createTagSet( "fruits" );
+		f.createTag( "apple", 0xffff0000 );
+		f.createTag( "pear", 0xff00ff00 );
+		final TagSet c = tss.createTagSet( "colors" );
+		c.createTag( "red", 0xffff0000 );
+		c.createTag( "blue", 0xff0000ff );
+		model.getTagSetModel().setTagSetStructure( tss );
+
+		final List< TagSet > tagSets = model.getTagSetModel().getTagSetStructure().getTagSets();
+		fruits = tagSets.get( 0 );
+		colors = tagSets.get( 1 );
+		fruitTags = model.getTagSetModel().getVertexTags().tags( fruits );
+		colorTags = model.getTagSetModel().getVertexTags().tags( colors );
+	}
+
+	@Test
+	public void testSetGetRemove()
+	{
+		final Tag apple = fruits.getTags().get( 0 );
+		final Tag pear = fruits.getTags().get( 1 );
+		final Tag red = colors.getTags().get( 0 );
+		final Spot a = addSpot();
+		final Spot b = addSpot();
+		assertNull( fruitTags.get( a ) );
+
+		fruitTags.set( a, apple );
+		colorTags.set( a, red );
+		fruitTags.set( b, apple );
+		assertSame( apple, fruitTags.get( a ) );
+		assertSame( red, colorTags.get( a ) );
+		assertConsistent();
+
+		// Tags of a tag set are mutually exclusive.
+		fruitTags.set( a, pear );
+		assertSame( pear, fruitTags.get( a ) );
+		assertSame( red, colorTags.get( a ) );
+		assertEquals( 1, fruitTags.getTaggedWith( apple ).size() );
+		assertConsistent();
+
+		fruitTags.remove( a );
+		assertNull( fruitTags.get( a ) );
+		assertSame( red, colorTags.get( a ) );
+		assertConsistent();
+
+		fruitTags.set( b, null );
+		assertNull( fruitTags.get( b ) );
+		assertTrue( fruitTags.getTaggedWith( apple ).isEmpty() );
+		assertConsistent();
+	}
+
+	@Test
+	public void testBulkSet()
+	{
+		final Tag apple = fruits.getTags().get( 0 );
+		final Tag pear = fruits.getTags().get( 1 );
+		final List< Spot > spots = addSpots( 100 );
+		fruitTags.set( spots.get( 0 ), pear );
+
+		fruitTags.set( spots.subList( 0, 60 ), apple );
+		assertEquals( 60, fruitTags.getTaggedWith( apple ).size() );
+		assertTrue( fruitTags.getTaggedWith( pear ).isEmpty() );
+		assertConsistent();
+
+		fruitTags.set( spots.subList( 50, 100 ), null );
+		assertEquals( 50, fruitTags.getTaggedWith( apple ).size() );
+		assertConsistent();
+	}
+
+	/**
+	 * Label changes that do not go through the tag map, here undo and redo,
+	 * must update the index.
+	 */
+	@Test
+	public void testUndoRedo()
+	{
+		final Tag apple = fruits.getTags().get( 0 );
+		final Tag pear = fruits.getTags().get( 1 );
+		final Spot a = addSpot();
+		model.setUndoPoint();
+		fruitTags.set( a, apple );
+		model.setUndoPoint();
+		fruitTags.set( a, pear );
+		model.setUndoPoint();
+
+		model.undo();
+		assertSame( apple, fruitTags.get( a ) );
+		assertConsistent();
+		model.undo();
+		assertNull( fruitTags.get( a ) );
+		assertConsistent();
+		model.redo();
+		model.redo();
+		assertSame( pear, fruitTags.get( a ) );
+		assertConsistent();
+	}
+
+	/**
+	 * A bulk tag assignment is one undo step, also if it directly follows
+	 * other edits without undo point.
+	 */
+	@Test
+	public void testBulkSetIsOneUndoStep()
+	{
+		final Tag apple = fruits.getTags().get( 0 );
+		final Tag pear = fruits.getTags().get( 1 );
+		final List< Spot > spots = addSpots( 1000 );
+		fruitTags.set( spots.subList( 0, 10 ), pear );
+		model.setUndoPoint();
+
+		// Not followed by an undo point.
+		fruitTags.set( spots.get( 999 ), pear );
+		fruitTags.set( spots, apple );
+		assertEquals( 1000, fruitTags.getTaggedWith( apple ).size() );
+
+		model.undo();
+		assertTrue( fruitTags.getTaggedWith( apple ).isEmpty() );
+		assertEquals( 11, fruitTags.getTaggedWith( pear ).size() );
+		assertSame( pear, fruitTags.get( spots.get( 999 ) ) );
+		assertConsistent();
+
+		model.redo();
+		assertEquals( 1000, fruitTags.getTaggedWith( apple ).size() );
+		assertTrue( fruitTags.getTaggedWith( pear ).isEmpty() );
+		assertConsistent();
+
+		model.undo();
+		model.undo();
+		assertEquals( 10, fruitTags.getTaggedWith( pear ).size() );
+		assertNull( fruitTags.get( spots.get( 999 ) ) );
+		assertConsistent();
+	}
+
+	/**
+	 * A spot that is added after a tagged spot was removed, possibly with the
+	 * same id, must not inherit its tag.
+	 */
+	@Test
+	public void testRemovedSpotIsForgotten()
+	{
+		final Tag apple = fruits.getTags().get( 0 );
+		final Spot a = addSpot();
+		fruitTags.set( a, apple );
+		graph.remove( a );
+		final Spot b = addSpot();
+		assertNull( fruitTags.get( b ) );
+		assertTrue( fruitTags.getTaggedWith( apple ).isEmpty() );
+		assertConsistent();
+	}
+
+	@Test
+	public void testRandomEdits()
+	{
+		final Random random = new Random( 1 );
+		final List< Spot > spots = addSpots( 200 );
+		for ( int i = 0; i < 2000; ++i )
+		{
+			final Spot spot = spots.get( random.nextInt( spots.size() ) );
+			final ObjTagMap< Spot, Tag > tags = random.nextBoolean() ? fruitTags : colorTags;
+			final List< Tag > tagList = ( tags == fruitTags ? fruits : colors ).getTags();
+			final int t = random.nextInt( tagList.size() + 1 );
+			tags.set( spot, t < tagList.size() ? tagList.get( t ) : null );
+		}
+		assertConsistent();
+	}
+
+	/**
+	 * The tag of every spot must agree with the spots tagged with each tag.
+	 */
+	private void assertConsistent()
+	{
+		assertConsistent( fruitTags, fruits );
+		assertConsistent( colorTags, colors );
+	}
+
+	private void assertConsistent( final ObjTagMap< Spot, Tag > tags, final TagSet tagSet )
+	{
+		int numTagged = 0;
+		for ( final Tag tag : tagSet.getTags() )
+		{
+			for ( final Spot spot : tags.getTaggedWith( tag ) )
+				assertSame( tag, tags.get( spot ) );
+			numTagged += tags.getTaggedWith( tag ).size();
+		}
+		int numWithTag = 0;
+		for ( final Spot spot : graph.vertices() )
+			if ( tags.get( spot ) != null )
+				++numWithTag;
+		assertEquals( numTagged, numWithTag );
+	}
+
+	private Spot addSpot()
+	{
+		return graph.addVertex().init( 0, new double[ 3 ], 1 );
+	}
+
+	private List< Spot > addSpots( final int n )
+	{
+		final List< Spot > spots = new ArrayList<>();
+		for ( int i = 0; i < n; ++i )
+			spots.add( addSpot() );
+		return spots;
+	}
+}
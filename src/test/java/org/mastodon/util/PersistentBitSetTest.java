@@ -0,0 +1,160 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PersistentBitSetTest
+{
+	@Test
+	public void testEmpty()
+	{
+		final PersistentBitSet set = PersistentBitSet.EMPTY;
+		assertTrue( set.isEmpty() );
+		assertEquals( 0, set.cardinality() );
+		assertEquals( -1, set.nextSetBit( 0 ) );
+		assertFalse( set.get( 0 ) );
+		assertFalse( set.get( -1 ) );
+		assertFalse( set.get( 1_000_000 ) );
+	}
+
+	@Test
+	public void testSetAndGet()
+	{
+		final PersistentBitSet.Builder builder = PersistentBitSet.EMPTY.builder();
+		assertTrue( builder.set( 5, true ) );
+		assertFalse( builder.set( 5, true ) );
+		assertTrue( builder.set( 100_000, true ) );
+		assertTrue( builder.set( 5, false ) );
+		assertFalse( builder.set( 7, false ) );
+
+		final PersistentBitSet set = builder.build();
+		assertFalse( set.get( 5 ) );
+		assertTrue( set.get( 100_000 ) );
+		assertEquals( 1, set.cardinality() );
+		assertEquals( 100_000, set.nextSetBit( 0 ) );
+		assertEquals( -1, set.nextSetBit( 100_001 ) );
+	}
+
+	@Test
+	public void testBuildWithoutModificationReturnsSameSet()
+	{
+		final PersistentBitSet.Builder builder = PersistentBitSet.EMPTY.builder();
+		assertSame( PersistentBitSet.EMPTY, builder.build() );
+		builder.set( 3, true );
+		final PersistentBitSet set = builder.build();
+		assertSame( set, builder.build() );
+		builder.set( 3, true );
+		assertSame( set, builder.build() );
+	}
+
+	/**
+	 * Sets built earlier must not change when the builder is modified later,
+	 * also when chunks are shared between them.
+	 */
+	@Test
+	public void testSnapshotIsolation()
+	{
+		final Random random = new Random( 1 );
+		final PersistentBitSet.Builder builder = PersistentBitSet.EMPTY.builder();
+		final BitSet expected = new BitSet();
+		final List< PersistentBitSet > sets = new ArrayList<>();
+		final List< BitSet > expectedSets = new ArrayList<>();
+
+		for ( int round = 0; round < 50; ++round )
+		{
+			for ( int i = 0; i < 200; ++i )
+			{
+				// Cluster modifications, so that some chunks stay shared.
+				final int index = random.nextInt( 4 ) * 10_000 + random.nextInt( 5_000 );
+				final boolean value = random.nextBoolean();
+				assertEquals( expected.get( index ) != value, builder.set( index, value ) );
+				expected.set( index, value );
+			}
+			if ( round % 17 == 16 )
+			{
+				assertEquals( !expected.isEmpty(), builder.clear() );
+				expected.clear();
+			}
+			sets.add( builder.build() );
+			expectedSets.add( ( BitSet ) expected.clone() );
+		}
+
+		for ( int i = 0; i < sets.size(); ++i )
+			assertEqualBits( expectedSets.get( i ), sets.get( i ) );
+	}
+
+	@Test
+	public void testBuilderFromSet()
+	{
+		final PersistentBitSet.Builder builder = PersistentBitSet.EMPTY.builder();
+		builder.set( 1, true );
+		builder.set( 5000, true );
+		final PersistentBitSet set = builder.build();
+
+		final PersistentBitSet.Builder other = set.builder();
+		assertTrue( other.get( 5000 ) );
+		assertEquals( 2, other.cardinality() );
+		other.set( 5000, false );
+		other.set( 2, true );
+		final PersistentBitSet modified = other.build();
+
+		assertTrue( set.get( 5000 ) );
+		assertFalse( set.get( 2 ) );
+		assertFalse( modified.get( 5000 ) );
+		assertTrue( modified.get( 2 ) );
+		assertEquals( 2, modified.cardinality() );
+	}
+
+	private static void assertEqualBits( final BitSet expected, final PersistentBitSet actual )
+	{
+		assertEquals( expected.cardinality(), actual.cardinality() );
+		assertEquals( expected.isEmpty(), actual.isEmpty() );
+		int e = expected.nextSetBit( 0 );
+		int a = actual.nextSetBit( 0 );
+		while ( e >= 0 )
+		{
+			assertEquals( e, a );
+			assertTrue( actual.get( a ) );
+			e = expected.nextSetBit( e + 1 );
+			a = actual.nextSetBit( a + 1 );
+		}
+		assertEquals( -1, a );
+	}
+}
@@ -0,0 +1,175 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.views.bdv.overlay.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+
+import net.imglib2.algorithm.kdtree.ConvexPolytope;
+import net.imglib2.realtransform.AffineTransform3D;
+
+public class TimeWindowClipTest
+{
+	private static final int NUM_TIMEPOINTS = 5;
+
+	private Model model;
+
+	/**
+	 * Internal pool indices of the spots inside the polytope, one per
+	 * time-point, linked into a single track.
+	 */
+	private int[] inside;
+
+	private ConvexPolytope polytope;
+
+	private TimeWindowClip< Spot > clip;
+
+	@Before
+	public void setUp()
+	{
+		model = new Model();
+		final ModelGraph graph = model.getGraph();
+		final Spot source = graph.vertexRef();
+		final Spot target = graph.vertexRef();
+		final Link eref = graph.edgeRef();
+		inside = new int[ NUM_TIMEPOINTS ];
+		for ( int t = 0; t < NUM_TIMEPOINTS; ++t )
+		{
+			graph.addVertex( target ).init( t, new double[] { 10, 10, 10 }, 1 );
+			inside[ t ] = target.getInternalPoolIndex();
+			if ( t > 0 )
+				graph.addEdge( source, target, eref ).init();
+			source.refTo( target );
+			graph.addVertex( target ).init( t, new double[] { 100, 10, 10 }, 1 );
+		}
+		graph.releaseRef( eref );
+		graph.releaseRef( target );
+		graph.releaseRef( source );
+
+		polytope = BdvRendererUtil.getPolytopeGlobal( new AffineTransform3D(), 0, 50, 0, 50, 0, 50 );
+		clip = new TimeWindowClip<>( model.getSpatioTemporalIndex() );
+		model.getSpatioTemporalIndex().readLock().lock();
+	}
+
+	@After
+	public void tearDown()
+	{
+		model.getSpatioTemporalIndex().readLock().unlock();
+	}
+
+	@Test
+	public void testEmptyWindow()
+	{
+		assertFalse( clip.getInsideValues().iterator().hasNext() );
+
+		clip.clip( polytope, 3, 2 );
+		assertFalse( clip.getInsideValues().iterator().hasNext() );
+
+		clip.clip( polytope, NUM_TIMEPOINTS, NUM_TIMEPOINTS + 10 );
+		assertFalse( clip.getInsideValues().iterator().hasNext() );
+
+		clip.clip( polytope, -3, -1 );
+		assertFalse( clip.getInsideValues().iterator().hasNext() );
+	}
+
+	@Test
+	public void testSingleTimepoint()
+	{
+		for ( int t = 0; t < NUM_TIMEPOINTS; ++t )
+		{
+			clip.clip( polytope, t, t );
+			assertEquals( list( inside[ t ] ), insideValues() );
+		}
+
+		clip.clip( polytope, -2, 0 );
+		assertEquals( list( inside[ 0 ] ), insideValues() );
+	}
+
+	/**
+	 * The links leading into and out of the window have only one end inside
+	 * it. Exactly that end is returned, and the time-points inside the window
+	 * are returned in order.
+	 */
+	@Test
+	public void testEdgesCrossingWindow()
+	{
+		clip.clip( polytope, 1, 3 );
+		final List< Integer > values = insideValues();
+		assertEquals( list( inside[ 1 ], inside[ 2 ], inside[ 3 ] ), values );
+
+		final ModelGraph graph = model.getGraph();
+		final Spot ref = graph.vertexRef();
+		int crossing = 0;
+		for ( final Link link : graph.edges() )
+		{
+			final boolean sourceInside = values.contains( link.getSource( ref ).getInternalPoolIndex() );
+			final boolean targetInside = values.contains( link.getTarget( ref ).getInternalPoolIndex() );
+			final int ts = link.getSource( ref ).getTimepoint();
+			assertEquals( ts >= 1 && ts <= 3, sourceInside );
+			assertEquals( ts + 1 >= 1 && ts + 1 <= 3, targetInside );
+			if ( sourceInside != targetInside )
+				++crossing;
+		}
+		graph.releaseRef( ref );
+		assertEquals( 2, crossing );
+	}
+
+	private List< Integer > insideValues()
+	{
+		final List< Integer > values = new ArrayList<>();
+		int t = -1;
+		for ( final Spot spot : clip.getInsideValues() )
+		{
+			assertTrue( spot.getTimepoint() >= t );
+			t = spot.getTimepoint();
+			values.add( spot.getInternalPoolIndex() );
+		}
+		return values;
+	}
+
+	private static List< Integer > list( final int... ids )
+	{
+		final List< Integer > list = new ArrayList<>();
+		for ( final int id : ids )
+			list.add( id );
+		return list;
+	}
+}
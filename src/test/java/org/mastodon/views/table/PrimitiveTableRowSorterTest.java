@@ -0,0 +1,215 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.views.table;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import javax.swing.RowSorter.SortKey;
+import javax.swing.SortOrder;
+import javax.swing.table.AbstractTableModel;
+
+import org.junit.Test;
+
+public class PrimitiveTableRowSorterTest
+{
+	private static class Table extends AbstractTableModel implements PrimitiveTableRowSorter.SortKeys
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final List< double[] > values = new ArrayList<>();
+
+		private final List< String > labels = new ArrayList<>();
+
+		@Override
+		public int getRowCount()
+		{
+			return values.size();
+		}
+
+		@Override
+		public int getColumnCount()
+		{
+			return 3;
+		}
+
+		@Override
+		public Object getValueAt( final int rowIndex, final int columnIndex )
+		{
+			return columnIndex == 2 ? labels.get( rowIndex ) : values.get( rowIndex )[ columnIndex ];
+		}
+
+		@Override
+		public boolean isStringColumn( final int column )
+		{
+			return column == 2;
+		}
+
+		@Override
+		public void getNumericKeys( final int column, final double[] keys )
+		{
+			for ( int row = 0; row < keys.length; row++ )
+				keys[ row ] = values.get( row )[ column ];
+		}
+
+		@Override
+		public void getStringKeys( final int column, final String[] keys )
+		{
+			for ( int row = 0; row < keys.length; row++ )
+				keys[ row ] = labels.get( row );
+		}
+
+		@Override
+		public void getNumericKeys( final int column, final double[] keys, final int[] rows, final int numRows )
+		{
+			for ( int i = 0; i < numRows; i++ )
+				keys[ rows[ i ] ] = values.get( rows[ i ] )[ column ];
+		}
+
+		@Override
+		public void getStringKeys( final int column, final String[] keys, final int[] rows, final int numRows )
+		{
+			for ( int i = 0; i < numRows; i++ )
+				keys[ rows[ i ] ] = labels.get( rows[ i ] );
+		}
+
+		void set( final int row, final Random random )
+		{
+			final double[] v = new double[] { random.nextInt( 5 ), random.nextDouble() < 0.1 ? Double.NaN : random.nextGaussian() };
+			final String label = random.nextDouble() < 0.1 ? null : Integer.toString( random.nextInt( 50 ) );
+			if ( row == values.size() )
+			{
+				values.add( v );
+				labels.add( label );
+			}
+			else
+			{
+				values.set( row, v );
+				labels.set( row, label );
+			}
+		}
+	}
+
+	@Test
+	public void testIncrementalUpdatesEqualFullSort()
+	{
+		final Random random = new Random( 7 );
+		final List< List< SortKey > > sortKeys = Arrays.asList(
+				Arrays.asList( new SortKey( 1, SortOrder.ASCENDING ) ),
+				Arrays.asList( new SortKey( 2, SortOrder.DESCENDING ), new SortKey( 0, SortOrder.ASCENDING ) ),
+				Arrays.asList( new SortKey( 0, SortOrder.DESCENDING ), new SortKey( 1, SortOrder.DESCENDING ) ),
+				Arrays.asList() );
+		for ( final List< SortKey > keys : sortKeys )
+		{
+			for ( final boolean filtered : new boolean[] { false, true } )
+			{
+				final Table table = new Table();
+				for ( int row = 0; row < 200; ++row )
+					table.set( row, random );
+				final PrimitiveTableRowSorter< Table > sorter = new PrimitiveTableRowSorter<>( table, table );
+				sorter.setSortKeys( keys );
+				if ( filtered )
+					sorter.setRowFilter( row -> table.values.get( row )[ 0 ] != 2 );
+				for ( int step = 0; step < 200; ++step )
+				{
+					edit( table, sorter, random );
+					assertSameView( sorter, table, keys, filtered );
+				}
+			}
+		}
+	}
+
+	/**
+	 * Applies a random edit, as the feature table does and as a JTable
+	 * forwards it to its sorter: a few changed rows with rows appended or
+	 * removed from the end, announced with a single event, or a single
+	 * updated row.
+	 */
+	private static void edit( final Table table, final PrimitiveTableRowSorter< Table > sorter, final Random random )
+	{
+		final int oldCount = table.getRowCount();
+		if ( random.nextInt( 3 ) == 0 )
+		{
+			final int row = random.nextInt( oldCount );
+			final int column = random.nextInt( 3 );
+			final double[] v = table.values.get( row );
+			final String label = table.labels.get( row );
+			table.set( row, random );
+			if ( column != 2 )
+				table.labels.set( row, label );
+			if ( column != 0 )
+				table.values.get( row )[ 0 ] = v[ 0 ];
+			if ( column != 1 )
+				table.values.get( row )[ 1 ] = v[ 1 ];
+			sorter.rowsUpdated( row, row, column );
+			return;
+		}
+
+		final int newCount = Math.max( 1, oldCount + random.nextInt( 11 ) - 5 );
+		while ( table.getRowCount() > newCount )
+		{
+			final int last = table.getRowCount() - 1;
+			table.values.remove( last );
+			table.labels.remove( last );
+		}
+		while ( table.getRowCount() < newCount )
+			table.set( table.getRowCount(), random );
+		final int common = Math.min( oldCount, newCount );
+		final int[] changed = random.ints( random.nextInt( 6 ), 0, common ).distinct().sorted().toArray();
+		for ( final int row : changed )
+			table.set( row, random );
+
+		sorter.setChangedRows( changed );
+		if ( newCount < oldCount )
+			sorter.rowsDeleted( newCount, oldCount - 1 );
+		else if ( newCount > oldCount )
+			sorter.rowsInserted( oldCount, newCount - 1 );
+		else if ( changed.length > 0 )
+			sorter.rowsUpdated( changed[ 0 ], changed[ changed.length - 1 ] );
+		else
+			sorter.setChangedRows( null );
+	}
+
+	private static void assertSameView( final PrimitiveTableRowSorter< Table > sorter, final Table table, final List< SortKey > keys, final boolean filtered )
+	{
+		final PrimitiveTableRowSorter< Table > expected = new PrimitiveTableRowSorter<>( table, table );
+		expected.setSortKeys( keys );
+		if ( filtered )
+			expected.setRowFilter( row -> table.values.get( row )[ 0 ] != 2 );
+		assertEquals( expected.getViewRowCount(), sorter.getViewRowCount() );
+		for ( int v = 0; v < expected.getViewRowCount(); ++v )
+			assertEquals( expected.convertRowIndexToModel( v ), sorter.convertRowIndexToModel( v ) );
+		for ( int m = 0; m < table.getRowCount(); ++m )
+			assertEquals( expected.convertRowIndexToView( m ), sorter.convertRowIndexToView( m ) );
+	}
+}
@@ -0,0 +1,142 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.views.trackscheme;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.mastodon.adapter.SelectionModelAdapter;
+import org.mastodon.mamut.importer.synthetic.SyntheticModelGenerator;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.ModelGraphTrackSchemeProperties;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.model.DefaultSelectionModel;
+
+import gnu.trove.map.TIntDoubleMap;
+import gnu.trove.map.hash.TIntDoubleHashMap;
+
+public class LineageTreeLayoutTest
+{
+	@Test
+	public void testIncrementalLayoutEqualsFullLayout()
+	{
+		final Model model = new Model();
+		SyntheticModelGenerator.generate( new SyntheticModelGenerator.Parameters()
+				.numRoots( 20 )
+				.numTimepoints( 30 )
+				.divisionRate( 0.05 )
+				.seed( 3 ), model );
+		final ModelGraph modelGraph = model.getGraph();
+		final TrackSchemeGraph< Spot, Link > graph = new TrackSchemeGraph<>(
+				modelGraph,
+				model.getGraphIdBimap(),
+				new ModelGraphTrackSchemeProperties( modelGraph ),
+				modelGraph.getLock() );
+		final DefaultSelectionModel< Spot, Link > selection = new DefaultSelectionModel<>( modelGraph, model.getGraphIdBimap() );
+		final LineageTreeLayout layout = new LineageTreeLayout( graph, new SelectionModelAdapter<>( selection, graph.getVertexMap(), graph.getEdgeMap() ) );
+		layout.layout();
+
+		final Spot vref1 = modelGraph.vertexRef();
+		final Spot vref2 = modelGraph.vertexRef();
+		final Link eref = modelGraph.edgeRef();
+
+		// Cut a link in the middle of a track.
+		modelGraph.remove( nthEdge( modelGraph, modelGraph.edges().size() / 2, eref ) );
+		assertIncrementalEqualsFull( graph, layout );
+
+		// Delete a spot.
+		modelGraph.remove( nthVertex( modelGraph, modelGraph.vertices().size() / 3, vref1 ) );
+		assertIncrementalEqualsFull( graph, layout );
+
+		// Add a spot and link it to an existing spot.
+		final Spot source = nthVertex( modelGraph, modelGraph.vertices().size() / 4, vref1 );
+		final Spot target = modelGraph.addVertex( vref2 ).init( source.getTimepoint() + 1, new double[ 3 ], 1 );
+		modelGraph.addEdge( source, target, eref ).init();
+		assertIncrementalEqualsFull( graph, layout );
+
+		// Cut a link, then delete its source spot.
+		final Link edge = nthEdge( modelGraph, modelGraph.edges().size() / 5, eref );
+		edge.getSource( vref1 );
+		modelGraph.remove( edge );
+		modelGraph.remove( vref1 );
+		assertIncrementalEqualsFull( graph, layout );
+
+		layout.close();
+	}
+
+	/**
+	 * Lays out {@code graph} with {@link LineageTreeLayout#layout()}, which
+	 * updates only the columns touched since the last layout, and compares the
+	 * result to a full layout from scratch.
+	 */
+	private static void assertIncrementalEqualsFull( final TrackSchemeGraph< ?, ? > graph, final LineageTreeLayout layout )
+	{
+		layout.layout();
+		final TIntDoubleMap incremental = layoutXs( graph );
+		final double incrementalMinX = layout.getCurrentLayoutMinX();
+		final double incrementalMaxX = layout.getCurrentLayoutMaxX();
+
+		layout.layout( LexicographicalVertexOrder.sort( graph, graph.getRoots() ) );
+		final TIntDoubleMap full = layoutXs( graph );
+		assertEquals( full, incremental );
+		assertEquals( layout.getCurrentLayoutMinX(), incrementalMinX, 0 );
+		assertEquals( layout.getCurrentLayoutMaxX(), incrementalMaxX, 0 );
+
+		// Make the next layout() start from a valid incremental layout again.
+		layout.layout();
+	}
+
+	private static TIntDoubleMap layoutXs( final TrackSchemeGraph< ?, ? > graph )
+	{
+		final TIntDoubleMap xs = new TIntDoubleHashMap();
+		for ( final TrackSchemeVertex v : graph.vertices() )
+			xs.put( v.getInternalPoolIndex(), v.getLayoutX() );
+		return xs;
+	}
+
+	private static Spot nthVertex( final ModelGraph graph, final int n, final Spot ref )
+	{
+		int i = 0;
+		for ( final Spot v : graph.vertices() )
+			if ( i++ == n )
+				return ref.refTo( v );
+		throw new IndexOutOfBoundsException();
+	}
+
+	private static Link nthEdge( final ModelGraph graph, final int n, final Link ref )
+	{
+		int i = 0;
+		for ( final Link e : graph.edges() )
+			if ( i++ == n )
+				return ref.refTo( e );
+		throw new IndexOutOfBoundsException();
+	}
+}
@@ -0,0 +1,182 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.views.trackscheme.display;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mastodon.adapter.SelectionModelAdapter;
+import org.mastodon.mamut.importer.synthetic.SyntheticModelGenerator;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.ModelGraphTrackSchemeProperties;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.model.DefaultSelectionModel;
+import org.mastodon.ui.coloring.DefaultGraphColorGenerator;
+import org.mastodon.views.trackscheme.LineageTreeLayout;
+import org.mastodon.views.trackscheme.ScreenEntities;
+import org.mastodon.views.trackscheme.ScreenTransform;
+import org.mastodon.views.trackscheme.TrackSchemeEdge;
+import org.mastodon.views.trackscheme.TrackSchemeGraph;
+import org.mastodon.views.trackscheme.TrackSchemeVertex;
+import org.mastodon.views.trackscheme.display.style.TrackSchemeStyle;
+
+public class BatchedPaintGraphTest
+{
+	private static final int NUM_TIMEPOINTS = 200;
+
+	private static final int WIDTH = 1920;
+
+	private static final int HEIGHT = 1080;
+
+	private Model model;
+
+	private DefaultSelectionModel< Spot, Link > selection;
+
+	private LineageTreeLayout layout;
+
+	private TrackSchemeGraph< Spot, Link > graph;
+
+	private final DefaultGraphColorGenerator< TrackSchemeVertex, TrackSchemeEdge > colorGenerator = new DefaultGraphColorGenerator<>();
+
+	private final TrackSchemeStyle style = TrackSchemeStyle.defaultStyle();
+
+	@Before
+	public void setUp()
+	{
+		// 1000 tracks over 200 timepoints, about 200k links.
+		model = new Model();
+		SyntheticModelGenerator.generate( new SyntheticModelGenerator.Parameters()
+				.numRoots( 1000 )
+				.numTimepoints( NUM_TIMEPOINTS )
+				.divisionRate( 0.01 )
+				.seed( 1 ), model );
+		final ModelGraph modelGraph = model.getGraph();
+		graph = new TrackSchemeGraph<>(
+				modelGraph,
+				model.getGraphIdBimap(),
+				new ModelGraphTrackSchemeProperties( modelGraph ),
+				modelGraph.getLock() );
+		selection = new DefaultSelectionModel<>( modelGraph, model.getGraphIdBimap() );
+		layout = new LineageTreeLayout( graph, new SelectionModelAdapter<>( selection, graph.getVertexMap(), graph.getEdgeMap() ) );
+		layout.layout();
+	}
+
+	/**
+	 * Painting the zoomed-out layout of about 200k links into a full HD image
+	 * must stay within the frame budget of {@link TrackSchemeOverlay}.
+	 */
+	@Test
+	public void testPaintOverviewWithinFrameBudget()
+	{
+		final ScreenTransform transform = new ScreenTransform(
+				layout.getCurrentLayoutMinX(), layout.getCurrentLayoutMaxX(),
+				0, NUM_TIMEPOINTS,
+				WIDTH, HEIGHT );
+		final ScreenEntities entities = cropAndScale( transform );
+
+		final BufferedImage image = new BufferedImage( WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB );
+		final Graphics2D g2 = image.createGraphics();
+		g2.setClip( 0, 0, WIDTH, HEIGHT );
+		final BatchedPaintGraph paintGraph = new BatchedPaintGraph();
+
+		for ( int i = 0; i < 20; ++i )
+			paintGraph.paintGraph( g2, entities, -1, -1, -1, style );
+
+		final long[] times = new long[ 21 ];
+		for ( int i = 0; i < times.length; ++i )
+		{
+			final long t0 = System.nanoTime();
+			paintGraph.paintGraph( g2, entities, -1, -1, -1, style );
+			times[ i ] = System.nanoTime() - t0;
+		}
+		g2.dispose();
+
+		Arrays.sort( times );
+		final long median = times[ times.length / 2 ];
+		assertTrue( "median paint time " + median / 1_000_000.0 + " ms exceeds the frame budget",
+				median <= TrackSchemeOverlay.FRAME_BUDGET_NANOS );
+	}
+
+	/**
+	 * Painting from the cached vertex layer must give the same pixels as
+	 * painting from scratch, also after the rasterized vertices change.
+	 */
+	@Test
+	public void testCachedLayerEqualsFreshPaint()
+	{
+		// Simplified vertices, about 8 pixels apart.
+		final double minX = layout.getCurrentLayoutMinX();
+		final ScreenTransform transform = new ScreenTransform( minX, minX + 240, 0, 100, WIDTH, HEIGHT );
+		final BatchedPaintGraph cached = new BatchedPaintGraph();
+
+		ScreenEntities entities = cropAndScale( transform );
+		final int[] first = paint( cached, entities );
+		assertArrayEquals( first, paint( cached, entities ) );
+		assertArrayEquals( first, paint( new BatchedPaintGraph(), entities ) );
+
+		// Select every tenth spot: the layer must be repainted.
+		selection.pauseListeners();
+		int i = 0;
+		for ( final Spot spot : model.getGraph().vertices() )
+			if ( i++ % 10 == 0 )
+				selection.setSelected( spot, true );
+		selection.resumeListeners();
+
+		entities = cropAndScale( transform );
+		final int[] selected = paint( cached, entities );
+		assertArrayEquals( paint( new BatchedPaintGraph(), entities ), selected );
+		assertTrue( !Arrays.equals( first, selected ) );
+	}
+
+	private ScreenEntities cropAndScale( final ScreenTransform transform )
+	{
+		final ScreenEntities entities = new ScreenEntities( graph );
+		layout.cropAndScale( transform, entities, 0, 0, colorGenerator );
+		return entities;
+	}
+
+	private int[] paint( final PaintGraph paintGraph, final ScreenEntities entities )
+	{
+		final BufferedImage image = new BufferedImage( WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB );
+		final Graphics2D g2 = image.createGraphics();
+		g2.setClip( 0, 0, WIDTH, HEIGHT );
+		paintGraph.paintGraph( g2, entities, -1, -1, -1, style );
+		g2.dispose();
+		return ( ( DataBufferInt ) image.getRaster().getDataBuffer() ).getData();
+	}
+}